@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark;
+
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import java.util.Random;
+
+/**
+ * Builds the synthetic scenes shared by the benchmarks.
+ * <p>
+ * Everything is created without an asset manager or a rendering context
+ * so the benchmarks run headless. Scenes are seeded so that every run
+ * measures exactly the same data.
+ */
+public final class BenchmarkScenes {
+
+    public static final long SEED = 0x6a4d45L;
+
+    private BenchmarkScenes() {
+    }
+
+    /**
+     * Creates a material backed by an empty material definition.
+     * It is good enough for queueing and sorting, but cannot be rendered.
+     */
+    public static Material createMaterial(String name) {
+        return new Material(new MaterialDef(null, name));
+    }
+
+    /**
+     * Creates a camera at the origin looking down the positive Z axis.
+     */
+    public static Camera createCamera() {
+        Camera cam = new Camera(1280, 720);
+        cam.setFrustumPerspective(45f, 1280f / 720f, 1f, 1000f);
+        cam.setLocation(Vector3f.ZERO);
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+        return cam;
+    }
+
+    /**
+     * Creates a chain of nodes <code>depth</code> levels deep with
+     * <code>leaves</code> geometries attached at every level.
+     */
+    public static Node createDeepTree(int depth, int leaves) {
+        Random random = new Random(SEED);
+        Mesh mesh = new Box(0.5f, 0.5f, 0.5f);
+        Material mat = createMaterial("Deep");
+        Node root = new Node("Root");
+        Node parent = root;
+        for (int i = 0; i < depth; i++) {
+            Node child = new Node("Level" + i);
+            child.setLocalTranslation(0, 0, 1f);
+            child.setLocalRotation(new Quaternion().fromAngles(0, 0.01f, 0));
+            for (int j = 0; j < leaves; j++) {
+                child.attachChild(createGeometry(random, mesh, mat, 50f));
+            }
+            parent.attachChild(child);
+            parent = child;
+        }
+        return root;
+    }
+
+    /**
+     * Creates a single node with <code>count</code> geometries directly
+     * attached to it, like a flat level file.
+     */
+    public static Node createWideTree(int count) {
+        Random random = new Random(SEED);
+        Mesh mesh = new Box(0.5f, 0.5f, 0.5f);
+        Material mat = createMaterial("Wide");
+        Node root = new Node("Root");
+        for (int i = 0; i < count; i++) {
+            root.attachChild(createGeometry(random, mesh, mat, 500f));
+        }
+        return root;
+    }
+
+    /**
+     * Creates <code>count</code> geometries in front of the camera created
+     * by {@link #createCamera() }, spread over <code>materials</code>
+     * distinct materials.
+     */
+    public static Geometry[] createGeometries(int count, int materials) {
+        Random random = new Random(SEED);
+        Mesh mesh = new Box(0.5f, 0.5f, 0.5f);
+        Material[] mats = new Material[materials];
+        for (int i = 0; i < materials; i++) {
+            mats[i] = createMaterial("Material" + i);
+        }
+        Geometry[] geoms = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            Geometry geom = createGeometry(random, mesh, mats[i % materials], 200f);
+            geom.move(0, 0, 250f);
+            geom.updateGeometricState();
+            geoms[i] = geom;
+        }
+        return geoms;
+    }
+
+    private static Geometry createGeometry(Random random, Mesh mesh, Material mat, float extent) {
+        Geometry geom = new Geometry("Geom", mesh);
+        geom.setMaterial(mat);
+        geom.setLocalTranslation((random.nextFloat() - 0.5f) * extent,
+                                 (random.nextFloat() - 0.5f) * extent,
+                                 (random.nextFloat() - 0.5f) * extent);
+        geom.setLocalRotation(new Quaternion().fromAngles(random.nextFloat() * FastMath.TWO_PI, 0, 0));
+        return geom;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.animation;
+
+import com.jme3.animation.AnimChannel;
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.Animation;
+import com.jme3.animation.Bone;
+import com.jme3.animation.BoneTrack;
+import com.jme3.animation.CrowdAnimator;
+import com.jme3.animation.Skeleton;
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the animation of a crowd of identical rigs playing the same
+ * animation at different times, by an {@link AnimControl} per character and
+ * by a {@link CrowdAnimator}, on the calling thread and in parallel.
+ * <p>
+ * Each invocation updates every character once and computes its skinning
+ * matrices, the way a frame updates and renders them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrowdAnimationBenchmark {
+
+    public static final int BONES = 32;
+    public static final int KEYFRAMES = 30;
+
+    @Param({"100", "500"})
+    public int characters;
+
+    @Param({"AnimControl", "Crowd", "ParallelCrowd"})
+    public String mode;
+
+    private AnimControl[] controls;
+    private Skeleton[] skeletons;
+    private CrowdAnimator crowd;
+
+    @Setup
+    public void setUp() {
+        Skeleton rig = createRig();
+        Animation animation = createAnimation();
+        Random random = new Random(BenchmarkScenes.SEED);
+        skeletons = new Skeleton[characters];
+        if (mode.equals("AnimControl")) {
+            controls = new AnimControl[characters];
+            for (int i = 0; i < characters; i++) {
+                controls[i] = new AnimControl(new Skeleton(rig));
+                controls[i].addAnim(animation);
+                AnimChannel channel = controls[i].createChannel();
+                channel.setAnim(animation.getName(), 0);
+                channel.setTime(random.nextFloat() * animation.getLength());
+                skeletons[i] = controls[i].getSkeleton();
+            }
+        } else {
+            crowd = new CrowdAnimator(rig, animation);
+            crowd.setParallel(mode.equals("ParallelCrowd"));
+            for (int i = 0; i < characters; i++) {
+                skeletons[i] = new Skeleton(rig);
+                crowd.addSkeleton(skeletons[i], random.nextFloat() * animation.getLength(), 1);
+            }
+        }
+    }
+
+    /**
+     * Creates a spine with two arms and two legs.
+     */
+    private static Skeleton createRig() {
+        Bone[] bones = new Bone[BONES];
+        for (int i = 0; i < BONES; i++) {
+            bones[i] = new Bone("Bone" + i);
+        }
+        int limb = BONES / 5;
+        for (int i = 0; i < BONES; i++) {
+            Vector3f offset = i < limb ? new Vector3f(0, 0.1f, 0) : new Vector3f(0.05f, -0.1f, 0);
+            bones[i].setBindTransforms(offset, new Quaternion(), new Vector3f(1, 1, 1));
+            if (i > 0) {
+                // The limbs start at the top of the spine
+                int parent = i % limb == 0 ? limb - 1 : i - 1;
+                bones[parent].addChild(bones[i]);
+            }
+        }
+        return new Skeleton(bones);
+    }
+
+    private static Animation createAnimation() {
+        Random random = new Random(BenchmarkScenes.SEED);
+        float length = 2f;
+        Animation animation = new Animation("Walk", length);
+        for (int b = 0; b < BONES; b++) {
+            float[] times = new float[KEYFRAMES];
+            Vector3f[] translations = new Vector3f[KEYFRAMES];
+            Quaternion[] rotations = new Quaternion[KEYFRAMES];
+            for (int k = 0; k < KEYFRAMES; k++) {
+                times[k] = length * k / (KEYFRAMES - 1);
+                translations[k] = new Vector3f();
+                rotations[k] = new Quaternion().fromAngles(
+                        random.nextFloat() * 0.4f - 0.2f, random.nextFloat() * 0.4f - 0.2f, 0);
+            }
+            animation.addTrack(new BoneTrack(b, times, translations, rotations));
+        }
+        return animation;
+    }
+
+    @Benchmark
+    public Skeleton[] animate() {
+        if (crowd == null) {
+            for (AnimControl control : controls) {
+                control.update(0.016f);
+            }
+        } else {
+            crowd.update(0.016f);
+        }
+        for (Skeleton skeleton : skeletons) {
+            skeleton.computeSkinningMatrices();
+        }
+        return skeletons;
+    }
+}
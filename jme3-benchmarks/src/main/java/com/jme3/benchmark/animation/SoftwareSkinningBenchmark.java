@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.animation;
+
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.animation.SkeletonControl;
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.shape.Sphere;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures software skinning of a crowd of characters by their
+ * {@link SkeletonControl}, on the calling thread and with
+ * {@link SkeletonControl#setParallelSoftwareSkinning(boolean) parallel skinning}.
+ * <p>
+ * Every character has a body and a head mesh bound to a chain of bones,
+ * each vertex weighted to the two nearest bones. Each invocation skins
+ * every character once, the way a frame renders them.
+ * <p>
+ * Every sample count gives characters of more than
+ * {@link SkeletonControl#PARALLEL_SKINNING_THRESHOLD} vertices, below which
+ * a character is skinned on the calling thread even in parallel mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoftwareSkinningBenchmark {
+
+    public static final int BONES = 16;
+
+    @Param({"1", "200"})
+    public int characters;
+
+    /**
+     * Number of radial / z samples of the body, which has roughly the
+     * square of it in vertices. 48 gives about 2800 vertices per character.
+     */
+    @Param({"48", "96"})
+    public int samples;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private SkeletonControl[] controls;
+
+    @Setup
+    public void setUp() {
+        Material material = BenchmarkScenes.createMaterial("Skinned");
+        controls = new SkeletonControl[characters];
+        for (int i = 0; i < characters; i++) {
+            Skeleton skeleton = createSkeleton(i);
+            Node model = new Node("Character" + i);
+            Geometry body = new Geometry("Body", createSkinnedMesh(new Sphere(samples, samples, 1f)));
+            body.setMaterial(material);
+            model.attachChild(body);
+            Geometry head = new Geometry("Head", createSkinnedMesh(new Sphere(samples / 2, samples / 2, 0.3f)));
+            head.setMaterial(material);
+            model.attachChild(head);
+
+            controls[i] = new SkeletonControl(skeleton);
+            controls[i].setHardwareSkinningPreferred(false);
+            controls[i].setParallelSoftwareSkinning(parallel);
+            model.addControl(controls[i]);
+        }
+    }
+
+    /**
+     * Creates a chain of bones bent a little differently for every character.
+     */
+    private static Skeleton createSkeleton(int character) {
+        Bone[] bones = new Bone[BONES];
+        for (int i = 0; i < BONES; i++) {
+            bones[i] = new Bone("Bone" + i);
+            if (i > 0) {
+                bones[i - 1].addChild(bones[i]);
+                bones[i].setBindTransforms(new Vector3f(0, 2f / BONES, 0), new Quaternion(), new Vector3f(1, 1, 1));
+            } else {
+                bones[i].setBindTransforms(new Vector3f(0, -1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+            }
+        }
+        Skeleton skeleton = new Skeleton(bones);
+        float angle = 0.05f + 0.01f * (character % 10);
+        for (int i = 1; i < BONES; i++) {
+            bones[i].setUserControl(true);
+            bones[i].setUserTransforms(Vector3f.ZERO,
+                    new Quaternion().fromAngleAxis(angle, Vector3f.UNIT_Z), Vector3f.UNIT_XYZ);
+        }
+        skeleton.updateWorldVectors();
+        return skeleton;
+    }
+
+    private static Mesh createSkinnedMesh(Mesh mesh) {
+        FloatBuffer positions = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
+        int numVertices = mesh.getVertexCount();
+        ByteBuffer indices = ByteBuffer.allocate(numVertices * 4);
+        FloatBuffer weights = FloatBuffer.allocate(numVertices * 4);
+        for (int i = 0; i < numVertices; i++) {
+            float height = FastMath.clamp((positions.get(i * 3 + 1) + 1f) / 2f, 0f, 1f) * (BONES - 1);
+            int bone = Math.min((int) height, BONES - 2);
+            float weight = height - bone;
+            indices.put((byte) bone).put((byte) (bone + 1)).put((byte) 0).put((byte) 0);
+            weights.put(1f - weight).put(weight).put(0f).put(0f);
+        }
+        mesh.setBuffer(Type.BoneIndex, 4, indices);
+        mesh.setBuffer(Type.BoneWeight, 4, weights);
+        mesh.setMaxNumWeights(2);
+        mesh.generateBindPose(true);
+        return mesh;
+    }
+
+    @Benchmark
+    public SkeletonControl[] skin() {
+        for (SkeletonControl control : controls) {
+            control.update(0);
+            control.render(null, null);
+        }
+        return controls;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.collision;
+
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.collision.bih.BIHTree;
+import com.jme3.collision.bih.FlatBIHTree;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Sphere;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ray and bounding volume queries against a {@link BIHTree}
+ * built over a tessellated sphere, and the same ray queries against its
+ * {@link FlatBIHTree}, which also has a closest-hit query.
+ * <p>
+ * Each invocation runs a batch of {@link #QUERIES} queries, cycling through
+ * a fixed set of rays aimed at random points around the mesh so that
+ * roughly half of them hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BIHTreeBenchmark {
+
+    public static final int QUERIES = 256;
+
+    /**
+     * Number of radial / z samples of the sphere, the mesh has roughly
+     * twice its square in triangles.
+     */
+    @Param({"64", "256"})
+    public int samples;
+
+    private BIHTree tree;
+    private FlatBIHTree flatTree;
+    private final CollisionResult closest = new CollisionResult();
+    private final Matrix4f worldMatrix = new Matrix4f();
+    private final BoundingBox worldBound = new BoundingBox();
+    private final CollisionResults results = new CollisionResults();
+    private final Ray[] rays = new Ray[QUERIES];
+    private final BoundingSphere[] spheres = new BoundingSphere[QUERIES];
+
+    @Setup
+    public void setUp() {
+        Mesh mesh = new Sphere(samples, samples, 10f);
+        tree = new BIHTree(mesh);
+        tree.construct();
+        flatTree = tree.flatten();
+        mesh.updateBound();
+        worldBound.setCenter(Vector3f.ZERO);
+        worldBound.setXExtent(10f);
+        worldBound.setYExtent(10f);
+        worldBound.setZExtent(10f);
+
+        Random random = new Random(BenchmarkScenes.SEED);
+        for (int i = 0; i < QUERIES; i++) {
+            Vector3f origin = randomDirection(random).multLocal(50f);
+            Vector3f target = randomDirection(random).multLocal(15f);
+            rays[i] = new Ray(origin, target.subtractLocal(origin).normalizeLocal());
+            spheres[i] = new BoundingSphere(1f, randomDirection(random).multLocal(10f));
+        }
+    }
+
+    private static Vector3f randomDirection(Random random) {
+        float z = random.nextFloat() * 2f - 1f;
+        float angle = random.nextFloat() * FastMath.TWO_PI;
+        float r = FastMath.sqrt(1f - z * z);
+        return new Vector3f(r * FastMath.cos(angle), r * FastMath.sin(angle), z);
+    }
+
+    @Benchmark
+    public int collideWithRay() {
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            results.clear();
+            hits += tree.collideWith(rays[i], worldMatrix, worldBound, results);
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int flatCollideWithRay() {
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            results.clear();
+            hits += flatTree.collideWith(rays[i], worldMatrix, results);
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int flatCollideWithRayClosest() {
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            if (flatTree.collideWithClosest(rays[i], worldMatrix, closest)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int collideWithBound() {
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            results.clear();
+            hits += tree.collideWith(spheres[i], worldMatrix, worldBound, results);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.collision;
+
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.collision.CollisionResults;
+import com.jme3.collision.RayBatch;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares casting a set of line of sight rays one by one through
+ * <code>Spatial.collideWith()</code> with casting them as a {@link RayBatch}
+ * against a wide scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RayBatchBenchmark {
+
+    @Param({"512"})
+    public int rays;
+
+    private Node scene;
+    private Ray[] rayArray;
+    private final RayBatch batch = new RayBatch();
+    private final CollisionResults results = new CollisionResults();
+
+    @Setup
+    public void setUp() {
+        scene = BenchmarkScenes.createWideTree(2000);
+        scene.updateGeometricState();
+
+        Random random = new Random(BenchmarkScenes.SEED);
+        rayArray = new Ray[rays];
+        for (int i = 0; i < rays; i++) {
+            Vector3f origin = randomPoint(random);
+            Vector3f target = randomPoint(random);
+            Vector3f direction = target.subtract(origin);
+            Ray ray = new Ray(origin, direction.normalize());
+            ray.setLimit(direction.length());
+            rayArray[i] = ray;
+            batch.addRay(ray);
+        }
+    }
+
+    private static Vector3f randomPoint(Random random) {
+        return new Vector3f((random.nextFloat() - 0.5f) * 500f,
+                            (random.nextFloat() - 0.5f) * 500f,
+                            (random.nextFloat() - 0.5f) * 500f);
+    }
+
+    @Benchmark
+    public int collideWith() {
+        int hits = 0;
+        for (Ray ray : rayArray) {
+            results.clear();
+            scene.collideWith(ray, results);
+            if (results.size() > 0) {
+                results.getClosestCollision();
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public RayBatch batch() {
+        batch.cast(scene);
+        return batch;
+    }
+}
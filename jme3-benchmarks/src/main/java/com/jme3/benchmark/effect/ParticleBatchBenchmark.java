@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.effect;
+
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.effect.ParticleBatchNode;
+import com.jme3.effect.ParticleEmitter;
+import com.jme3.effect.ParticleMesh;
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a frame of many small smoke emitters sharing a material, each
+ * writing its own mesh, and batched by a {@link ParticleBatchNode} into one
+ * mesh.
+ * <p>
+ * Each invocation updates the emitters and writes the meshes to draw, one
+ * per emitter or one in all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleBatchBenchmark {
+
+    public static final int PARTICLES = 40;
+
+    @Param({"300"})
+    public int emitters;
+
+    @Param({"Separate", "Batched"})
+    public String mode;
+
+    private Node scene;
+    private ParticleEmitter[] smokes;
+    private ViewPort viewPort;
+
+    @Setup
+    public void setUp() {
+        FastMath.rand.setSeed(BenchmarkScenes.SEED);
+        Random random = new Random(BenchmarkScenes.SEED);
+        scene = mode.equals("Batched") ? new ParticleBatchNode("Battlefield") : new Node("Battlefield");
+        smokes = new ParticleEmitter[emitters];
+        Material material = BenchmarkScenes.createMaterial("Smoke");
+        for (int i = 0; i < emitters; i++) {
+            smokes[i] = new ParticleEmitter("Smoke" + i, ParticleMesh.Type.Triangle, PARTICLES);
+            smokes[i].setMaterial(material.clone());
+            smokes[i].getParticleInfluencer().setInitialVelocity(new Vector3f(0, 2, 0));
+            smokes[i].getParticleInfluencer().setVelocityVariation(0.3f);
+            smokes[i].setParticlesPerSec(PARTICLES / 2f);
+            smokes[i].setLowLife(1);
+            smokes[i].setHighLife(3);
+            smokes[i].setLocalTranslation(random.nextFloat() * 200 - 100, 0, random.nextFloat() * 200 - 100);
+            scene.attachChild(smokes[i]);
+        }
+
+        Camera cam = new Camera(1280, 720);
+        cam.setFrustumPerspective(45f, 1280f / 720f, 1f, 1000f);
+        cam.setLocation(new Vector3f(0, 50, 150));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        viewPort = new ViewPort("Main", cam);
+
+        // reach the steady state
+        for (int i = 0; i < 200; i++) {
+            frame();
+        }
+    }
+
+    @Benchmark
+    public Node frame() {
+        scene.updateLogicalState(0.016f);
+        scene.updateGeometricState();
+        if (scene instanceof ParticleBatchNode) {
+            Geometry batch = ((ParticleBatchNode) scene).getBatch(smokes[0]);
+            batch.runControlRender(null, viewPort);
+        } else {
+            for (ParticleEmitter smoke : smokes) {
+                ParticleMesh mesh = (ParticleMesh) smoke.getMesh();
+                mesh.updateParticleData(smoke.getParticles(), viewPort.getCamera(), Matrix3f.IDENTITY);
+            }
+        }
+        return scene;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.effect;
+
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.effect.ParticleEmitter;
+import com.jme3.effect.ParticleMesh;
+import com.jme3.effect.shapes.EmitterSphereShape;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a frame of a busy {@link ParticleEmitter}, storing its particles
+ * in objects, in arrays, and in arrays updated in parallel.
+ * <p>
+ * Each invocation updates the emitter, which keeps about as many particles
+ * alive as it can hold, and writes its triangle mesh.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleEmitterBenchmark {
+
+    @Param({"5000", "50000"})
+    public int particles;
+
+    @Param({"Objects", "Arrays", "ParallelArrays"})
+    public String mode;
+
+    private ParticleEmitter emitter;
+    private ParticleMesh mesh;
+    private Camera cam;
+
+    @Setup
+    public void setUp() {
+        FastMath.rand.setSeed(BenchmarkScenes.SEED);
+        emitter = new ParticleEmitter("Smoke", ParticleMesh.Type.Triangle, particles);
+        emitter.setStructOfArrays(!mode.equals("Objects"));
+        emitter.setParallelUpdate(mode.equals("ParallelArrays"));
+        emitter.setShape(new EmitterSphereShape(Vector3f.ZERO, 2f));
+        emitter.getParticleInfluencer().setInitialVelocity(new Vector3f(0, 3, 0));
+        emitter.getParticleInfluencer().setVelocityVariation(0.5f);
+        emitter.setStartColor(new ColorRGBA(1, 0.8f, 0.5f, 1));
+        emitter.setEndColor(new ColorRGBA(0.2f, 0.2f, 0.2f, 0));
+        emitter.setLowLife(1f);
+        emitter.setHighLife(2f);
+        emitter.setParticlesPerSec(particles / 1.5f);
+        emitter.setRotateSpeed(1);
+        mesh = (ParticleMesh) emitter.getMesh();
+
+        cam = new Camera(1280, 720);
+        cam.setFrustumPerspective(45f, 1280f / 720f, 1f, 1000f);
+        cam.setLocation(new Vector3f(0, 5, 30));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+
+        // reach the steady state
+        for (int i = 0; i < 200; i++) {
+            frame();
+        }
+    }
+
+    @Benchmark
+    public ParticleEmitter frame() {
+        emitter.updateLogicalState(0.016f);
+        emitter.updateGeometricState();
+        if (emitter.isStructOfArrays()) {
+            mesh.updateParticleData(emitter.getParticleData(), cam, Matrix3f.IDENTITY);
+        } else {
+            mesh.updateParticleData(emitter.getParticles(), cam, Matrix3f.IDENTITY);
+        }
+        return emitter;
+    }
+}
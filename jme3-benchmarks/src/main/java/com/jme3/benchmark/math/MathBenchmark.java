@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.math;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the <code>Matrix4f</code>, <code>Quaternion</code> and
+ * <code>Vector3f</code> operations used by the scene graph transform
+ * updates.
+ * <p>
+ * All operations write into preallocated stores so the numbers reflect
+ * the math itself and not allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathBenchmark {
+
+    private final Matrix4f m1 = new Matrix4f();
+    private final Matrix4f m2 = new Matrix4f();
+    private final Matrix4f mStore = new Matrix4f();
+
+    private final Quaternion q1 = new Quaternion();
+    private final Quaternion q2 = new Quaternion();
+    private final Quaternion qStore = new Quaternion();
+
+    private final Vector3f v1 = new Vector3f();
+    private final Vector3f v2 = new Vector3f();
+    private final Vector3f vStore = new Vector3f();
+
+    @Setup
+    public void setUp() {
+        q1.fromAngles(0.3f, 1.1f, -0.7f);
+        q2.fromAngles(-1.2f, 0.4f, 2.1f);
+        v1.set(1.5f, -2.25f, 3.75f);
+        v2.set(-0.5f, 4f, 0.125f);
+        m1.setTransform(v1, new Vector3f(1f, 2f, 3f), q1.toRotationMatrix());
+        m2.setTransform(v2, new Vector3f(0.5f, 0.5f, 0.5f), q2.toRotationMatrix());
+    }
+
+    @Benchmark
+    public Matrix4f matrix4fMult() {
+        return m1.mult(m2, mStore);
+    }
+
+    @Benchmark
+    public Vector3f matrix4fMultVector() {
+        return m1.mult(v1, vStore);
+    }
+
+    @Benchmark
+    public Matrix4f matrix4fInvert() {
+        return m1.invert(mStore);
+    }
+
+    @Benchmark
+    public Matrix4f matrix4fSetTransform() {
+        mStore.loadIdentity();
+        mStore.setTranslation(v1);
+        mStore.setRotationQuaternion(q1);
+        return mStore;
+    }
+
+    @Benchmark
+    public Quaternion quaternionMult() {
+        return q1.mult(q2, qStore);
+    }
+
+    @Benchmark
+    public Vector3f quaternionMultVector() {
+        return q1.mult(v1, vStore);
+    }
+
+    @Benchmark
+    public Quaternion quaternionSlerp() {
+        qStore.set(q1);
+        qStore.slerp(q2, 0.35f);
+        return qStore;
+    }
+
+    @Benchmark
+    public Quaternion quaternionFromAngles() {
+        return qStore.fromAngles(0.25f, FastMath.HALF_PI, -0.5f);
+    }
+
+    @Benchmark
+    public Vector3f vector3fCross() {
+        return v1.cross(v2, vStore);
+    }
+
+    @Benchmark
+    public Vector3f vector3fNormalize() {
+        return vStore.set(v1).normalizeLocal();
+    }
+
+    @Benchmark
+    public Vector3f vector3fInterpolate() {
+        return vStore.interpolateLocal(v1, v2, 0.35f);
+    }
+}
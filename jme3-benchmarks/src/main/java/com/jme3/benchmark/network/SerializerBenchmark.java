@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.network;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.CompiledFieldSerializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the reflection based {@link FieldSerializer} with the
+ * {@link CompiledFieldSerializer} on a typical state update message
+ * made mostly of primitive fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Serializable
+    public static class StateMessage extends AbstractMessage {
+        public int entityId;
+        public long time;
+        public float x, y, z;
+        public float qx, qy, qz, qw;
+        public short flags;
+        public boolean moving;
+
+        public StateMessage() {
+        }
+    }
+
+    @Param({"field", "compiled"})
+    public String serializer;
+
+    private Serializer impl;
+    private final StateMessage message = new StateMessage();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        // The serializers look up the built-in serializers of the field
+        // types, which needs Serializer to be initialized first.
+        Serializer.registerClass(StateMessage.class);
+        impl = serializer.equals("compiled") ? new CompiledFieldSerializer() : new FieldSerializer();
+        impl.initialize(StateMessage.class);
+
+        message.entityId = 1234;
+        message.time = 5678L;
+        message.x = 1f;
+        message.y = 2f;
+        message.z = 3f;
+        message.qw = 1f;
+        message.flags = 7;
+        message.moving = true;
+
+        buffer.clear();
+        impl.writeObject(buffer, message);
+        buffer.flip();
+        encoded = ByteBuffer.allocate(buffer.remaining());
+        encoded.put(buffer);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer write() throws IOException {
+        buffer.clear();
+        impl.writeObject(buffer, message);
+        return buffer;
+    }
+
+    @Benchmark
+    public StateMessage read() throws IOException {
+        encoded.rewind();
+        return impl.readObject(encoded, StateMessage.class);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.renderer;
+
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.queue.GeometryComparator;
+import com.jme3.renderer.queue.GeometryList;
+import com.jme3.renderer.queue.GuiComparator;
+import com.jme3.renderer.queue.NullComparator;
+import com.jme3.renderer.queue.OpaqueComparator;
+import com.jme3.renderer.queue.TransparentComparator;
+import com.jme3.scene.Geometry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link GeometryList#sort() } with each of the built-in
+ * comparators, both with the sort keys of the comparator and with the
+ * comparator alone, which is how custom comparators are sorted.
+ * <p>
+ * The list is refilled in the same order before every sort and the cached
+ * queue distances are reset, the way the render queue is rebuilt every
+ * frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryListSortBenchmark {
+
+    @Param({"opaque", "transparent", "gui", "null"})
+    public String comparator;
+
+    @Param({"1000", "20000"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean sortKeys;
+
+    private GeometryList list;
+    private Geometry[] geometries;
+
+    @Setup
+    public void setUp() {
+        GeometryComparator comp;
+        if (comparator.equals("opaque")) {
+            comp = new OpaqueComparator();
+        } else if (comparator.equals("transparent")) {
+            comp = new TransparentComparator();
+        } else if (comparator.equals("gui")) {
+            comp = new GuiComparator();
+        } else {
+            comp = new NullComparator();
+        }
+        if (!sortKeys) {
+            comp = new PlainComparator(comp);
+        }
+
+        Camera cam = BenchmarkScenes.createCamera();
+        list = new GeometryList(comp);
+        list.setCamera(cam);
+        geometries = BenchmarkScenes.createGeometries(size, 32);
+    }
+
+    @Benchmark
+    public GeometryList sort() {
+        list.clear();
+        for (int i = 0; i < geometries.length; i++) {
+            geometries[i].queueDistance = Float.NEGATIVE_INFINITY;
+            list.add(geometries[i]);
+        }
+        list.sort();
+        return list;
+    }
+
+    /**
+     * Hides the sort keys of a comparator.
+     */
+    private static class PlainComparator implements GeometryComparator {
+
+        private final GeometryComparator comparator;
+
+        PlainComparator(GeometryComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        @Override
+        public int compare(Geometry o1, Geometry o2) {
+            return comparator.compare(o1, o2);
+        }
+
+        @Override
+        public void setCamera(Camera cam) {
+            comparator.setCamera(cam);
+        }
+    }
+}
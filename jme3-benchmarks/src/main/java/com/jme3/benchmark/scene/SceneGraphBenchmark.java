@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.benchmark.scene;
+
+import com.jme3.benchmark.BenchmarkScenes;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Node;
+import com.jme3.system.NullRenderer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>Spatial.updateGeometricState()</code> and the culling /
+ * queueing walk of <code>RenderManager.renderScene()</code> on deep and
+ * wide <code>Node</code> trees.
+ * <p>
+ * The render manager is backed by a {@link NullRenderer} so no rendering
+ * context is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneGraphBenchmark {
+
+    @Param({"deep", "wide"})
+    public String shape;
+
+    @Param({"10000"})
+    public int size;
+
+    private Node scene;
+    private RenderManager renderManager;
+    private ViewPort viewPort;
+    private float offset;
+
+    @Setup
+    public void setUp() {
+        if (shape.equals("deep")) {
+            // Keep the chain shallow enough not to blow the stack
+            scene = BenchmarkScenes.createDeepTree(500, size / 500);
+        } else {
+            scene = BenchmarkScenes.createWideTree(size);
+        }
+        scene.updateGeometricState();
+
+        renderManager = new RenderManager(new NullRenderer());
+        viewPort = renderManager.createMainView("Benchmark", BenchmarkScenes.createCamera());
+        viewPort.attachScene(scene);
+    }
+
+    /**
+     * Moves the root so that every transform and bound in the tree
+     * needs to be refreshed.
+     */
+    @Benchmark
+    public Node updateGeometricState() {
+        offset = -offset + 0.001f;
+        scene.setLocalTranslation(0, 0, offset);
+        scene.updateGeometricState();
+        return scene;
+    }
+
+    /**
+     * Culls the already updated tree against the camera and builds
+     * the render queue.
+     */
+    @Benchmark
+    public ViewPort renderScene() {
+        viewPort.getQueue().clear();
+        renderManager.renderScene(scene, viewPort);
+        return viewPort;
+    }
+}
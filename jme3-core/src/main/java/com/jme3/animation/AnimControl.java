@@ -41,6 +41,7 @@ import com.jme3.scene.control.Control;
 import com.jme3.util.TempVars;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map.Entry;
@@ -86,6 +87,10 @@ public final class AnimControl extends AbstractControl implements Cloneable {
      * Animation event listeners
      */
     private transient ArrayList<AnimEventListener> listeners = new ArrayList<AnimEventListener>();
+    /**
+     * Bones which tracks are played in this update, null for all of them
+     */
+    transient BitSet lodBones;
 
     /**
      * Creates a new animation control for the given skeleton.
@@ -323,6 +328,19 @@ public final class AnimControl extends AbstractControl implements Cloneable {
      */
     @Override
     protected void controlUpdate(float tpf) {
+        SkeletonControl skinning = spatial != null ? spatial.getControl(SkeletonControl.class) : null;
+        AnimLodPolicy lodPolicy = skinning != null ? skinning.getLodPolicy() : null;
+        if (lodPolicy != null) {
+            if (!lodPolicy.beginUpdate(tpf)) {
+                // the bones keep their last pose
+                return;
+            }
+            tpf = lodPolicy.getUpdateTime();
+            lodBones = lodPolicy.getUpdatedBones(skeleton);
+        } else {
+            lodBones = null;
+        }
+
         if (skeleton != null) {
             skeleton.reset(); // reset skeleton to bind pose
         }
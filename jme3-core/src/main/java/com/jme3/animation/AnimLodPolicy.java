@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Spatial;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Lowers the animation detail of a model as it gets farther from the camera
+ * or smaller on screen.
+ * <p>
+ * A policy is set on the {@link SkeletonControl} of a model with
+ * {@link SkeletonControl#setLodPolicy(com.jme3.animation.AnimLodPolicy) }.
+ * When the model is rendered, the control picks the level of the policy from
+ * the camera. Level 0 updates every bone on every frame, and every
+ * {@link #addLevel(float, int, int) added level} can update the
+ * {@link AnimControl} of the model every few frames only, with the elapsed
+ * time, and leave the tracks of the bones close to the leaves of the
+ * skeleton, like fingers, unplayed. The skeleton is not skinned again on the
+ * frames skipped by the AnimControl.
+ * <p>
+ * Models which were not rendered in the last frame, because they were culled
+ * by every camera, are not animated at all, unless
+ * {@link #setAnimateCulled(boolean) enabled}: their controls only keep
+ * track of the time, and a model is animated again the frame after it gets
+ * rendered.
+ * <p>
+ * A policy holds the state of one model: cloning a SkeletonControl clones its
+ * policy.
+ */
+public class AnimLodPolicy implements Cloneable {
+
+    /**
+     * The measure of the model the levels are picked with.
+     */
+    public enum Metric {
+        /**
+         * The distance from the camera to the world bound of the model, the
+         * levels having increasing thresholds.
+         */
+        Distance,
+        /**
+         * The fraction of the viewport height covered by the world bound of
+         * the model, the levels having decreasing thresholds.
+         */
+        ScreenSize
+    }
+
+    private final Metric metric;
+    private float[] thresholds = new float[1];
+    private int[] updateIntervals = {1};
+    private int[] skippedLeafLevels = {0};
+    private boolean animateCulled = false;
+
+    private int level = 0;
+    private int nextLevel = 0;
+    private boolean rendered = true;
+    private int skippedFrames = 0;
+    private float skippedTime = 0;
+    private float updateTime = 0;
+    private boolean updateSkipped = false;
+    private int poseVersion = 0;
+
+    private Skeleton skeleton;
+    private BitSet[] updatedBones;
+
+    /**
+     * Creates a policy with only level 0, which animates fully.
+     *
+     * @param metric The measure to pick the levels with
+     */
+    public AnimLodPolicy(Metric metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * @return the measure the levels are picked with
+     */
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Adds a level of lower detail, used from the given distance with
+     * {@link Metric#Distance}, or below the given fraction of the viewport
+     * height with {@link Metric#ScreenSize}.
+     *
+     * @param threshold The distance or screen size the level starts at
+     * @param updateInterval The number of frames between two updates of the
+     * animation, at least 1
+     * @param skippedLeafLevels The number of levels of bones, counted from
+     * the leaves of the skeleton, which tracks are not played. 1 skips the
+     * bones without children, 2 also skips their parents if they have no
+     * longer branch.
+     * @return the index of the level
+     * @throws IllegalArgumentException if the threshold does not follow the
+     * threshold of the previous level, or the interval is below 1
+     */
+    public int addLevel(float threshold, int updateInterval, int skippedLeafLevels) {
+        int index = thresholds.length;
+        if (updateInterval < 1 || skippedLeafLevels < 0) {
+            throw new IllegalArgumentException("Invalid update interval or skipped leaf levels");
+        }
+        if (index > 1 && (metric == Metric.Distance
+                ? threshold <= thresholds[index - 1]
+                : threshold >= thresholds[index - 1])) {
+            throw new IllegalArgumentException("The thresholds must be "
+                    + (metric == Metric.Distance ? "increasing" : "decreasing"));
+        }
+        thresholds = Arrays.copyOf(thresholds, index + 1);
+        thresholds[index] = threshold;
+        updateIntervals = Arrays.copyOf(updateIntervals, index + 1);
+        updateIntervals[index] = updateInterval;
+        this.skippedLeafLevels = Arrays.copyOf(this.skippedLeafLevels, index + 1);
+        this.skippedLeafLevels[index] = skippedLeafLevels;
+        updatedBones = null;
+        return index;
+    }
+
+    /**
+     * @return the number of levels, including level 0
+     */
+    public int getNumLevels() {
+        return thresholds.length;
+    }
+
+    /**
+     * Animates the models culled in the last frame as well, at the update
+     * interval and skipped leaf levels of the last level. Disabled by
+     * default.
+     *
+     * @param animateCulled true to animate the culled models, for instance
+     * if their shadows are visible
+     */
+    public void setAnimateCulled(boolean animateCulled) {
+        this.animateCulled = animateCulled;
+    }
+
+    /**
+     * @return true if the culled models are animated
+     */
+    public boolean isAnimateCulled() {
+        return animateCulled;
+    }
+
+    /**
+     * Returns the level used in the current frame, picked when the model was
+     * last rendered.
+     *
+     * @return the current level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the level for the model seen by the camera.
+     *
+     * @param spatial The model
+     * @param cam The camera rendering it
+     * @return the level
+     */
+    public int computeLevel(Spatial spatial, Camera cam) {
+        BoundingVolume bound = spatial.getWorldBound();
+        if (bound == null || thresholds.length == 1) {
+            return 0;
+        }
+        float value;
+        if (metric == Metric.Distance) {
+            value = bound.distanceTo(cam.getLocation());
+        } else {
+            float radius;
+            if (bound instanceof BoundingSphere) {
+                radius = ((BoundingSphere) bound).getRadius();
+            } else if (bound instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox) bound;
+                radius = (float) Math.sqrt(box.getXExtent() * box.getXExtent()
+                        + box.getYExtent() * box.getYExtent() + box.getZExtent() * box.getZExtent());
+            } else {
+                return 0;
+            }
+            float halfHeight = cam.getFrustumTop();
+            if (!cam.isParallelProjection()) {
+                float distance = bound.getCenter().distance(cam.getLocation());
+                if (distance <= cam.getFrustumNear()) {
+                    return 0;
+                }
+                halfHeight *= distance / cam.getFrustumNear();
+            }
+            value = radius / halfHeight;
+        }
+
+        int result = 0;
+        for (int i = 1; i < thresholds.length; i++) {
+            if (metric == Metric.Distance ? value >= thresholds[i] : value < thresholds[i]) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called by the {@link SkeletonControl} when the model is rendered in a
+     * viewport. The most detailed level of the viewports is used.
+     */
+    void render(Spatial spatial, Camera cam) {
+        int viewLevel = computeLevel(spatial, cam);
+        nextLevel = rendered ? Math.min(nextLevel, viewLevel) : viewLevel;
+        rendered = true;
+    }
+
+    /**
+     * Called by the {@link AnimControl} on every frame. Returns false if the
+     * animation is not updated in this frame, else the time elapsed since
+     * the last update is returned by {@link #getUpdateTime() }.
+     */
+    boolean beginUpdate(float tpf) {
+        skippedTime += tpf;
+        skippedFrames++;
+        boolean visible = rendered;
+        rendered = false;
+        if (visible) {
+            level = nextLevel;
+        } else if (animateCulled) {
+            level = thresholds.length - 1;
+        } else {
+            updateSkipped = true;
+            return false;
+        }
+        if (skippedFrames < updateIntervals[level]) {
+            updateSkipped = true;
+            return false;
+        }
+        updateTime = skippedTime;
+        skippedTime = 0;
+        skippedFrames = 0;
+        updateSkipped = false;
+        poseVersion++;
+        return true;
+    }
+
+    /**
+     * @return the time to update the animation with, in seconds
+     */
+    float getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * @return true if the AnimControl skipped the update of the current
+     * frame
+     */
+    boolean isUpdateSkipped() {
+        return updateSkipped;
+    }
+
+    /**
+     * @return a number incremented on every update of the AnimControl
+     */
+    int getPoseVersion() {
+        return poseVersion;
+    }
+
+    /**
+     * Returns the bones which tracks are played at the current level, or
+     * null for all of them.
+     */
+    BitSet getUpdatedBones(Skeleton skeleton) {
+        if (skeleton == null || skippedLeafLevels[level] == 0) {
+            return null;
+        }
+        if (skeleton != this.skeleton || updatedBones == null) {
+            this.skeleton = skeleton;
+            updatedBones = new BitSet[thresholds.length];
+        }
+        BitSet bones = updatedBones[level];
+        if (bones == null) {
+            bones = new BitSet(skeleton.getBoneCount());
+            for (Bone root : skeleton.getRoots()) {
+                addBones(skeleton, root, skippedLeafLevels[level], bones);
+            }
+            updatedBones[level] = bones;
+        }
+        return bones;
+    }
+
+    /**
+     * Adds the bones of the branch far enough from the leaves, and returns
+     * the height of the bone.
+     */
+    private static int addBones(Skeleton skeleton, Bone bone, int skipped, BitSet bones) {
+        int height = 0;
+        for (Bone child : bone.getChildren()) {
+            height = Math.max(height, addBones(skeleton, child, skipped, bones) + 1);
+        }
+        if (height >= skipped) {
+            bones.set(skeleton.getBoneIndex(bone));
+        }
+        return height;
+    }
+
+    /**
+     * Returns a policy with the same levels, and the state of a new model.
+     *
+     * @return the clone
+     */
+    @Override
+    public AnimLodPolicy clone() {
+        try {
+            AnimLodPolicy clone = (AnimLodPolicy) super.clone();
+            clone.level = 0;
+            clone.nextLevel = 0;
+            clone.rendered = true;
+            clone.skippedFrames = 0;
+            clone.skippedTime = 0;
+            clone.updateTime = 0;
+            clone.updateSkipped = false;
+            clone.poseVersion = 0;
+            clone.skeleton = null;
+            clone.updatedBones = null;
+            return clone;
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError();
+        }
+    }
+}
@@ -192,6 +192,9 @@ public final class BoneTrack implements Track {
         if (affectedBones != null && !affectedBones.get(targetBoneIndex)) {
             return;
         }
+        if (control.lodBones != null && !control.lodBones.get(targetBoneIndex)) {
+            return;
+        }
         
         Bone target = control.getSkeleton().getBone(targetBoneIndex);
 
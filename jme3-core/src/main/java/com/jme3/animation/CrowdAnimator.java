@@ -0,0 +1,680 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.util.WorkerPool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays one {@link Animation} on many skeletons of the same rig, like an
+ * {@link AnimChannel} would on each of them, in one pass over
+ * struct-of-arrays pose buffers.
+ * <p>
+ * The keyframes of the bone tracks are unpacked once into float arrays. On
+ * every {@link #update(float) update}, the local transforms of all the bones
+ * of every skeleton are sampled into float arrays of translations, rotations
+ * and scales, combined with their parents in place, and written as offset
+ * matrices into the skinning matrices of the skeletons. Until a skeleton
+ * is removed, {@link Skeleton#computeSkinningMatrices() } returns the
+ * matrices of its last update to the {@link SkeletonControl}, also when
+ * the animator is not updated for a while. With {@link #setParallel(boolean) parallel}
+ * evaluation, the skeletons are split between the threads of the shared
+ * {@link WorkerPool}.
+ * <p>
+ * The {@link Bone} objects of the skeletons are not updated: the skeletons
+ * do not need an {@link AnimControl}, and the model transforms of the bones,
+ * for attachment nodes for instance, are available from
+ * {@link #getModelTransform(int, int, com.jme3.math.Transform) }. The bones
+ * under user control are animated as well. Only the {@link BoneTrack}s of
+ * the animation are played.
+ */
+public class CrowdAnimator {
+
+    /**
+     * Number of skeletons above which parallel evaluation splits the work
+     * between threads.
+     */
+    public static final int PARALLEL_THRESHOLD = 16;
+
+    private final Animation animation;
+    private final int boneCount;
+
+    // Rig, bone by bone, parents before their children in order
+    private final int[] order;
+    private final int[] parents;
+    private final float[] bindPos;
+    private final float[] bindRot;
+    private final float[] bindScale;
+    private final float[] invPos;
+    private final float[] invRot;
+    private final float[] invScale;
+
+    // Keyframes, track by track
+    private final int[] trackBones;
+    private final float[][] trackTimes;
+    private final float[][] trackTranslations;
+    private final float[][] trackRotations;
+    private final float[][] trackScales;
+
+    // Skeletons, and their poses one after the other
+    private Skeleton[] skeletons = new Skeleton[16];
+    private float[] times = new float[16];
+    private float[] speeds = new float[16];
+    private float[] translations = new float[0];
+    private float[] rotations = new float[0];
+    private float[] scales = new float[0];
+    private int size = 0;
+
+    private LoopMode loopMode = LoopMode.Loop;
+    private boolean parallel = false;
+
+    /**
+     * Creates a crowd animator playing the animation on skeletons of the
+     * rig.
+     *
+     * @param rig A skeleton of the rig, which bind pose is used for all
+     * the skeletons
+     * @param animation The animation to play, created for the rig
+     */
+    public CrowdAnimator(Skeleton rig, Animation animation) {
+        this.animation = animation;
+        boneCount = rig.getBoneCount();
+
+        order = new int[boneCount];
+        parents = new int[boneCount];
+        int next = 0;
+        for (Bone root : rig.getRoots()) {
+            next = addBones(rig, root, -1, next);
+        }
+
+        bindPos = new float[boneCount * 3];
+        bindRot = new float[boneCount * 4];
+        bindScale = new float[boneCount * 3];
+        invPos = new float[boneCount * 3];
+        invRot = new float[boneCount * 4];
+        invScale = new float[boneCount * 3];
+        for (int i = 0; i < boneCount; i++) {
+            Bone bone = rig.getBone(i);
+            put(bone.getBindPosition(), bindPos, i);
+            put(bone.getBindRotation(), bindRot, i);
+            put(bone.getBindScale(), bindScale, i);
+            put(bone.getModelBindInversePosition(), invPos, i);
+            put(bone.getModelBindInverseRotation(), invRot, i);
+            put(bone.getModelBindInverseScale(), invScale, i);
+        }
+
+        // As blended into the bones, the first track of a bone wins
+        List<BoneTrack> boneTracks = new ArrayList<BoneTrack>();
+        boolean[] animated = new boolean[boneCount];
+        for (Track track : animation.getTracks()) {
+            if (track instanceof BoneTrack) {
+                BoneTrack boneTrack = (BoneTrack) track;
+                int bone = boneTrack.getTargetBoneIndex();
+                if (bone < boneCount && !animated[bone]) {
+                    animated[bone] = true;
+                    boneTracks.add(boneTrack);
+                }
+            }
+        }
+        int trackCount = boneTracks.size();
+        trackBones = new int[trackCount];
+        trackTimes = new float[trackCount][];
+        trackTranslations = new float[trackCount][];
+        trackRotations = new float[trackCount][];
+        trackScales = new float[trackCount][];
+        for (int t = 0; t < trackCount; t++) {
+            BoneTrack track = boneTracks.get(t);
+            trackBones[t] = track.getTargetBoneIndex();
+            trackTimes[t] = track.getTimes();
+            Vector3f[] trackPos = track.getTranslations();
+            Quaternion[] trackRot = track.getRotations();
+            Vector3f[] trackScale = track.getScales();
+            trackTranslations[t] = new float[trackPos.length * 3];
+            trackRotations[t] = new float[trackRot.length * 4];
+            for (int k = 0; k < trackPos.length; k++) {
+                put(trackPos[k], trackTranslations[t], k);
+                put(trackRot[k], trackRotations[t], k);
+            }
+            if (trackScale != null) {
+                trackScales[t] = new float[trackScale.length * 3];
+                for (int k = 0; k < trackScale.length; k++) {
+                    put(trackScale[k], trackScales[t], k);
+                }
+            }
+        }
+    }
+
+    private int addBones(Skeleton rig, Bone bone, int parent, int next) {
+        int index = rig.getBoneIndex(bone);
+        order[next] = index;
+        parents[index] = parent;
+        next++;
+        for (Bone child : bone.getChildren()) {
+            next = addBones(rig, child, index, next);
+        }
+        return next;
+    }
+
+    private static void put(Vector3f v, float[] store, int index) {
+        store[index * 3] = v.x;
+        store[index * 3 + 1] = v.y;
+        store[index * 3 + 2] = v.z;
+    }
+
+    private static void put(Quaternion q, float[] store, int index) {
+        store[index * 4] = q.getX();
+        store[index * 4 + 1] = q.getY();
+        store[index * 4 + 2] = q.getZ();
+        store[index * 4 + 3] = q.getW();
+    }
+
+    /**
+     * Returns the animation played on the skeletons.
+     *
+     * @return the animation
+     */
+    public Animation getAnimation() {
+        return animation;
+    }
+
+    /**
+     * Adds a skeleton of the rig, starting the animation at the given time.
+     *
+     * @param skeleton The skeleton to animate
+     * @param time The time in the animation, in seconds
+     * @param speed The speed of the animation, 1 being the normal speed
+     * @return the index of the skeleton
+     * @throws IllegalArgumentException if the skeleton has another number of
+     * bones than the rig, or is already animated by a CrowdAnimator
+     */
+    public int addSkeleton(Skeleton skeleton, float time, float speed) {
+        if (skeleton.getBoneCount() != boneCount) {
+            throw new IllegalArgumentException("The skeleton has " + skeleton.getBoneCount()
+                    + " bones, the rig has " + boneCount);
+        }
+        if (skeleton.getAnimator() != null) {
+            throw new IllegalArgumentException("The skeleton is already animated by a CrowdAnimator");
+        }
+        if (size == skeletons.length) {
+            int capacity = size * 2;
+            skeletons = Arrays.copyOf(skeletons, capacity);
+            times = Arrays.copyOf(times, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+        }
+        if (translations.length < skeletons.length * boneCount * 3) {
+            translations = new float[skeletons.length * boneCount * 3];
+            rotations = new float[skeletons.length * boneCount * 4];
+            scales = new float[skeletons.length * boneCount * 3];
+        }
+        // Until the first update, the skeleton keeps the pose of its bones
+        skeleton.computeSkinningMatrices();
+        skeleton.setAnimator(this);
+        skeletons[size] = skeleton;
+        times[size] = time;
+        speeds[size] = speed;
+        return size++;
+    }
+
+    /**
+     * Adds a skeleton of the rig, starting the animation from the beginning
+     * at the normal speed.
+     *
+     * @param skeleton The skeleton to animate
+     * @return the index of the skeleton
+     */
+    public int addSkeleton(Skeleton skeleton) {
+        return addSkeleton(skeleton, 0, 1);
+    }
+
+    /**
+     * Removes a skeleton. The last skeleton takes its index, and the
+     * removed one computes its skinning matrices from its bones again.
+     *
+     * @param skeleton The skeleton to stop animating
+     * @return true if the skeleton was animated
+     */
+    public boolean removeSkeleton(Skeleton skeleton) {
+        for (int i = 0; i < size; i++) {
+            if (skeletons[i] == skeleton) {
+                skeleton.setAnimator(null);
+                size--;
+                skeletons[i] = skeletons[size];
+                times[i] = times[size];
+                speeds[i] = speeds[size];
+                skeletons[size] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of animated skeletons.
+     *
+     * @return the number of skeletons
+     */
+    public int getSkeletonCount() {
+        return size;
+    }
+
+    /**
+     * Returns an animated skeleton.
+     *
+     * @param index The index of the skeleton
+     * @return the skeleton
+     */
+    public Skeleton getSkeleton(int index) {
+        checkIndex(index);
+        return skeletons[index];
+    }
+
+    /**
+     * Sets the time in the animation of a skeleton.
+     *
+     * @param index The index of the skeleton
+     * @param time The time, in seconds
+     */
+    public void setTime(int index, float time) {
+        checkIndex(index);
+        times[index] = time;
+    }
+
+    /**
+     * @param index The index of the skeleton
+     * @return the time in the animation of the skeleton, in seconds
+     */
+    public float getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * Sets the speed of the animation of a skeleton. The speed of the
+     * skeletons is inverted at each end of the animation with
+     * {@link LoopMode#Cycle}.
+     *
+     * @param index The index of the skeleton
+     * @param speed The speed, 1 being the normal speed
+     */
+    public void setSpeed(int index, float speed) {
+        checkIndex(index);
+        speeds[index] = speed;
+    }
+
+    /**
+     * @param index The index of the skeleton
+     * @return the speed of the animation of the skeleton
+     */
+    public float getSpeed(int index) {
+        checkIndex(index);
+        return speeds[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Sets how the animation wraps around its end, {@link LoopMode#Loop}
+     * by default.
+     *
+     * @param loopMode The loop mode of all the skeletons
+     */
+    public void setLoopMode(LoopMode loopMode) {
+        this.loopMode = loopMode;
+    }
+
+    /**
+     * @return the loop mode of all the skeletons
+     */
+    public LoopMode getLoopMode() {
+        return loopMode;
+    }
+
+    /**
+     * Enables evaluating the skeletons on several threads when there are
+     * more than {@link #PARALLEL_THRESHOLD} of them. Disabled by default.
+     *
+     * @param parallel true to split the evaluation between threads
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return true if the skeletons are evaluated on several threads
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Returns the model transform of a bone of an animated skeleton, as of
+     * the last update.
+     *
+     * @param index The index of the skeleton
+     * @param bone The index of the bone in the skeleton
+     * @param store The transform to store the result in, or null
+     * @return the model transform of the bone
+     */
+    public Transform getModelTransform(int index, int bone, Transform store) {
+        checkIndex(index);
+        if (store == null) {
+            store = new Transform();
+        }
+        int b = index * boneCount + bone;
+        store.setTranslation(translations[b * 3], translations[b * 3 + 1], translations[b * 3 + 2]);
+        store.getRotation().set(rotations[b * 4], rotations[b * 4 + 1], rotations[b * 4 + 2], rotations[b * 4 + 3]);
+        store.setScale(scales[b * 3], scales[b * 3 + 1], scales[b * 3 + 2]);
+        return store;
+    }
+
+    /**
+     * Poses every skeleton at its current time, then advances the time by
+     * tpf times its speed, like an {@link AnimChannel} does. Call it once per
+     * frame, before the skeletons are rendered.
+     *
+     * @param tpf The time per frame, in seconds
+     */
+    public void update(float tpf) {
+        if (parallel && size > PARALLEL_THRESHOLD) {
+            WorkerPool.get().invoke(new PoseTask(0, size));
+        } else {
+            pose(0, size);
+        }
+
+        float length = animation.getLength();
+        for (int i = 0; i < size; i++) {
+            float time = AnimationUtils.clampWrapTime(times[i] + tpf * speeds[i], length, loopMode);
+            if (time < 0) {
+                // Inverted speed in cycle mode
+                time = -time;
+                speeds[i] = -speeds[i];
+            }
+            times[i] = time;
+        }
+    }
+
+    private void pose(int start, int end) {
+        for (int i = start; i < end; i++) {
+            int base = i * boneCount;
+            sample(times[i], base);
+            combine(base);
+            computeOffsets(base, skeletons[i].getSkinningMatricesForWrite());
+        }
+    }
+
+    /**
+     * Writes the local transforms of the bones at the given time.
+     */
+    private void sample(float time, int base) {
+        System.arraycopy(bindPos, 0, translations, base * 3, boneCount * 3);
+        System.arraycopy(bindRot, 0, rotations, base * 4, boneCount * 4);
+        System.arraycopy(bindScale, 0, scales, base * 3, boneCount * 3);
+
+        for (int t = 0; t < trackBones.length; t++) {
+            float[] keyTimes = trackTimes[t];
+            float[] keyPos = trackTranslations[t];
+            float[] keyRot = trackRotations[t];
+            float[] keyScale = trackScales[t];
+            int lastFrame = keyTimes.length - 1;
+            int frame;
+            float blend = 0;
+            if (time < 0 || lastFrame == 0) {
+                frame = 0;
+            } else if (time >= keyTimes[lastFrame]) {
+                frame = lastFrame;
+            } else {
+                frame = findFrame(keyTimes, lastFrame, time);
+                blend = (time - keyTimes[frame]) / (keyTimes[frame + 1] - keyTimes[frame]);
+            }
+
+            int b = base + trackBones[t];
+            int p = frame * 3;
+            int r = frame * 4;
+            float px = keyPos[p], py = keyPos[p + 1], pz = keyPos[p + 2];
+            float qx = keyRot[r], qy = keyRot[r + 1], qz = keyRot[r + 2], qw = keyRot[r + 3];
+            if (blend != 0) {
+                float blendI = 1f - blend;
+                px = blendI * px + blend * keyPos[p + 3];
+                py = blendI * py + blend * keyPos[p + 4];
+                pz = blendI * pz + blend * keyPos[p + 5];
+
+                // Quaternion.nlerp()
+                float sign = qx * keyRot[r + 4] + qy * keyRot[r + 5] + qz * keyRot[r + 6] + qw * keyRot[r + 7] < 0
+                        ? -blend : blend;
+                qx = blendI * qx + sign * keyRot[r + 4];
+                qy = blendI * qy + sign * keyRot[r + 5];
+                qz = blendI * qz + sign * keyRot[r + 6];
+                qw = blendI * qw + sign * keyRot[r + 7];
+                float norm = qx * qx + qy * qy + qz * qz + qw * qw;
+                if (norm != 1f && norm > 0f) {
+                    float invLength = (float) (1.0 / Math.sqrt(norm));
+                    qx *= invLength;
+                    qy *= invLength;
+                    qz *= invLength;
+                    qw *= invLength;
+                }
+            }
+
+            translations[b * 3] += px;
+            translations[b * 3 + 1] += py;
+            translations[b * 3 + 2] += pz;
+            // bind rotation * track rotation
+            multQuat(rotations, b, qx, qy, qz, qw);
+
+            if (keyScale != null) {
+                float sx = keyScale[p], sy = keyScale[p + 1], sz = keyScale[p + 2];
+                if (blend != 0) {
+                    float blendI = 1f - blend;
+                    sx = blendI * sx + blend * keyScale[p + 3];
+                    sy = blendI * sy + blend * keyScale[p + 4];
+                    sz = blendI * sz + blend * keyScale[p + 5];
+                }
+                scales[b * 3] *= sx;
+                scales[b * 3 + 1] *= sy;
+                scales[b * 3 + 2] *= sz;
+            }
+        }
+    }
+
+    /**
+     * Returns the last keyframe before the time, which is within the
+     * animated range.
+     */
+    private static int findFrame(float[] keyTimes, int lastFrame, float time) {
+        int low = 0;
+        int high = lastFrame - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (keyTimes[mid] < time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Replaces the rotation at the given index by its product with q.
+     */
+    private static void multQuat(float[] rot, int index, float qx, float qy, float qz, float qw) {
+        int i = index * 4;
+        float x = rot[i], y = rot[i + 1], z = rot[i + 2], w = rot[i + 3];
+        rot[i] = x * qw + y * qz - z * qy + w * qx;
+        rot[i + 1] = -x * qz + y * qw + z * qx + w * qy;
+        rot[i + 2] = x * qy - y * qx + z * qw + w * qz;
+        rot[i + 3] = -x * qx - y * qy - z * qz + w * qw;
+    }
+
+    /**
+     * Turns the local transforms into model transforms, parents first.
+     */
+    private void combine(int base) {
+        for (int k = 0; k < boneCount; k++) {
+            int bone = order[k];
+            if (parents[bone] < 0) {
+                continue;
+            }
+            int b = base + bone;
+            int p = base + parents[bone];
+
+            float prx = rotations[p * 4], pry = rotations[p * 4 + 1],
+                    prz = rotations[p * 4 + 2], prw = rotations[p * 4 + 3];
+            float psx = scales[p * 3], psy = scales[p * 3 + 1], psz = scales[p * 3 + 2];
+
+            // parent rotation * local position * parent scale + parent position
+            float lx = translations[b * 3], ly = translations[b * 3 + 1], lz = translations[b * 3 + 2];
+            translations[b * 3] = rotateX(prx, pry, prz, prw, lx, ly, lz) * psx + translations[p * 3];
+            translations[b * 3 + 1] = rotateY(prx, pry, prz, prw, lx, ly, lz) * psy + translations[p * 3 + 1];
+            translations[b * 3 + 2] = rotateZ(prx, pry, prz, prw, lx, ly, lz) * psz + translations[p * 3 + 2];
+
+            // parent rotation * local rotation
+            int r = b * 4;
+            float x = rotations[r], y = rotations[r + 1], z = rotations[r + 2], w = rotations[r + 3];
+            rotations[r] = prx * w + pry * z - prz * y + prw * x;
+            rotations[r + 1] = -prx * z + pry * w + prz * x + prw * y;
+            rotations[r + 2] = prx * y - pry * x + prz * w + prw * z;
+            rotations[r + 3] = -prx * x - pry * y - prz * z + prw * w;
+
+            scales[b * 3] *= psx;
+            scales[b * 3 + 1] *= psy;
+            scales[b * 3 + 2] *= psz;
+        }
+    }
+
+    // Quaternion.mult(Vector3f), component by component
+    private static float rotateX(float x, float y, float z, float w, float vx, float vy, float vz) {
+        return w * w * vx + 2 * y * w * vz - 2 * z * w * vy + x * x * vx
+                + 2 * y * x * vy + 2 * z * x * vz - z * z * vx - y * y * vx;
+    }
+
+    private static float rotateY(float x, float y, float z, float w, float vx, float vy, float vz) {
+        return 2 * x * y * vx + y * y * vy + 2 * z * y * vz + 2 * w * z * vx
+                - z * z * vy + w * w * vy - 2 * x * w * vz - x * x * vy;
+    }
+
+    private static float rotateZ(float x, float y, float z, float w, float vx, float vy, float vz) {
+        return 2 * x * z * vx + 2 * y * z * vy + z * z * vz - 2 * w * y * vx
+                - y * y * vz + 2 * w * x * vy - x * x * vz + w * w * vz;
+    }
+
+    /**
+     * Writes the offset matrices of the bones, like
+     * {@link Bone#getOffsetTransform}.
+     */
+    private void computeOffsets(int base, Matrix4f[] matrices) {
+        for (int i = 0; i < boneCount; i++) {
+            int b = base + i;
+            float sx = scales[b * 3] * invScale[i * 3];
+            float sy = scales[b * 3 + 1] * invScale[i * 3 + 1];
+            float sz = scales[b * 3 + 2] * invScale[i * 3 + 2];
+
+            // model rotation * inverse bind rotation
+            float mx = rotations[b * 4], my = rotations[b * 4 + 1],
+                    mz = rotations[b * 4 + 2], mw = rotations[b * 4 + 3];
+            float ix = invRot[i * 4], iy = invRot[i * 4 + 1], iz = invRot[i * 4 + 2], iw = invRot[i * 4 + 3];
+            float x = mx * iw + my * iz - mz * iy + mw * ix;
+            float y = -mx * iz + my * iw + mz * ix + mw * iy;
+            float z = mx * iy - my * ix + mz * iw + mw * iz;
+            float w = -mx * ix - my * iy - mz * iz + mw * iw;
+
+            // model position + rotation * (scale * inverse bind position)
+            float vx = sx * invPos[i * 3], vy = sy * invPos[i * 3 + 1], vz = sz * invPos[i * 3 + 2];
+            float tx = translations[b * 3] + rotateX(x, y, z, w, vx, vy, vz);
+            float ty = translations[b * 3 + 1] + rotateY(x, y, z, w, vx, vy, vz);
+            float tz = translations[b * 3 + 2] + rotateZ(x, y, z, w, vx, vy, vz);
+
+            // Quaternion.toRotationMatrix() and Matrix4f.setTransform()
+            float norm = x * x + y * y + z * z + w * w;
+            float s = (norm == 1f) ? 2f : (norm > 0f) ? 2f / norm : 0;
+            float xs = x * s, ys = y * s, zs = z * s;
+            float xx = x * xs, xy = x * ys, xz = x * zs, xw = w * xs;
+            float yy = y * ys, yz = y * zs, yw = w * ys;
+            float zz = z * zs, zw = w * zs;
+
+            Matrix4f m = matrices[i];
+            m.m00 = sx * (1 - (yy + zz));
+            m.m01 = sy * (xy - zw);
+            m.m02 = sz * (xz + yw);
+            m.m03 = tx;
+            m.m10 = sx * (xy + zw);
+            m.m11 = sy * (1 - (xx + zz));
+            m.m12 = sz * (yz - xw);
+            m.m13 = ty;
+            m.m20 = sx * (xz - yw);
+            m.m21 = sy * (yz + xw);
+            m.m22 = sz * (1 - (xx + yy));
+            m.m23 = tz;
+            m.m30 = 0;
+            m.m31 = 0;
+            m.m32 = 0;
+            m.m33 = 1;
+        }
+    }
+
+    /**
+     * Poses a range of skeletons, split in halves above the threshold.
+     */
+    private class PoseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        PoseTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= PARALLEL_THRESHOLD) {
+                pose(start, end);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new PoseTask(start, middle), new PoseTask(middle, end));
+            }
+        }
+    }
+}
@@ -55,6 +55,10 @@ public final class Skeleton implements Savable {
      * will cause it to go to the animated position.
      */
     private transient Matrix4f[] skinningMatrixes;
+    /**
+     * The animator writing the skinning matrices, if any.
+     */
+    private transient CrowdAnimator animator;
 
     /**
      * Creates a skeleton from a bone list. 
@@ -240,10 +244,14 @@ public final class Skeleton implements Savable {
     }
 
     /**
-     * Compute the skining matrices for each bone of the skeleton that would be used to transform vertices of associated meshes
+     * Compute the skining matrices for each bone of the skeleton that would be used to transform vertices of associated meshes.
+     * While the skeleton is animated by a {@link CrowdAnimator}, the matrices it wrote last are returned as they are.
      * @return 
      */
     public Matrix4f[] computeSkinningMatrices() {
+        if (animator != null) {
+            return skinningMatrixes;
+        }
         TempVars vars = TempVars.get();
         for (int i = 0; i < boneList.length; i++) {
             boneList[i].getOffsetTransform(skinningMatrixes[i], vars.quat1, vars.vect1, vars.vect2, vars.tempMat3);
@@ -252,6 +260,34 @@ public final class Skeleton implements Savable {
         return skinningMatrixes;
     }
 
+    /**
+     * Returns the animator writing the skinning matrices, or null if they
+     * are computed from the bones.
+     */
+    CrowdAnimator getAnimator() {
+        return animator;
+    }
+
+    /**
+     * Sets the animator writing the skinning matrices. While it is set,
+     * {@link #computeSkinningMatrices() } returns them as they are instead
+     * of computing them from the bones.
+     *
+     * @param animator The animator, or null to compute the matrices from
+     * the bones again
+     */
+    void setAnimator(CrowdAnimator animator) {
+        this.animator = animator;
+    }
+
+    /**
+     * Returns the skinning matrices for a {@link CrowdAnimator} to write
+     * them.
+     */
+    Matrix4f[] getSkinningMatricesForWrite() {
+        return skinningMatrixes;
+    }
+
     /**
      * returns the number of bones of this skeleton
      * @return 
@@ -46,6 +46,7 @@ import com.jme3.scene.control.Control;
 import com.jme3.shader.VarType;
 import com.jme3.util.SafeArrayList;
 import com.jme3.util.TempVars;
+import com.jme3.util.WorkerPool;
 import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
@@ -53,6 +54,7 @@ import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,6 +67,14 @@ import java.util.logging.Logger;
  */
 public class SkeletonControl extends AbstractControl implements Cloneable {
 
+    /**
+     * Meshes with more vertices than this are split into several tasks
+     * when {@link #setParallelSoftwareSkinning(boolean) parallel software
+     * skinning} is used, and models with fewer vertices in total are
+     * skinned on the rendering thread.
+     */
+    public static final int PARALLEL_SKINNING_THRESHOLD = 2048;
+
     /**
      * The skeleton of the model.
      */
@@ -101,6 +111,21 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
      */
     private transient boolean hwSkinningSupported = false;
     
+    /**
+     * Software skinning is spread over the available cores.
+     */
+    private transient boolean parallelSkinning = false;
+    
+    /**
+     * Lowers the animation detail with the distance, null for full detail.
+     */
+    private transient AnimLodPolicy lodPolicy;
+    
+    /**
+     * Pose version of the LOD policy last skinned, -1 to skin again.
+     */
+    private transient int skinnedPoseVersion = -1;
+    
     /**
      * Bone offset matrices, recreated each frame
      */
@@ -117,6 +142,7 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     }
 
     private void switchToHardware() {
+        skinnedPoseVersion = -1;
         // Next full 10 bones (e.g. 30 on 24 bones)
         int numBones = ((skeleton.getBoneCount() / 10) + 1) * 10;
         for (Material m : materials) {
@@ -130,6 +156,7 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     }
 
     private void switchToSoftware() {
+        skinnedPoseVersion = -1;
         for (Material m : materials) {
             if (m.getParam("NumberOfBones") != null) {
                 m.clearParam("NumberOfBones");
@@ -188,6 +215,58 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         return hwSkinningDesired;
     }
     
+    /**
+     * Specifies if software skinning is spread over the available cores,
+     * false by default. The meshes of the model are skinned in parallel, 
+     * and the meshes with more than {@link #PARALLEL_SKINNING_THRESHOLD}
+     * vertices are also split into ranges of vertices skinned in parallel.
+     * The rendering thread waits for the skinning to finish.
+     * <p>
+     * Models with no more than {@link #PARALLEL_SKINNING_THRESHOLD} vertices
+     * in total are still skinned on the rendering thread: the work is split
+     * per model, not across the controls of a crowd, so a crowd of small
+     * models does not gain from this setting.
+     * <p>
+     * This has no effect when hardware skinning is used.
+     * 
+     * @param parallel True to skin on several threads
+     */
+    public void setParallelSoftwareSkinning(boolean parallel) {
+        parallelSkinning = parallel;
+    }
+    
+    /**
+     * @return True if software skinning is spread over the available cores.
+     * 
+     * @see #setParallelSoftwareSkinning(boolean) 
+     */
+    public boolean isParallelSoftwareSkinning() {
+        return parallelSkinning;
+    }
+    
+    /**
+     * Sets the animation level of detail policy of the model, null by
+     * default for full detail. The level of the policy is picked whenever
+     * the model is rendered, and the {@link AnimControl} of the model uses
+     * it to skip updates and bones. The model is skinned again only after
+     * the AnimControl updated it.
+     * 
+     * @param lodPolicy The policy of this model, or null
+     */
+    public void setLodPolicy(AnimLodPolicy lodPolicy) {
+        this.lodPolicy = lodPolicy;
+        skinnedPoseVersion = -1;
+    }
+    
+    /**
+     * @return The animation level of detail policy of the model, or null.
+     * 
+     * @see #setLodPolicy(com.jme3.animation.AnimLodPolicy) 
+     */
+    public AnimLodPolicy getLodPolicy() {
+        return lodPolicy;
+    }
+    
     /**
      * @return True is hardware skinning is activated and is currently used, false otherwise.
      */
@@ -231,6 +310,14 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
 
         offsetMatrices = skeleton.computeSkinningMatrices();
 
+        if (parallelSkinning && countSkinnedVertices() > PARALLEL_SKINNING_THRESHOLD) {
+            WorkerPool.get().invoke(new SkinTargetsTask(targets.getArray(), offsetMatrices));
+            for (Mesh mesh : targets) {
+                updateSkinnedBuffers(mesh);
+            }
+            return;
+        }
+
         for (Mesh mesh : targets) {
             // NOTE: This assumes that code higher up
             // Already ensured those targets are animated
@@ -239,6 +326,14 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         }     
     }
     
+    private int countSkinnedVertices() {
+        int count = 0;
+        for (Mesh mesh : targets) {
+            count += mesh.getBuffer(Type.Position).getData().limit() / 3;
+        }
+        return count;
+    }
+    
     private void controlRenderHardware() {
         offsetMatrices = skeleton.computeSkinningMatrices();
         for (Material m : materials) {
@@ -264,7 +359,16 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     
     @Override
     protected void controlRender(RenderManager rm, ViewPort vp) {
+        if (lodPolicy != null) {
+            lodPolicy.render(spatial, vp.getCamera());
+        }
         if (!wasMeshUpdated) {
+            if (lodPolicy != null && lodPolicy.isUpdateSkipped()
+                    && skinnedPoseVersion == lodPolicy.getPoseVersion()) {
+                // The pose did not change since the last skinning
+                wasMeshUpdated = true;
+                return;
+            }
             updateTargetsAndMaterials(spatial);
             
             // Prevent illegal cases. These should never happen.
@@ -296,6 +400,9 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
                 controlRenderSoftware();
             }
 
+            if (lodPolicy != null) {
+                skinnedPoseVersion = lodPolicy.getPoseVersion();
+            }
             wasMeshUpdated = true;
         }
     }
@@ -362,6 +469,8 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         clone.hwSkinningEnabled = this.hwSkinningEnabled;
         clone.hwSkinningSupported = this.hwSkinningSupported;
         clone.hwSkinningTested = this.hwSkinningTested;
+        clone.parallelSkinning = this.parallelSkinning;
+        clone.lodPolicy = lodPolicy != null ? lodPolicy.clone() : null;
         
         clone.setSpatial(clonedNode);
 
@@ -428,64 +537,92 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
      * @param offsetMatrices the transformation matrices to apply
      */
     private void softwareSkinUpdate(Mesh mesh, Matrix4f[] offsetMatrices) {
+        TempVars vars = TempVars.get();
+        int numVertices = mesh.getBuffer(Type.Position).getData().limit() / 3;
+        skinVertices(mesh, offsetMatrices, 0, numVertices, 
+                vars.skinPositions, vars.skinNormals, vars.skinTangents, false);
+        vars.release();
+
+        updateSkinnedBuffers(mesh);
+    }
 
+    private static void updateSkinnedBuffers(Mesh mesh) {
+        VertexBuffer vb = mesh.getBuffer(Type.Position);
+        vb.updateData(vb.getData());
+        VertexBuffer nb = mesh.getBuffer(Type.Normal);
+        nb.updateData(nb.getData());
         VertexBuffer tb = mesh.getBuffer(Type.Tangent);
-        if (tb == null) {
-            //if there are no tangents use the classic skinning
-            applySkinning(mesh, offsetMatrices);
-        } else {
-            //if there are tangents use the skinning with tangents
-            applySkinningTangents(mesh, offsetMatrices, tb);
+        if (tb != null) {
+            tb.updateData(tb.getData());
         }
-
-
     }
 
     /**
-     * Method to apply skinning transforms to a mesh's buffers
-     *
+     * Applies the skinning transforms to a range of vertices of a mesh.
+     * 
      * @param mesh the mesh
      * @param offsetMatrices the offset matices to apply
+     * @param firstVertex the first vertex to skin
+     * @param numVertices the number of vertices to skin
+     * @param posBuf scratch array for the positions
+     * @param normBuf scratch array for the normals, as long as posBuf
+     * @param tanBuf scratch array for the tangents, 4/3 as long as posBuf
+     * @param shared true if other threads skin other ranges of the mesh 
+     * at the same time
      */
-    private void applySkinning(Mesh mesh, Matrix4f[] offsetMatrices) {
+    private static void skinVertices(Mesh mesh, Matrix4f[] offsetMatrices,
+            int firstVertex, int numVertices, 
+            float[] posBuf, float[] normBuf, float[] tanBuf, boolean shared) {
         int maxWeightsPerVert = mesh.getMaxNumWeights();
         if (maxWeightsPerVert <= 0) {
             throw new IllegalStateException("Max weights per vert is incorrectly set!");
         }
 
-        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
-
         // NOTE: This code assumes the vertex buffer is in bind pose
         // resetToBind() has been called this frame
-        VertexBuffer vb = mesh.getBuffer(Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(Type.Normal);
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
+        FloatBuffer fvb = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
+        FloatBuffer fnb = (FloatBuffer) mesh.getBuffer(Type.Normal).getData();
+        VertexBuffer tb = mesh.getBuffer(Type.Tangent);
+        FloatBuffer ftb = tb != null ? (FloatBuffer) tb.getData() : null;
+        if (shared) {
+            // each range is read and written through its own position
+            fvb = fvb.duplicate();
+            fnb = fnb.duplicate();
+            if (ftb != null) {
+                ftb = ftb.duplicate();
+            }
+        }
 
         // get boneIndexes and weights for mesh
-        ByteBuffer ib = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
+        float[] weights = ((FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData()).array();
+        byte[] indices = ((ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData()).array();
 
-        float[] weights = wb.array();
-        byte[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
+        if (ftb == null) {
+            //if there are no tangents use the classic skinning
+            applySkinning(fvb, fnb, weights, indices, maxWeightsPerVert, offsetMatrices,
+                    firstVertex, numVertices, posBuf, normBuf);
+        } else {
+            //if there are tangents use the skinning with tangents
+            applySkinningTangents(fvb, fnb, ftb, weights, indices, maxWeightsPerVert, offsetMatrices,
+                    firstVertex, numVertices, posBuf, normBuf, tanBuf);
+        }
+    }
 
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
+    /**
+     * Method to apply skinning transforms to a range of a mesh's buffers
+     */
+    private static void applySkinning(FloatBuffer fvb, FloatBuffer fnb, 
+            float[] weights, byte[] indices, int maxWeightsPerVert, Matrix4f[] offsetMatrices,
+            int firstVertex, int numVertices, float[] posBuf, float[] normBuf) {
+        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
+        int idxWeights = firstVertex * 4;
 
-        int iterations = (int) FastMath.ceil(fvb.limit() / ((float) posBuf.length));
-        int bufLength = posBuf.length;
-        for (int i = iterations - 1; i >= 0; i--) {
+        fvb.position(firstVertex * 3);
+        fnb.position(firstVertex * 3);
+        int remaining = numVertices * 3;
+        while (remaining > 0) {
             // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
+            int bufLength = Math.min(posBuf.length, remaining);
             fvb.get(posBuf, 0, bufLength);
             fnb.get(normBuf, 0, bufLength);
             int verts = bufLength / 3;
@@ -537,13 +674,8 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
             fvb.put(posBuf, 0, bufLength);
             fnb.position(fnb.position() - bufLength);
             fnb.put(normBuf, 0, bufLength);
+            remaining -= bufLength;
         }
-
-        vars.release();
-
-        vb.updateData(fvb);
-        nb.updateData(fnb);
-
     }
 
     /**
@@ -552,66 +684,25 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
      * process even if tangents don't have to be computed. Also the iteration
      * has additional indexes since tangent has 4 components instead of 3 for
      * pos and norm
-     *
-     * @param maxWeightsPerVert maximum number of weights per vertex
-     * @param mesh the mesh
-     * @param offsetMatrices the offsetMaytrices to apply
-     * @param tb the tangent vertexBuffer
      */
-    private void applySkinningTangents(Mesh mesh, Matrix4f[] offsetMatrices, VertexBuffer tb) {
-        int maxWeightsPerVert = mesh.getMaxNumWeights();
-
-        if (maxWeightsPerVert <= 0) {
-            throw new IllegalStateException("Max weights per vert is incorrectly set!");
-        }
-
+    private static void applySkinningTangents(FloatBuffer fvb, FloatBuffer fnb, FloatBuffer ftb,
+            float[] weights, byte[] indices, int maxWeightsPerVert, Matrix4f[] offsetMatrices,
+            int firstVertex, int numVertices, float[] posBuf, float[] normBuf, float[] tanBuf) {
         int fourMinusMaxWeights = 4 - maxWeightsPerVert;
+        int idxWeights = firstVertex * 4;
 
-        // NOTE: This code assumes the vertex buffer is in bind pose
-        // resetToBind() has been called this frame
-        VertexBuffer vb = mesh.getBuffer(Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(Type.Normal);
-
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
-
-
-        FloatBuffer ftb = (FloatBuffer) tb.getData();
-        ftb.rewind();
-
-
-        // get boneIndexes and weights for mesh
-        ByteBuffer ib = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
-
-        float[] weights = wb.array();
-        byte[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
-
-
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
-        float[] tanBuf = vars.skinTangents;
-
-        int iterations = (int) FastMath.ceil(fvb.limit() / ((float) posBuf.length));
-        int bufLength = 0;
-        int tanLength = 0;
-        for (int i = iterations - 1; i >= 0; i--) {
+        fvb.position(firstVertex * 3);
+        fnb.position(firstVertex * 3);
+        ftb.position(firstVertex * 4);
+        int remaining = numVertices * 3;
+        while (remaining > 0) {
             // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
-            tanLength = Math.min(tanBuf.length, ftb.remaining());
+            int bufLength = Math.min(posBuf.length, remaining);
+            int verts = bufLength / 3;
+            int tanLength = verts * 4;
             fvb.get(posBuf, 0, bufLength);
             fnb.get(normBuf, 0, bufLength);
             ftb.get(tanBuf, 0, tanLength);
-            int verts = bufLength / 3;
             int idxPositions = 0;
             //tangents has their own index because of the 4 components
             int idxTangents = 0;
@@ -686,15 +777,83 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
             fnb.put(normBuf, 0, bufLength);
             ftb.position(ftb.position() - tanLength);
             ftb.put(tanBuf, 0, tanLength);
+            remaining -= bufLength;
         }
+    }
 
-        vars.release();
+    /**
+     * Holds the scratch arrays of the threads skinning in parallel.
+     */
+    private static class SkinningBuffers {
+
+        static final ThreadLocal<float[][]> BUFFERS = new ThreadLocal<float[][]>() {
+            @Override
+            protected float[][] initialValue() {
+                return new float[][]{
+                    new float[512 * 3], new float[512 * 3], new float[512 * 4]
+                };
+            }
+        };
+    }
+
+    /**
+     * Skins the meshes of a model in parallel.
+     */
+    private static class SkinTargetsTask extends RecursiveAction {
 
-        vb.updateData(fvb);
-        nb.updateData(fnb);
-        tb.updateData(ftb);
+        private static final long serialVersionUID = 1L;
 
+        private final Mesh[] meshes;
+        private final Matrix4f[] offsetMatrices;
 
+        SkinTargetsTask(Mesh[] meshes, Matrix4f[] offsetMatrices) {
+            this.meshes = meshes;
+            this.offsetMatrices = offsetMatrices;
+        }
+
+        @Override
+        protected void compute() {
+            SkinningTask[] tasks = new SkinningTask[meshes.length];
+            for (int i = 0; i < meshes.length; i++) {
+                int numVertices = meshes[i].getBuffer(Type.Position).getData().limit() / 3;
+                tasks[i] = new SkinningTask(meshes[i], offsetMatrices, 0, numVertices);
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Skins a range of vertices of a mesh, split in halves while it has
+     * more than {@link #PARALLEL_SKINNING_THRESHOLD} vertices.
+     */
+    private static class SkinningTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Mesh mesh;
+        private final Matrix4f[] offsetMatrices;
+        private final int firstVertex;
+        private final int numVertices;
+
+        SkinningTask(Mesh mesh, Matrix4f[] offsetMatrices, int firstVertex, int numVertices) {
+            this.mesh = mesh;
+            this.offsetMatrices = offsetMatrices;
+            this.firstVertex = firstVertex;
+            this.numVertices = numVertices;
+        }
+
+        @Override
+        protected void compute() {
+            if (numVertices > PARALLEL_SKINNING_THRESHOLD) {
+                int half = numVertices / 2;
+                invokeAll(new SkinningTask(mesh, offsetMatrices, firstVertex, half),
+                        new SkinningTask(mesh, offsetMatrices, firstVertex + half, numVertices - half));
+            } else {
+                float[][] buffers = SkinningBuffers.BUFFERS.get();
+                skinVertices(mesh, offsetMatrices, firstVertex, numVertices,
+                        buffers[0], buffers[1], buffers[2], true);
+            }
+        }
     }
 
     @Override
@@ -40,6 +40,7 @@ import com.jme3.input.*;
 import com.jme3.math.Vector3f;
 import com.jme3.profile.AppProfiler;
 import com.jme3.profile.AppStep;
+import com.jme3.profile.FrameProfiler;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.Renderer;
@@ -50,6 +51,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -449,9 +451,12 @@ public class Application implements SystemListener {
     /**
      * Sets an AppProfiler hook that will be called back for
      * specific steps within a single update frame.  Value defaults
-     * to null.
+     * to null.  A {@link FrameProfiler} being replaced is cleaned up.
      */
     public void setAppProfiler(AppProfiler prof) {
+        if (this.prof != prof && this.prof instanceof FrameProfiler) {
+            ((FrameProfiler) this.prof).cleanup();
+        }
         this.prof = prof;
         if (renderManager != null) {
             renderManager.setAppProfiler(prof);
@@ -574,6 +579,14 @@ public class Application implements SystemListener {
         if (assetManager == null){
             initAssetManager();
         }
+        if (assetManager != null){
+            // Deliver asynchronous asset loading callbacks on the render thread
+            assetManager.setCallbackExecutor(new Executor() {
+                public void execute(Runnable command) {
+                    enqueue(command);
+                }
+            });
+        }
 
         initDisplay();
         initCamera();
@@ -741,6 +754,12 @@ public class Application implements SystemListener {
         if (audioRenderer != null)
             audioRenderer.cleanup();
 
+        if (renderManager != null)
+            renderManager.cleanup();
+
+        if (prof instanceof FrameProfiler)
+            ((FrameProfiler) prof).cleanup();
+
         timer.reset();
     }
 
@@ -32,6 +32,7 @@
 package com.jme3.app.state;
  
 import com.jme3.app.Application;
+import com.jme3.profile.FrameProfiler;
 import com.jme3.renderer.RenderManager;
 import com.jme3.util.SafeArrayList;
 import java.util.Arrays;
@@ -284,7 +285,9 @@ public class AppStateManager {
         AppState[] array = getStates();
         for (AppState state : array){
             if (state.isEnabled()) {
+                FrameProfiler.beginScope(state.getClass());
                 state.update(tpf);
+                FrameProfiler.endScope();
             }
         }
     }
@@ -297,7 +300,9 @@ public class AppStateManager {
         AppState[] array = getStates();
         for (AppState state : array){
             if (state.isEnabled()) {
+                FrameProfiler.beginScope(state.getClass());
                 state.render(rm);
+                FrameProfiler.endScope();
             }
         }
     }
@@ -50,6 +50,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * <code>AssetManager</code> provides an interface for managing the data assets
@@ -235,6 +236,36 @@ public interface AssetManager {
      */
     public <T> T loadAsset(AssetKey<T> key);
 
+    /**
+     * Loads an asset from a key in the background, using the same
+     * process as {@link #loadAsset(com.jme3.asset.AssetKey) }.
+     * <p>
+     * Pending requests are started in order of priority. If the key is
+     * already being loaded, the request shares that load instead of
+     * loading the asset again. Requests can be reprioritized or cancelled
+     * through the returned handle.
+     * 
+     * @param <T> The object type that will be loaded from the AssetKey instance.
+     * @param key The AssetKey
+     * @param priority The priority of the request, higher priorities are
+     * loaded first
+     * @param callback The callback to notify once the asset is loaded or
+     * has failed to load, may be null. It is invoked through the
+     * {@link #setCallbackExecutor(java.util.concurrent.Executor) callback executor}.
+     * @return A handle to the request
+     */
+    public <T> AssetRequest<T> loadAssetAsync(AssetKey<T> key, float priority, AssetLoadCallback<T> callback);
+
+    /**
+     * Sets the executor used to invoke the callbacks of
+     * {@link #loadAssetAsync(com.jme3.asset.AssetKey, float, com.jme3.asset.AssetLoadCallback) },
+     * or null to invoke them on the loading threads.
+     * <code>Application</code> sets it to run them on the render thread.
+     * 
+     * @param executor The executor for callbacks
+     */
+    public void setCallbackExecutor(Executor executor);
+
     /**
      * Load an asset by name, calling this method is the same as calling
      * <code>loadAsset(new AssetKey(name))</code>.
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <code>AssetRequest</code> is a handle to an asset being loaded in the
+ * background, returned by
+ * {@link AssetManager#loadAssetAsync(com.jme3.asset.AssetKey, float, com.jme3.asset.AssetLoadCallback) }.
+ * <p>
+ * Requests for the same key that are made while it is loading share
+ * the same load. The request can be {@link #setPriority(float) reprioritized}
+ * while it is waiting, e.g. as the camera moves, and {@link #cancel(boolean) cancelled}
+ * once it is no longer needed. The load itself is only dropped when all
+ * requests sharing it have been cancelled before it started.
+ * <p><font color="red">Thread-Safe</font>
+ *
+ * @param <T> The type of the asset
+ */
+public class AssetRequest<T> implements Future<T> {
+
+    private final ThreadingManager manager;
+    private final AssetKey<T> key;
+    private final AssetLoadCallback<T> callback;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    // Guarded by the threading manager
+    ThreadingManager.LoadingTask<T> task;
+    private float priority;
+    private boolean completed;
+    private boolean cancelled;
+    private T asset;
+    private Throwable error;
+
+    AssetRequest(ThreadingManager manager, AssetKey<T> key, float priority, AssetLoadCallback<T> callback) {
+        this.manager = manager;
+        this.key = key;
+        this.priority = priority;
+        this.callback = callback;
+    }
+
+    public AssetKey<T> getKey() {
+        return key;
+    }
+
+    AssetLoadCallback<T> getCallback() {
+        return callback;
+    }
+
+    /**
+     * @return The priority of the request, higher priorities are loaded first
+     */
+    public float getPriority() {
+        synchronized (manager) {
+            return priority;
+        }
+    }
+
+    /**
+     * Changes the priority of the request. Loads with a higher priority
+     * are started first, loads shared by several requests use the highest
+     * of their priorities. This has no effect once the load has started.
+     *
+     * @param priority The new priority
+     */
+    public void setPriority(float priority) {
+        synchronized (manager) {
+            this.priority = priority;
+            if (!completed && !cancelled) {
+                manager.updatePriority(task);
+            }
+        }
+    }
+
+    float getPriorityUnsafe() {
+        return priority;
+    }
+
+    /**
+     * Cancels the request. Its callback will not be invoked and
+     * {@link #get() } throws a <code>CancellationException</code>.
+     *
+     * @param mayInterruptIfRunning Ignored, loading threads are never
+     * interrupted
+     * @return false if the request had already completed or was cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (manager) {
+            if (completed || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            manager.cancel(this);
+        }
+        done.countDown();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        synchronized (manager) {
+            return cancelled;
+        }
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Completes the request, returns false if it was cancelled.
+     */
+    boolean complete(T asset, Throwable error) {
+        synchronized (manager) {
+            if (cancelled) {
+                return false;
+            }
+            this.asset = asset;
+            this.error = error;
+            completed = true;
+        }
+        done.countDown();
+        return true;
+    }
+
+    private T getResult() throws ExecutionException {
+        synchronized (manager) {
+            if (cancelled) {
+                throw new CancellationException("Request for " + key + " was cancelled");
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return asset;
+        }
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return getResult();
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Timed out loading " + key);
+        }
+        return getResult();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + key + "]";
+    }
+}
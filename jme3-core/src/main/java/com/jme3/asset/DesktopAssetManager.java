@@ -32,11 +32,14 @@
 package com.jme3.asset;
 
 import com.jme3.asset.cache.AssetCache;
+import com.jme3.asset.cache.LRUAssetCache;
+import com.jme3.asset.cache.PersistentAssetCache;
 import com.jme3.asset.cache.SimpleAssetCache;
 import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioKey;
 import com.jme3.font.BitmapFont;
 import com.jme3.material.Material;
+import com.jme3.material.TechniqueDef;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.renderer.Caps;
 import com.jme3.scene.Spatial;
@@ -55,7 +58,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,6 +82,9 @@ public class DesktopAssetManager implements AssetManager {
     
     private List<ClassLoader> classLoaders =
             Collections.synchronizedList(new ArrayList<ClassLoader>());
+    
+    private volatile PersistentAssetCache persistentCache;
+    private ThreadingManager threadingManager;
 
     public DesktopAssetManager(){
         this(null);
@@ -227,6 +235,9 @@ public class DesktopAssetManager implements AssetManager {
     @Override
     public <T> boolean deleteFromCache(AssetKey<T> key) {
         AssetCache cache = handler.getCache(key.getCacheType());
+        if (key instanceof ShaderKey) {
+            TechniqueDef.clearShaderCaches();
+        }
         if (cache != null) {
             return cache.deleteFromCache(key);
         } else {
@@ -234,9 +245,39 @@ public class DesktopAssetManager implements AssetManager {
         }
     }
     
+    /**
+     * Returns the cache of the given type used by this asset manager,
+     * creating it if needed. This allows configuring caches such as
+     * {@link LRUAssetCache} and reading their statistics.
+     * 
+     * @param <T> The type of the cache
+     * @param cacheClass The class of the cache, as returned by
+     * {@link AssetKey#getCacheType() }
+     * @return The cache instance
+     */
+    public <T extends AssetCache> T getCache(Class<T> cacheClass) {
+        return handler.getCache(cacheClass);
+    }
+    
+    /**
+     * Sets the cache used to keep loaded models and materials on disk
+     * between runs of the application, or null to disable it (the default).
+     * 
+     * @param persistentCache The persistent cache to use
+     * @see PersistentAssetCache
+     */
+    public void setPersistentCache(PersistentAssetCache persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+    
+    public PersistentAssetCache getPersistentCache() {
+        return persistentCache;
+    }
+    
     @Override
     public void clearCache(){
         handler.clearCache();
+        TechniqueDef.clearShaderCaches();
         if (logger.isLoggable(Level.FINER)){
             logger.log(Level.FINER, "All asset caches cleared.");
         }
@@ -255,6 +296,48 @@ public class DesktopAssetManager implements AssetManager {
      * other error.
      */
     protected <T> T loadLocatedAsset(AssetKey<T> key, AssetInfo info, AssetProcessor proc, AssetCache cache) {
+        PersistentAssetCache persistent = persistentCache;
+        String signature = null;
+        Object obj = null;
+        if (persistent != null && !(info instanceof StreamAssetInfo) && persistent.isCacheable(key)) {
+            try {
+                signature = persistent.computeSignature(info);
+                obj = persistent.load(key, signature, this);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Cannot read " + key + " to check the persistent cache", ex);
+            }
+        }
+        
+        if (obj == null) {
+            if (signature != null) {
+                persistent.beginRecording();
+            }
+            Set<String> dependencies = null;
+            try {
+                obj = loadAndProcessAsset(key, info, proc);
+            } finally {
+                if (signature != null) {
+                    dependencies = persistent.endRecording();
+                }
+            }
+            if (signature != null) {
+                persistent.store(key, signature, dependencies, obj, this);
+            }
+        }
+
+        if (cache != null) {
+            // At this point, obj should be of type T
+            cache.addToCache(key, (T) obj);
+        }
+
+        for (AssetEventListener listener : eventListeners) {
+            listener.assetLoaded(key);
+        }
+
+        return (T) obj;
+    }
+    
+    private Object loadAndProcessAsset(AssetKey key, AssetInfo info, AssetProcessor proc) {
         AssetLoader loader = handler.aquireLoader(key);
         Object obj;
         try {
@@ -279,16 +362,7 @@ public class DesktopAssetManager implements AssetManager {
                 obj = proc.postProcess(key, obj);
             }
 
-            if (cache != null) {
-                // At this point, obj should be of type T
-                cache.addToCache(key, (T) obj);
-            }
-
-            for (AssetEventListener listener : eventListeners) {
-                listener.assetLoaded(key);
-            }
-
-            return (T) obj;
+            return obj;
         }
     }
     
@@ -353,6 +427,11 @@ public class DesktopAssetManager implements AssetManager {
             listener.assetRequested(key);
         }
         
+        PersistentAssetCache persistent = persistentCache;
+        if (persistent != null) {
+            persistent.recordRequest(key);
+        }
+        
         AssetCache cache = handler.getCache(key.getCacheType());
         AssetProcessor proc = handler.getProcessor(key.getProcessorType());
         
@@ -385,6 +464,27 @@ public class DesktopAssetManager implements AssetManager {
         return clone;
     }
 
+    @Override
+    public <T> AssetRequest<T> loadAssetAsync(AssetKey<T> key, float priority, AssetLoadCallback<T> callback) {
+        if (key == null)
+            throw new IllegalArgumentException("key cannot be null");
+        
+        return getThreadingManager().loadAsset(key, priority, callback);
+    }
+    
+    @Override
+    public void setCallbackExecutor(Executor executor) {
+        getThreadingManager().setCallbackExecutor(executor);
+    }
+    
+    private synchronized ThreadingManager getThreadingManager() {
+        // The loading threads are only started by the first request
+        if (threadingManager == null) {
+            threadingManager = new ThreadingManager(this);
+        }
+        return threadingManager;
+    }
+
     public Object loadAsset(String name){
         return loadAsset(new AssetKey(name));
     }
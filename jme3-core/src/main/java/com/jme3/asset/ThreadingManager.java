@@ -31,6 +31,9 @@
  */
 package com.jme3.asset;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.*;
 
 /**
@@ -38,18 +41,41 @@ import java.util.concurrent.*;
  * within the Content Manager system. A pool of threads and a task queue
  * is used to load resource data and perform I/O while the application's
  * render thread is active. 
+ * <p>
+ * Pending loads are started in order of priority. Requests for a key that
+ * is already being loaded share the load in progress instead of
+ * loading the asset a second time.
  */
 public class ThreadingManager {
 
-    protected final ExecutorService executor =
-            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), 
-                                         new LoadingThreadFactory());
+    protected final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>();
+
+    protected final ThreadPoolExecutor executor;
 
     protected final AssetManager owner;
     protected int nextThreadId = 0;
 
+    // Guarded by this
+    private final HashMap<AssetKey, LoadingTask> keyToTaskMap = new HashMap<AssetKey, LoadingTask>();
+    private long nextSequence = 0;
+
+    private volatile Executor callbackExecutor;
+
     public ThreadingManager(AssetManager owner){
+        this(owner, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a threading manager loading assets with the given number
+     * of threads.
+     *
+     * @param owner The asset manager to load the assets with
+     * @param threads The number of loading threads
+     */
+    public ThreadingManager(AssetManager owner, int threads){
         this.owner = owner;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                               queue, new LoadingThreadFactory());
     }
 
     protected class LoadingThreadFactory implements ThreadFactory {
@@ -61,21 +87,182 @@ public class ThreadingManager {
         }
     }
 
-    protected class LoadingTask<T> implements Callable<T> {
+    protected class LoadingTask<T> implements Runnable, Comparable<LoadingTask> {
 
         private final AssetKey<T> assetKey;
+        private final long sequence;
+        private final List<AssetRequest<T>> requests = new ArrayList<AssetRequest<T>>();
+        private float priority;
+        private boolean started;
 
-        public LoadingTask(AssetKey<T> assetKey) {
+        public LoadingTask(AssetKey<T> assetKey, long sequence) {
             this.assetKey = assetKey;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(LoadingTask other) {
+            // Highest priority first, then in order of submission
+            int result = Float.compare(other.priority, priority);
+            if (result == 0) {
+                result = sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+            }
+            return result;
+        }
+
+        public void run() {
+            synchronized (ThreadingManager.this) {
+                if (requests.isEmpty()) {
+                    // All requests were cancelled
+                    return;
+                }
+                started = true;
+            }
+
+            T asset = null;
+            Throwable error = null;
+            try {
+                asset = owner.loadAsset(assetKey);
+            } catch (Throwable t) {
+                error = t;
+            }
+
+            List<AssetRequest<T>> finished;
+            synchronized (ThreadingManager.this) {
+                keyToTaskMap.remove(assetKey);
+                finished = new ArrayList<AssetRequest<T>>(requests);
+                requests.clear();
+            }
+
+            for (int i = 0; i < finished.size(); i++) {
+                T result = asset;
+                if (i > 0 && asset instanceof CloneableSmartAsset && error == null) {
+                    // Each request gets its own clone, taken from the cache
+                    try {
+                        result = owner.loadAsset(assetKey);
+                    } catch (Throwable t) {
+                        complete(finished.get(i), null, t);
+                        continue;
+                    }
+                }
+                complete(finished.get(i), result, error);
+            }
         }
+    }
 
-        public T call() throws Exception {
-            return owner.loadAsset(assetKey);
+    private <T> void complete(final AssetRequest<T> request, final T asset, final Throwable error) {
+        if (!request.complete(asset, error)) {
+            return;
+        }
+        final AssetLoadCallback<T> callback = request.getCallback();
+        if (callback == null) {
+            return;
+        }
+        Runnable notify = new Runnable() {
+            public void run() {
+                if (error != null) {
+                    callback.assetFailed(request.getKey(), error);
+                } else {
+                    callback.assetLoaded(request.getKey(), asset);
+                }
+            }
+        };
+        Executor exec = callbackExecutor;
+        if (exec != null) {
+            exec.execute(notify);
+        } else {
+            notify.run();
         }
     }
 
+    /**
+     * Sets the executor used to invoke {@link AssetLoadCallback}s, or null
+     * to invoke them directly on the loading threads.
+     *
+     * @param callbackExecutor The executor for callbacks
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
     public <T> Future<T> loadAsset(AssetKey<T> assetKey) {
-        return executor.submit(new LoadingTask(assetKey));
+        return loadAsset(assetKey, 0f, null);
+    }
+
+    /**
+     * Requests an asset to be loaded in the background.
+     *
+     * @param <T> The type of the asset
+     * @param assetKey The key of the asset to load
+     * @param priority The priority of the request, higher priorities are
+     * loaded first
+     * @param callback The callback to notify once loaded, or null
+     * @return A handle to the request
+     */
+    public <T> AssetRequest<T> loadAsset(AssetKey<T> assetKey, float priority, AssetLoadCallback<T> callback) {
+        AssetRequest<T> request = new AssetRequest<T>(this, assetKey, priority, callback);
+        synchronized (this) {
+            LoadingTask<T> task = keyToTaskMap.get(assetKey);
+            if (task != null) {
+                request.task = task;
+                task.requests.add(request);
+                updatePriority(task);
+                return request;
+            }
+            task = new LoadingTask<T>(assetKey, nextSequence++);
+            task.priority = priority;
+            task.requests.add(request);
+            request.task = task;
+            keyToTaskMap.put(assetKey, task);
+        }
+        executor.execute(request.task);
+        return request;
+    }
+
+    /**
+     * Recomputes the priority of a pending task from its requests.
+     * Must be called while holding the lock on this.
+     */
+    void updatePriority(LoadingTask<?> task) {
+        if (task.started || task.requests.isEmpty()) {
+            return;
+        }
+        float max = Float.NEGATIVE_INFINITY;
+        for (AssetRequest<?> request : task.requests) {
+            max = Math.max(max, request.getPriorityUnsafe());
+        }
+        if (max == task.priority) {
+            return;
+        }
+        // The queue orders the task on insertion, so it has to be
+        // reinserted to change its priority
+        if (queue.remove(task)) {
+            task.priority = max;
+            queue.offer(task);
+        } else {
+            task.priority = max;
+        }
+    }
+
+    /**
+     * Removes a cancelled request from its task, dropping the task if it
+     * has not started and no other request needs it.
+     * Must be called while holding the lock on this.
+     */
+    void cancel(AssetRequest<?> request) {
+        LoadingTask<?> task = request.task;
+        task.requests.remove(request);
+        if (task.requests.isEmpty()) {
+            if (!task.started) {
+                queue.remove(task);
+                keyToTaskMap.remove(task.assetKey);
+            }
+        } else {
+            updatePriority(task);
+        }
     }
 
     public static boolean isLoadingThread() {
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.audio.AudioBuffer;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <code>LRUAssetCache</code> is an asset cache that keeps assets in memory
+ * up to a configurable budget of bytes. When the budget is exceeded,
+ * the least recently used assets are removed from the cache.
+ * <p>
+ * Unlike {@link WeakRefAssetCache} and {@link WeakRefCloneAssetCache},
+ * which leave removal up to the garbage collector, this cache holds strong
+ * references, so which assets stay resident is deterministic and does
+ * not depend on GC timing.
+ * <p>
+ * The memory used by an asset is estimated from its native data: the
+ * image data of textures, the vertex buffers of models and the data of
+ * audio buffers. Assets without such data are accounted with a small
+ * fixed size. Subclasses can override {@link #estimateSize(java.lang.Object) }
+ * for other asset types.
+ * <p>
+ * To use it, override {@link AssetKey#getCacheType() } of the asset key
+ * to return <code>LRUAssetCache.class</code>. The instance used by an asset
+ * manager can be retrieved with
+ * <code>DesktopAssetManager.getCache(LRUAssetCache.class)</code> to
+ * configure the budget and read the statistics.
+ * <p><font color="red">Thread-Safe</font>
+ */
+public class LRUAssetCache implements AssetCache {
+
+    /**
+     * The default memory budget, 256 MB.
+     */
+    public static final long DEFAULT_MAX_MEMORY = 256L * 1024L * 1024L;
+
+    /**
+     * The size accounted for assets without any native data.
+     */
+    protected static final long MIN_ASSET_SIZE = 1024;
+
+    private static final class CacheEntry {
+        final Object asset;
+        final long size;
+
+        CacheEntry(Object asset, long size) {
+            this.asset = asset;
+            this.size = size;
+        }
+    }
+
+    // Access ordered, the eldest entry is the least recently used
+    private final LinkedHashMap<AssetKey, CacheEntry> keyToEntryMap
+            = new LinkedHashMap<AssetKey, CacheEntry>(16, 0.75f, true);
+
+    private long maxMemory;
+    private long memoryUsed;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache with the {@link #DEFAULT_MAX_MEMORY default} budget.
+     */
+    public LRUAssetCache() {
+        this(DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * Creates a cache with the given budget.
+     *
+     * @param maxMemory The maximum number of bytes of assets to keep
+     */
+    public LRUAssetCache(long maxMemory) {
+        setMaxMemory(maxMemory);
+    }
+
+    /**
+     * Sets the maximum number of bytes of assets to keep. If the cache
+     * currently holds more than that, the least recently used assets
+     * are removed right away.
+     *
+     * @param maxMemory The maximum number of bytes of assets to keep
+     */
+    public synchronized void setMaxMemory(long maxMemory) {
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("maxMemory cannot be negative");
+        }
+        this.maxMemory = maxMemory;
+        trim();
+    }
+
+    public synchronized long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @return The estimated number of bytes used by the cached assets
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return The number of assets in the cache
+     */
+    public synchronized int getSize() {
+        return keyToEntryMap.size();
+    }
+
+    /**
+     * @return The number of times {@link #getFromCache(com.jme3.asset.AssetKey) }
+     * found the requested asset
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times {@link #getFromCache(com.jme3.asset.AssetKey) }
+     * did not find the requested asset
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of assets removed to stay within the budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters to zero.
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public <T> void addToCache(AssetKey<T> key, T obj) {
+        long size = estimateSize(obj);
+        synchronized (this) {
+            CacheEntry old = keyToEntryMap.put(key, new CacheEntry(obj, size));
+            if (old != null) {
+                memoryUsed -= old.size;
+            }
+            memoryUsed += size;
+            trim();
+        }
+    }
+
+    public <T> void registerAssetClone(AssetKey<T> key, T clone) {
+    }
+
+    public synchronized <T> T getFromCache(AssetKey<T> key) {
+        CacheEntry entry = keyToEntryMap.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (T) entry.asset;
+    }
+
+    public synchronized boolean deleteFromCache(AssetKey key) {
+        CacheEntry entry = keyToEntryMap.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        memoryUsed -= entry.size;
+        return true;
+    }
+
+    public synchronized void clearCache() {
+        keyToEntryMap.clear();
+        memoryUsed = 0;
+    }
+
+    public void notifyNoAssetClone() {
+    }
+
+    private void trim() {
+        Iterator<CacheEntry> it = keyToEntryMap.values().iterator();
+        while (memoryUsed > maxMemory && it.hasNext()) {
+            CacheEntry entry = it.next();
+            it.remove();
+            memoryUsed -= entry.size;
+            evictions++;
+        }
+    }
+
+    /**
+     * Estimates the number of bytes used by an asset.
+     *
+     * @param asset The asset to estimate
+     * @return The estimated size in bytes
+     */
+    protected long estimateSize(Object asset) {
+        long size = 0;
+        if (asset instanceof Texture) {
+            size = getSize(((Texture) asset).getImage());
+        } else if (asset instanceof Image) {
+            size = getSize((Image) asset);
+        } else if (asset instanceof Spatial) {
+            size = getSize((Spatial) asset);
+        } else if (asset instanceof AudioBuffer) {
+            size = getSize(((AudioBuffer) asset).getData());
+        }
+        return Math.max(size, MIN_ASSET_SIZE);
+    }
+
+    private static long getSize(Image image) {
+        if (image == null || image.getData() == null) {
+            return 0;
+        }
+        long size = 0;
+        for (ByteBuffer data : image.getData()) {
+            size += getSize(data);
+        }
+        return size;
+    }
+
+    private static long getSize(Spatial spatial) {
+        // Meshes can be shared between geometries, count them once
+        final Map<Mesh, Mesh> meshes = new IdentityHashMap<Mesh, Mesh>();
+        spatial.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                Mesh mesh = geom.getMesh();
+                if (mesh != null) {
+                    meshes.put(mesh, mesh);
+                }
+            }
+        });
+        long size = 0;
+        for (Mesh mesh : meshes.keySet()) {
+            for (VertexBuffer vb : mesh.getBufferList().getArray()) {
+                size += getSize(vb.getData());
+            }
+        }
+        return size;
+    }
+
+    private static long getSize(Buffer buffer) {
+        if (buffer == null) {
+            return 0;
+        }
+        if (buffer instanceof ByteBuffer) {
+            return buffer.capacity();
+        } else if (buffer instanceof ShortBuffer || buffer instanceof CharBuffer) {
+            return buffer.capacity() * 2L;
+        } else if (buffer instanceof DoubleBuffer || buffer instanceof LongBuffer) {
+            return buffer.capacity() * 8L;
+        } else {
+            // FloatBuffer and IntBuffer
+            return buffer.capacity() * 4L;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.CloneableSmartAsset;
+import com.jme3.asset.MaterialKey;
+import com.jme3.asset.ModelKey;
+import com.jme3.asset.TextureKey;
+import com.jme3.export.Savable;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>PersistentAssetCache</code> keeps loaded models and materials on
+ * disk in the {@link BinaryExporter J3O} format, so that later runs of the
+ * application can skip parsing and processing their source files.
+ * <p>
+ * Unlike the {@link AssetCache} implementations, which hold assets in
+ * memory for the running application, this cache sits underneath them:
+ * the asset manager only consults it after an in-memory cache miss, right
+ * before it would have run the asset loader. Set it with
+ * <code>DesktopAssetManager.setPersistentCache()</code>.
+ * <p>
+ * Each entry is keyed by the asset key and stores a SHA-1 hash of the
+ * source file, as well as hashes of the other assets that were requested
+ * while loading it (e.g. the MTL file of an OBJ model), except textures
+ * which are stored by reference anyway. An entry is only used if all of
+ * these still match, otherwise the asset is loaded normally and the entry
+ * is replaced.
+ * <p>
+ * Only assets that can be exported are stored, anything else
+ * (e.g. models with controls that are not {@link Savable}) is simply
+ * loaded from source every time.
+ * <p><font color="red">Thread-Safe</font>
+ */
+public class PersistentAssetCache {
+
+    private static final Logger logger = Logger.getLogger(PersistentAssetCache.class.getName());
+
+    private static final int MAGIC = 0x4A334143; // "J3AC"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".j3ac";
+
+    private final File directory;
+
+    /**
+     * The dependencies requested by the loads in progress on each thread,
+     * innermost load last.
+     */
+    private final ThreadLocal<List<Set<String>>> recording = new ThreadLocal<List<Set<String>>>() {
+        @Override
+        protected List<Set<String>> initialValue() {
+            return new ArrayList<Set<String>>();
+        }
+    };
+
+    /**
+     * Creates a persistent cache storing its entries in the given
+     * directory, which is created if needed.
+     *
+     * @param directory The directory to store the entries in
+     */
+    public PersistentAssetCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns true if assets of the given key should be stored. By default
+     * models and materials that are not already in the J3O format are.
+     *
+     * @param key The key of the asset to be loaded
+     * @return true if the asset should be cached on disk
+     */
+    public boolean isCacheable(AssetKey key) {
+        if (!(key instanceof ModelKey) && !(key instanceof MaterialKey)) {
+            return false;
+        }
+        return !"j3o".equalsIgnoreCase(key.getExtension());
+    }
+
+    /**
+     * Computes the hash used to detect changes to the source of an asset.
+     *
+     * @param info The located asset
+     * @return A hex encoded hash of the asset data
+     * @throws IOException If the asset data cannot be read
+     */
+    public String computeSignature(AssetInfo info) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-1 is not available", ex);
+        }
+        InputStream in = info.openStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private File getFile(AssetKey key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            String id = key.getClass().getName() + ":" + key.getName();
+            return new File(directory, toHex(digest.digest(id.getBytes("UTF-8"))) + SUFFIX);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        } catch (IOException ex) {
+            throw new IllegalStateException("UTF-8 is not available", ex);
+        }
+    }
+
+    /**
+     * Loads an asset from the cache if it has an up to date entry for it.
+     *
+     * @param key The key of the asset
+     * @param signature The signature of the asset source, see
+     * {@link #computeSignature(com.jme3.asset.AssetInfo) }
+     * @param manager The asset manager to load the dependencies of
+     * the entry with
+     * @return The cached asset, or null if there is no valid entry
+     */
+    public Object load(AssetKey key, String signature, AssetManager manager) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                        || !key.getName().equals(in.readUTF())
+                        || !signature.equals(in.readUTF())) {
+                    return null;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    String depSignature = in.readUTF();
+                    AssetInfo info = manager.locateAsset(new AssetKey(name));
+                    if (info == null || !depSignature.equals(computeSignature(info))) {
+                        return null;
+                    }
+                }
+
+                BinaryImporter importer = BinaryImporter.getInstance();
+                importer.setAssetManager(manager);
+                Savable asset = importer.load(in);
+                if (asset instanceof CloneableSmartAsset) {
+                    ((CloneableSmartAsset) asset).setKey(key);
+                }
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "Loaded {0} from {1}", new Object[]{key, file});
+                }
+                return asset;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to read cache entry for " + key + ", reloading it", ex);
+            return null;
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Failed to read cache entry for " + key + ", reloading it", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Starts recording the assets requested on this thread, called
+     * by the asset manager right before running the asset loader.
+     */
+    public void beginRecording() {
+        recording.get().add(new LinkedHashSet<String>());
+    }
+
+    /**
+     * Records an asset requested by the loads in progress on this thread.
+     *
+     * @param key The key of the requested asset
+     */
+    public void recordRequest(AssetKey key) {
+        List<Set<String>> stack = recording.get();
+        if (stack.isEmpty() || key instanceof TextureKey) {
+            return;
+        }
+        // Any change in a dependency of a nested asset invalidates
+        // all the assets that use it
+        for (Set<String> dependencies : stack) {
+            dependencies.add(key.getName());
+        }
+    }
+
+    /**
+     * Stops the recording started last on this thread.
+     *
+     * @return The names of the assets requested since then
+     */
+    public Set<String> endRecording() {
+        List<Set<String>> stack = recording.get();
+        return stack.remove(stack.size() - 1);
+    }
+
+    /**
+     * Stores a loaded asset. Assets that cannot be exported are skipped.
+     *
+     * @param key The key of the asset
+     * @param signature The signature of the asset source
+     * @param dependencies The names of the assets requested while loading it
+     * @param asset The loaded and processed asset
+     * @param manager The asset manager to locate the dependencies with
+     */
+    public void store(AssetKey key, String signature, Set<String> dependencies,
+            Object asset, AssetManager manager) {
+        if (!(asset instanceof Savable)) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.log(Level.WARNING, "Cannot create asset cache directory {0}", directory);
+            return;
+        }
+
+        File file = getFile(key);
+        File temp = null;
+        try {
+            temp = File.createTempFile("asset", ".tmp", directory);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key.getName());
+                out.writeUTF(signature);
+                out.writeInt(dependencies.size());
+                for (String name : dependencies) {
+                    AssetInfo info = manager.locateAsset(new AssetKey(name));
+                    if (info == null) {
+                        // Generated or missing, can't tell when it changes
+                        return;
+                    }
+                    out.writeUTF(name);
+                    out.writeUTF(computeSignature(info));
+                }
+                BinaryExporter.getInstance().save((Savable) asset, out);
+            } finally {
+                out.close();
+            }
+            // Replace any previous entry, another thread may have stored
+            // the same asset in the mean time
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                return;
+            }
+            temp = null;
+            if (logger.isLoggable(Level.FINER)) {
+                logger.log(Level.FINER, "Stored {0} in {1}", new Object[]{key, file});
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to store " + key + " in the asset cache", ex);
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Failed to store " + key + " in the asset cache", ex);
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the entry of the given asset.
+     *
+     * @return true if there was an entry
+     */
+    public boolean delete(AssetKey key) {
+        return getFile(key).delete();
+    }
+
+    /**
+     * Deletes all the entries of the cache.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+}
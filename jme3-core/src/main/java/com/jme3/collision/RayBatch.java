@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.collision;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.bih.FlatBIHTree;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <code>RayBatch</code> finds the closest hit of many rays against a scene
+ * graph at once.
+ * <p>
+ * Rays and results are kept in primitive arrays. Casting walks the scene
+ * once per batch (or once per chunk of rays when run on an executor),
+ * testing each node bound against all the rays still able to hit
+ * something inside it, and queries meshes through their
+ * {@link Mesh#getFlatCollisionTree() flattened collision trees}.
+ * Bounds that are further than the best hit found so far for a ray are
+ * skipped.
+ * <p>
+ * Casting only reads the scene, the scene must have had its geometric
+ * state updated and must not be modified while the rays are cast.
+ * Unlike {@link Spatial#collideWith(com.jme3.collision.Collidable, com.jme3.collision.CollisionResults) }
+ * only the closest hit of each ray is kept.
+ */
+public class RayBatch {
+
+    private static final float[] EMPTY = new float[0];
+
+    private int size;
+    private int chunkSize = 64;
+    private float[] origins = EMPTY;
+    private float[] directions = EMPTY;
+    private float[] limits = EMPTY;
+    private float[] hitDistances = EMPTY;
+    private float[] hitPoints = EMPTY;
+    private float[] hitNormals = EMPTY;
+    private int[] hitTriangles = new int[0];
+    private Geometry[] hitGeometries = new Geometry[0];
+
+    public RayBatch() {
+    }
+
+    /**
+     * @param capacity The number of rays to make room for, the batch grows
+     * when more are added
+     */
+    public RayBatch(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= limits.length) {
+            return;
+        }
+        capacity = Math.max(capacity, limits.length * 2);
+        origins = Arrays.copyOf(origins, capacity * 3);
+        directions = Arrays.copyOf(directions, capacity * 3);
+        limits = Arrays.copyOf(limits, capacity);
+        hitDistances = Arrays.copyOf(hitDistances, capacity);
+        hitPoints = Arrays.copyOf(hitPoints, capacity * 3);
+        hitNormals = Arrays.copyOf(hitNormals, capacity * 3);
+        hitTriangles = Arrays.copyOf(hitTriangles, capacity);
+        hitGeometries = Arrays.copyOf(hitGeometries, capacity);
+    }
+
+    /**
+     * @return The number of rays in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the rays and results.
+     */
+    public void clear() {
+        Arrays.fill(hitGeometries, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Sets the number of rays cast by a single task when casting on an
+     * executor. Defaults to 64.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Adds a ray to the batch, copying its origin, direction and limit.
+     *
+     * @return The index of the ray
+     */
+    public int addRay(Ray ray) {
+        return addRay(ray.getOrigin(), ray.getDirection(), ray.getLimit());
+    }
+
+    /**
+     * Adds a ray to the batch.
+     *
+     * @param origin The origin of the ray
+     * @param direction The direction of the ray, it does not need to be
+     * normalized
+     * @param limit The maximum distance of hits along the ray, use
+     * <code>Float.POSITIVE_INFINITY</code> for no limit
+     * @return The index of the ray
+     */
+    public int addRay(Vector3f origin, Vector3f direction, float limit) {
+        ensureCapacity(size + 1);
+        int i = size++;
+        float length = direction.length();
+        origins[i * 3] = origin.x;
+        origins[i * 3 + 1] = origin.y;
+        origins[i * 3 + 2] = origin.z;
+        directions[i * 3] = direction.x / length;
+        directions[i * 3 + 1] = direction.y / length;
+        directions[i * 3 + 2] = direction.z / length;
+        limits[i] = limit;
+        hitDistances[i] = Float.POSITIVE_INFINITY;
+        hitGeometries[i] = null;
+        return i;
+    }
+
+    public Vector3f getRayOrigin(int index, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(origins[index * 3], origins[index * 3 + 1], origins[index * 3 + 2]);
+    }
+
+    /**
+     * @return The normalized direction of the ray
+     */
+    public Vector3f getRayDirection(int index, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(directions[index * 3], directions[index * 3 + 1], directions[index * 3 + 2]);
+    }
+
+    public float getRayLimit(int index) {
+        return limits[index];
+    }
+
+    /**
+     * Casts all the rays against the scene on the calling thread.
+     *
+     * @param scene The root of the scene to cast against
+     */
+    public void cast(Spatial scene) {
+        resetHits();
+        new Caster(scene, 0, size).call();
+    }
+
+    /**
+     * Casts all the rays against the scene, splitting them in chunks of
+     * {@link #getChunkSize() } rays run as separate tasks on the executor.
+     * Returns once all the rays have been cast.
+     *
+     * @param scene The root of the scene to cast against
+     * @param executor The executor to run the tasks on
+     */
+    public void cast(Spatial scene, ExecutorService executor) {
+        resetHits();
+        if (size <= chunkSize) {
+            new Caster(scene, 0, size).call();
+            return;
+        }
+
+        List<Caster> tasks = new ArrayList<Caster>();
+        for (int start = 0; start < size; start += chunkSize) {
+            tasks.add(new Caster(scene, start, Math.min(start + chunkSize, size)));
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while casting rays", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error casting rays", e.getCause());
+        }
+    }
+
+    private void resetHits() {
+        Arrays.fill(hitDistances, 0, size, Float.POSITIVE_INFINITY);
+        Arrays.fill(hitGeometries, 0, size, null);
+    }
+
+    /**
+     * @return true if the ray at the given index hit something
+     */
+    public boolean hasHit(int index) {
+        return hitDistances[index] != Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return The distance to the closest hit of the ray, or
+     * <code>Float.POSITIVE_INFINITY</code> if it did not hit anything
+     */
+    public float getHitDistance(int index) {
+        return hitDistances[index];
+    }
+
+    public Vector3f getHitPoint(int index, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(hitPoints[index * 3], hitPoints[index * 3 + 1], hitPoints[index * 3 + 2]);
+    }
+
+    public Vector3f getHitNormal(int index, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        return store.set(hitNormals[index * 3], hitNormals[index * 3 + 1], hitNormals[index * 3 + 2]);
+    }
+
+    /**
+     * @return The geometry hit by the ray, or null if it did not hit anything
+     */
+    public Geometry getHitGeometry(int index) {
+        return hitGeometries[index];
+    }
+
+    /**
+     * @return The index of the triangle hit by the ray in its mesh
+     */
+    public int getHitTriangle(int index) {
+        return hitTriangles[index];
+    }
+
+    /**
+     * Returns the hit distances of all the rays, indexed by ray. The
+     * array may be longer than {@link #size() }.
+     */
+    public float[] getHitDistances() {
+        return hitDistances;
+    }
+
+    /**
+     * Returns the hit points of all the rays as x, y, z triples, indexed
+     * by ray. The array may be longer than needed.
+     */
+    public float[] getHitPoints() {
+        return hitPoints;
+    }
+
+    /**
+     * Returns the hit normals of all the rays as x, y, z triples, indexed
+     * by ray. The array may be longer than needed.
+     */
+    public float[] getHitNormals() {
+        return hitNormals;
+    }
+
+    /**
+     * Casts a contiguous range of the rays, walking the scene with the
+     * list of rays that can still hit something below each spatial.
+     */
+    private class Caster implements Callable<Void> {
+
+        private final Spatial scene;
+        private final int start, end;
+        private final Ray ray = new Ray();
+        private final CollisionResult closest = new CollisionResult();
+        private final CollisionResults results = new CollisionResults();
+        private int[][] levels = new int[8][];
+
+        Caster(Spatial scene, int start, int end) {
+            this.scene = scene;
+            this.start = start;
+            this.end = end;
+        }
+
+        private int[] getLevel(int level) {
+            if (level >= levels.length) {
+                levels = Arrays.copyOf(levels, levels.length * 2);
+            }
+            if (levels[level] == null) {
+                levels[level] = new int[end - start];
+            }
+            return levels[level];
+        }
+
+        public Void call() {
+            int[] rays = getLevel(0);
+            for (int i = start; i < end; i++) {
+                rays[i - start] = i;
+            }
+            castSpatial(scene, rays, end - start, 1);
+            return null;
+        }
+
+        private void castSpatial(Spatial spatial, int[] rays, int count, int level) {
+            BoundingVolume bound = spatial.getWorldBound();
+            int[] active = getLevel(level);
+            int n = 0;
+            for (int k = 0; k < count; k++) {
+                int i = rays[k];
+                if (bound == null || boundDistance(bound, i) <= Math.min(limits[i], hitDistances[i])) {
+                    active[n++] = i;
+                }
+            }
+            if (n == 0) {
+                return;
+            }
+
+            if (spatial instanceof Node) {
+                List<Spatial> children = ((Node) spatial).getChildren();
+                for (int c = 0, size = children.size(); c < size; c++) {
+                    castSpatial(children.get(c), active, n, level + 1);
+                }
+            } else if (spatial instanceof Geometry) {
+                castGeometry((Geometry) spatial, active, n);
+            }
+        }
+
+        private void castGeometry(Geometry geom, int[] rays, int count) {
+            Mesh mesh = geom.getMesh();
+            if (mesh == null) {
+                return;
+            }
+            FlatBIHTree tree = mesh.getFlatCollisionTree();
+            for (int k = 0; k < count; k++) {
+                int i = rays[k];
+                ray.getOrigin().set(origins[i * 3], origins[i * 3 + 1], origins[i * 3 + 2]);
+                ray.getDirection().set(directions[i * 3], directions[i * 3 + 1], directions[i * 3 + 2]);
+                ray.setLimit(Math.min(limits[i], hitDistances[i]));
+
+                CollisionResult hit = null;
+                if (tree != null) {
+                    if (tree.collideWithClosest(ray, geom.getWorldMatrix(), closest)) {
+                        hit = closest;
+                    }
+                } else {
+                    // Custom collision data, go through the generic path
+                    results.clear();
+                    mesh.collideWith(ray, geom.getWorldMatrix(), geom.getWorldBound(), results);
+                    if (results.size() > 0) {
+                        hit = results.getClosestCollision();
+                    }
+                }
+
+                if (hit != null && hit.getDistance() < hitDistances[i]
+                        && hit.getDistance() <= limits[i]) {
+                    hitDistances[i] = hit.getDistance();
+                    Vector3f point = hit.getContactPoint();
+                    hitPoints[i * 3] = point.x;
+                    hitPoints[i * 3 + 1] = point.y;
+                    hitPoints[i * 3 + 2] = point.z;
+                    Vector3f normal = hit.getContactNormal();
+                    if (normal != null) {
+                        hitNormals[i * 3] = normal.x;
+                        hitNormals[i * 3 + 1] = normal.y;
+                        hitNormals[i * 3 + 2] = normal.z;
+                    }
+                    hitTriangles[i] = hit.getTriangleIndex();
+                    hitGeometries[i] = geom;
+                }
+            }
+        }
+
+        /**
+         * Returns the distance along the ray at which it enters the bound,
+         * 0 if it starts inside, or positive infinity if it misses it.
+         */
+        private float boundDistance(BoundingVolume bound, int i) {
+            float ox = origins[i * 3], oy = origins[i * 3 + 1], oz = origins[i * 3 + 2];
+            float dx = directions[i * 3], dy = directions[i * 3 + 1], dz = directions[i * 3 + 2];
+            Vector3f center = bound.getCenter();
+
+            if (bound instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox) bound;
+                float tMin = 0;
+                float tMax = Float.POSITIVE_INFINITY;
+                for (int axis = 0; axis < 3; axis++) {
+                    float o, d, c, e;
+                    if (axis == 0) {
+                        o = ox; d = dx; c = center.x; e = box.getXExtent();
+                    } else if (axis == 1) {
+                        o = oy; d = dy; c = center.y; e = box.getYExtent();
+                    } else {
+                        o = oz; d = dz; c = center.z; e = box.getZExtent();
+                    }
+                    float inv = 1f / d;
+                    float t0 = (c - e - o) * inv;
+                    float t1 = (c + e - o) * inv;
+                    if (inv < 0) {
+                        float tmp = t0;
+                        t0 = t1;
+                        t1 = tmp;
+                    }
+                    // NaN comparisons are false, so a ray running along a
+                    // slab face leaves the interval as it is
+                    if (t0 > tMin) {
+                        tMin = t0;
+                    }
+                    if (t1 < tMax) {
+                        tMax = t1;
+                    }
+                }
+                return tMin <= tMax ? tMin : Float.POSITIVE_INFINITY;
+            } else if (bound instanceof BoundingSphere) {
+                float radius = ((BoundingSphere) bound).getRadius();
+                float diffX = ox - center.x, diffY = oy - center.y, diffZ = oz - center.z;
+                float r2 = radius * radius;
+                if (diffX * diffX + diffY * diffY + diffZ * diffZ <= r2) {
+                    return 0;
+                }
+                float a1 = dx * diffX + dy * diffY + dz * diffZ;
+                if (a1 >= 0) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                // Squared distance from the center to the ray line, more
+                // precise than a1 * a1 - a0 for small spheres far away
+                float px = diffX - a1 * dx, py = diffY - a1 * dy, pz = diffZ - a1 * dz;
+                float discr = r2 - (px * px + py * py + pz * pz);
+                if (discr < 0) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                return -a1 - (float) Math.sqrt(discr);
+            }
+
+            ray.getOrigin().set(ox, oy, oz);
+            ray.getDirection().set(dx, dy, dz);
+            ray.setLimit(Float.POSITIVE_INFINITY);
+            return bound.intersects(ray) ? 0 : Float.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -54,14 +54,21 @@ import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.scene.mesh.VirtualIndexBuffer;
 import com.jme3.scene.mesh.WrappedIndexBuffer;
 import com.jme3.util.TempVars;
+import com.jme3.util.WorkerPool;
 import java.io.IOException;
 import static java.lang.Math.max;
 import java.nio.FloatBuffer;
+import java.util.concurrent.RecursiveTask;
 
 public class BIHTree implements CollisionData {
 
     public static final int MAX_TREE_DEPTH = 100;
     public static final int MAX_TRIS_PER_NODE = 21;
+    /**
+     * When both subtrees of a node have at least this many triangles,
+     * {@link #construct(boolean) } builds them as separate tasks.
+     */
+    public static final int PARALLEL_BUILD_THRESHOLD = 8192;
     private Mesh mesh;
     private BIHNode root;
     private int maxTrisPerNode;
@@ -70,7 +77,6 @@ public class BIHTree implements CollisionData {
     private int[] triIndices;
     
     // private transient CollisionResults boundResults = new CollisionResults();
-    private transient float[] bihSwapTmp;
     
     private static final TriangleAxisComparator[] comparators = new TriangleAxisComparator[]
     {
@@ -116,8 +122,6 @@ public class BIHTree implements CollisionData {
             throw new IllegalArgumentException("Mesh cannot be null");
         }
 
-        bihSwapTmp = new float[9];
-
         VertexBuffer vBuffer = mesh.getBuffer(Type.Position);
         if(vBuffer == null){
             throw new IllegalArgumentException("A mesh should at least contain a Position buffer");
@@ -143,8 +147,58 @@ public class BIHTree implements CollisionData {
     }
 
     public void construct() {
+        construct(false);
+    }
+
+    /**
+     * Builds the hierarchy. When parallel is true, sibling subtrees of at
+     * least {@link #PARALLEL_BUILD_THRESHOLD} triangles each are built in
+     * parallel on the {@link WorkerPool}. Since sibling subtrees only reorder their own range
+     * of triangles the resulting tree is the same as a sequential build.
+     *
+     * @param parallel true to spread the build over the available cores
+     */
+    public void construct(boolean parallel) {
         BoundingBox sceneBbox = createBox(0, numTris - 1);
-        root = createNode(0, numTris - 1, sceneBbox, 0);
+        if (parallel && numTris >= PARALLEL_BUILD_THRESHOLD) {
+            root = WorkerPool.get().invoke(new BuildTask(0, numTris - 1, sceneBbox, 0));
+        } else {
+            root = createNode(0, numTris - 1, sceneBbox, 0, false);
+        }
+    }
+
+    private class BuildTask extends RecursiveTask<BIHNode> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int l, r;
+        private final BoundingBox nodeBbox;
+        private final int depth;
+
+        BuildTask(int l, int r, BoundingBox nodeBbox, int depth) {
+            this.l = l;
+            this.r = r;
+            this.nodeBbox = nodeBbox;
+            this.depth = depth;
+        }
+
+        @Override
+        protected BIHNode compute() {
+            return createNode(l, r, nodeBbox, depth, true);
+        }
+    }
+
+    /**
+     * Creates an array packed copy of this tree for fast ray queries, see
+     * {@link FlatBIHTree}. The tree must have been constructed.
+     *
+     * @return A new flattened tree sharing the triangle data of this one
+     */
+    public FlatBIHTree flatten() {
+        if (root == null) {
+            throw new IllegalStateException("The tree has not been constructed");
+        }
+        return new FlatBIHTree(root, pointData, triIndices);
     }
 
     private BoundingBox createBox(int l, int r) {
@@ -297,7 +351,7 @@ public class BIHTree implements CollisionData {
 //
 //        return node;
 //    }
-    private BIHNode createNode(int l, int r, BoundingBox nodeBbox, int depth) {
+    private BIHNode createNode(int l, int r, BoundingBox nodeBbox, int depth, boolean parallel) {
         if ((r - l) < maxTrisPerNode || depth > MAX_TREE_DEPTH) {
             return new BIHNode(l, r);
         }
@@ -338,12 +392,12 @@ public class BIHTree implements CollisionData {
             //Only right
             BoundingBox rbbox = new BoundingBox(currentBox);
             setMinMax(rbbox, true, axis, split);
-            return createNode(l, r, rbbox, depth + 1);
+            return createNode(l, r, rbbox, depth + 1, parallel);
         } else if (pivot > r) {
             //Only left
             BoundingBox lbbox = new BoundingBox(currentBox);
             setMinMax(lbbox, false, axis, split);
-            return createNode(l, r, lbbox, depth + 1);
+            return createNode(l, r, lbbox, depth + 1, parallel);
         } else {
             //Build the node
             BIHNode node = new BIHNode(axis);
@@ -354,14 +408,24 @@ public class BIHTree implements CollisionData {
 
             //The left node right border is the plane most right
             node.setLeftPlane(getMinMax(createBox(l, max(l, pivot - 1)), false, axis));
-            node.setLeftChild(createNode(l, max(l, pivot - 1), lbbox, depth + 1)); //Recursive call
 
             //Right Child
             BoundingBox rbbox = new BoundingBox(currentBox);
             setMinMax(rbbox, true, axis, split);
             //The right node left border is the plane most left
             node.setRightPlane(getMinMax(createBox(pivot, r), true, axis));
-            node.setRightChild(createNode(pivot, r, rbbox, depth + 1)); //Recursive call
+
+            if (parallel && pivot - l >= PARALLEL_BUILD_THRESHOLD
+                    && r - pivot + 1 >= PARALLEL_BUILD_THRESHOLD) {
+                //Both halves are large, build the left one on another thread
+                BuildTask leftTask = new BuildTask(l, max(l, pivot - 1), lbbox, depth + 1);
+                leftTask.fork();
+                node.setRightChild(createNode(pivot, r, rbbox, depth + 1, true));
+                node.setLeftChild(leftTask.join());
+            } else {
+                node.setLeftChild(createNode(l, max(l, pivot - 1), lbbox, depth + 1, parallel)); //Recursive call
+                node.setRightChild(createNode(pivot, r, rbbox, depth + 1, parallel)); //Recursive call
+            }
 
             return node;
         }
@@ -387,14 +451,12 @@ public class BIHTree implements CollisionData {
         int p1 = index1 * 9;
         int p2 = index2 * 9;
 
-        // store p1 in tmp
-        System.arraycopy(pointData, p1, bihSwapTmp, 0, 9);
-
-        // copy p2 to p1
-        System.arraycopy(pointData, p2, pointData, p1, 9);
-
-        // copy tmp to p2
-        System.arraycopy(bihSwapTmp, 0, pointData, p2, 9);
+        // swap in place, parallel builds swap from several threads
+        for (int i = 0; i < 9; i++) {
+            float tmp = pointData[p1 + i];
+            pointData[p1 + i] = pointData[p2 + i];
+            pointData[p2 + i] = tmp;
+        }
 
         // swap indices
         int tmp2 = triIndices[index1];
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.collision.bih;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Ray;
+import com.jme3.math.Triangle;
+import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+
+/**
+ * An array packed copy of a constructed {@link BIHTree} meant for
+ * ray queries against static meshes.
+ * <p>
+ * The nodes are stored depth first in parallel arrays, the left child
+ * of an inner node always directly follows it, and the traversal keeps
+ * its stack in the per thread {@link TempVars}, so a query does not
+ * allocate anything besides the {@link CollisionResult}s it reports.
+ * <p>
+ * Besides returning every hit, rays can be queried for the closest hit
+ * only, or for whether they hit anything at all, both of which skip the
+ * parts of the tree that cannot contain a closer hit.
+ * <p>
+ * Instances are immutable and may be queried from several threads at
+ * once. Use {@link BIHTree#flatten() } to create one.
+ */
+public final class FlatBIHTree {
+
+    private static final int LEAF = 3;
+
+    private static final int MODE_ALL = 0;
+    private static final int MODE_CLOSEST = 1;
+    private static final int MODE_ANY = 2;
+
+    /**
+     * Split axis of each node, or 3 for leaves.
+     */
+    private final int[] axes;
+    private final float[] leftPlanes;
+    private final float[] rightPlanes;
+    /**
+     * Index of the right child for inner nodes, first triangle for leaves.
+     */
+    private final int[] rightOrFirst;
+    /**
+     * Last triangle for leaves, unused for inner nodes.
+     */
+    private final int[] last;
+    private final float[] pointData;
+    private final int[] triIndices;
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+    private final int depth;
+    private int nodeCount;
+
+    FlatBIHTree(BIHNode root, float[] pointData, int[] triIndices) {
+        this.pointData = pointData;
+        this.triIndices = triIndices;
+
+        int count = countNodes(root);
+        axes = new int[count];
+        leftPlanes = new float[count];
+        rightPlanes = new float[count];
+        rightOrFirst = new int[count];
+        last = new int[count];
+        depth = pack(root, 1);
+
+        min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < pointData.length; i += 3) {
+            min.x = Math.min(min.x, pointData[i]);
+            min.y = Math.min(min.y, pointData[i + 1]);
+            min.z = Math.min(min.z, pointData[i + 2]);
+            max.x = Math.max(max.x, pointData[i]);
+            max.y = Math.max(max.y, pointData[i + 1]);
+            max.z = Math.max(max.z, pointData[i + 2]);
+        }
+    }
+
+    private static int countNodes(BIHNode node) {
+        if (node.getAxis() == LEAF) {
+            return 1;
+        }
+        return 1 + countNodes(node.getLeftChild()) + countNodes(node.getRightChild());
+    }
+
+    /**
+     * Stores the node and its children depth first and returns the
+     * depth of the subtree.
+     */
+    private int pack(BIHNode node, int level) {
+        int index = nodeCount++;
+        axes[index] = node.getAxis();
+        if (node.getAxis() == LEAF) {
+            rightOrFirst[index] = node.getLeftIndex();
+            last[index] = node.getRightIndex();
+            return level;
+        }
+        leftPlanes[index] = node.getLeftPlane();
+        rightPlanes[index] = node.getRightPlane();
+        int leftDepth = pack(node.getLeftChild(), level + 1);
+        rightOrFirst[index] = nodeCount;
+        int rightDepth = pack(node.getRightChild(), level + 1);
+        return Math.max(leftDepth, rightDepth);
+    }
+
+    /**
+     * @return The number of nodes in the tree
+     */
+    public int getNodeCount() {
+        return axes.length;
+    }
+
+    /**
+     * @return The number of triangles in the tree
+     */
+    public int getTriangleCount() {
+        return triIndices.length;
+    }
+
+    /**
+     * Collects every triangle hit by the ray, like
+     * {@link BIHTree#collideWith(com.jme3.collision.Collidable, com.jme3.math.Matrix4f, com.jme3.bounding.BoundingVolume, com.jme3.collision.CollisionResults) }
+     * does.
+     *
+     * @param ray The ray in world space
+     * @param worldMatrix The world transform of the mesh, or null for identity
+     * @param results The results to add the hits to
+     * @return The number of hits added
+     */
+    public int collideWith(Ray ray, Matrix4f worldMatrix, CollisionResults results) {
+        return intersect(ray, worldMatrix, MODE_ALL, null, results);
+    }
+
+    /**
+     * Finds the closest triangle hit by the ray. Subtrees that are further
+     * than the best hit found so far are skipped.
+     * <p>
+     * The contact point and normal of the result are reused when already
+     * set, so the same result can be passed in for every query without
+     * allocating.
+     *
+     * @param ray The ray in world space
+     * @param worldMatrix The world transform of the mesh, or null for identity
+     * @param result Receives the distance, contact point, contact normal
+     * and triangle index of the closest hit
+     * @return true if the ray hit the mesh, result is left untouched otherwise
+     */
+    public boolean collideWithClosest(Ray ray, Matrix4f worldMatrix, CollisionResult result) {
+        return intersect(ray, worldMatrix, MODE_CLOSEST, result, null) > 0;
+    }
+
+    /**
+     * Checks if the ray hits any triangle of the mesh, stopping at the
+     * first hit found. Useful for line of sight checks, where the ray
+     * limit is set to the distance between the two points.
+     *
+     * @param ray The ray in world space
+     * @param worldMatrix The world transform of the mesh, or null for identity
+     * @return true if the ray hit the mesh
+     */
+    public boolean intersects(Ray ray, Matrix4f worldMatrix) {
+        return intersect(ray, worldMatrix, MODE_ANY, null, null) > 0;
+    }
+
+    private int intersect(Ray ray, Matrix4f worldMatrix, int mode,
+            CollisionResult closest, CollisionResults results) {
+        TempVars vars = TempVars.get();
+        try {
+            // Work in model space, the direction is not normalized so that
+            // distances along the ray stay the same as in world space
+            Vector3f o = vars.vect1;
+            Vector3f d = vars.vect2;
+            if (worldMatrix != null) {
+                Matrix4f inv = vars.tempMat4.set(worldMatrix).invertLocal();
+                inv.mult(ray.getOrigin(), o);
+                inv.multNormal(ray.getDirection(), d);
+            } else {
+                o.set(ray.getOrigin());
+                d.set(ray.getDirection());
+            }
+
+            float ox = o.x, oy = o.y, oz = o.z;
+            float dx = d.x, dy = d.y, dz = d.z;
+            float idx = 1f / dx, idy = 1f / dy, idz = 1f / dz;
+
+            // Clip the ray against the bounds of the mesh
+            float tMin = 0;
+            float tMax = ray.getLimit();
+            float t0, t1;
+            t0 = (min.x - ox) * idx;
+            t1 = (max.x - ox) * idx;
+            if (idx < 0) { float tmp = t0; t0 = t1; t1 = tmp; }
+            if (t0 > tMin) tMin = t0;
+            if (t1 < tMax) tMax = t1;
+            t0 = (min.y - oy) * idy;
+            t1 = (max.y - oy) * idy;
+            if (idy < 0) { float tmp = t0; t0 = t1; t1 = tmp; }
+            if (t0 > tMin) tMin = t0;
+            if (t1 < tMax) tMax = t1;
+            t0 = (min.z - oz) * idz;
+            t1 = (max.z - oz) * idz;
+            if (idz < 0) { float tmp = t0; t0 = t1; t1 = tmp; }
+            if (t0 > tMin) tMin = t0;
+            if (t1 < tMax) tMax = t1;
+            if (tMin > tMax) {
+                return 0;
+            }
+
+            int[] nodeStack = vars.bihNodeStack;
+            float[] minStack = vars.bihMinStack;
+            float[] maxStack = vars.bihMaxStack;
+            if (nodeStack.length < depth) {
+                nodeStack = new int[depth];
+                minStack = new float[depth];
+                maxStack = new float[depth];
+            }
+
+            float limit = ray.getLimit();
+            int bestTri = -1;
+            int cols = 0;
+
+            int top = 0;
+            nodeStack[0] = 0;
+            minStack[0] = tMin;
+            maxStack[0] = tMax;
+            top++;
+
+            stackloop:
+            while (top > 0) {
+                top--;
+                int node = nodeStack[top];
+                tMin = minStack[top];
+                tMax = Math.min(maxStack[top], limit);
+
+                if (tMax < tMin) {
+                    continue;
+                }
+
+                int a;
+                while ((a = axes[node]) != LEAF) {
+                    float origin, invDirection;
+                    if (a == 0) {
+                        origin = ox;
+                        invDirection = idx;
+                    } else if (a == 1) {
+                        origin = oy;
+                        invDirection = idy;
+                    } else {
+                        origin = oz;
+                        invDirection = idz;
+                    }
+
+                    float tNearSplit = (leftPlanes[node] - origin) * invDirection;
+                    float tFarSplit = (rightPlanes[node] - origin) * invDirection;
+                    int nearNode = node + 1;
+                    int farNode = rightOrFirst[node];
+
+                    if (invDirection < 0) {
+                        float tmpSplit = tNearSplit;
+                        tNearSplit = tFarSplit;
+                        tFarSplit = tmpSplit;
+
+                        int tmpNode = nearNode;
+                        nearNode = farNode;
+                        farNode = tmpNode;
+                    }
+
+                    if (tMin > tNearSplit && tMax < tFarSplit) {
+                        continue stackloop;
+                    }
+
+                    if (tMin > tNearSplit) {
+                        tMin = Math.max(tMin, tFarSplit);
+                        node = farNode;
+                    } else if (tMax < tFarSplit) {
+                        tMax = Math.min(tMax, tNearSplit);
+                        node = nearNode;
+                    } else {
+                        nodeStack[top] = farNode;
+                        minStack[top] = Math.max(tMin, tFarSplit);
+                        maxStack[top] = tMax;
+                        top++;
+                        tMax = Math.min(tMax, tNearSplit);
+                        node = nearNode;
+                    }
+                }
+
+                // a leaf
+                for (int i = rightOrFirst[node], end = last[node]; i <= end; i++) {
+                    float t = intersectTriangle(i * 9, ox, oy, oz, dx, dy, dz);
+                    if (t == Float.POSITIVE_INFINITY || t > limit) {
+                        continue;
+                    }
+                    if (mode == MODE_ANY) {
+                        return 1;
+                    } else if (mode == MODE_CLOSEST) {
+                        // Anything past this hit can be skipped from now on
+                        limit = t;
+                        bestTri = i;
+                        cols = 1;
+                    } else {
+                        CollisionResult cr = new CollisionResult();
+                        fillResult(cr, ray, worldMatrix, i, t, vars);
+                        results.addCollision(cr);
+                        cols++;
+                    }
+                }
+            }
+
+            if (bestTri >= 0) {
+                fillResult(closest, ray, worldMatrix, bestTri, limit, vars);
+            }
+            return cols;
+        } finally {
+            vars.release();
+        }
+    }
+
+    private void fillResult(CollisionResult result, Ray ray, Matrix4f worldMatrix,
+            int tri, float t, TempVars vars) {
+        Vector3f contactPoint = result.getContactPoint();
+        if (contactPoint == null) {
+            contactPoint = new Vector3f();
+            result.setContactPoint(contactPoint);
+        }
+        contactPoint.set(ray.getDirection()).multLocal(t).addLocal(ray.getOrigin());
+        result.setDistance(t * ray.getDirection().length());
+
+        Vector3f v1 = vars.vect3, v2 = vars.vect4, v3 = vars.vect5;
+        int p = tri * 9;
+        v1.set(pointData[p], pointData[p + 1], pointData[p + 2]);
+        v2.set(pointData[p + 3], pointData[p + 4], pointData[p + 5]);
+        v3.set(pointData[p + 6], pointData[p + 7], pointData[p + 8]);
+        if (worldMatrix != null) {
+            worldMatrix.mult(v1, v1);
+            worldMatrix.mult(v2, v2);
+            worldMatrix.mult(v3, v3);
+        }
+        Vector3f contactNormal = result.getContactNormal();
+        if (contactNormal == null) {
+            contactNormal = new Vector3f();
+            result.setContactNormal(contactNormal);
+        }
+        Triangle.computeTriangleNormal(v1, v2, v3, contactNormal);
+        result.setTriangleIndex(triIndices[tri]);
+    }
+
+    /**
+     * Two sided ray / triangle test on the packed point data, same as
+     * {@link Ray#intersects(com.jme3.math.Vector3f, com.jme3.math.Vector3f, com.jme3.math.Vector3f) }.
+     *
+     * @return The distance along the ray in direction lengths, or positive
+     * infinity if the triangle is not hit
+     */
+    private float intersectTriangle(int p, float ox, float oy, float oz,
+            float dx, float dy, float dz) {
+        float[] pd = pointData;
+        float v0x = pd[p], v0y = pd[p + 1], v0z = pd[p + 2];
+
+        float edge1X = pd[p + 3] - v0x;
+        float edge1Y = pd[p + 4] - v0y;
+        float edge1Z = pd[p + 5] - v0z;
+
+        float edge2X = pd[p + 6] - v0x;
+        float edge2Y = pd[p + 7] - v0y;
+        float edge2Z = pd[p + 8] - v0z;
+
+        float normX = ((edge1Y * edge2Z) - (edge1Z * edge2Y));
+        float normY = ((edge1Z * edge2X) - (edge1X * edge2Z));
+        float normZ = ((edge1X * edge2Y) - (edge1Y * edge2X));
+
+        float dirDotNorm = dx * normX + dy * normY + dz * normZ;
+
+        float diffX = ox - v0x;
+        float diffY = oy - v0y;
+        float diffZ = oz - v0z;
+
+        float sign;
+        if (dirDotNorm > FastMath.FLT_EPSILON) {
+            sign = 1;
+        } else if (dirDotNorm < -FastMath.FLT_EPSILON) {
+            sign = -1f;
+            dirDotNorm = -dirDotNorm;
+        } else {
+            // ray and triangle are parallel
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float dirDotDiffxEdge2 = sign * (dx * ((diffY * edge2Z) - (diffZ * edge2Y))
+                + dy * ((diffZ * edge2X) - (diffX * edge2Z))
+                + dz * ((diffX * edge2Y) - (diffY * edge2X)));
+        if (dirDotDiffxEdge2 < 0.0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float dirDotEdge1xDiff = sign * (dx * ((edge1Y * diffZ) - (edge1Z * diffY))
+                + dy * ((edge1Z * diffX) - (edge1X * diffZ))
+                + dz * ((edge1X * diffY) - (edge1Y * diffX)));
+        if (dirDotEdge1xDiff < 0.0f || dirDotDiffxEdge2 + dirDotEdge1xDiff > dirDotNorm) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float diffDotNorm = -sign * (diffX * normX + diffY * normY + diffZ * normZ);
+        if (diffDotNorm < 0.0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return diffDotNorm / dirDotNorm;
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.effect;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.export.JmeExporter;
+import com.jme3.material.Material;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.renderer.queue.RenderQueue.ShadowMode;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Usage;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.util.SafeArrayList;
+import com.jme3.util.TempVars;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Renders the {@link ParticleEmitter}s of its subgraph which share a
+ * material in a single draw.
+ * <p>
+ * The emitters keep their own settings, shape and influencer, and are still
+ * updated by their control. On every frame, the live particles of the
+ * emitters with the same material and mesh type are written into one
+ * dynamic mesh, which is uploaded once and drawn by a geometry attached to
+ * this node. Emitters in different queue buckets are drawn by different
+ * geometries, in the bucket of their emitters. Materials are compared with
+ * {@link Material#contentEquals(java.lang.Object) }, and the geometry of a
+ * batch uses the material of its first emitter.
+ * <p>
+ * Batched emitters {@link ParticleEmitter#setStructOfArrays(boolean) store
+ * their particles in arrays}, which kills their particles when they are
+ * first batched, and are culled themselves. They get back their cull hint
+ * when they leave the subgraph, but keep storing their particles in arrays.
+ * The batches are rebuilt on every update, emitters can be attached and
+ * detached at any time.
+ */
+public class ParticleBatchNode extends Node {
+
+    private SafeArrayList<Batch> batches = new SafeArrayList<Batch>(Batch.class);
+    private Map<ParticleEmitter, Entry> entries = new HashMap<ParticleEmitter, Entry>();
+    private int frame = 0;
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public ParticleBatchNode() {
+        super();
+    }
+
+    public ParticleBatchNode(String name) {
+        super(name);
+    }
+
+    /**
+     * Returns the number of batches, each drawn by one geometry.
+     *
+     * @return the number of batches
+     */
+    public int getNumBatches() {
+        return batches.size();
+    }
+
+    /**
+     * Returns the geometry drawing the batch of the given emitter, or null
+     * if it is not batched.
+     *
+     * @param emitter The emitter
+     * @return the geometry drawing the emitter
+     */
+    public Geometry getBatch(ParticleEmitter emitter) {
+        Entry entry = entries.get(emitter);
+        return entry == null ? null : entry.batch.geometry;
+    }
+
+    /**
+     * Returns true if the given spatial is the geometry of a batch.
+     *
+     * @param spatial The spatial
+     * @return true if it draws a batch
+     */
+    public final boolean isBatch(Spatial spatial) {
+        for (Batch batch : batches.getArray()) {
+            if (batch.geometry == spatial) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void updateLogicalState(float tpf) {
+        super.updateLogicalState(tpf);
+        updateBatches();
+    }
+
+    /**
+     * Moves the emitters of the subgraph to the batch of their material,
+     * releases the ones which left it, and updates the bounds of the
+     * batches.
+     */
+    private void updateBatches() {
+        frame++;
+        gatherEmitters(this);
+        if (entries.size() > 0) {
+            Iterator<Map.Entry<ParticleEmitter, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ParticleEmitter, Entry> e = it.next();
+                if (e.getValue().frame != frame) {
+                    release(e.getKey(), e.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        TempVars vars = TempVars.get();
+        for (Batch batch : batches.getArray()) {
+            batch.updateBound(vars);
+        }
+        vars.release();
+    }
+
+    private void gatherEmitters(Spatial spatial) {
+        if (spatial instanceof ParticleEmitter) {
+            ParticleEmitter emitter = (ParticleEmitter) spatial;
+            Entry entry = entries.get(emitter);
+            if (entry == null) {
+                entry = new Entry();
+                entry.cullHint = emitter.getLocalCullHint();
+                emitter.setStructOfArrays(true);
+                emitter.setCullHint(CullHint.Always);
+                entries.put(emitter, entry);
+            }
+            Bucket bucket = emitter.getQueueBucket();
+            if (entry.batch == null || entry.material != emitter.getMaterial()
+                    || entry.batch.type != emitter.getMeshType() || entry.batch.bucket != bucket) {
+                if (emitter.getMaterial() == null) {
+                    throw new IllegalStateException("No material is set for ParticleEmitter: "
+                            + emitter.getName() + " please set a material before batching");
+                }
+                if (entry.batch != null) {
+                    entry.batch.remove(emitter);
+                }
+                entry.material = emitter.getMaterial();
+                entry.batch = findBatch(entry.material, emitter.getMeshType(), bucket);
+                entry.batch.emitters.add(emitter);
+            }
+            entry.frame = frame;
+        } else if (spatial instanceof Node && (spatial == this || !(spatial instanceof ParticleBatchNode))) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                gatherEmitters(child);
+            }
+        }
+    }
+
+    private Batch findBatch(Material material, ParticleMesh.Type type, Bucket bucket) {
+        for (Batch batch : batches.getArray()) {
+            if (batch.type == type && batch.bucket == bucket
+                    && (batch.material == material || batch.material.contentEquals(material))) {
+                return batch;
+            }
+        }
+        Batch batch = new Batch(material, type, bucket);
+        batches.add(batch);
+        attachChild(batch.geometry);
+        return batch;
+    }
+
+    private void release(ParticleEmitter emitter, Entry entry) {
+        emitter.setCullHint(entry.cullHint);
+        if (entry.batch != null) {
+            entry.batch.remove(emitter);
+        }
+    }
+
+    /**
+     * Gives the emitters back their cull hints and removes the batches,
+     * which are rebuilt on the next update.
+     */
+    private void releaseAll() {
+        for (Map.Entry<ParticleEmitter, Entry> e : entries.entrySet()) {
+            e.getKey().setCullHint(e.getValue().cullHint);
+        }
+        entries.clear();
+        for (Batch batch : batches.getArray()) {
+            batch.geometry.removeFromParent();
+        }
+        batches.clear();
+    }
+
+    @Override
+    public Spatial detachChildAt(int index) {
+        Spatial child = super.detachChildAt(index);
+        if (child != null && !isBatch(child)) {
+            releaseSubGraph(child);
+        }
+        return child;
+    }
+
+    private void releaseSubGraph(Spatial spatial) {
+        if (spatial instanceof ParticleEmitter) {
+            Entry entry = entries.remove(spatial);
+            if (entry != null) {
+                release((ParticleEmitter) spatial, entry);
+            }
+        } else if (spatial instanceof Node && !(spatial instanceof ParticleBatchNode)) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                releaseSubGraph(child);
+            }
+        }
+    }
+
+    /**
+     * Clones the node without its batches, which the clone and this node
+     * rebuild on their next update.
+     */
+    @Override
+    public Node clone(boolean cloneMaterials) {
+        releaseAll();
+        ParticleBatchNode clone = (ParticleBatchNode) super.clone(cloneMaterials);
+        clone.batches = new SafeArrayList<Batch>(Batch.class);
+        clone.entries = new HashMap<ParticleEmitter, Entry>();
+        return clone;
+    }
+
+    @Override
+    public Spatial deepClone() {
+        releaseAll();
+        return super.deepClone();
+    }
+
+    /**
+     * Saves the node without its batches, which are rebuilt on the next
+     * update.
+     */
+    @Override
+    public void write(JmeExporter ex) throws IOException {
+        releaseAll();
+        super.write(ex);
+    }
+
+    /**
+     * The batch state of an emitter.
+     */
+    private static class Entry {
+
+        Batch batch;
+        Material material;
+        CullHint cullHint;
+        int frame;
+    }
+
+    /**
+     * The emitters sharing a material, a mesh type and a queue bucket, and
+     * the geometry drawing them.
+     */
+    private class Batch {
+
+        final Material material;
+        final ParticleMesh.Type type;
+        final Bucket bucket;
+        final SafeArrayList<ParticleEmitter> emitters = new SafeArrayList<ParticleEmitter>(ParticleEmitter.class);
+        final Geometry geometry;
+        final ParticleMesh mesh;
+        int capacity = 0;
+
+        Batch(Material material, ParticleMesh.Type type, Bucket bucket) {
+            this.material = material;
+            this.type = type;
+            this.bucket = bucket;
+            mesh = type == ParticleMesh.Type.Point ? new ParticlePointMesh() : new ParticleTriMesh();
+            geometry = new Geometry(name + "-particles" + batches.size(), mesh);
+            geometry.setMaterial(material);
+            geometry.setIgnoreTransform(true);
+            geometry.setBatchHint(BatchHint.Never);
+            geometry.setShadowMode(ShadowMode.Off);
+            geometry.setQueueBucket(bucket);
+            geometry.addControl(new BatchControl(this));
+            ensureCapacity(1);
+        }
+
+        void remove(ParticleEmitter emitter) {
+            emitters.remove(emitter);
+            if (emitters.isEmpty()) {
+                batches.remove(this);
+                geometry.removeFromParent();
+            }
+        }
+
+        /**
+         * Grows the mesh to hold the particles of every emitter.
+         */
+        void ensureCapacity(int numParticles) {
+            if (numParticles > capacity) {
+                capacity = Math.max(numParticles, capacity + capacity / 2);
+                mesh.initParticleData(null, capacity);
+                // every emitter has its own images
+                mesh.getBuffer(VertexBuffer.Type.TexCoord).setUsage(Usage.Stream);
+                if (mesh instanceof ParticleTriMesh) {
+                    ((ParticleTriMesh) mesh).ensureArrays(capacity);
+                } else {
+                    ((ParticlePointMesh) mesh).ensureArrays(capacity);
+                }
+            }
+        }
+
+        void updateBound(TempVars vars) {
+            BoundingBox bound = (BoundingBox) mesh.getBound();
+            Vector3f min = vars.vect1.set(Vector3f.POSITIVE_INFINITY);
+            Vector3f max = vars.vect2.set(Vector3f.NEGATIVE_INFINITY);
+            for (ParticleEmitter emitter : emitters.getArray()) {
+                if (emitter.getNumVisibleParticles() == 0) {
+                    continue;
+                }
+                BoundingBox box = (BoundingBox) emitter.getMesh().getBound();
+                if (!emitter.isInWorldSpace()) {
+                    box = (BoundingBox) box.transform(emitter.getWorldTransform(), vars.bbox);
+                }
+                box.getMin(vars.vect3);
+                box.getMax(vars.vect4);
+                min.minLocal(vars.vect3);
+                max.maxLocal(vars.vect4);
+            }
+            if (min.x > max.x) {
+                min.set(Vector3f.ZERO);
+                max.set(Vector3f.ZERO);
+            }
+            bound.setMinMax(min, max);
+            geometry.setModelBound(bound);
+        }
+
+        /**
+         * Writes the particles of the emitters for the camera, and uploads
+         * them at once.
+         */
+        void write(Camera cam) {
+            int numParticles = 0;
+            for (ParticleEmitter emitter : emitters.getArray()) {
+                numParticles += emitter.getMaxNumParticles();
+            }
+            ensureCapacity(numParticles);
+
+            if (type == ParticleMesh.Type.Point) {
+                float c = cam.getProjectionMatrix().m00;
+                c *= cam.getWidth() * 0.5f;
+                geometry.getMaterial().setFloat("Quadratic", c);
+            }
+
+            TempVars vars = TempVars.get();
+            int offset = 0;
+            for (ParticleEmitter emitter : emitters.getArray()) {
+                ParticleData data = emitter.getParticleData();
+                if (data == null || data.getCount() == 0) {
+                    continue;
+                }
+                Matrix3f inverseRotation = Matrix3f.IDENTITY;
+                Matrix4f transform = null;
+                if (!emitter.isInWorldSpace()) {
+                    inverseRotation = emitter.getWorldRotation().toRotationMatrix(vars.tempMat3).invertLocal();
+                    transform = emitter.getLocalToWorldMatrix(vars.tempMat4);
+                }
+                if (mesh instanceof ParticleTriMesh) {
+                    ((ParticleTriMesh) mesh).writeArrays(emitter, data, offset, cam, inverseRotation, transform);
+                } else {
+                    ((ParticlePointMesh) mesh).writeArrays(emitter, data, offset, transform);
+                }
+                offset += data.getCount();
+            }
+            vars.release();
+
+            if (mesh instanceof ParticleTriMesh) {
+                ((ParticleTriMesh) mesh).uploadArrays(offset, true);
+            } else {
+                ((ParticlePointMesh) mesh).uploadArrays(offset);
+            }
+        }
+    }
+
+    /**
+     * Writes the particles of a batch when its geometry is rendered.
+     */
+    private static class BatchControl extends AbstractControl {
+
+        private final Batch batch;
+
+        BatchControl(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        protected void controlUpdate(float tpf) {
+        }
+
+        @Override
+        protected void controlRender(RenderManager rm, ViewPort vp) {
+            batch.write(vp.getCamera());
+        }
+    }
+}
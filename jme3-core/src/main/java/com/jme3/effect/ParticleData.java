@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.effect;
+
+/**
+ * Stores the particles of a {@link ParticleEmitter} in primitive arrays,
+ * one array per property, instead of {@link Particle} objects.
+ * <p>
+ * The live particles are packed at the start of the arrays: the particle
+ * at <code>i</code> is alive for <code>i &lt; getCount()</code>. Killing a
+ * particle moves the last live particle into its place. Vectors and colors
+ * are interleaved in their arrays, the position of particle <code>i</code>
+ * being at <code>positions[i * 3]</code> to
+ * <code>positions[i * 3 + 2]</code>.
+ *
+ * @see ParticleEmitter#setStructOfArrays(boolean)
+ */
+public final class ParticleData {
+
+    /**
+     * Current positions, 3 floats per particle.
+     */
+    public final float[] positions;
+
+    /**
+     * Velocities, 3 floats per particle.
+     */
+    public final float[] velocities;
+
+    /**
+     * Colors, r, g, b and a per particle.
+     */
+    public final float[] colors;
+
+    /**
+     * Sizes or radii.
+     */
+    public final float[] sizes;
+
+    /**
+     * Remaining lives, in seconds.
+     */
+    public final float[] lives;
+
+    /**
+     * Initial lives, in seconds.
+     */
+    public final float[] startLives;
+
+    /**
+     * Rotation angles, in radians.
+     */
+    public final float[] angles;
+
+    /**
+     * Rotation speeds, in radians per second.
+     */
+    public final float[] rotateSpeeds;
+
+    /**
+     * Image indices.
+     */
+    public final int[] imageIndices;
+
+    private int count = 0;
+
+    /**
+     * Creates the storage of the given number of particles, all dead.
+     *
+     * @param capacity The maximum number of particles
+     */
+    public ParticleData(int capacity) {
+        positions = new float[capacity * 3];
+        velocities = new float[capacity * 3];
+        colors = new float[capacity * 4];
+        sizes = new float[capacity];
+        lives = new float[capacity];
+        startLives = new float[capacity];
+        angles = new float[capacity];
+        rotateSpeeds = new float[capacity];
+        imageIndices = new int[capacity];
+    }
+
+    /**
+     * @return the maximum number of particles
+     */
+    public int getCapacity() {
+        return sizes.length;
+    }
+
+    /**
+     * @return the number of live particles
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Adds a particle after the live ones. Its properties must be set by
+     * the caller.
+     *
+     * @return the index of the particle, or -1 if all the particles are
+     * alive
+     */
+    int add() {
+        return count < sizes.length ? count++ : -1;
+    }
+
+    /**
+     * Kills a live particle, moving the last live particle in its place.
+     *
+     * @param index The index of the particle
+     */
+    public void kill(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+        }
+        int last = --count;
+        if (index != last) {
+            System.arraycopy(positions, last * 3, positions, index * 3, 3);
+            System.arraycopy(velocities, last * 3, velocities, index * 3, 3);
+            System.arraycopy(colors, last * 4, colors, index * 4, 4);
+            sizes[index] = sizes[last];
+            lives[index] = lives[last];
+            startLives[index] = startLives[last];
+            angles[index] = angles[last];
+            rotateSpeeds[index] = rotateSpeeds[last];
+            imageIndices[index] = imageIndices[last];
+        }
+        lives[last] = 0;
+    }
+
+    /**
+     * Kills all the particles.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            lives[i] = 0;
+        }
+        count = 0;
+    }
+
+    /**
+     * Returns the color of a particle packed like
+     * {@link com.jme3.math.ColorRGBA#asIntABGR() }.
+     */
+    int getColorABGR(int index) {
+        int i = index * 4;
+        return (((int) (colors[i + 3] * 255) & 0xFF) << 24)
+                | (((int) (colors[i + 2] * 255) & 0xFF) << 16)
+                | (((int) (colors[i + 1] * 255) & 0xFF) << 8)
+                | (((int) (colors[i] * 255) & 0xFF));
+    }
+
+    /**
+     * Copies a particle into the arrays.
+     *
+     * @param index The index of the particle
+     * @param p The particle to copy
+     */
+    public void set(int index, Particle p) {
+        positions[index * 3] = p.position.x;
+        positions[index * 3 + 1] = p.position.y;
+        positions[index * 3 + 2] = p.position.z;
+        velocities[index * 3] = p.velocity.x;
+        velocities[index * 3 + 1] = p.velocity.y;
+        velocities[index * 3 + 2] = p.velocity.z;
+        colors[index * 4] = p.color.r;
+        colors[index * 4 + 1] = p.color.g;
+        colors[index * 4 + 2] = p.color.b;
+        colors[index * 4 + 3] = p.color.a;
+        sizes[index] = p.size;
+        lives[index] = p.life;
+        startLives[index] = p.startlife;
+        angles[index] = p.angle;
+        rotateSpeeds[index] = p.rotateSpeed;
+        imageIndices[index] = p.imageIndex;
+    }
+
+    /**
+     * Copies a particle out of the arrays.
+     *
+     * @param index The index of the particle
+     * @param store The particle to copy into
+     * @return the store
+     */
+    public Particle get(int index, Particle store) {
+        store.position.set(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+        store.velocity.set(velocities[index * 3], velocities[index * 3 + 1], velocities[index * 3 + 2]);
+        store.color.set(colors[index * 4], colors[index * 4 + 1], colors[index * 4 + 2], colors[index * 4 + 3]);
+        store.size = sizes[index];
+        store.life = lives[index];
+        store.startlife = startLives[index];
+        store.angle = angles[index];
+        store.rotateSpeed = rotateSpeeds[index];
+        store.imageIndex = imageIndices[index];
+        return store;
+    }
+}
@@ -54,7 +54,9 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.control.Control;
 import com.jme3.util.TempVars;
+import com.jme3.util.WorkerPool;
 import java.io.IOException;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <code>ParticleEmitter</code> is a special kind of geometry which simulates
@@ -73,6 +75,15 @@ import java.io.IOException;
  */
 public class ParticleEmitter extends Geometry {
 
+    /**
+     * The number of live particles from which the particles of an emitter
+     * storing them in arrays are updated in parallel, when enabled.
+     *
+     * @see #setParallelUpdate(boolean)
+     */
+    public static final int PARALLEL_UPDATE_THRESHOLD = 4096;
+    private static final int UPDATE_BATCH_SIZE = 1024;
+
     private boolean enabled = true;
     private static final EmitterShape DEFAULT_SHAPE = new EmitterPointShape(Vector3f.ZERO);
     private static final ParticleInfluencer DEFAULT_INFLUENCER = new DefaultParticleInfluencer();
@@ -84,6 +95,11 @@ public class ParticleEmitter extends Geometry {
     private Particle[] particles;
     private int firstUnUsed;
     private int lastUsed;
+    private int numParticles;
+    private boolean structOfArrays = false;
+    private boolean parallelUpdate = false;
+    private ParticleData particleData;
+    private transient Particle emitted;
 //    private int next = 0;
 //    private ArrayList<Integer> unusedIndices = new ArrayList<Integer>();
     private boolean randomAngle;
@@ -161,7 +177,7 @@ public class ParticleEmitter extends Geometry {
         clone.shape = shape.deepClone();
 
         // Reinitialize particle list
-        clone.setNumParticles(particles.length);
+        clone.setNumParticles(numParticles);
 
         clone.faceNormal = faceNormal.clone();
         clone.startColor = startColor.clone();
@@ -188,7 +204,7 @@ public class ParticleEmitter extends Geometry {
             default:
                 throw new IllegalStateException("Unrecognized particle type: " + meshType);
         }
-        clone.particleMesh.initParticleData(clone, clone.particles.length);
+        clone.particleMesh.initParticleData(clone, clone.numParticles);
         clone.particleMesh.setImagesXY(clone.imagesX, clone.imagesY);
 
         return clone;
@@ -304,7 +320,7 @@ public class ParticleEmitter extends Geometry {
             default:
                 throw new IllegalStateException("Unrecognized particle type: " + meshType);
         }
-        this.setNumParticles(particles.length);
+        this.setNumParticles(numParticles);
     }
 
     /**
@@ -341,6 +357,9 @@ public class ParticleEmitter extends Geometry {
      */
     public int getNumVisibleParticles() {
 //        return unusedIndices.size() + next;
+        if (particleData != null) {
+            return particleData.getCount();
+        }
         return lastUsed + 1;
     }
 
@@ -353,19 +372,28 @@ public class ParticleEmitter extends Geometry {
      * can exist at the same time with this emitter.
      */
     public final void setNumParticles(int numParticles) {
-        particles = new Particle[numParticles];
-        for (int i = 0; i < numParticles; i++) {
-            particles[i] = new Particle();
+        this.numParticles = numParticles;
+        if (structOfArrays) {
+            particles = new Particle[0];
+            particleData = new ParticleData(numParticles);
+            emitted = new Particle();
+        } else {
+            particles = new Particle[numParticles];
+            for (int i = 0; i < numParticles; i++) {
+                particles[i] = new Particle();
+            }
+            particleData = null;
+            emitted = null;
         }
         //We have to reinit the mesh's buffers with the new size
-        particleMesh.initParticleData(this, particles.length);
+        particleMesh.initParticleData(this, numParticles);
         particleMesh.setImagesXY(this.imagesX, this.imagesY);
         firstUnUsed = 0;
         lastUsed = -1;
     }
 
     public int getMaxNumParticles() {
-        return particles.length;
+        return numParticles;
     }
 
     /**
@@ -376,6 +404,10 @@ public class ParticleEmitter extends Geometry {
      * The size of the array is set to the <code>numParticles</code> value
      * specified in the constructor or {@link ParticleEmitter#setNumParticles(int) }
      * method. 
+     * <p>
+     * The array is empty when the particles are
+     * {@link #setStructOfArrays(boolean) stored in arrays}, see
+     * {@link #getParticleData() } instead.
      * 
      * @return a list of all particles.
      */
@@ -383,6 +415,72 @@ public class ParticleEmitter extends Geometry {
         return particles;
     }
 
+    /**
+     * Returns the arrays storing the particles, or null if the particles are
+     * stored in {@link Particle} objects.
+     * 
+     * @return the arrays storing the particles
+     * @see #setStructOfArrays(boolean) 
+     */
+    public ParticleData getParticleData() {
+        return particleData;
+    }
+
+    /**
+     * Set to true to store the particles in primitive arrays, one per
+     * property, instead of {@link Particle} objects.
+     * 
+     * <p>The particles are then updated by tight loops over the arrays,
+     * which keep the live particles packed, and written to the mesh in bulk.
+     * It is faster for emitters of many particles, and required by
+     * {@link #setParallelUpdate(boolean) parallel updates}. The
+     * {@link ParticleInfluencer} still initializes the particles as
+     * <code>Particle</code> objects, which are then copied into the arrays.
+     * Changing this kills all the particles. Disabled by default.
+     * 
+     * @param structOfArrays true to store the particles in arrays
+     * @see #getParticleData() 
+     */
+    public void setStructOfArrays(boolean structOfArrays) {
+        if (this.structOfArrays != structOfArrays) {
+            this.structOfArrays = structOfArrays;
+            setNumParticles(numParticles);
+        }
+    }
+
+    /**
+     * Check if the particles are stored in primitive arrays.
+     * 
+     * @return true if the particles are stored in arrays
+     * @see ParticleEmitter#setStructOfArrays(boolean) 
+     */
+    public boolean isStructOfArrays() {
+        return structOfArrays;
+    }
+
+    /**
+     * Set to true to update the particles on several threads, when at least
+     * {@link #PARALLEL_UPDATE_THRESHOLD} particles are alive. Only emitters
+     * {@link #setStructOfArrays(boolean) storing their particles in arrays}
+     * are updated in parallel. The emission of new particles, and the
+     * influencer, are still run on the calling thread. Disabled by default.
+     * 
+     * @param parallelUpdate true to update the particles in parallel
+     */
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+    }
+
+    /**
+     * Check if the particles are updated in parallel.
+     * 
+     * @return true if the particles are updated in parallel
+     * @see ParticleEmitter#setParallelUpdate(boolean) 
+     */
+    public boolean isParallelUpdate() {
+        return parallelUpdate;
+    }
+
     /**
      * Get the normal which particles are facing. 
      * 
@@ -826,13 +924,30 @@ public class ParticleEmitter extends Geometry {
         this.particleInfluencer.setVelocityVariation(variation);
     }
 
+    /**
+     * Initializes the next particle. When the particles are stored in
+     * arrays, the particle is returned for the caller to add to them.
+     */
     private Particle emitParticle(Vector3f min, Vector3f max) {
         int idx = lastUsed + 1;
-        if (idx >= particles.length) {
-            return null;
+        Particle p;
+        if (particleData != null) {
+            if (particleData.getCount() >= numParticles) {
+                return null;
+            }
+            p = emitted;
+            p.position.set(0, 0, 0);
+            p.velocity.set(0, 0, 0);
+            p.imageIndex = 0;
+            p.angle = 0;
+            p.rotateSpeed = 0;
+        } else {
+            if (idx >= particles.length) {
+                return null;
+            }
+            p = particles[idx];
         }
 
-        Particle p = particles[idx];
         if (selectRandomImage) {
             p.imageIndex = FastMath.nextRandomInt(0, imagesY - 1) * imagesX + FastMath.nextRandomInt(0, imagesX - 1);
         }
@@ -860,8 +975,10 @@ public class ParticleEmitter extends Geometry {
         temp.set(p.position).subtractLocal(p.size, p.size, p.size);
         min.minLocal(temp);
 
-        ++lastUsed;
-        firstUnUsed = idx + 1;
+        if (particleData == null) {
+            ++lastUsed;
+            firstUnUsed = idx + 1;
+        }
         return p;
     }
 
@@ -870,7 +987,7 @@ public class ParticleEmitter extends Geometry {
      * which are currently inactive will be spawned immediately.
      */
     public void emitAllParticles() {
-        emitParticles(particles.length);
+        emitParticles(numParticles);
     }
 
     /**
@@ -898,7 +1015,11 @@ public class ParticleEmitter extends Geometry {
         }
 
         for(int i=0;i<num;i++) {
-            if( emitParticle(min, max) == null ) break;
+            Particle p = emitParticle(min, max);
+            if( p == null ) break;
+            if (particleData != null) {
+                particleData.set(particleData.add(), p);
+            }
         }
 
         bbox.setMinMax(min, max);
@@ -912,6 +1033,10 @@ public class ParticleEmitter extends Geometry {
      * particles will be dead and no longer visible.
      */
     public void killAllParticles() {
+        if (particleData != null) {
+            particleData.clear();
+            return;
+        }
         for (int i = 0; i < particles.length; ++i) {
             if (particles[i].life > 0) {
                 this.freeParticle(i);
@@ -924,8 +1049,13 @@ public class ParticleEmitter extends Geometry {
      * 
      * @param index The index of the particle to kill
      * @see #getParticles() 
+     * @see ParticleData#kill(int) 
      */
     public void killParticle(int index){
+        if (particleData != null) {
+            particleData.kill(index);
+            return;
+        }
         freeParticle(index);
     }
 
@@ -979,6 +1109,149 @@ public class ParticleEmitter extends Geometry {
         }
     }
     
+    /**
+     * Updates the particles stored in arrays, then removes the dead ones.
+     */
+    private void updateParticleData(float tpf, Vector3f min, Vector3f max) {
+        int count = particleData.getCount();
+        float[] bounds;
+        if (parallelUpdate && count >= PARALLEL_UPDATE_THRESHOLD) {
+            UpdateTask task = new UpdateTask(0, count, tpf);
+            WorkerPool.get().invoke(task);
+            bounds = task.bounds;
+        } else {
+            bounds = newBounds();
+            updateParticleData(0, count, tpf, bounds);
+        }
+        min.minLocal(temp.set(bounds[0], bounds[1], bounds[2]));
+        max.maxLocal(temp.set(bounds[3], bounds[4], bounds[5]));
+
+        // going backwards, the particles moved in place of the dead ones
+        // are already known to be alive
+        float[] lives = particleData.lives;
+        for (int i = count - 1; i >= 0; i--) {
+            if (lives[i] <= 0) {
+                particleData.kill(i);
+            }
+        }
+    }
+
+    /**
+     * Updates a range of the particles stored in arrays, split in halves
+     * while it has more than {@link #UPDATE_BATCH_SIZE} particles, and
+     * computes their bounds.
+     */
+    private class UpdateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int start, end;
+        private final float tpf;
+        private final float[] bounds = newBounds();
+
+        UpdateTask(int start, int end, float tpf) {
+            this.start = start;
+            this.end = end;
+            this.tpf = tpf;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= UPDATE_BATCH_SIZE) {
+                updateParticleData(start, end, tpf, bounds);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            UpdateTask left = new UpdateTask(start, middle, tpf);
+            UpdateTask right = new UpdateTask(middle, end, tpf);
+            invokeAll(left, right);
+            for (int i = 0; i < 3; i++) {
+                bounds[i] = Math.min(left.bounds[i], right.bounds[i]);
+                bounds[i + 3] = Math.max(left.bounds[i + 3], right.bounds[i + 3]);
+            }
+        }
+    }
+
+    private static float[] newBounds() {
+        return new float[]{
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+        };
+    }
+
+    /**
+     * Updates a range of the particles stored in arrays the way
+     * {@link #updateParticle(com.jme3.effect.Particle, float, com.jme3.math.Vector3f, com.jme3.math.Vector3f) }
+     * does, leaving the dead ones with no life. The bounds of the particles
+     * are added to the min x, y, z and max x, y, z of the given bounds.
+     */
+    private void updateParticleData(int start, int end, float tpf, float[] bounds) {
+        float[] positions = particleData.positions;
+        float[] velocities = particleData.velocities;
+        float[] colors = particleData.colors;
+        float[] sizes = particleData.sizes;
+        float[] lives = particleData.lives;
+        float[] startLives = particleData.startLives;
+        float[] angles = particleData.angles;
+        float[] rotateSpeeds = particleData.rotateSpeeds;
+        int[] imageIndices = particleData.imageIndices;
+
+        float gx = gravity.x * tpf, gy = gravity.y * tpf, gz = gravity.z * tpf;
+        float minX = bounds[0], minY = bounds[1], minZ = bounds[2];
+        float maxX = bounds[3], maxY = bounds[4], maxZ = bounds[5];
+        for (int i = start; i < end; i++) {
+            float life = lives[i] - tpf;
+            lives[i] = life;
+            if (life <= 0) {
+                continue;
+            }
+
+            // applying gravity
+            int v = i * 3;
+            float vx = velocities[v] - gx;
+            float vy = velocities[v + 1] - gy;
+            float vz = velocities[v + 2] - gz;
+            velocities[v] = vx;
+            velocities[v + 1] = vy;
+            velocities[v + 2] = vz;
+            float x = positions[v] + vx * tpf;
+            float y = positions[v + 1] + vy * tpf;
+            float z = positions[v + 2] + vz * tpf;
+            positions[v] = x;
+            positions[v + 1] = y;
+            positions[v + 2] = z;
+
+            // affecting color, size and angle
+            float b = (startLives[i] - life) / startLives[i];
+            int c = i * 4;
+            colors[c] = (1 - b) * startColor.r + b * endColor.r;
+            colors[c + 1] = (1 - b) * startColor.g + b * endColor.g;
+            colors[c + 2] = (1 - b) * startColor.b + b * endColor.b;
+            colors[c + 3] = (1 - b) * startColor.a + b * endColor.a;
+            float size = FastMath.interpolateLinear(b, startSize, endSize);
+            sizes[i] = size;
+            angles[i] += rotateSpeeds[i] * tpf;
+
+            // Computing bounding volume
+            minX = Math.min(minX, x - size);
+            minY = Math.min(minY, y - size);
+            minZ = Math.min(minZ, z - size);
+            maxX = Math.max(maxX, x + size);
+            maxY = Math.max(maxY, y + size);
+            maxZ = Math.max(maxZ, z + size);
+
+            if (!selectRandomImage) {
+                imageIndices[i] = (int) (b * imagesX * imagesY);
+            }
+        }
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = minZ;
+        bounds[3] = maxX;
+        bounds[4] = maxY;
+        bounds[5] = maxZ;
+    }
+
     private void updateParticleState(float tpf) {
         // Force world transform to update
         this.getWorldTransform();
@@ -988,27 +1261,31 @@ public class ParticleEmitter extends Geometry {
         Vector3f min = vars.vect1.set(Vector3f.POSITIVE_INFINITY);
         Vector3f max = vars.vect2.set(Vector3f.NEGATIVE_INFINITY);
 
-        for (int i = 0; i < particles.length; ++i) {
-            Particle p = particles[i];
-            if (p.life == 0) { // particle is dead
-//                assert i <= firstUnUsed;
-                continue;
-            }
+        if (particleData != null) {
+            updateParticleData(tpf, min, max);
+        } else {
+            for (int i = 0; i < particles.length; ++i) {
+                Particle p = particles[i];
+                if (p.life == 0) { // particle is dead
+    //                assert i <= firstUnUsed;
+                    continue;
+                }
 
-            p.life -= tpf;
-            if (p.life <= 0) {
-                this.freeParticle(i);
-                continue;
-            }
+                p.life -= tpf;
+                if (p.life <= 0) {
+                    this.freeParticle(i);
+                    continue;
+                }
 
-            updateParticle(p, tpf, min, max);
+                updateParticle(p, tpf, min, max);
 
-            if (firstUnUsed < i) {
-                this.swap(firstUnUsed, i);
-                if (i == lastUsed) {
-                    lastUsed = firstUnUsed;
+                if (firstUnUsed < i) {
+                    this.swap(firstUnUsed, i);
+                    if (i == lastUsed) {
+                        lastUsed = firstUnUsed;
+                    }
+                    firstUnUsed++;
                 }
-                firstUnUsed++;
             }
         }
         
@@ -1025,9 +1302,14 @@ public class ParticleEmitter extends Geometry {
                     p.position.interpolateLocal(lastPos, 1 - tpf / originalTpf);
                 }
                 if (p.life <= 0){
-                    freeParticle(lastUsed);
+                    if (particleData == null) {
+                        freeParticle(lastUsed);
+                    }
                 }else{
                     updateParticle(p, tpf, min, max);
+                    if (particleData != null) {
+                        particleData.set(particleData.add(), p);
+                    }
                 }
             }
         }
@@ -1103,7 +1385,11 @@ public class ParticleEmitter extends Geometry {
 
             inverseRotation = this.getWorldRotation().toRotationMatrix(vars.tempMat3).invertLocal();
         }
-        particleMesh.updateParticleData(particles, cam, inverseRotation);
+        if (particleData != null) {
+            particleMesh.updateParticleData(particleData, cam, inverseRotation);
+        } else {
+            particleMesh.updateParticleData(particles, cam, inverseRotation);
+        }
         if (!worldSpace) {
             vars.release();
         }
@@ -1111,7 +1397,11 @@ public class ParticleEmitter extends Geometry {
 
     public void preload(RenderManager rm, ViewPort vp) {
         this.updateParticleState(0);
-        particleMesh.updateParticleData(particles, vp.getCamera(), Matrix3f.IDENTITY);
+        if (particleData != null) {
+            particleMesh.updateParticleData(particleData, vp.getCamera(), Matrix3f.IDENTITY);
+        } else {
+            particleMesh.updateParticleData(particles, vp.getCamera(), Matrix3f.IDENTITY);
+        }
     }
 
     @Override
@@ -1121,7 +1411,9 @@ public class ParticleEmitter extends Geometry {
         oc.write(shape, "shape", DEFAULT_SHAPE);
         oc.write(meshType, "meshType", ParticleMesh.Type.Triangle);
         oc.write(enabled, "enabled", true);
-        oc.write(particles.length, "numParticles", 0);
+        oc.write(numParticles, "numParticles", 0);
+        oc.write(structOfArrays, "structOfArrays", false);
+        oc.write(parallelUpdate, "parallelUpdate", false);
         oc.write(particlesPerSec, "particlesPerSec", 0);
         oc.write(lowLife, "lowLife", 0);
         oc.write(highLife, "highLife", 0);
@@ -1156,6 +1448,8 @@ public class ParticleEmitter extends Geometry {
 
         meshType = ic.readEnum("meshType", ParticleMesh.Type.class, ParticleMesh.Type.Triangle);
         int numParticles = ic.readInt("numParticles", 0);
+        structOfArrays = ic.readBoolean("structOfArrays", false);
+        parallelUpdate = ic.readBoolean("parallelUpdate", false);
 
 
         enabled = ic.readBoolean("enabled", true);
@@ -44,6 +44,12 @@ import com.jme3.scene.Mesh;
  */
 public abstract class ParticleMesh extends Mesh {
 
+    /**
+     * Particles the arrays are copied into by the default
+     * {@link #updateParticleData(ParticleData, Camera, Matrix3f) }.
+     */
+    private Particle[] particleCopies;
+
     /**
      * Type of particle mesh
      */
@@ -82,4 +88,31 @@ public abstract class ParticleMesh extends Mesh {
      */
     public abstract void updateParticleData(Particle[] particles, Camera cam, Matrix3f inverseRotation);
 
+    /**
+     * Update the particle visual data from the particles of an emitter
+     * storing them in arrays. The live particles are written at the start
+     * of the buffers.
+     * <p>
+     * By default the particles are copied into {@link Particle} objects,
+     * which are passed to
+     * {@link #updateParticleData(Particle[], Camera, Matrix3f) }. Meshes
+     * override this to read the arrays directly.
+     *
+     * @see ParticleEmitter#setStructOfArrays(boolean)
+     */
+    public void updateParticleData(ParticleData particles, Camera cam, Matrix3f inverseRotation) {
+        int capacity = particles.getCapacity();
+        if (particleCopies == null || particleCopies.length != capacity) {
+            particleCopies = new Particle[capacity];
+            for (int i = 0; i < capacity; i++) {
+                particleCopies[i] = new Particle();
+            }
+        }
+        // the dead particles after the live ones have a life of 0
+        for (int i = 0; i < capacity; i++) {
+            particles.get(i, particleCopies[i]);
+        }
+        updateParticleData(particleCopies, cam, inverseRotation);
+    }
+
 }
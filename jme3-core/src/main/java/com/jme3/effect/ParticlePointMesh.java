@@ -32,6 +32,7 @@
 package com.jme3.effect;
 
 import com.jme3.math.Matrix3f;
+import com.jme3.math.Matrix4f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Format;
@@ -39,6 +40,7 @@ import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.util.BufferUtils;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 
 public class ParticlePointMesh extends ParticleMesh {
 
@@ -47,6 +49,12 @@ public class ParticlePointMesh extends ParticleMesh {
     private int imagesX = 1;
     private int imagesY = 1;
 
+    private float[] positionArray;
+    private float[] texcoordArray;
+    private int[] colorArray;
+    private float[] sizeArray;
+    private int lastCount = 0;
+
     @Override
     public void setImagesXY(int imagesX, int imagesY) {
         this.imagesX = imagesX;
@@ -58,6 +66,7 @@ public class ParticlePointMesh extends ParticleMesh {
         setMode(Mode.Points);
 
         this.emitter = emitter;
+        lastCount = 0;
 
         // set positions
         FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles);
@@ -164,4 +173,104 @@ public class ParticlePointMesh extends ParticleMesh {
         svb.updateData(sizes);
         tvb.updateData(texcoords);
     }
+
+    @Override
+    public void updateParticleData(ParticleData particles, Camera cam, Matrix3f inverseRotation) {
+        ensureArrays(particles.getCapacity());
+        writeArrays(emitter, particles, 0, null);
+        uploadArrays(particles.getCount());
+    }
+
+    /**
+     * Grows the arrays the vertices are written to before being copied to
+     * the buffers.
+     */
+    void ensureArrays(int numParticles) {
+        if (sizeArray == null || sizeArray.length < numParticles) {
+            positionArray = new float[numParticles * 3];
+            sizeArray = new float[numParticles];
+            colorArray = new int[numParticles];
+            texcoordArray = new float[numParticles * 4];
+        }
+    }
+
+    /**
+     * Writes the points of the particles of an emitter to the arrays, from
+     * the given particle index. The points are transformed by the given
+     * matrix if not null.
+     */
+    void writeArrays(ParticleEmitter emitter, ParticleData particles, int offset, Matrix4f transform) {
+        int count = particles.getCount();
+        float sizeScale = emitter.getWorldScale().x;
+        int imagesX = emitter.getImagesX();
+        int imagesY = emitter.getImagesY();
+        System.arraycopy(particles.positions, 0, positionArray, offset * 3, count * 3);
+        int[] imageIndices = particles.imageIndices;
+        for (int i = 0; i < count; i++) {
+            int p = offset + i;
+            if (transform != null) {
+                ParticleTriMesh.transform(transform, positionArray, p * 3);
+            }
+            sizeArray[p] = particles.sizes[i] * sizeScale;
+            colorArray[p] = particles.getColorABGR(i);
+
+            int imgX = imageIndices[i] % imagesX;
+            int imgY = (imageIndices[i] - imgX) / imagesY;
+            float startX = ((float) imgX) / imagesX;
+            float startY = ((float) imgY) / imagesY;
+            texcoordArray[p * 4] = startX;
+            texcoordArray[p * 4 + 1] = startY;
+            texcoordArray[p * 4 + 2] = startX + (1f / imagesX);
+            texcoordArray[p * 4 + 3] = startY + (1f / imagesY);
+        }
+    }
+
+    /**
+     * Copies the first points of the arrays to the buffers, hiding the
+     * points written by the previous update after them, and marks the
+     * written range for upload.
+     */
+    void uploadArrays(int count) {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positions = (FloatBuffer) pvb.getData();
+
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+        VertexBuffer svb = getBuffer(VertexBuffer.Type.Size);
+        FloatBuffer sizes = (FloatBuffer) svb.getData();
+
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        FloatBuffer texcoords = (FloatBuffer) tvb.getData();
+
+        // the particles which died since the last update are hidden
+        for (int i = count; i < lastCount; i++) {
+            sizeArray[i] = 0;
+            colorArray[i] = 0;
+        }
+        int written = Math.max(count, lastCount);
+        lastCount = count;
+
+        positions.clear();
+        positions.put(positionArray, 0, count * 3);
+        sizes.clear();
+        sizes.put(sizeArray, 0, written);
+        colors.clear();
+        IntBuffer colorInts = colors.asIntBuffer();
+        colorInts.put(colorArray, 0, written);
+        texcoords.clear();
+        texcoords.put(texcoordArray, 0, count * 4);
+
+        positions.clear();
+        colors.clear();
+        sizes.clear();
+        texcoords.clear();
+
+        // force renderer to re-send the written points to GPU
+        pvb.updateData(0, count);
+        cvb.updateData(0, written);
+        svb.updateData(0, written);
+        tvb.updateData(0, count);
+    }
+
 }
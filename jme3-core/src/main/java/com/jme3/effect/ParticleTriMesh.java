@@ -33,16 +33,18 @@ package com.jme3.effect;
 
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
+import com.jme3.math.Matrix4f;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Usage;
+import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.util.BufferUtils;
 import com.jme3.util.TempVars;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
+import java.nio.IntBuffer;
 
 public class ParticleTriMesh extends ParticleMesh {
 
@@ -52,12 +54,17 @@ public class ParticleTriMesh extends ParticleMesh {
 //    private ParticleComparator comparator = new ParticleComparator();
     private ParticleEmitter emitter;
 //    private Particle[] particlesCopy;
+    private float[] positionArray;
+    private int[] colorArray;
+    private float[] texcoordArray;
+    private int lastCount = 0;
 
     @Override
     public void initParticleData(ParticleEmitter emitter, int numParticles) {
         setMode(Mode.Triangles);
 
         this.emitter = emitter;
+        lastCount = 0;
 
 //        particlesCopy = new Particle[numParticles];
 
@@ -105,29 +112,33 @@ public class ParticleTriMesh extends ParticleMesh {
             setBuffer(tvb);
         }
 
-        // set indices
-        ShortBuffer ib = BufferUtils.createShortBuffer(numParticles * 6);
+        // set indices, in ints if there are too many vertices for shorts
+        IndexBuffer ib = IndexBuffer.createIndexBuffer(numParticles * 4, numParticles * 6);
         for (int i = 0; i < numParticles; i++){
             int startIdx = (i * 4);
+            int idx = i * 6;
 
             // triangle 1
-            ib.put((short)(startIdx + 1))
-              .put((short)(startIdx + 0))
-              .put((short)(startIdx + 2));
+            ib.put(idx, startIdx + 1);
+            ib.put(idx + 1, startIdx + 0);
+            ib.put(idx + 2, startIdx + 2);
 
             // triangle 2
-            ib.put((short)(startIdx + 1))
-              .put((short)(startIdx + 2))
-              .put((short)(startIdx + 3));
+            ib.put(idx + 3, startIdx + 1);
+            ib.put(idx + 4, startIdx + 2);
+            ib.put(idx + 5, startIdx + 3);
         }
-        ib.flip();
+        Format indexFormat = ib.getBuffer() instanceof IntBuffer ? Format.UnsignedInt : Format.UnsignedShort;
 
         buf = getBuffer(VertexBuffer.Type.Index);
-        if (buf != null) {
-            buf.updateData(ib);
+        if (buf != null && buf.getFormat() == indexFormat) {
+            buf.updateData(ib.getBuffer());
         } else {
+            if (buf != null) {
+                clearBuffer(VertexBuffer.Type.Index);
+            }
             VertexBuffer ivb = new VertexBuffer(VertexBuffer.Type.Index);
-            ivb.setupData(Usage.Static, 3, Format.UnsignedShort, ib);
+            ivb.setupData(Usage.Static, 3, indexFormat, ib.getBuffer());
             setBuffer(ivb);
         }
         
@@ -285,4 +296,209 @@ public class ParticleTriMesh extends ParticleMesh {
         cvb.updateData(colors);
     }
 
+    @Override
+    public void updateParticleData(ParticleData particles, Camera cam, Matrix3f inverseRotation) {
+        ensureArrays(particles.getCapacity());
+        writeArrays(emitter, particles, 0, cam, inverseRotation, null);
+        uploadArrays(particles.getCount(), uniqueTexCoords);
+    }
+
+    /**
+     * Grows the arrays the vertices are written to before being copied to
+     * the buffers.
+     */
+    void ensureArrays(int numParticles) {
+        if (positionArray == null || positionArray.length < numParticles * 12) {
+            positionArray = new float[numParticles * 12];
+            colorArray = new int[numParticles * 4];
+            texcoordArray = new float[numParticles * 8];
+        }
+    }
+
+    /**
+     * Writes the quads of the particles of an emitter to the arrays, from
+     * the given particle index. The quads are transformed by the given
+     * matrix if not null.
+     */
+    void writeArrays(ParticleEmitter emitter, ParticleData particles, int offset,
+            Camera cam, Matrix3f inverseRotation, Matrix4f transform) {
+        int count = particles.getCount();
+
+        Vector3f camUp   = cam.getUp();
+        Vector3f camLeft = cam.getLeft();
+        Vector3f camDir  = cam.getDirection();
+
+        inverseRotation.multLocal(camUp);
+        inverseRotation.multLocal(camLeft);
+        inverseRotation.multLocal(camDir);
+
+        boolean facingVelocity = emitter.isFacingVelocity();
+        Vector3f faceNormal = emitter.getFaceNormal();
+        int imagesX = emitter.getImagesX();
+        int imagesY = emitter.getImagesY();
+
+        // the axes of the quads facing the normal, and the same axes rotated
+        // by a quarter turn around it
+        Vector3f normalUp = new Vector3f(), normalLeft = new Vector3f();
+        Vector3f turnedUp = new Vector3f(), turnedLeft = new Vector3f();
+        if (!facingVelocity && faceNormal != null) {
+            normalUp.set(faceNormal).crossLocal(Vector3f.UNIT_X);
+            faceNormal.cross(normalUp, normalLeft);
+            Vector3f axis = faceNormal.normalize();
+            axis.cross(normalUp, turnedUp);
+            axis.cross(normalLeft, turnedLeft);
+        }
+
+        float[] pos = particles.positions;
+        float[] vel = particles.velocities;
+        float[] sizes = particles.sizes;
+        float[] angles = particles.angles;
+        float lx, ly, lz, ux, uy, uz;
+        for (int i = 0; i < count; i++) {
+            float size = sizes[i];
+            float angle = angles[i];
+            if (facingVelocity) {
+                float vx = vel[i * 3], vy = vel[i * 3 + 1], vz = vel[i * 3 + 2];
+                float length = vx * vx + vy * vy + vz * vz;
+                if (length != 0) {
+                    length = 1f / FastMath.sqrt(length);
+                    vx *= length;
+                    vy *= length;
+                    vz *= length;
+                }
+                lx = vx * size;
+                ly = vy * size;
+                lz = vz * size;
+                ux = (camDir.y * vz - camDir.z * vy) * size;
+                uy = (camDir.z * vx - camDir.x * vz) * size;
+                uz = (camDir.x * vy - camDir.y * vx) * size;
+            } else if (faceNormal != null) {
+                float cos = size, sin = 0;
+                if (angle != 0) {
+                    cos = FastMath.cos(angle) * size;
+                    sin = FastMath.sin(angle) * size;
+                }
+                lx = normalLeft.x * cos + turnedLeft.x * sin;
+                ly = normalLeft.y * cos + turnedLeft.y * sin;
+                lz = normalLeft.z * cos + turnedLeft.z * sin;
+                ux = normalUp.x * cos + turnedUp.x * sin;
+                uy = normalUp.y * cos + turnedUp.y * sin;
+                uz = normalUp.z * cos + turnedUp.z * sin;
+            } else if (angle != 0) {
+                float cos = FastMath.cos(angle) * size;
+                float sin = FastMath.sin(angle) * size;
+                lx = camLeft.x * cos + camUp.x * sin;
+                ly = camLeft.y * cos + camUp.y * sin;
+                lz = camLeft.z * cos + camUp.z * sin;
+                ux = camLeft.x * -sin + camUp.x * cos;
+                uy = camLeft.y * -sin + camUp.y * cos;
+                uz = camLeft.z * -sin + camUp.z * cos;
+            } else {
+                lx = camLeft.x * size;
+                ly = camLeft.y * size;
+                lz = camLeft.z * size;
+                ux = camUp.x * size;
+                uy = camUp.y * size;
+                uz = camUp.z * size;
+            }
+
+            float px = pos[i * 3], py = pos[i * 3 + 1], pz = pos[i * 3 + 2];
+            int v = (offset + i) * 12;
+            positionArray[v]      = px + lx + ux;
+            positionArray[v + 1]  = py + ly + uy;
+            positionArray[v + 2]  = pz + lz + uz;
+            positionArray[v + 3]  = px - lx + ux;
+            positionArray[v + 4]  = py - ly + uy;
+            positionArray[v + 5]  = pz - lz + uz;
+            positionArray[v + 6]  = px + lx - ux;
+            positionArray[v + 7]  = py + ly - uy;
+            positionArray[v + 8]  = pz + lz - uz;
+            positionArray[v + 9]  = px - lx - ux;
+            positionArray[v + 10] = py - ly - uy;
+            positionArray[v + 11] = pz - lz - uz;
+            if (transform != null) {
+                for (int j = v; j < v + 12; j += 3) {
+                    transform(transform, positionArray, j);
+                }
+            }
+
+            int abgr = particles.getColorABGR(i);
+            int c = (offset + i) * 4;
+            colorArray[c] = abgr;
+            colorArray[c + 1] = abgr;
+            colorArray[c + 2] = abgr;
+            colorArray[c + 3] = abgr;
+
+            int imageIndex = particles.imageIndices[i];
+            int imgX = imageIndex % imagesX;
+            int imgY = (imageIndex - imgX) / imagesY;
+
+            float startX = ((float) imgX) / imagesX;
+            float startY = ((float) imgY) / imagesY;
+            float endX   = startX + (1f / imagesX);
+            float endY   = startY + (1f / imagesY);
+
+            int t = (offset + i) * 8;
+            texcoordArray[t]     = startX;
+            texcoordArray[t + 1] = endY;
+            texcoordArray[t + 2] = endX;
+            texcoordArray[t + 3] = endY;
+            texcoordArray[t + 4] = startX;
+            texcoordArray[t + 5] = startY;
+            texcoordArray[t + 6] = endX;
+            texcoordArray[t + 7] = startY;
+        }
+    }
+
+    /**
+     * Transforms the point of the array at the given index in place.
+     */
+    static void transform(Matrix4f m, float[] array, int index) {
+        float x = array[index], y = array[index + 1], z = array[index + 2];
+        array[index]     = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+        array[index + 1] = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+        array[index + 2] = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+    }
+
+    /**
+     * Copies the quads of the first particles of the arrays to the buffers,
+     * collapsing the quads written by the previous update after them, and
+     * marks the written range for upload.
+     */
+    void uploadArrays(int count, boolean writeTexCoords) {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positions = (FloatBuffer) pvb.getData();
+
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        FloatBuffer texcoords = (FloatBuffer) tvb.getData();
+
+        // the quads of the particles which died since the last update are
+        // collapsed
+        for (int i = count * 12; i < lastCount * 12; i++) {
+            positionArray[i] = 0;
+        }
+        int written = Math.max(count, lastCount);
+        lastCount = count;
+
+        positions.clear();
+        positions.put(positionArray, 0, written * 12);
+        positions.clear();
+        colors.clear();
+        IntBuffer colorInts = colors.asIntBuffer();
+        colorInts.put(colorArray, 0, count * 4);
+
+        // force renderer to re-send the written vertices to GPU
+        pvb.updateData(0, written * 4);
+        cvb.updateData(0, count * 4);
+        if (writeTexCoords) {
+            texcoords.clear();
+            texcoords.put(texcoordArray, 0, count * 8);
+            texcoords.clear();
+            tvb.updateData(0, count * 4);
+        }
+    }
+
 }
@@ -99,9 +99,14 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
     private int nextTexUnit = 0;
     private RenderState additionalState = null;
     private RenderState mergedRenderState = new RenderState();
+    private RenderState mergedTechniqueState;
+    private RenderState mergedAdditionalState;
+    private int mergedTechniqueVersion;
+    private int mergedAdditionalVersion;
     private boolean transparent = false;
     private boolean receivesShadows = false;
     private int sortingId = -1;
+    private int paramsVersion = 0;
     private transient ColorRGBA ambientLightColor = new ColorRGBA(0, 0, 0, 1);
 
     public Material(MaterialDef def) {
@@ -206,6 +211,8 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
             if (additionalState != null) {
                 mat.additionalState = additionalState.clone();
             }
+            mat.mergedRenderState = new RenderState();
+            mat.mergedTechniqueState = null;
             mat.technique = null;
             mat.techniques = new HashMap<String, Technique>();
 
@@ -387,9 +394,47 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
         if (additionalState == null) {
             additionalState = RenderState.ADDITIONAL.clone();
         }
+
         return additionalState;
     }
 
+    /**
+     * Returns the render state of the technique definition merged with the
+     * additional render state of this material. The merged state is only
+     * recomputed when one of the two states changed, so that renderers can
+     * compare it to the previous one in constant time.
+     */
+    private RenderState getMergedRenderState(TechniqueDef techDef) {
+        RenderState techState = techDef != null ? techDef.getRenderState() : null;
+        if (techState == null) {
+            techState = RenderState.DEFAULT;
+        }
+        if (additionalState == null) {
+            return techState;
+        }
+        if (mergedTechniqueState != techState
+                || mergedTechniqueVersion != techState.getVersion()
+                || mergedAdditionalState != additionalState
+                || mergedAdditionalVersion != additionalState.getVersion()) {
+            techState.copyMergedTo(additionalState, mergedRenderState);
+            mergedTechniqueState = techState;
+            mergedTechniqueVersion = techState.getVersion();
+            mergedAdditionalState = additionalState;
+            mergedAdditionalVersion = additionalState.getVersion();
+        }
+        return mergedRenderState;
+    }
+
+    /**
+     * Returns the {@link RenderState#getSortId() sort id} of the render
+     * state this material is rendered with, for the current technique.
+     *
+     * @return the render state sort id, between 0 and 255
+     */
+    public int getRenderStateSortId() {
+        return getMergedRenderState(technique != null ? technique.getDef() : null).getSortId();
+    }
+
     /**
      * Get the material definition (j3md file info) that <code>this</code>
      * material is implementing.
@@ -481,6 +526,7 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
             if (val == null) {
                 MatParam paramDef = def.getMaterialParam(name);
                 paramValues.put(name, new MatParam(type, name, value));
+                paramsVersion++;
             } else {
                 val.setValue(value);
             }
@@ -503,6 +549,7 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
         }
 
         paramValues.remove(name);
+        paramsVersion++;
         if (matParam instanceof MatParamTexture) {
             int texUnit = ((MatParamTexture) matParam).getUnit();
             nextTexUnit--;
@@ -557,6 +604,7 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
                         new Object[]{value.getName(), value.getImage().getColorSpace().name(), name});
             }
             paramValues.put(name, new MatParamTexture(type, name, value, nextTexUnit++, null));
+            paramsVersion++;
         } else {
             val.setTextureValue(value);
         }
@@ -715,7 +763,7 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
         int lodLevel = geom.getLodLevel();
         if (geom instanceof InstancedGeometry) {
             InstancedGeometry instGeom = (InstancedGeometry) geom;
-            int numInstances = instGeom.getActualNumInstances();
+            int numInstances = instGeom.getNumVisibleInstances();
             if (numInstances == 0) {
                 return;
             }
@@ -1156,29 +1204,35 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
         if (rm.getForcedRenderState() != null) {
             r.applyRenderState(rm.getForcedRenderState());
         } else {
-            if (techDef.getRenderState() != null) {
-                r.applyRenderState(techDef.getRenderState().copyMergedTo(additionalState, mergedRenderState));
-            } else {
-                r.applyRenderState(RenderState.DEFAULT.copyMergedTo(additionalState, mergedRenderState));
-            }
+            r.applyRenderState(getMergedRenderState(techDef));
         }
 
 
         // update camera and world matrices
         // NOTE: setWorldTransform should have been called already
 
-        // reset unchanged uniform flag
-        clearUniformsSetByCurrent(technique.getShader());
+        // reset unchanged uniform flag, unless this material was the last
+        // to set its parameters on the shader: the uniforms it does not set
+        // are still reset from then
+        Shader shader = technique.getShader();
+        boolean paramsApplied = shader.isParamsOwner(this, paramsVersion);
+        if (!paramsApplied) {
+            clearUniformsSetByCurrent(shader);
+        }
         rm.updateUniformBindings(technique.getWorldBindUniforms());
 
 
         // setup textures and uniforms
+        // unchanged values are not uploaded again, see Uniform.setValue()
         for (int i = 0; i < paramValues.size(); i++) {
             MatParam param = paramValues.getValue(i);
             param.apply(r, technique);
         }
 
-        Shader shader = technique.getShader();
+        if (!paramsApplied) {
+            resetUniformsNotSetByCurrent(shader);
+            shader.setParamsOwner(this, paramsVersion);
+        }
 
         // send lighting information, if needed
         switch (techDef.getLightMode()) {
@@ -1186,7 +1240,6 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
                 break;
             case SinglePass:
                 int nbRenderedLights = 0;
-                resetUniformsNotSetByCurrent(shader);
                 if (lights.size() == 0) {
                     nbRenderedLights = updateLightListUniforms(shader, geom, lights, rm.getSinglePassLightBatchSize(), rm, 0);
                     r.setShader(shader);
@@ -1203,15 +1256,13 @@ public class Material implements CloneableSmartAsset, Cloneable, Savable {
                 throw new IllegalArgumentException("OpenGL1 is not supported");
             case MultiPass:
                 // NOTE: Special case!
-                resetUniformsNotSetByCurrent(shader);
                 renderMultipassLighting(shader, geom, lights, rm);
                 // very important, notice the return statement!
                 return;
         }
 
         // upload and bind shader
-        // any unset uniforms will be set to 0
-        resetUniformsNotSetByCurrent(shader);
+        // any unset uniforms were set to 0 above
         r.setShader(shader);
 
         renderMeshFromGeometry(r, geom);
@@ -326,6 +326,8 @@ public class RenderState implements Cloneable, Savable {
     TestFunction frontStencilFunction = TestFunction.Always;
     TestFunction backStencilFunction = TestFunction.Always;
     int cachedHashCode = -1;
+    long packedState;
+    int version = 0;
 
     public void write(JmeExporter ex) throws IOException {
         OutputCapsule oc = ex.getCapsule(this);
@@ -437,98 +439,28 @@ public class RenderState implements Cloneable, Savable {
         if (!(o instanceof RenderState)) {
             return false;
         }
-        RenderState rs = (RenderState) o;
-        if (pointSprite != rs.pointSprite) {
-            return false;
-        }
-
-        if (wireframe != rs.wireframe) {
-            return false;
-        }
-
-        if (cullMode != rs.cullMode) {
-            return false;
-        }
-
-        if (depthWrite != rs.depthWrite) {
-            return false;
-        }
-
-        if (depthTest != rs.depthTest) {
-            return false;
-        }
-        if (depthTest) {
-            if (depthFunc != rs.depthFunc) {
-                return false;
-            }
-        }
-
-        if (colorWrite != rs.colorWrite) {
-            return false;
-        }
-
-        if (blendMode != rs.blendMode) {
-            return false;
-        }
-
-        if (alphaTest != rs.alphaTest) {
-            return false;
-        }
-        if (alphaTest) {
-            if (alphaFunc != rs.alphaFunc) {
-                return false;
-            }
-        }
-
-        if (alphaFallOff != rs.alphaFallOff) {
-            return false;
-        }
-
-        if (offsetEnabled != rs.offsetEnabled) {
-            return false;
-        }
-
-        if (offsetFactor != rs.offsetFactor) {
-            return false;
-        }
-
-        if (offsetUnits != rs.offsetUnits) {
-            return false;
-        }
-
-        if (stencilTest != rs.stencilTest) {
-            return false;
-        }
+        return contentEquals((RenderState) o);
+    }
 
-        if (stencilTest) {
-            if (frontStencilStencilFailOperation != rs.frontStencilStencilFailOperation) {
-                return false;
-            }
-            if (frontStencilDepthFailOperation != rs.frontStencilDepthFailOperation) {
-                return false;
-            }
-            if (frontStencilDepthPassOperation != rs.frontStencilDepthPassOperation) {
-                return false;
-            }
-            if (backStencilStencilFailOperation != rs.backStencilStencilFailOperation) {
-                return false;
-            }
-            if (backStencilDepthFailOperation != rs.backStencilDepthFailOperation) {
-                return false;
-            }
-
-            if (backStencilDepthPassOperation != rs.backStencilDepthPassOperation) {
-                return false;
-            }
-            if (frontStencilFunction != rs.frontStencilFunction) {
-                return false;
-            }
-            if (backStencilFunction != rs.backStencilFunction) {
-                return false;
-            }
+    /**
+     * Returns true if the given render state renders the same way as this
+     * one. The apply flags of the states are not compared.
+     * <p>
+     * This compares the packed states of both render states, see
+     * {@link #getPackedState() }, and runs in constant time once they are
+     * computed.
+     *
+     * @param rs the render state to compare to
+     * @return true if the render states are equal
+     */
+    public boolean contentEquals(RenderState rs) {
+        if (rs == this) {
+            return true;
         }
-
-        return true;
+        return getPackedState() == rs.getPackedState()
+                && alphaFallOff == rs.alphaFallOff
+                && offsetFactor == rs.offsetFactor
+                && offsetUnits == rs.offsetUnits;
     }
 
     /**
@@ -546,7 +478,7 @@ public class RenderState implements Cloneable, Savable {
     public void setPointSprite(boolean pointSprite) {
         applyPointSprite = true;
         this.pointSprite = pointSprite;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -570,7 +502,7 @@ public class RenderState implements Cloneable, Savable {
     public void setAlphaFallOff(float alphaFallOff) {
         applyAlphaFallOff = true;
         this.alphaFallOff = alphaFallOff;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -595,7 +527,7 @@ public class RenderState implements Cloneable, Savable {
     public void setAlphaTest(boolean alphaTest) {
         applyAlphaTest = true;
         this.alphaTest = alphaTest;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -610,7 +542,7 @@ public class RenderState implements Cloneable, Savable {
     public void setColorWrite(boolean colorWrite) {
         applyColorWrite = true;
         this.colorWrite = colorWrite;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -628,7 +560,7 @@ public class RenderState implements Cloneable, Savable {
     public void setFaceCullMode(FaceCullMode cullMode) {
         applyCullMode = true;
         this.cullMode = cullMode;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -648,7 +580,7 @@ public class RenderState implements Cloneable, Savable {
     public void setBlendMode(BlendMode blendMode) {
         applyBlendMode = true;
         this.blendMode = blendMode;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -664,7 +596,7 @@ public class RenderState implements Cloneable, Savable {
     public void setDepthTest(boolean depthTest) {
         applyDepthTest = true;
         this.depthTest = depthTest;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -679,7 +611,7 @@ public class RenderState implements Cloneable, Savable {
     public void setDepthWrite(boolean depthWrite) {
         applyDepthWrite = true;
         this.depthWrite = depthWrite;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -694,7 +626,7 @@ public class RenderState implements Cloneable, Savable {
     public void setWireframe(boolean wireframe) {
         applyWireFrame = true;
         this.wireframe = wireframe;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -718,7 +650,7 @@ public class RenderState implements Cloneable, Savable {
             offsetFactor = factor;
             offsetUnits = units;
         }
-        cachedHashCode = -1;
+        invalidate();
     }    
 
     /**
@@ -767,7 +699,7 @@ public class RenderState implements Cloneable, Savable {
         this.backStencilDepthPassOperation = _backStencilDepthPassOperation;
         this.frontStencilFunction = _frontStencilFunction;
         this.backStencilFunction = _backStencilFunction;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -780,7 +712,7 @@ public class RenderState implements Cloneable, Savable {
     public void setDepthFunc(TestFunction depthFunc) {       
         applyDepthFunc = true;
         this.depthFunc = depthFunc;
-        cachedHashCode = -1;
+        invalidate();
     }
 
     /**
@@ -801,7 +733,7 @@ public class RenderState implements Cloneable, Savable {
     public void setAlphaFunc(TestFunction alphaFunc) {        
         applyAlphaFunc = true;
         this.alphaFunc = alphaFunc;
-        cachedHashCode = -1;
+        invalidate();
     }
     
     
@@ -1176,35 +1108,98 @@ public class RenderState implements Cloneable, Savable {
      */
     public int contentHashCode() {
         if (cachedHashCode == -1){
+            packedState = pack();
             int hash = 7;
-            hash = 79 * hash + (this.pointSprite ? 1 : 0);
-            hash = 79 * hash + (this.wireframe ? 1 : 0);
-            hash = 79 * hash + (this.cullMode != null ? this.cullMode.hashCode() : 0);
-            hash = 79 * hash + (this.depthWrite ? 1 : 0);
-            hash = 79 * hash + (this.depthTest ? 1 : 0);
-            hash = 79 * hash + (this.depthFunc != null ? this.depthFunc.hashCode() : 0);
-            hash = 79 * hash + (this.colorWrite ? 1 : 0);
-            hash = 79 * hash + (this.blendMode != null ? this.blendMode.hashCode() : 0);
-            hash = 79 * hash + (this.alphaTest ? 1 : 0);
-            hash = 79 * hash + (this.alphaFunc != null ? this.alphaFunc.hashCode() : 0);
+            hash = 79 * hash + (int) (packedState ^ (packedState >>> 32));
             hash = 79 * hash + Float.floatToIntBits(this.alphaFallOff);
             hash = 79 * hash + Float.floatToIntBits(this.offsetFactor);
             hash = 79 * hash + Float.floatToIntBits(this.offsetUnits);
-            hash = 79 * hash + (this.offsetEnabled ? 1 : 0);
-            hash = 79 * hash + (this.stencilTest ? 1 : 0);
-            hash = 79 * hash + (this.frontStencilStencilFailOperation != null ? this.frontStencilStencilFailOperation.hashCode() : 0);
-            hash = 79 * hash + (this.frontStencilDepthFailOperation != null ? this.frontStencilDepthFailOperation.hashCode() : 0);
-            hash = 79 * hash + (this.frontStencilDepthPassOperation != null ? this.frontStencilDepthPassOperation.hashCode() : 0);
-            hash = 79 * hash + (this.backStencilStencilFailOperation != null ? this.backStencilStencilFailOperation.hashCode() : 0);
-            hash = 79 * hash + (this.backStencilDepthFailOperation != null ? this.backStencilDepthFailOperation.hashCode() : 0);
-            hash = 79 * hash + (this.backStencilDepthPassOperation != null ? this.backStencilDepthPassOperation.hashCode() : 0);
-            hash = 79 * hash + (this.frontStencilFunction != null ? this.frontStencilFunction.hashCode() : 0);
-            hash = 79 * hash + (this.backStencilFunction != null ? this.backStencilFunction.hashCode() : 0);
-            cachedHashCode = hash;
+            cachedHashCode = hash != -1 ? hash : 0;
         }
         return cachedHashCode;
     }
 
+    /**
+     * Returns all the properties of this render state except the alpha fall
+     * off and the polygon offset factor and units, packed in a long.
+     * <p>
+     * Like in {@link #equals(java.lang.Object) }, the depth and alpha
+     * functions are only included when their test is enabled, and the
+     * stencil operations and functions when the stencil test is enabled.
+     * The value is cached along with the {@link #contentHashCode() }.
+     *
+     * @return the packed render state
+     */
+    public long getPackedState() {
+        contentHashCode();
+        return packedState;
+    }
+
+    /**
+     * Returns an 8 bit identifier of this render state, which render queue
+     * comparators use to group geometries rendered with equal states.
+     * Different render states may have the same identifier.
+     *
+     * @return the sort identifier, between 0 and 255
+     */
+    public int getSortId() {
+        int hash = contentHashCode();
+        hash ^= hash >>> 16;
+        hash ^= hash >>> 8;
+        return hash & 0xFF;
+    }
+
+    /**
+     * Returns a number which changes every time a property or an apply flag
+     * of this render state is changed with its setters.
+     *
+     * @return the version of this render state
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    void invalidate() {
+        cachedHashCode = -1;
+        version++;
+    }
+
+    private long pack() {
+        long bits = 0;
+        bits = pack(bits, pointSprite);
+        bits = pack(bits, wireframe);
+        bits = pack(bits, cullMode, 3);
+        bits = pack(bits, depthWrite);
+        bits = pack(bits, depthTest);
+        bits = pack(bits, depthTest ? depthFunc : null, 4);
+        bits = pack(bits, colorWrite);
+        bits = pack(bits, blendMode, 4);
+        bits = pack(bits, alphaTest);
+        bits = pack(bits, alphaTest ? alphaFunc : null, 4);
+        bits = pack(bits, offsetEnabled);
+        bits = pack(bits, stencilTest);
+        if (stencilTest) {
+            bits = pack(bits, frontStencilStencilFailOperation, 4);
+            bits = pack(bits, frontStencilDepthFailOperation, 4);
+            bits = pack(bits, frontStencilDepthPassOperation, 4);
+            bits = pack(bits, backStencilStencilFailOperation, 4);
+            bits = pack(bits, backStencilDepthFailOperation, 4);
+            bits = pack(bits, backStencilDepthPassOperation, 4);
+            bits = pack(bits, frontStencilFunction, 4);
+            bits = pack(bits, backStencilFunction, 4);
+        }
+        return bits;
+    }
+
+    private static long pack(long bits, boolean value) {
+        return (bits << 1) | (value ? 1 : 0);
+    }
+
+    private static long pack(long bits, Enum<?> value, int width) {
+        // 0 stands for null
+        return (bits << width) | (value != null ? value.ordinal() + 1 : 0);
+    }
+
     /**
      * Merges <code>this</code> state and <code>additionalState</code> into
      * the parameter <code>state</code> based on a specific criteria.
@@ -1324,7 +1319,7 @@ public class RenderState implements Cloneable, Savable {
             state.frontStencilFunction = frontStencilFunction;
             state.backStencilFunction = backStencilFunction;
         }
-        state.cachedHashCode = -1;
+        state.invalidate();
         return state;
     }
      public void set(RenderState state) {
@@ -1364,6 +1359,7 @@ public class RenderState implements Cloneable, Savable {
         applyPolyOffset =  true;
         applyDepthFunc =  true;
         applyAlphaFunc =  false;
+        invalidate();
     }
 
     @Override
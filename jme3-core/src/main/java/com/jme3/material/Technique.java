@@ -64,7 +64,7 @@ public class Technique /* implements Savable */ {
         this.owner = owner;
         this.def = def;
         this.worldBindUniforms = new ArrayList<Uniform>();
-        this.defines = new DefineList();
+        this.defines = def.createDefineList();
     }
 
     /**
@@ -113,20 +113,14 @@ public class Technique /* implements Savable */ {
     void notifyParamChanged(String paramName, VarType type, Object value) {
         // Check if there's a define binding associated with this
         // parameter.
-        String defineName = def.getShaderParamDefine(paramName);
-        if (defineName != null) {
-            // There is a define. Change it on the define list.
+        int defineId = def.getShaderParamDefineId(paramName);
+        if (defineId >= 0) {
+            // There is a define. Change it on the define list,
+            // a null value clears it.
             // The "needReload" variable will determine
             // if the shader will be reloaded when the material
             // is rendered.
-            
-            if (value == null) {
-                // Clear the define.
-                needReload = defines.remove(defineName) || needReload;
-            } else {
-                // Set the define.
-                needReload = defines.set(defineName, type, value) || needReload;
-            }
+            needReload = defines.set(defineId, type, value) || needReload;
         }
     }
 
@@ -176,10 +170,8 @@ public class Technique /* implements Savable */ {
                 needReload = true;
             }
             if (getDef().getLightMode() == TechniqueDef.LightMode.SinglePass) {
-                defines.set("SINGLE_PASS_LIGHTING", VarType.Boolean, true);
-                defines.set("NB_LIGHTS", VarType.Int, rm.getSinglePassLightBatchSize() * 3);
-            } else {
-                defines.set("SINGLE_PASS_LIGHTING", VarType.Boolean, null);
+                needReload = defines.set(def.getSinglePassLightingDefineId(), VarType.Boolean, true) || needReload;
+                needReload = defines.set(def.getNbLightsDefineId(), VarType.Int, rm.getSinglePassLightBatchSize() * 3) || needReload;
             }
         }
 
@@ -190,13 +182,20 @@ public class Technique /* implements Savable */ {
 
     private void loadShader(AssetManager manager,EnumSet<Caps> rendererCaps) {
         
-        ShaderKey key = new ShaderKey(getAllDefines(),def.getShaderProgramLanguages(),def.getShaderProgramNames());
-        
-        if (getDef().isUsingShaderNodes()) {                 
-           manager.getShaderGenerator(rendererCaps).initialize(this);           
-           key.setUsesShaderNodes(true);
-        }   
-        shader = manager.loadShader(key);
+        // Look up the shader by the define bits first, only build
+        // a shader key if these defines were not compiled yet
+        DefineList allDefines = getAllDefines();
+        shader = def.getCachedShader(allDefines);
+        if (shader == null) {
+            ShaderKey key = new ShaderKey(allDefines,def.getShaderProgramLanguages(),def.getShaderProgramNames());
+
+            if (getDef().isUsingShaderNodes()) {                 
+               manager.getShaderGenerator(rendererCaps).initialize(this);           
+               key.setUsesShaderNodes(true);
+            }   
+            shader = manager.loadShader(key);
+            def.cacheShader(allDefines, shader);
+        }
 
         // register the world bound uniforms
         worldBindUniforms.clear();
@@ -215,7 +214,7 @@ public class Technique /* implements Savable */ {
      * @return the complete define list
      */
     public DefineList getAllDefines() {
-        DefineList allDefines = new DefineList();
+        DefineList allDefines = def.createDefineList();
         allDefines.addFrom(def.getShaderPresetDefines());
         allDefines.addFrom(defines);
         return allDefines;
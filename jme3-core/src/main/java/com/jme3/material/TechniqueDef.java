@@ -36,6 +36,7 @@ import com.jme3.renderer.Caps;
 import com.jme3.shader.*;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.*;
 
 /**
@@ -109,7 +110,21 @@ public class TechniqueDef implements Savable {
     private LightMode lightMode   = LightMode.Disable;
     private ShadowMode shadowMode = ShadowMode.Disable;
 
-    private HashMap<String, String> defineParams;
+    // The define layout, define IDs are indices in these lists
+    private ArrayList<String> defineNames = new ArrayList<String>();
+    private ArrayList<VarType> defineTypes = new ArrayList<VarType>();
+    private HashMap<String, Integer> paramToDefineId;
+    private long[] paramDefineMask = new long[0];
+    private int singlePassLightingDefineId = -1;
+    private int nbLightsDefineId = -1;
+
+    // Bumped when the asset caches are cleared, see clearShaderCaches()
+    private static volatile int shaderCacheGeneration = 0;
+
+    // Weak so that the shaders can be unloaded with the asset cache
+    private final HashMap<DefineList, WeakReference<Shader>> definesToShaderMap = new HashMap<DefineList, WeakReference<Shader>>();
+    private int definesToShaderGeneration = 0;
+
     private ArrayList<UniformBinding> worldBinds;
 
     /**
@@ -161,6 +176,18 @@ public class TechniqueDef implements Savable {
      */
     public void setLightMode(LightMode lightMode) {
         this.lightMode = lightMode;
+        if (lightMode == LightMode.SinglePass) {
+            singlePassLightingDefineId = addShaderUnmappedDefine("SINGLE_PASS_LIGHTING", VarType.Boolean);
+            nbLightsDefineId = addShaderUnmappedDefine("NB_LIGHTS", VarType.Int);
+        }
+    }
+
+    int getSinglePassLightingDefineId() {
+        return singlePassLightingDefineId;
+    }
+
+    int getNbLightsDefineId() {
+        return nbLightsDefineId;
     }
 
     /**
@@ -310,10 +337,34 @@ public class TechniqueDef implements Savable {
      * @see #addShaderParamDefine(java.lang.String, java.lang.String)
      */
     public String getShaderParamDefine(String paramName){
-        if (defineParams == null) {
-            return null;
+        int id = getShaderParamDefineId(paramName);
+        return id < 0 ? null : defineNames.get(id);
+    }
+
+    /**
+     * Returns the ID of the define which the given material parameter
+     * influences.
+     *
+     * @param paramName The parameter name to look up
+     * @return The define ID, or -1 if the parameter has no define
+     */
+    public int getShaderParamDefineId(String paramName){
+        if (paramToDefineId == null) {
+            return -1;
         }
-        return defineParams.get(paramName);
+        Integer id = paramToDefineId.get(paramName);
+        return id == null ? -1 : id.intValue();
+    }
+
+    /**
+     * Returns a bit set of the IDs of the defines linked to material
+     * parameters, 64 IDs per <code>long</code>. The array must not be
+     * modified.
+     *
+     * @return the bit set of parameter define IDs
+     */
+    public long[] getShaderParamDefineMask() {
+        return paramDefineMask;
     }
 
     /**
@@ -329,10 +380,132 @@ public class TechniqueDef implements Savable {
      * @param defineName The name of the define parameter, e.g. USE_LIGHTING
      */
     public void addShaderParamDefine(String paramName, String defineName){
-        if (defineParams == null) {
-            defineParams = new HashMap<String, String>();
+        addShaderParamDefine(paramName, null, defineName);
+    }
+
+    /**
+     * Adds a define linked to a material parameter of the given type.
+     *
+     * @param paramName The name of the material parameter to link to.
+     * @param paramType The type of the material parameter, or null if not
+     * known
+     * @param defineName The name of the define parameter, e.g. USE_LIGHTING
+     *
+     * @see #addShaderParamDefine(java.lang.String, java.lang.String)
+     */
+    public void addShaderParamDefine(String paramName, VarType paramType, String defineName){
+        if (paramToDefineId == null) {
+            paramToDefineId = new HashMap<String, Integer>();
+        }
+        int id = addShaderUnmappedDefine(defineName, paramType);
+        paramToDefineId.put(paramName, id);
+        if ((id >>> 6) >= paramDefineMask.length) {
+            paramDefineMask = Arrays.copyOf(paramDefineMask, (id >>> 6) + 1);
         }
-        defineParams.put(paramName, defineName);
+        paramDefineMask[id >>> 6] |= 1L << id;
+    }
+
+    /**
+     * Adds a define to the layout of this technique without linking it to
+     * a material parameter, and returns its ID. If the define already
+     * exists, its ID is returned.
+     *
+     * @param defineName The name of the define
+     * @param defineType The type of the define, or null if not known
+     * @return The ID of the define
+     */
+    public int addShaderUnmappedDefine(String defineName, VarType defineType){
+        int id = defineNames.indexOf(defineName);
+        if (id < 0) {
+            id = defineNames.size();
+            defineNames.add(defineName);
+            defineTypes.add(defineType);
+        } else if (defineTypes.get(id) == null) {
+            defineTypes.set(id, defineType);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the names of the defines of this technique, indexed by
+     * define ID. The list must not be modified.
+     *
+     * @return the define names
+     */
+    public List<String> getDefineNames() {
+        return defineNames;
+    }
+
+    /**
+     * Returns the types of the defines of this technique, indexed by
+     * define ID. The list must not be modified.
+     *
+     * @return the define types
+     */
+    public List<VarType> getDefineTypes() {
+        return defineTypes;
+    }
+
+    /**
+     * Creates an empty {@link DefineList} using the define IDs of this
+     * technique.
+     *
+     * @return a new define list
+     */
+    public DefineList createDefineList() {
+        return new DefineList(defineNames, defineTypes);
+    }
+
+    /**
+     * Returns the shader compiled for the given defines by a previous
+     * call to {@link #cacheShader(com.jme3.shader.DefineList, com.jme3.shader.Shader) }.
+     *
+     * @param defines The defines, created with {@link #createDefineList() }
+     * @return The shader, or null if none was cached
+     */
+    public Shader getCachedShader(DefineList defines) {
+        synchronized (definesToShaderMap) {
+            checkShaderCacheGeneration();
+            WeakReference<Shader> ref = definesToShaderMap.get(defines);
+            if (ref == null) {
+                return null;
+            }
+            Shader shader = ref.get();
+            if (shader == null) {
+                definesToShaderMap.remove(defines);
+            }
+            return shader;
+        }
+    }
+
+    /**
+     * Caches the shader compiled for the given defines.
+     *
+     * @param defines The defines, must not be modified afterwards
+     * @param shader The shader
+     */
+    public void cacheShader(DefineList defines, Shader shader) {
+        synchronized (definesToShaderMap) {
+            checkShaderCacheGeneration();
+            definesToShaderMap.put(defines, new WeakReference<Shader>(shader));
+        }
+    }
+
+    private void checkShaderCacheGeneration() {
+        int generation = shaderCacheGeneration;
+        if (definesToShaderGeneration != generation) {
+            definesToShaderMap.clear();
+            definesToShaderGeneration = generation;
+        }
+    }
+
+    /**
+     * Forgets the shaders cached by all technique definitions, so that
+     * they are loaded from the asset manager again the next time their
+     * defines change. Called when the asset caches are cleared.
+     */
+    public static void clearShaderCaches() {
+        shaderCacheGeneration++;
     }
 
     /**
@@ -360,10 +533,11 @@ public class TechniqueDef implements Savable {
      * @param value The value of the define
      */
     public void addShaderPresetDefine(String defineName, VarType type, Object value){
+        int id = addShaderUnmappedDefine(defineName, type);
         if (presetDefines == null) {
-            presetDefines = new DefineList();
+            presetDefines = createDefineList();
         }
-        presetDefines.set(defineName, type, value);
+        presetDefines.set(id, type, value);
     }
 
     /**
@@ -490,8 +664,19 @@ public class TechniqueDef implements Savable {
         shaderNames.put(Shader.ShaderType.Geometry,ic.readString("geomName", null));
         shaderNames.put(Shader.ShaderType.TessellationControl,ic.readString("tsctrlName", null));
         shaderNames.put(Shader.ShaderType.TessellationEvaluation,ic.readString("tsevalName", null));
-        presetDefines = (DefineList) ic.readSavable("presetDefines", null);
-        lightMode = ic.readEnum("lightMode", LightMode.class, LightMode.Disable);
+        DefineList savedDefines = (DefineList) ic.readSavable("presetDefines", null);
+        if (savedDefines != null) {
+            // Register the defines in the layout of this technique before
+            // moving them, so that the layout does not grow when rendering
+            for (String defineName : savedDefines.getDefineNames()) {
+                if (savedDefines.get(defineName) != null) {
+                    addShaderUnmappedDefine(defineName, null);
+                }
+            }
+            presetDefines = createDefineList();
+            presetDefines.addFrom(savedDefines);
+        }
+        setLightMode(ic.readEnum("lightMode", LightMode.class, LightMode.Disable));
         shadowMode = ic.readEnum("shadowMode", ShadowMode.class, ShadowMode.Disable);
         renderState = (RenderState) ic.readSavable("renderState", null);
         noRender = ic.readBoolean("noRender", false);
@@ -550,6 +735,6 @@ public class TechniqueDef implements Savable {
     //todo: make toString return something usefull
     @Override
     public String toString() {
-        return "TechniqueDef{" + "requiredCaps=" + requiredCaps + ", name=" + name /*+ ", vertName=" + vertName + ", fragName=" + fragName + ", vertLanguage=" + vertLanguage + ", fragLanguage=" + fragLanguage */+ ", presetDefines=" + presetDefines + ", usesNodes=" + usesNodes + ", shaderNodes=" + shaderNodes + ", shaderGenerationInfo=" + shaderGenerationInfo + ", renderState=" + renderState + ", forcedRenderState=" + forcedRenderState + ", lightMode=" + lightMode + ", shadowMode=" + shadowMode + ", defineParams=" + defineParams + ", worldBinds=" + worldBinds + ", noRender=" + noRender + '}';
+        return "TechniqueDef{" + "requiredCaps=" + requiredCaps + ", name=" + name /*+ ", vertName=" + vertName + ", fragName=" + fragName + ", vertLanguage=" + vertLanguage + ", fragLanguage=" + fragLanguage */+ ", presetDefines=" + presetDefines + ", usesNodes=" + usesNodes + ", shaderNodes=" + shaderNodes + ", shaderGenerationInfo=" + shaderGenerationInfo + ", renderState=" + renderState + ", forcedRenderState=" + forcedRenderState + ", lightMode=" + lightMode + ", shadowMode=" + shadowMode + ", defineNames=" + defineNames + ", worldBinds=" + worldBinds + ", noRender=" + noRender + '}';
     }
 }
@@ -34,6 +34,7 @@ package com.jme3.post;
 import com.jme3.asset.AssetManager;
 import com.jme3.export.*;
 import com.jme3.material.Material;
+import com.jme3.profile.FrameProfiler;
 import com.jme3.renderer.*;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.texture.FrameBuffer;
@@ -245,6 +246,7 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
         for (int i = 0; i < filters.size(); i++) {
             Filter filter = filters.get(i);
             if (filter.isEnabled()) {
+                FrameProfiler.beginGpuScope(filter.getName());
                 if (filter.getPostRenderPasses() != null) {
                     for (Iterator<Filter.Pass> it1 = filter.getPostRenderPasses().iterator(); it1.hasNext();) {
                         Filter.Pass pass = it1.next();
@@ -305,6 +307,7 @@ public class FilterPostProcessor implements SceneProcessor, Savable {
                     tex.setMagFilter(Texture.MagFilter.Nearest);
                     tex.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
                 }
+                FrameProfiler.endScope();
             }
         }
     }
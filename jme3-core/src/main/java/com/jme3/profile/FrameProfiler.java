@@ -0,0 +1,641 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.profile;
+
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.Renderer;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ *  An AppProfiler implementation that records nested timing
+ *  scopes for the last frames, and exports them in the Chrome
+ *  trace event format, which can be opened in chrome://tracing
+ *  or other trace viewers.
+ *
+ *  <p>The application and viewport steps are recorded as scopes
+ *  of their own.  Engine code adds nested scopes for the app states,
+ *  the controls, the render queue sorting, the filters and the shadow
+ *  passes through {@link #beginScope(java.lang.Object) } and
+ *  {@link #endScope() }, which do nothing unless a FrameProfiler
+ *  is recording a frame on the calling thread.  Frames are delimited
+ *  by the {@link AppStep#BeginFrame} and {@link AppStep#EndFrame} steps,
+ *  as sent by SimpleApplication.</p>
+ *
+ *  <p>When a renderer supporting {@link Caps#TimerQuery} is set, the
+ *  rendering scopes also record GPU timestamps, which are read back
+ *  when they become available, a few frames later.</p>
+ *
+ *  <p>Only the last frames are kept, in a ring buffer, so that the
+ *  profiler can stay attached and a trace can be exported after a
+ *  hitch happened.</p>
+ */
+public class FrameProfiler implements AppProfiler {
+
+    private static final String FRAME = "Frame";
+
+    private static FrameProfiler current;
+
+    private final Frame[] frames;
+    private int frameIndex = -1;
+    private int frameNumber = 0;
+    private int recordedFrames = 0;
+    private Frame frame;
+    private Thread thread;
+
+    private int maxScopes = 4096;
+    private int[] stack = new int[32];
+    private boolean[] implicit = new boolean[32];
+    private int stackSize = 0;
+    private int explicitCount = 0;
+    private int viewPortDepth = -1;
+    private int bucketDepth = -1;
+
+    private Renderer renderer;
+    private int maxGpuQueries = 256;
+
+    /**
+     * A recorded frame.  The scopes are stored in the order they begin,
+     * each one with its nesting depth.
+     */
+    private static final class Frame {
+        int number;
+        int size;
+        Object[] names = new Object[64];
+        int[] depths = new int[64];
+        long[] starts = new long[64];
+        long[] ends = new long[64];
+        int[] gpuQueries = new int[64];
+        long[] gpuStarts = new long[64];
+        long[] gpuEnds = new long[64];
+        int[] queries;
+        int queryCount;
+        boolean gpuPending;
+
+        void ensureCapacity(int capacity) {
+            if (capacity <= names.length) {
+                return;
+            }
+            int newSize = Math.max(capacity, names.length * 2);
+            Object[] newNames = new Object[newSize];
+            System.arraycopy(names, 0, newNames, 0, size);
+            names = newNames;
+            depths = copyOf(depths, newSize, size);
+            starts = copyOf(starts, newSize, size);
+            ends = copyOf(ends, newSize, size);
+            gpuQueries = copyOf(gpuQueries, newSize, size);
+            gpuStarts = copyOf(gpuStarts, newSize, size);
+            gpuEnds = copyOf(gpuEnds, newSize, size);
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                names[i] = null;
+            }
+            size = 0;
+            queryCount = 0;
+            gpuPending = false;
+        }
+    }
+
+    public FrameProfiler() {
+        this(300);
+    }
+
+    /**
+     *  Creates a profiler keeping the given number of frames.
+     */
+    public FrameProfiler( int frameCount ) {
+        if( frameCount <= 0 ) {
+            throw new IllegalArgumentException("frameCount must be positive");
+        }
+        this.frames = new Frame[frameCount];
+    }
+
+    /**
+     *  Returns the number of frames kept by this profiler.
+     */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     *  Returns the number of frames currently recorded, at most
+     *  {@link #getFrameCount() }.
+     */
+    public int getRecordedFrameCount() {
+        return recordedFrames;
+    }
+
+    /**
+     *  Sets the maximum number of scopes recorded per frame, 4096 by
+     *  default.  The scopes beginning after that number is reached are
+     *  not recorded.
+     */
+    public void setMaxScopes( int maxScopes ) {
+        this.maxScopes = maxScopes;
+    }
+
+    public int getMaxScopes() {
+        return maxScopes;
+    }
+
+    /**
+     *  Sets the renderer used to record GPU timestamps.  If the renderer
+     *  does not support {@link Caps#TimerQuery}, or is null, only the CPU
+     *  times are recorded.  Must be called from the rendering thread.
+     */
+    public void setRenderer( Renderer renderer ) {
+        if( renderer != null && !renderer.getCaps().contains(Caps.TimerQuery) ) {
+            renderer = null;
+        }
+        if( this.renderer == renderer ) {
+            return;
+        }
+        if( this.renderer != null ) {
+            for( Frame f : frames ) {
+                if( f != null && f.queries != null ) {
+                    resolveGpu(f, true);
+                    this.renderer.deleteTimestampQueries(f.queries);
+                    f.queries = null;
+                }
+            }
+        }
+        this.renderer = renderer;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     *  Sets the maximum number of GPU timestamps recorded per frame, 256 by
+     *  default.  Each GPU scope uses two timestamps.
+     */
+    public void setMaxGpuQueries( int maxGpuQueries ) {
+        if( renderer != null ) {
+            throw new IllegalStateException("Cannot change the number of queries while a renderer is set");
+        }
+        this.maxGpuQueries = maxGpuQueries;
+    }
+
+    public int getMaxGpuQueries() {
+        return maxGpuQueries;
+    }
+
+    /**
+     *  Returns the duration in nanoseconds of the last recorded frame,
+     *  or 0 if no frame was recorded.
+     */
+    public long getLastFrameTime() {
+        if( recordedFrames == 0 ) {
+            return 0;
+        }
+        Frame last = frames[frameIndex];
+        if( last == frame ) {
+            if( recordedFrames == 1 ) {
+                return 0;
+            }
+            last = frames[(frameIndex + frames.length - 1) % frames.length];
+        }
+        return last.ends[0] - last.starts[0];
+    }
+
+    /**
+     *  Ends the frame in progress, if any, and releases the GPU queries of
+     *  the renderer.  The recorded frames are kept and can still be
+     *  exported.  Called by the Application when the profiler is replaced
+     *  or the application is destroyed.  Must be called from the rendering
+     *  thread.
+     */
+    public void cleanup() {
+        if( frame != null ) {
+            endFrame();
+        }
+        if( current == this ) {
+            current = null;
+        }
+        setRenderer(null);
+    }
+
+    /**
+     *  Forgets all the recorded frames.
+     */
+    public void clear() {
+        for( Frame f : frames ) {
+            if( f != null && f != frame ) {
+                resolveGpu(f, true);
+                f.clear();
+            }
+        }
+        recordedFrames = frame != null ? 1 : 0;
+    }
+
+    @Override
+    public void appStep( AppStep step ) {
+        if( step == AppStep.BeginFrame ) {
+            beginFrame();
+            return;
+        }
+        if( frame == null || thread != Thread.currentThread() ) {
+            return;
+        }
+        if( step == AppStep.EndFrame ) {
+            endFrame();
+            return;
+        }
+        closeTo(1);
+        push(step, true, isRenderStep(step));
+    }
+
+    @Override
+    public void vpStep( VpStep step, ViewPort vp, Bucket bucket ) {
+        if( frame == null || thread != Thread.currentThread() ) {
+            return;
+        }
+        switch( step ) {
+            case BeginRender:
+                viewPortDepth = stackSize;
+                push(vp.getName(), true, true);
+                break;
+            case EndRender:
+                if( viewPortDepth >= 0 ) {
+                    closeTo(viewPortDepth);
+                }
+                break;
+            case RenderBucket:
+                // Buckets have no end step, they end with the next step
+                // or the next bucket
+                if( bucketDepth >= 0 && bucketDepth == stackSize - 1 ) {
+                    pop();
+                }
+                push(bucket, true, true);
+                bucketDepth = stackSize - 1;
+                break;
+            default:
+                if( viewPortDepth >= 0 ) {
+                    closeTo(viewPortDepth + 1);
+                    push(step, true, true);
+                }
+                break;
+        }
+    }
+
+    private static boolean isRenderStep( AppStep step ) {
+        switch( step ) {
+            case RenderFrame:
+            case RenderPreviewViewPorts:
+            case RenderMainViewPorts:
+            case RenderPostViewPorts:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     *  Begins a scope in the frame recorded by this profiler.  Scopes
+     *  begun outside of a frame, or from another thread than the one
+     *  which began the frame, are ignored.
+     *
+     *  @param name The name of the scope, a class is named after its
+     *              simple name, other objects after their toString()
+     *  @param gpu True to also record the GPU time of the scope
+     */
+    public void begin( Object name, boolean gpu ) {
+        if( frame == null || thread != Thread.currentThread() ) {
+            return;
+        }
+        push(name, false, gpu);
+        explicitCount++;
+    }
+
+    /**
+     *  Ends the last scope begun with {@link #begin(java.lang.Object, boolean) }.
+     */
+    public void end() {
+        if( frame == null || explicitCount == 0 || thread != Thread.currentThread() ) {
+            return;
+        }
+        // the steps begun inside the scope end with it
+        while( implicit[stackSize - 1] ) {
+            pop();
+        }
+        pop();
+    }
+
+    /**
+     *  Begins a CPU scope in the frame currently recorded on this thread,
+     *  if any.
+     */
+    public static void beginScope( Object name ) {
+        FrameProfiler p = current;
+        if( p != null ) {
+            p.begin(name, false);
+        }
+    }
+
+    /**
+     *  Begins a scope also timed on the GPU in the frame currently recorded
+     *  on this thread, if any.
+     */
+    public static void beginGpuScope( Object name ) {
+        FrameProfiler p = current;
+        if( p != null ) {
+            p.begin(name, true);
+        }
+    }
+
+    /**
+     *  Ends the last scope begun with {@link #beginScope(java.lang.Object) }
+     *  or {@link #beginGpuScope(java.lang.Object) }.
+     */
+    public static void endScope() {
+        FrameProfiler p = current;
+        if( p != null ) {
+            p.end();
+        }
+    }
+
+    private void beginFrame() {
+        if( frame != null ) {
+            endFrame();
+        }
+        current = this;
+        thread = Thread.currentThread();
+
+        // Read back the GPU times of the previous frames when ready
+        if( renderer != null ) {
+            for( int i = 2; i < Math.min(recordedFrames, 5); i++ ) {
+                Frame f = frames[(frameIndex - i + frames.length) % frames.length];
+                if( f.gpuPending ) {
+                    resolveGpu(f, false);
+                }
+            }
+        }
+
+        frameIndex = (frameIndex + 1) % frames.length;
+        Frame f = frames[frameIndex];
+        if( f == null ) {
+            f = frames[frameIndex] = new Frame();
+        } else {
+            resolveGpu(f, true);
+            f.clear();
+        }
+        f.number = frameNumber++;
+        frame = f;
+        if( recordedFrames < frames.length ) {
+            recordedFrames++;
+        }
+        push(FRAME, true, true);
+    }
+
+    private void endFrame() {
+        closeTo(0);
+        frame.gpuPending = frame.queryCount > 0;
+        frame = null;
+        if( current == this ) {
+            current = null;
+        }
+    }
+
+    private void push( Object name, boolean implicitScope, boolean gpu ) {
+        if( stackSize == stack.length ) {
+            stack = copyOf(stack, stackSize * 2, stackSize);
+            boolean[] newImplicit = new boolean[stackSize * 2];
+            System.arraycopy(implicit, 0, newImplicit, 0, stackSize);
+            implicit = newImplicit;
+        }
+        Frame f = frame;
+        int index = -1;
+        if( f.size < maxScopes ) {
+            index = f.size++;
+            f.ensureCapacity(f.size);
+            f.names[index] = name;
+            f.depths[index] = stackSize;
+            f.ends[index] = 0;
+            f.gpuQueries[index] = -1;
+            if( gpu && renderer != null && f.queryCount + 2 <= maxGpuQueries ) {
+                if( f.queries == null ) {
+                    f.queries = renderer.generateTimestampQueries(maxGpuQueries);
+                }
+                f.gpuQueries[index] = f.queryCount;
+                renderer.recordTimestamp(f.queries[f.queryCount]);
+                f.queryCount += 2;
+            }
+            f.starts[index] = System.nanoTime();
+        }
+        stack[stackSize] = index;
+        implicit[stackSize] = implicitScope;
+        stackSize++;
+    }
+
+    private void pop() {
+        stackSize--;
+        if( stackSize == bucketDepth ) {
+            bucketDepth = -1;
+        }
+        if( stackSize == viewPortDepth ) {
+            viewPortDepth = -1;
+        }
+        if( !implicit[stackSize] ) {
+            explicitCount--;
+        }
+        int index = stack[stackSize];
+        if( index < 0 ) {
+            return;
+        }
+        Frame f = frame;
+        f.ends[index] = System.nanoTime();
+        if( f.gpuQueries[index] >= 0 ) {
+            renderer.recordTimestamp(f.queries[f.gpuQueries[index] + 1]);
+        }
+    }
+
+    private void closeTo( int depth ) {
+        while( stackSize > depth ) {
+            pop();
+        }
+    }
+
+    /**
+     *  Reads back the GPU times of a frame.  If wait is false, nothing is
+     *  read unless all the times are available.
+     */
+    private void resolveGpu( Frame f, boolean wait ) {
+        if( !f.gpuPending || renderer == null ) {
+            return;
+        }
+        if( !wait ) {
+            for( int i = 0; i < f.queryCount; i++ ) {
+                if( !renderer.isTimestampAvailable(f.queries[i]) ) {
+                    return;
+                }
+            }
+        }
+        for( int i = 0; i < f.size; i++ ) {
+            int query = f.gpuQueries[i];
+            if( query >= 0 ) {
+                f.gpuStarts[i] = renderer.getTimestamp(f.queries[query]);
+                f.gpuEnds[i] = renderer.getTimestamp(f.queries[query + 1]);
+            }
+        }
+        f.gpuPending = false;
+    }
+
+    /**
+     *  Writes the recorded frames to a file in the Chrome trace
+     *  event format.
+     */
+    public void exportChromeTrace( File file ) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            exportChromeTrace(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     *  Writes the recorded frames in the Chrome trace event format.
+     *  The CPU scopes are on thread 1, the GPU scopes on thread 2.  The
+     *  GPU clock is aligned with the CPU one at the beginning of each
+     *  frame.  GPU times which are not available yet are left out.
+     *  Must be called from the rendering thread when a renderer is set.
+     */
+    public void exportChromeTrace( Writer out ) throws IOException {
+        out.write("{\"traceEvents\":[\n");
+        out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"CPU\"}},\n");
+        out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":2,\"args\":{\"name\":\"GPU\"}}");
+
+        int first = (frameIndex - recordedFrames + 1 + frames.length) % frames.length;
+        long origin = -1;
+        StringBuilder sb = new StringBuilder();
+        for( int n = 0; n < recordedFrames; n++ ) {
+            Frame f = frames[(first + n) % frames.length];
+            if( f == frame || f.size == 0 ) {
+                // still being recorded
+                continue;
+            }
+            resolveGpu(f, false);
+            if( origin < 0 ) {
+                origin = f.starts[0];
+            }
+            long gpuOffset = 0;
+            boolean gpuAligned = false;
+            for( int i = 0; i < f.size; i++ ) {
+                String name = nameOf(f.names[i]);
+                writeEvent(out, sb, name, "cpu", 1, f.starts[i] - origin, f.ends[i] - f.starts[i], f.number);
+                if( f.gpuQueries[i] >= 0 && !f.gpuPending ) {
+                    if( !gpuAligned ) {
+                        gpuOffset = f.starts[i] - origin - f.gpuStarts[i];
+                        gpuAligned = true;
+                    }
+                    writeEvent(out, sb, name, "gpu", 2, f.gpuStarts[i] + gpuOffset, f.gpuEnds[i] - f.gpuStarts[i], f.number);
+                }
+            }
+        }
+        out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        out.flush();
+    }
+
+    private static void writeEvent( Writer out, StringBuilder sb, String name, String category,
+                                    int tid, long start, long duration, int frameNumber ) throws IOException {
+        sb.setLength(0);
+        sb.append(",\n{\"name\":\"");
+        escape(sb, name);
+        sb.append("\",\"cat\":\"").append(category);
+        sb.append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(tid);
+        sb.append(",\"ts\":");
+        appendMicros(sb, start);
+        sb.append(",\"dur\":");
+        appendMicros(sb, Math.max(duration, 0));
+        sb.append(",\"args\":{\"frame\":").append(frameNumber).append("}}");
+        out.append(sb);
+    }
+
+    private static void appendMicros( StringBuilder sb, long nanos ) {
+        if( nanos < 0 ) {
+            sb.append('-');
+            nanos = -nanos;
+        }
+        sb.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if( fraction < 100 ) {
+            sb.append('0');
+        }
+        if( fraction < 10 ) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    private static void escape( StringBuilder sb, String s ) {
+        for( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt(i);
+            if( c == '"' || c == '\\' ) {
+                sb.append('\\').append(c);
+            } else if( c < 0x20 ) {
+                sb.append(String.format("\\u%04x", (int)c));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static String nameOf( Object name ) {
+        if( name instanceof Class ) {
+            Class<?> type = (Class<?>)name;
+            String simpleName = type.getSimpleName();
+            return simpleName.length() > 0 ? simpleName : type.getName();
+        }
+        return String.valueOf(name);
+    }
+
+    private static int[] copyOf( int[] array, int newSize, int size ) {
+        int[] result = new int[newSize];
+        System.arraycopy(array, 0, result, 0, size);
+        return result;
+    }
+
+    private static long[] copyOf( long[] array, int newSize, int size ) {
+        long[] result = new long[newSize];
+        System.arraycopy(array, 0, result, 0, size);
+        return result;
+    }
+}
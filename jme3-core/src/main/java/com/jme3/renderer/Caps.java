@@ -349,7 +349,22 @@ public enum Caps {
     /**
      * GPU can provide and accept binary shaders.
      */
-    BinaryShader;
+    BinaryShader,
+
+    /**
+     * Supports uniform buffer objects.
+     * <p>
+     * The per-frame uniform bindings of GLSL 1.50+ shaders are then
+     * read from a {@link com.jme3.shader.FrameUniformBlock}.
+     */
+    UniformBufferObject,
+
+    /**
+     * Supports GPU timestamp queries.
+     * <p>
+     * See {@link Renderer#generateTimestampQueries(int)}.
+     */
+    TimerQuery;
 
     /**
      * Returns true if given the renderer capabilities, the texture
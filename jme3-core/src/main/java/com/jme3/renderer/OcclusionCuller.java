@@ -0,0 +1,491 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <code>OcclusionCuller</code> culls geometries hidden behind occluders
+ * on the CPU, without any GPU queries.
+ * <p>
+ * Every frame, the meshes of the {@link #addOccluder(com.jme3.scene.Geometry) occluders}
+ * are rasterized into a low resolution depth buffer. The bounding boxes
+ * of the other geometries are then projected onto the screen and tested
+ * against it by the {@link RenderManager}, geometries whose bounds are
+ * behind the occluders at every pixel they cover are not added to the
+ * render queue.
+ * <p>
+ * Occluders should be large, closed and low poly meshes, such as
+ * simplified versions of buildings or terrain. They do not need to be
+ * attached to the scene, but their world transforms must be up to date.
+ * <p>
+ * The depth buffer is split into tiles of 8x8 pixels that are stored
+ * contiguously, together with the farthest depth of each tile, so that
+ * most tests only read the tile depths.
+ * <p>
+ * An occlusion culler is set on a {@link ViewPort} with
+ * {@link ViewPort#setOcclusionCuller(com.jme3.renderer.OcclusionCuller) }.
+ * The number of tested and culled geometries and the time spent
+ * rasterizing the occluders are reported to the {@link Statistics} of
+ * the renderer.
+ */
+public class OcclusionCuller {
+
+    /**
+     * The width and height of a tile, in pixels.
+     */
+    public static final int TILE_SIZE = 8;
+
+    private static final int TILE_SHIFT = 3;
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final float[] depth;
+    private final float[] tileMaxDepth;
+
+    private final ArrayList<Geometry> occluders = new ArrayList<Geometry>();
+    private final Set<Geometry> occluderSet = Collections.newSetFromMap(new IdentityHashMap<Geometry, Boolean>());
+
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f worldViewProjection = new Matrix4f();
+    private float[] clipVerts = new float[64 * 4];
+    private final float[] polygon = new float[4 * 4];
+    private final float[] triangle = new float[3 * 4];
+    private boolean ready;
+    private long rasterTime;
+
+    /**
+     * Creates an occlusion culler with a 256x128 depth buffer.
+     */
+    public OcclusionCuller() {
+        this(256, 128);
+    }
+
+    /**
+     * Creates an occlusion culler.
+     *
+     * @param width The width of the depth buffer, rounded up to a multiple
+     * of {@link #TILE_SIZE}
+     * @param height The height of the depth buffer, rounded up to a multiple
+     * of {@link #TILE_SIZE}
+     */
+    public OcclusionCuller(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The depth buffer size must be positive");
+        }
+        this.tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        this.tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        this.width = tilesX << TILE_SHIFT;
+        this.height = tilesY << TILE_SHIFT;
+        this.depth = new float[this.width * this.height];
+        this.tileMaxDepth = new float[tilesX * tilesY];
+    }
+
+    /**
+     * @return The width of the depth buffer in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the depth buffer in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Adds an occluder. Occluders are not tested for occlusion themselves.
+     *
+     * @param occluder The geometry to rasterize into the depth buffer
+     */
+    public void addOccluder(Geometry occluder) {
+        if (occluderSet.add(occluder)) {
+            occluders.add(occluder);
+        }
+    }
+
+    /**
+     * Removes an occluder.
+     *
+     * @param occluder The geometry to remove
+     */
+    public void removeOccluder(Geometry occluder) {
+        if (occluderSet.remove(occluder)) {
+            occluders.remove(occluder);
+        }
+    }
+
+    /**
+     * @return The occluders, the list must not be modified.
+     */
+    public List<Geometry> getOccluders() {
+        return Collections.unmodifiableList(occluders);
+    }
+
+    /**
+     * @param geom The geometry to check
+     * @return True if the geometry is an occluder
+     */
+    public boolean isOccluder(Geometry geom) {
+        return occluderSet.contains(geom);
+    }
+
+    /**
+     * @return The time taken by the last call to
+     * {@link #rasterizeOccluders(com.jme3.renderer.Camera) } in nanoseconds.
+     */
+    public long getRasterTime() {
+        return rasterTime;
+    }
+
+    /**
+     * Returns the depth stored at a pixel of the depth buffer, as a
+     * normalized device coordinate between -1 (near) and 1 (far).
+     *
+     * @param x The column of the pixel, starting from the left
+     * @param y The row of the pixel, starting from the bottom
+     * @return The depth, or {@link Float#POSITIVE_INFINITY} if no occluder
+     * covers the pixel.
+     */
+    public float getDepth(int x, int y) {
+        return depth[pixelIndex(x, y)];
+    }
+
+    private int pixelIndex(int x, int y) {
+        int tile = (y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT);
+        return (tile << (2 * TILE_SHIFT)) + ((y & (TILE_SIZE - 1)) << TILE_SHIFT) + (x & (TILE_SIZE - 1));
+    }
+
+    /**
+     * Clears the depth buffer and rasterizes the occluders in the frustum
+     * of the camera into it. This is called by the {@link RenderManager}
+     * before the scenes of the viewport are culled.
+     *
+     * @param cam The camera to rasterize the occluders with
+     */
+    public void rasterizeOccluders(Camera cam) {
+        long start = System.nanoTime();
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+        viewProjection.set(cam.getViewProjectionMatrix());
+
+        int planeState = cam.getPlaneState();
+        for (int i = 0; i < occluders.size(); i++) {
+            Geometry occluder = occluders.get(i);
+            cam.setPlaneState(0);
+            if (occluder.getMesh() == null
+                    || cam.contains(occluder.getWorldBound()) == Camera.FrustumIntersect.Outside) {
+                continue;
+            }
+            viewProjection.mult(occluder.getWorldMatrix(), worldViewProjection);
+            rasterizeMesh(occluder.getMesh(), worldViewProjection);
+        }
+        cam.setPlaneState(planeState);
+
+        for (int tile = 0; tile < tileMaxDepth.length; tile++) {
+            int base = tile << (2 * TILE_SHIFT);
+            float max = depth[base];
+            for (int i = 1; i < TILE_PIXELS; i++) {
+                max = Math.max(max, depth[base + i]);
+            }
+            tileMaxDepth[tile] = max;
+        }
+        ready = true;
+        rasterTime = System.nanoTime() - start;
+    }
+
+    private void rasterizeMesh(Mesh mesh, Matrix4f m) {
+        switch (mesh.getMode()) {
+            case Triangles:
+            case TriangleStrip:
+            case TriangleFan:
+                break;
+            default:
+                return;
+        }
+        VertexBuffer posBuf = mesh.getBuffer(VertexBuffer.Type.Position);
+        if (posBuf == null || posBuf.getNumComponents() != 3
+                || !(posBuf.getData() instanceof FloatBuffer)) {
+            return;
+        }
+
+        // Transform all vertices to clip space once
+        FloatBuffer positions = (FloatBuffer) posBuf.getData();
+        int vertexCount = mesh.getVertexCount();
+        if (clipVerts.length < vertexCount * 4) {
+            clipVerts = new float[vertexCount * 4];
+        }
+        float[] cv = clipVerts;
+        for (int i = 0; i < vertexCount; i++) {
+            float x = positions.get(i * 3);
+            float y = positions.get(i * 3 + 1);
+            float z = positions.get(i * 3 + 2);
+            cv[i * 4] = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+            cv[i * 4 + 1] = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+            cv[i * 4 + 2] = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+            cv[i * 4 + 3] = m.m30 * x + m.m31 * y + m.m32 * z + m.m33;
+        }
+
+        IndexBuffer indices = mesh.getIndicesAsList();
+        int count = indices.size() - indices.size() % 3;
+        for (int i = 0; i < count; i += 3) {
+            clipTriangle(cv, indices.get(i) * 4, indices.get(i + 1) * 4, indices.get(i + 2) * 4);
+        }
+    }
+
+    // clips a triangle against the near plane (z >= -w) and rasterizes it
+    private void clipTriangle(float[] cv, int a, int b, int c) {
+        float da = cv[a + 2] + cv[a + 3];
+        float db = cv[b + 2] + cv[b + 3];
+        float dc = cv[c + 2] + cv[c + 3];
+        if (da >= 0 && db >= 0 && dc >= 0) {
+            System.arraycopy(cv, a, triangle, 0, 4);
+            System.arraycopy(cv, b, triangle, 4, 4);
+            System.arraycopy(cv, c, triangle, 8, 4);
+            rasterizeTriangle(triangle, 0, 4, 8);
+            return;
+        }
+        if (da < 0 && db < 0 && dc < 0) {
+            return;
+        }
+
+        int n = 0;
+        int[] verts = {a, b, c};
+        float[] dists = {da, db, dc};
+        for (int i = 0; i < 3; i++) {
+            int cur = verts[i];
+            int next = verts[(i + 1) % 3];
+            float dCur = dists[i];
+            float dNext = dists[(i + 1) % 3];
+            if (dCur >= 0) {
+                System.arraycopy(cv, cur, polygon, n * 4, 4);
+                n++;
+            }
+            if ((dCur >= 0) != (dNext >= 0)) {
+                float t = dCur / (dCur - dNext);
+                for (int k = 0; k < 4; k++) {
+                    polygon[n * 4 + k] = cv[cur + k] + t * (cv[next + k] - cv[cur + k]);
+                }
+                n++;
+            }
+        }
+        for (int i = 2; i < n; i++) {
+            rasterizeTriangle(polygon, 0, (i - 1) * 4, i * 4);
+        }
+    }
+
+    private void rasterizeTriangle(float[] v, int a, int b, int c) {
+        // Project to pixel coordinates and normalized device depth
+        float invW = 1f / v[a + 3];
+        float x0 = (v[a] * invW * 0.5f + 0.5f) * width;
+        float y0 = (v[a + 1] * invW * 0.5f + 0.5f) * height;
+        float z0 = v[a + 2] * invW;
+        invW = 1f / v[b + 3];
+        float x1 = (v[b] * invW * 0.5f + 0.5f) * width;
+        float y1 = (v[b + 1] * invW * 0.5f + 0.5f) * height;
+        float z1 = v[b + 2] * invW;
+        invW = 1f / v[c + 3];
+        float x2 = (v[c] * invW * 0.5f + 0.5f) * width;
+        float y2 = (v[c + 1] * invW * 0.5f + 0.5f) * height;
+        float z2 = v[c + 2] * invW;
+
+        float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (area == 0f || Float.isNaN(area) || Float.isInfinite(area)) {
+            return;
+        }
+        if (area < 0) {
+            // Both windings are rasterized
+            float t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            t = z1; z1 = z2; z2 = t;
+            area = -area;
+        }
+
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Depth plane and edge functions, evaluated at pixel centers
+        float dzdx = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) / area;
+        float dzdy = ((z2 - z0) * (x1 - x0) - (z1 - z0) * (x2 - x0)) / area;
+        float e0dx = -(y2 - y1), e0dy = x2 - x1;
+        float e1dx = -(y0 - y2), e1dy = x0 - x2;
+        float e2dx = -(y1 - y0), e2dy = x1 - x0;
+
+        for (int ty = minY >> TILE_SHIFT; ty <= maxY >> TILE_SHIFT; ty++) {
+            int py0 = Math.max(minY, ty << TILE_SHIFT);
+            int py1 = Math.min(maxY, (ty << TILE_SHIFT) + TILE_SIZE - 1);
+            for (int tx = minX >> TILE_SHIFT; tx <= maxX >> TILE_SHIFT; tx++) {
+                int px0 = Math.max(minX, tx << TILE_SHIFT);
+                int px1 = Math.min(maxX, (tx << TILE_SHIFT) + TILE_SIZE - 1);
+                int tileBase = (ty * tilesX + tx) << (2 * TILE_SHIFT);
+
+                float cx = px0 + 0.5f;
+                float cy = py0 + 0.5f;
+                float e0Row = e0dy * (cy - y1) + e0dx * (cx - x1);
+                float e1Row = e1dy * (cy - y2) + e1dx * (cx - x2);
+                float e2Row = e2dy * (cy - y0) + e2dx * (cx - x0);
+                float zRow = z0 + dzdx * (cx - x0) + dzdy * (cy - y0);
+
+                for (int py = py0; py <= py1; py++) {
+                    int row = tileBase + ((py & (TILE_SIZE - 1)) << TILE_SHIFT);
+                    float e0 = e0Row, e1 = e1Row, e2 = e2Row, z = zRow;
+                    for (int px = px0; px <= px1; px++) {
+                        if (e0 >= 0 && e1 >= 0 && e2 >= 0) {
+                            int i = row + (px & (TILE_SIZE - 1));
+                            if (z < depth[i]) {
+                                depth[i] = z;
+                            }
+                        }
+                        e0 += e0dx;
+                        e1 += e1dx;
+                        e2 += e2dx;
+                        z += dzdx;
+                    }
+                    e0Row += e0dy;
+                    e1Row += e1dy;
+                    e2Row += e2dy;
+                    zRow += dzdy;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests if a bounding volume is hidden behind the occluders. Bounding
+     * spheres are tested as the box that contains them.
+     * <p>
+     * This method only reads the depth buffer and may be called from
+     * several threads at once.
+     *
+     * @param bound The world bound to test
+     * @return True if the volume is entirely behind the occluders, false
+     * if it may be visible or the depth buffer was not rasterized yet.
+     */
+    public boolean isOccluded(BoundingVolume bound) {
+        if (!ready || bound == null) {
+            return false;
+        }
+        float ex, ey, ez;
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            ex = box.getXExtent();
+            ey = box.getYExtent();
+            ez = box.getZExtent();
+        } else if (bound instanceof BoundingSphere) {
+            ex = ey = ez = ((BoundingSphere) bound).getRadius();
+        } else {
+            return false;
+        }
+        Vector3f center = bound.getCenter();
+        Matrix4f m = viewProjection;
+
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            float x = center.x + ((i & 1) == 0 ? -ex : ex);
+            float y = center.y + ((i & 2) == 0 ? -ey : ey);
+            float z = center.z + ((i & 4) == 0 ? -ez : ez);
+            float cz = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+            float cw = m.m30 * x + m.m31 * y + m.m32 * z + m.m33;
+            if (!(cz + cw > 0)) {
+                // Crosses the near plane
+                return false;
+            }
+            float invW = 1f / cw;
+            float sx = (m.m00 * x + m.m01 * y + m.m02 * z + m.m03) * invW;
+            float sy = (m.m10 * x + m.m11 * y + m.m12 * z + m.m13) * invW;
+            minX = Math.min(minX, sx);
+            maxX = Math.max(maxX, sx);
+            minY = Math.min(minY, sy);
+            maxY = Math.max(maxY, sy);
+            minZ = Math.min(minZ, cz * invW);
+        }
+
+        // Grow the rectangle by a pixel, as the occluders are only
+        // rasterized at pixel centers
+        int x0 = Math.max(0, (int) Math.floor((minX * 0.5f + 0.5f) * width) - 1);
+        int x1 = Math.min(width - 1, (int) Math.floor((maxX * 0.5f + 0.5f) * width) + 1);
+        int y0 = Math.max(0, (int) Math.floor((minY * 0.5f + 0.5f) * height) - 1);
+        int y1 = Math.min(height - 1, (int) Math.floor((maxY * 0.5f + 0.5f) * height) + 1);
+        if (x0 > x1 || y0 > y1) {
+            return false;
+        }
+
+        for (int ty = y0 >> TILE_SHIFT; ty <= y1 >> TILE_SHIFT; ty++) {
+            int py0 = Math.max(y0, ty << TILE_SHIFT);
+            int py1 = Math.min(y1, (ty << TILE_SHIFT) + TILE_SIZE - 1);
+            for (int tx = x0 >> TILE_SHIFT; tx <= x1 >> TILE_SHIFT; tx++) {
+                int tile = ty * tilesX + tx;
+                if (tileMaxDepth[tile] < minZ) {
+                    // The whole tile is in front of the volume
+                    continue;
+                }
+                int px0 = Math.max(x0, tx << TILE_SHIFT) & (TILE_SIZE - 1);
+                int px1 = Math.min(x1, (tx << TILE_SHIFT) + TILE_SIZE - 1) & (TILE_SIZE - 1);
+                for (int py = py0; py <= py1; py++) {
+                    int row = (tile << (2 * TILE_SHIFT)) + ((py & (TILE_SIZE - 1)) << TILE_SHIFT);
+                    for (int px = px0; px <= px1; px++) {
+                        if (depth[row + px] >= minZ) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
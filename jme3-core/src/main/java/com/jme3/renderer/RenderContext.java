@@ -254,6 +254,12 @@ public class RenderContext {
     public int initialReadBuf;
     
     public ColorRGBA clearColor = new ColorRGBA(0,0,0,0);
+
+    /**
+     * Copy of the last render state applied, or null if the render state
+     * fields of this context were changed since.
+     */
+    public RenderState renderState = null;
     
     /**
      * Reset the RenderContext to default GL state
@@ -271,6 +277,7 @@ public class RenderContext {
         pointSize = 1;
         blendMode = RenderState.BlendMode.Off;
         wireframe = false;
+        renderState = null;
         boundShaderProgram = 0;
         boundShader = null;
         boundFBO = 0;
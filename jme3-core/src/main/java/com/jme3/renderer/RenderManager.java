@@ -41,6 +41,7 @@ import com.jme3.profile.AppProfiler;
 import com.jme3.profile.AppStep;
 import com.jme3.profile.VpStep;
 import com.jme3.renderer.queue.GeometryList;
+import com.jme3.renderer.queue.NullComparator;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.renderer.queue.RenderQueue.ShadowMode;
@@ -55,6 +56,12 @@ import com.jme3.util.SafeArrayList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
@@ -88,6 +95,16 @@ public class RenderManager {
     private LightFilter lightFilter = new DefaultLightFilter();
     private TechniqueDef.LightMode preferredLightMode = TechniqueDef.LightMode.MultiPass;
     private int singlePassLightBatchSize = 1;
+    private int cullingThreads = 1;
+    private ExecutorService cullingExecutor;
+    private ArrayList<CullingTask> cullingTasks = new ArrayList<CullingTask>();
+    private ArrayList<Future<Void>> cullingFutures = new ArrayList<Future<Void>>();
+    private ArrayList<Spatial> cullingRoots = new ArrayList<Spatial>();
+    private ArrayList<Spatial> expandedRoots = new ArrayList<Spatial>();
+    private int[] cullingStates = new int[16];
+    private int[] expandedStates = new int[16];
+    private OcclusionCuller occlusionCuller;
+    private int occlusionTested, occlusionCulled;
 
     /**
      * Create a high-level rendering interface over the
@@ -481,6 +498,9 @@ public class RenderManager {
      * based on the current world state.
      */
     public void updateUniformBindings(List<Uniform> params) {
+        if (renderer.getCaps().contains(Caps.UniformBufferObject)) {
+            renderer.setFrameUniforms(uniformBindingManager.getFrameUniforms());
+        }
         uniformBindingManager.updateUniformBindings(params);
     }
 
@@ -653,7 +673,310 @@ public class RenderManager {
         //reset of the camera plane state for proper culling (must be 0 for the first note of the scene to be rendered)
         vp.getCamera().setPlaneState(0);
         //rendering the scene
-        renderSubScene(scene, vp);
+        if (cullingThreads > 1 && scene instanceof Node) {
+            renderSceneParallel(scene, vp);
+        } else {
+            renderSubScene(scene, vp);
+        }
+    }
+
+    // splits the scene into subtrees that are culled by the worker threads
+    private void renderSceneParallel(Spatial scene, ViewPort vp) {
+        Camera cam = vp.getCamera();
+        cullingRoots.clear();
+        cullingRoots.add(scene);
+        cullingStates[0] = 0;
+
+        // Expand the nodes on the render thread until there are enough
+        // subtrees to balance the work, keeping them in scene graph order
+        int targetRoots = cullingThreads * 4;
+        boolean expanded = true;
+        while (expanded && cullingRoots.size() < targetRoots) {
+            expanded = false;
+            expandedRoots.clear();
+            for (int i = 0; i < cullingRoots.size(); i++) {
+                Spatial spatial = cullingRoots.get(i);
+                int state = cullingStates[i];
+                if (!(spatial instanceof Node)) {
+                    addCullingRoot(spatial, state);
+                    continue;
+                }
+                expanded = true;
+                cam.setPlaneState(state);
+                if (!spatial.checkCulling(cam)) {
+                    continue;
+                }
+                spatial.runControlRender(this, vp);
+                List<Spatial> children = ((Node) spatial).getChildren();
+                int camState = cam.getPlaneState();
+                SpatialBVH bvh = getCullingBVH((Node) spatial);
+                if (bvh != null) {
+                    int count = bvh.cull(cam);
+                    int[] visible = bvh.getVisibleChildren();
+                    for (int j = 0; j < count; j++) {
+                        addCullingRoot(children.get(visible[j]), camState);
+                    }
+                } else {
+                    for (int j = 0; j < children.size(); j++) {
+                        addCullingRoot(children.get(j), camState);
+                    }
+                }
+            }
+            ArrayList<Spatial> roots = cullingRoots;
+            cullingRoots = expandedRoots;
+            expandedRoots = roots;
+            int[] states = cullingStates;
+            cullingStates = expandedStates;
+            expandedStates = states;
+        }
+        expandedRoots.clear();
+
+        int rootCount = cullingRoots.size();
+        if (rootCount == 0) {
+            return;
+        }
+
+        // Give each task a contiguous range of subtrees
+        int taskCount = Math.min(cullingThreads, rootCount);
+        while (cullingTasks.size() < taskCount) {
+            cullingTasks.add(new CullingTask(cam));
+        }
+        for (int i = 0; i < taskCount; i++) {
+            CullingTask task = cullingTasks.get(i);
+            task.cam.copyFrom(cam);
+            task.start = rootCount * i / taskCount;
+            task.end = rootCount * (i + 1) / taskCount;
+        }
+
+        if (cullingExecutor == null) {
+            cullingExecutor = Executors.newFixedThreadPool(cullingThreads - 1, new CullingThreadFactory());
+        }
+        cullingFutures.clear();
+        for (int i = 1; i < taskCount; i++) {
+            cullingFutures.add(cullingExecutor.submit(cullingTasks.get(i)));
+        }
+        // The render thread culls the first range itself
+        RuntimeException failure = null;
+        try {
+            cullingTasks.get(0).call();
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+        for (int i = 0; i < cullingFutures.size(); i++) {
+            try {
+                cullingFutures.get(i).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new IllegalStateException("Interrupted while culling the scene", ex);
+                }
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new IllegalStateException("Failed to cull the scene", cause);
+                }
+            }
+        }
+        cullingFutures.clear();
+        if (failure != null) {
+            for (int i = 0; i < taskCount; i++) {
+                cullingTasks.get(i).clear();
+            }
+            cullingRoots.clear();
+            throw failure;
+        }
+
+        // Merge the results in scene graph order, the subtrees with controls
+        // are culled in between
+        try {
+            for (int i = 0; i < taskCount; i++) {
+                CullingTask task = cullingTasks.get(i);
+                occlusionTested += task.tested;
+                occlusionCulled += task.culled;
+                task.merge(vp);
+            }
+        } finally {
+            for (int i = 0; i < taskCount; i++) {
+                cullingTasks.get(i).clear();
+            }
+            cullingRoots.clear();
+        }
+    }
+
+    // returns the hierarchy to cull the children of the node with, if any
+    private static SpatialBVH getCullingBVH(Node node) {
+        SpatialBVH bvh = node.getBVH();
+        if (bvh == null || node.getCullHint() == Spatial.CullHint.Never) {
+            // children inheriting the cull hint are never culled either
+            return null;
+        }
+        if (node.getQueueBucket() == Bucket.Gui) {
+            // the hierarchy is culled against the frustum, not the screen
+            return null;
+        }
+        return bvh;
+    }
+
+    private void addCullingRoot(Spatial spatial, int camState) {
+        int index = expandedRoots.size();
+        if (index == expandedStates.length) {
+            int[] states = new int[index * 2];
+            System.arraycopy(expandedStates, 0, states, 0, index);
+            expandedStates = states;
+        }
+        expandedRoots.add(spatial);
+        expandedStates[index] = camState;
+    }
+
+    private static class CullingThreadFactory implements ThreadFactory {
+
+        private int nextThreadId = 0;
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "jME3 Culling Thread " + (nextThreadId++));
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Culls a range of the subtrees of a scene against a copy of the camera,
+     * collecting the visible geometries. The visible spatials with controls
+     * are left to the render thread, which runs the controls and culls their
+     * subtrees when the results are merged.
+     */
+    private class CullingTask implements Callable<Void> {
+
+        private final Camera cam;
+        private final GeometryList[] lists = new GeometryList[Bucket.values().length];
+        private final ArrayList<Spatial> deferred = new ArrayList<Spatial>();
+        private int[] deferredStates = new int[16];
+        // the sizes of the lists when each spatial was deferred
+        private int[] deferredSizes = new int[16 * lists.length];
+        private final int[] merged = new int[lists.length];
+        private int start;
+        private int end;
+        private int tested;
+        private int culled;
+
+        CullingTask(Camera cam) {
+            this.cam = cam.clone();
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = new GeometryList(new NullComparator());
+            }
+        }
+
+        public Void call() {
+            for (int i = start; i < end; i++) {
+                cam.setPlaneState(cullingStates[i]);
+                cull(cullingRoots.get(i));
+            }
+            return null;
+        }
+
+        private void cull(Spatial scene) {
+            if (!scene.checkCulling(cam)) {
+                return;
+            }
+            if (occlusionCuller != null && scene instanceof Geometry) {
+                Bucket bucket = scene.getQueueBucket();
+                if (bucket != Bucket.Gui && bucket != Bucket.Sky
+                        && !occlusionCuller.isOccluder((Geometry) scene)) {
+                    tested++;
+                    if (occlusionCuller.isOccluded(scene.getWorldBound())) {
+                        culled++;
+                        return;
+                    }
+                }
+            }
+
+            if (scene.getNumControls() > 0) {
+                // Control.render() may change the subtree before it is culled
+                defer(scene);
+                return;
+            }
+            if (scene instanceof Node) {
+                List<Spatial> children = ((Node) scene).getChildren();
+                int camState = cam.getPlaneState();
+                SpatialBVH bvh = getCullingBVH((Node) scene);
+                if (bvh != null) {
+                    int count = bvh.cull(cam);
+                    int[] visible = bvh.getVisibleChildren();
+                    for (int i = 0; i < count; i++) {
+                        cam.setPlaneState(camState);
+                        cull(children.get(visible[i]));
+                    }
+                } else {
+                    for (int i = 0; i < children.size(); i++) {
+                        cam.setPlaneState(camState);
+                        cull(children.get(i));
+                    }
+                }
+            } else if (scene instanceof Geometry) {
+                Geometry gm = (Geometry) scene;
+                if (gm.getMaterial() == null) {
+                    throw new IllegalStateException("No material is set for Geometry: " + gm.getName());
+                }
+                lists[scene.getQueueBucket().ordinal()].add(gm);
+            }
+        }
+
+        private void defer(Spatial spatial) {
+            int index = deferred.size();
+            if (index == deferredStates.length) {
+                int[] states = new int[index * 2];
+                System.arraycopy(deferredStates, 0, states, 0, index);
+                deferredStates = states;
+                int[] sizes = new int[index * 2 * lists.length];
+                System.arraycopy(deferredSizes, 0, sizes, 0, index * lists.length);
+                deferredSizes = sizes;
+            }
+            deferred.add(spatial);
+            deferredStates[index] = cam.getPlaneState();
+            for (int b = 0; b < lists.length; b++) {
+                deferredSizes[index * lists.length + b] = lists[b].size();
+            }
+        }
+
+        /**
+         * Adds the geometries to the queue of the viewport on the render
+         * thread, running the controls of the deferred spatials and culling
+         * their subtrees at the place they were found.
+         */
+        void merge(ViewPort vp) {
+            RenderQueue queue = vp.getQueue();
+            Bucket[] buckets = Bucket.values();
+            for (int b = 0; b < lists.length; b++) {
+                merged[b] = 0;
+            }
+            for (int i = 0; i <= deferred.size(); i++) {
+                for (int b = 0; b < lists.length; b++) {
+                    int end = i < deferred.size() ? deferredSizes[i * lists.length + b] : lists[b].size();
+                    for (int j = merged[b]; j < end; j++) {
+                        queue.addToQueue(lists[b].get(j), buckets[b]);
+                    }
+                    merged[b] = end;
+                }
+                if (i < deferred.size()) {
+                    vp.getCamera().setPlaneState(deferredStates[i]);
+                    renderVisibleSubScene(deferred.get(i), vp);
+                }
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < lists.length; i++) {
+                lists[i].clear();
+            }
+            deferred.clear();
+            tested = 0;
+            culled = 0;
+        }
     }
     
     // recursively renders the scene
@@ -663,7 +986,22 @@ public class RenderManager {
         if (!scene.checkCulling(vp.getCamera())) {
             return;
         }
+        if (occlusionCuller != null && scene instanceof Geometry) {
+            Bucket bucket = scene.getQueueBucket();
+            if (bucket != Bucket.Gui && bucket != Bucket.Sky
+                    && !occlusionCuller.isOccluder((Geometry) scene)) {
+                occlusionTested++;
+                if (occlusionCuller.isOccluded(scene.getWorldBound())) {
+                    occlusionCulled++;
+                    return;
+                }
+            }
+        }
+        renderVisibleSubScene(scene, vp);
+    }
 
+    // renders a spatial that passed culling and its children
+    private void renderVisibleSubScene(Spatial scene, ViewPort vp) {
         scene.runControlRender(this, vp);
         if (scene instanceof Node) {
             // Recurse for all children
@@ -671,10 +1009,21 @@ public class RenderManager {
             List<Spatial> children = n.getChildren();
             // Saving cam state for culling
             int camState = vp.getCamera().getPlaneState();
-            for (int i = 0; i < children.size(); i++) {
-                // Restoring cam state before proceeding children recusively
-                vp.getCamera().setPlaneState(camState);
-                renderSubScene(children.get(i), vp);
+            SpatialBVH bvh = getCullingBVH(n);
+            if (bvh != null) {
+                // Only visit the children that may be in the frustum
+                int count = bvh.cull(vp.getCamera());
+                int[] visible = bvh.getVisibleChildren();
+                for (int i = 0; i < count; i++) {
+                    vp.getCamera().setPlaneState(camState);
+                    renderSubScene(children.get(visible[i]), vp);
+                }
+            } else {
+                for (int i = 0; i < children.size(); i++) {
+                    // Restoring cam state before proceeding children recusively
+                    vp.getCamera().setPlaneState(camState);
+                    renderSubScene(children.get(i), vp);
+                }
             }
         } else if (scene instanceof Geometry) {
             // add to the render queue
@@ -781,6 +1130,57 @@ public class RenderManager {
         // Ensure the batch size is no less than 1
         this.singlePassLightBatchSize = singlePassLightBatchSize < 1 ? 1 : singlePassLightBatchSize;
     }
+
+    /**
+     * Sets the number of threads used to cull the scenes and build the
+     * render queues of the viewports.
+     * <p>
+     * With more than one thread, {@link #renderScene(com.jme3.scene.Spatial, com.jme3.renderer.ViewPort) }
+     * splits the scene into subtrees that are culled in parallel, each
+     * against its own copy of the camera. The resulting render queue has
+     * the same contents, in the same order, as with a single thread.
+     * {@link com.jme3.scene.control.Control#render(com.jme3.renderer.RenderManager, com.jme3.renderer.ViewPort) Control.render()}
+     * is still called on the render thread. A visible spatial with controls
+     * and its subtree are culled on the render thread, right after its
+     * controls are rendered, so the controls may change the subtree as with
+     * a single thread. Changes they make to other parts of the scene may
+     * not be seen by the culling of those.
+     * <p>
+     * The scene graph must not be modified while it is rendered, which is
+     * already required for rendering with a single thread.
+     *
+     * @param threads The number of threads, including the render thread.
+     * 1 (the default) culls the scenes on the render thread only.
+     */
+    public void setCullingThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        if (threads != cullingThreads && cullingExecutor != null) {
+            cullingExecutor.shutdown();
+            cullingExecutor = null;
+        }
+        cullingThreads = threads;
+    }
+
+    /**
+     * @return The number of threads used to cull the scenes.
+     * @see #setCullingThreads(int)
+     */
+    public int getCullingThreads() {
+        return cullingThreads;
+    }
+
+    /**
+     * Stops the threads used to cull the scenes. They are started again if
+     * a scene is rendered afterwards.
+     */
+    public void cleanup() {
+        if (cullingExecutor != null) {
+            cullingExecutor.shutdown();
+            cullingExecutor = null;
+        }
+    }
     
     
     /**
@@ -935,6 +1335,25 @@ public class RenderManager {
         setViewProjection(cam, ortho);
     }
 
+    // rasterizes the occluders of the viewport, if any, so that the
+    // scenes of the viewport are tested against them
+    private void beginOcclusionCulling(ViewPort vp) {
+        occlusionCuller = vp.getOcclusionCuller();
+        if (occlusionCuller != null) {
+            occlusionCuller.rasterizeOccluders(vp.getCamera());
+            occlusionTested = 0;
+            occlusionCulled = 0;
+        }
+    }
+
+    private void endOcclusionCulling() {
+        if (occlusionCuller != null) {
+            renderer.getStatistics().onOcclusionCulling(occlusionTested, occlusionCulled,
+                    occlusionCuller.getRasterTime());
+            occlusionCuller = null;
+        }
+    }
+
     /**
      * Draws the viewport but without notifying {@link SceneProcessor scene
      * processors} of any rendering events.
@@ -945,10 +1364,12 @@ public class RenderManager {
      */
     public void renderViewPortRaw(ViewPort vp) {
         setCamera(vp.getCamera(), false);
+        beginOcclusionCulling(vp);
         List<Spatial> scenes = vp.getScenes();
         for (int i = scenes.size() - 1; i >= 0; i--) {           
             renderScene(scenes.get(i), vp);
         }
+        endOcclusionCulling();
         flushQueue(vp);
     }
 
@@ -1024,10 +1445,12 @@ public class RenderManager {
         }
 
         if (prof!=null) prof.vpStep(VpStep.RenderScene, vp, null);
+        beginOcclusionCulling(vp);
         List<Spatial> scenes = vp.getScenes();
         for (int i = scenes.size() - 1; i >= 0; i--) {            
             renderScene(scenes.get(i), vp);
         }
+        endOcclusionCulling();
 
         if (processors != null) {
             if (prof!=null) prof.vpStep(VpStep.PostQueue, vp, null);
@@ -35,6 +35,7 @@ import com.jme3.material.RenderState;
 import com.jme3.math.ColorRGBA;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
+import com.jme3.shader.FrameUniformBlock;
 import com.jme3.shader.Shader;
 import com.jme3.shader.Shader.ShaderSource;
 import com.jme3.system.AppSettings;
@@ -159,6 +160,16 @@ public interface Renderer {
      */
     public void setShader(Shader shader);
 
+    /**
+     * Sets the per-frame uniform bindings read by shaders.
+     * Only called if the renderer supports
+     * {@link Caps#UniformBufferObject}. The block is uploaded again
+     * only when its version changed.
+     *
+     * @param block The per-frame uniform bindings
+     */
+    public void setFrameUniforms(FrameUniformBlock block);
+
     /**
      * Deletes a shader. This method also deletes
      * the attached shader sources.
@@ -365,4 +376,45 @@ public interface Renderer {
       */
      public void setLinearizeSrgbImages(boolean linearize);
 
+    /**
+     * Generates queries to record GPU timestamps with.
+     * Only called if the renderer supports {@link Caps#TimerQuery}.
+     *
+     * @param count The number of queries to generate
+     * @return The query ids
+     */
+    public int[] generateTimestampQueries(int count);
+
+    /**
+     * Deletes queries generated by {@link #generateTimestampQueries(int) }.
+     *
+     * @param queries The query ids
+     */
+    public void deleteTimestampQueries(int[] queries);
+
+    /**
+     * Records the GPU time once all the previous commands are completed.
+     *
+     * @param query The query to store the time in
+     */
+    public void recordTimestamp(int query);
+
+    /**
+     * Returns true if the GPU already stored the time of the query.
+     * The results are usually available one or two frames later.
+     *
+     * @param query The recorded query
+     * @return true if {@link #getTimestamp(int) } does not wait
+     */
+    public boolean isTimestampAvailable(int query);
+
+    /**
+     * Returns the GPU time stored in a query, waiting for it
+     * if it is not available yet.
+     *
+     * @param query The recorded query
+     * @return The GPU time in nanoseconds
+     */
+    public long getTimestamp(int query);
+
 }
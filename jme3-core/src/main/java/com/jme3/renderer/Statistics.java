@@ -36,11 +36,20 @@ import com.jme3.shader.Shader;
 import com.jme3.texture.FrameBuffer;
 import com.jme3.texture.Image;
 import com.jme3.util.IntMap;
+import com.jme3.util.SafeArrayList;
+import java.io.IOException;
+import java.io.Writer;
 
 /**
  * The statistics class allows tracking of real-time rendering statistics.
  * <p>
  * The <code>Statistics</code> can be retrieved by using {@link Renderer#getStatistics() }.
+ * <p>
+ * When a history size is set, the data of every frame is also kept in a
+ * preallocated ring buffer when the frame is cleared, along with the frame
+ * time, and counted in histograms, so that percentiles over the last
+ * frames can be queried without allocating. Listeners are notified after
+ * each recorded frame.
  * 
  * @author Kirill Vainer
  */
@@ -56,6 +65,10 @@ public class Statistics {
     protected int numFboSwitches;
     protected int numUniformsSet;
 
+    protected int numOcclusionTested;
+    protected int numOcclusionCulled;
+    protected long occlusionRasterTime;
+
     protected int memoryShaders;
     protected int memoryFrameBuffers;
     protected int memoryTextures;
@@ -65,6 +78,91 @@ public class Statistics {
     protected IntMap<Void> fbosUsed = new IntMap<Void>();
 
     protected int lastShader = -1;
+
+    /**
+     * Index of the frame time, in microseconds, in the history data.
+     * The other indices are the ones of {@link #getData(int[]) }.
+     */
+    public static final int FRAME_TIME = 16;
+
+    private static final int HISTORY_COLUMNS = FRAME_TIME + 1;
+
+    private int historySize = 0;
+    private int[] history;
+    private int historyPosition = 0;
+    private int recordedFrames = 0;
+    private Histogram[] histograms;
+    private final int[] frameData = new int[HISTORY_COLUMNS];
+    private long frameStartTime = -1;
+    private final SafeArrayList<StatisticsListener> listeners
+            = new SafeArrayList<StatisticsListener>(StatisticsListener.class);
+
+    /**
+     * Counts values in buckets of exponentially growing sizes. Values
+     * under 64 have buckets of their own, larger values share buckets
+     * 1/32 of their magnitude wide.
+     */
+    private static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int LINEAR = 2 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = LINEAR + (31 - SUB_BUCKET_BITS - 1) * (1 << SUB_BUCKET_BITS);
+
+        final int[] counts = new int[BUCKETS];
+        int total;
+
+        static int bucketOf(int value) {
+            if (value < LINEAR) {
+                return Math.max(value, 0);
+            }
+            int exponent = 31 - Integer.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int sub = (value >>> shift) & ((1 << SUB_BUCKET_BITS) - 1);
+            return LINEAR + (shift - 1) * (1 << SUB_BUCKET_BITS) + sub;
+        }
+
+        static int highestValueOf(int bucket) {
+            if (bucket < LINEAR) {
+                return bucket;
+            }
+            int shift = (bucket - LINEAR) / (1 << SUB_BUCKET_BITS) + 1;
+            int sub = (bucket - LINEAR) % (1 << SUB_BUCKET_BITS);
+            long lowest = (long) ((1 << SUB_BUCKET_BITS) + sub) << shift;
+            return (int) Math.min(lowest + (1L << shift) - 1, Integer.MAX_VALUE);
+        }
+
+        void add(int value) {
+            counts[bucketOf(value)]++;
+            total++;
+        }
+
+        void remove(int value) {
+            counts[bucketOf(value)]--;
+            total--;
+        }
+
+        int percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                count += counts[i];
+                if (count >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return highestValueOf(counts.length - 1);
+        }
+
+        void clear() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = 0;
+            }
+            total = 0;
+        }
+    }
     
     /**
      * Returns a list of labels corresponding to each statistic.
@@ -90,10 +188,31 @@ public class Statistics {
 
                              "FrameBuffers (S)",
                              "FrameBuffers (F)",
-                             "FrameBuffers (M)" };
+                             "FrameBuffers (M)",
+
+                             "Occlusion (T)",
+                             "Occlusion (C)",
+                             "Occlusion (us)" };
 
     }
 
+    /**
+     * Returns a list of labels corresponding to each statistic kept in
+     * the history: the labels of {@link #getLabels() } followed by the
+     * frame time.
+     * 
+     * @return a list of labels corresponding to each statistic in the history.
+     * 
+     * @see #getHistoryData(int, int[]) 
+     */
+    public String[] getHistoryLabels(){
+        String[] labels = getLabels();
+        String[] historyLabels = new String[HISTORY_COLUMNS];
+        System.arraycopy(labels, 0, historyLabels, 0, labels.length);
+        historyLabels[FRAME_TIME] = "Frame (us)";
+        return historyLabels;
+    }
+
     /**
      * Retrieves the statistics data into the given array.
      * The array should be as large as the array given in 
@@ -118,6 +237,10 @@ public class Statistics {
         data[10] = numFboSwitches;
         data[11] = fbosUsed.size();
         data[12] = memoryFrameBuffers;
+
+        data[13] = numOcclusionTested;
+        data[14] = numOcclusionCulled;
+        data[15] = (int) (occlusionRasterTime / 1000);
     }
 
     /**
@@ -139,6 +262,22 @@ public class Statistics {
         onMeshDrawn(mesh, lod, 1);
     }
 
+    /**
+     * Called by the RenderManager after the scenes of a viewport were
+     * culled with an {@link OcclusionCuller}.
+     *
+     * @param tested The number of geometries tested for occlusion
+     * @param culled The number of geometries that were occluded
+     * @param rasterTime The time spent rasterizing the occluders, in nanoseconds
+     */
+    public void onOcclusionCulling(int tested, int culled, long rasterTime){
+        if( !enabled )
+            return;
+        numOcclusionTested += tested;
+        numOcclusionCulled += culled;
+        occlusionRasterTime += rasterTime;
+    }
+
     /**
      * Called by the Renderer when a shader has been utilized.
      * 
@@ -215,8 +354,16 @@ public class Statistics {
     
     /**
      * Clears all frame-specific statistics such as objects used per frame.
+     * If a history size is set, the statistics of the frame are recorded
+     * first, see {@link #setHistorySize(int) }.
      */
     public void clearFrame(){
+        long time = System.nanoTime();
+        if (enabled && history != null && frameStartTime >= 0) {
+            recordFrame(time - frameStartTime);
+        }
+        frameStartTime = time;
+
         shadersUsed.clear();
         texturesUsed.clear();
         fbosUsed.clear();
@@ -228,6 +375,9 @@ public class Statistics {
         numTextureBinds = 0;
         numFboSwitches = 0;
         numUniformsSet = 0;
+        numOcclusionTested = 0;
+        numOcclusionCulled = 0;
+        occlusionRasterTime = 0;
         
         lastShader = -1;
     }
@@ -295,6 +445,157 @@ public class Statistics {
         memoryTextures = 0;
     }
 
+    private void recordFrame(long frameTime) {
+        getData(frameData);
+        frameData[FRAME_TIME] = (int) Math.min(frameTime / 1000, Integer.MAX_VALUE);
+
+        int offset = historyPosition * HISTORY_COLUMNS;
+        boolean full = recordedFrames == historySize;
+        for (int i = 0; i < HISTORY_COLUMNS; i++) {
+            if (full) {
+                histograms[i].remove(history[offset + i]);
+            }
+            history[offset + i] = frameData[i];
+            histograms[i].add(frameData[i]);
+        }
+        historyPosition = (historyPosition + 1) % historySize;
+        if (!full) {
+            recordedFrames++;
+        }
+
+        for (StatisticsListener listener : listeners.getArray()) {
+            listener.frameRecorded(this);
+        }
+    }
+
+    /**
+     * Sets the number of frames kept in the history. The history and
+     * its histograms are preallocated here, recording a frame does not
+     * allocate. Changing the size clears the history, 0 disables it.
+     * 
+     * @param frames The number of frames to keep, 0 by default.
+     */
+    public void setHistorySize(int frames){
+        if (frames < 0) {
+            throw new IllegalArgumentException("frames cannot be negative");
+        }
+        historySize = frames;
+        recordedFrames = 0;
+        historyPosition = 0;
+        if (frames == 0) {
+            history = null;
+            histograms = null;
+            return;
+        }
+        history = new int[frames * HISTORY_COLUMNS];
+        histograms = new Histogram[HISTORY_COLUMNS];
+        for (int i = 0; i < HISTORY_COLUMNS; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    public int getHistorySize(){
+        return historySize;
+    }
+
+    /**
+     * Returns the number of frames in the history, at most
+     * {@link #getHistorySize() }.
+     */
+    public int getRecordedFrames(){
+        return recordedFrames;
+    }
+
+    /**
+     * Forgets the frames in the history.
+     */
+    public void clearHistory(){
+        recordedFrames = 0;
+        historyPosition = 0;
+        if (histograms != null) {
+            for (Histogram histogram : histograms) {
+                histogram.clear();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the statistics of a recorded frame into the given array.
+     * The array should be as large as the array given in
+     * {@link #getHistoryLabels() }.
+     * 
+     * @param framesAgo 0 for the last recorded frame, 1 for the frame
+     * before, up to {@link #getRecordedFrames() } - 1.
+     * @param data The data array to write to
+     */
+    public void getHistoryData(int framesAgo, int[] data){
+        if (framesAgo < 0 || framesAgo >= recordedFrames) {
+            throw new IndexOutOfBoundsException("No recorded frame " + framesAgo + " frames ago");
+        }
+        int position = (historyPosition - 1 - framesAgo + 2 * historySize) % historySize;
+        System.arraycopy(history, position * HISTORY_COLUMNS, data, 0, HISTORY_COLUMNS);
+    }
+
+    /**
+     * Returns a percentile of a statistic over the recorded frames.
+     * The values are counted in buckets, values of 64 and more are
+     * rounded up by at most 1/32 of their magnitude.
+     * 
+     * @param index The index of the statistic in {@link #getHistoryLabels() },
+     * for example {@link #FRAME_TIME}.
+     * @param percentile The percentile, between 0 and 100, for example 99
+     * for the value that 99% of the recorded frames do not exceed.
+     * @return The value of the percentile, 0 if no frame is recorded
+     */
+    public int getPercentile(int index, double percentile){
+        if (histograms == null) {
+            return 0;
+        }
+        return histograms[index].percentile(percentile);
+    }
+
+    /**
+     * Writes the history in CSV format, with the labels on the first line
+     * and one line per recorded frame, from the oldest to the most recent.
+     * 
+     * @param out The writer to write to
+     * @throws IOException If writing failed
+     */
+    public void exportHistory(Writer out) throws IOException{
+        String[] labels = getHistoryLabels();
+        for (int i = 0; i < labels.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(labels[i]);
+        }
+        out.write('\n');
+        int[] data = new int[HISTORY_COLUMNS];
+        for (int frame = recordedFrames - 1; frame >= 0; frame--) {
+            getHistoryData(frame, data);
+            for (int i = 0; i < data.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(Integer.toString(data[i]));
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Adds a listener notified on the rendering thread every time a frame
+     * is recorded in the history.
+     */
+    public void addListener(StatisticsListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(StatisticsListener listener){
+        listeners.remove(listener);
+    }
+
     public void setEnabled( boolean f ) {
         this.enabled = f;
     }
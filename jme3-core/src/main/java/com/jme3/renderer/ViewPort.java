@@ -75,6 +75,7 @@ public class ViewPort {
     protected final ColorRGBA backColor = new ColorRGBA(0,0,0,0);
     protected boolean clearDepth = false, clearColor = false, clearStencil = false;
     private boolean enabled = true;
+    private OcclusionCuller occlusionCuller;
 
     /**
      * Create a new viewport. User code should generally use these methods instead:<br>
@@ -391,4 +392,26 @@ public class ViewPort {
         return enabled;
     }
 
+    /**
+     * Sets the occlusion culler used when culling the scenes of this
+     * ViewPort, or null to only use frustum culling (the default).
+     * <p>
+     * The occluders are rasterized once per frame, before the scenes are
+     * culled. Geometries in the {@link RenderQueue.Bucket#Gui gui} and
+     * {@link RenderQueue.Bucket#Sky sky} buckets are never tested.
+     *
+     * @param occlusionCuller The occlusion culler, or null
+     */
+    public void setOcclusionCuller(OcclusionCuller occlusionCuller) {
+        this.occlusionCuller = occlusionCuller;
+    }
+
+    /**
+     * @return The occlusion culler of this ViewPort, or null if none is set.
+     * @see #setOcclusionCuller(com.jme3.renderer.OcclusionCuller)
+     */
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
 }
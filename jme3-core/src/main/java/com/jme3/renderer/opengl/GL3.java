@@ -42,7 +42,10 @@ public interface GL3 extends GL2 {
 
     public static final int GL_DEPTH_STENCIL_ATTACHMENT = 0x821A;
     public static final int GL_GEOMETRY_SHADER = 0x8DD9;
+    public static final int GL_INVALID_INDEX = 0xFFFFFFFF;
     public static final int GL_NUM_EXTENSIONS = 0x821D;
+    public static final int GL_QUERY_RESULT = 0x8866;
+    public static final int GL_QUERY_RESULT_AVAILABLE = 0x8867;
     public static final int GL_R8 = 0x8229;
     public static final int GL_R16F = 0x822D;
     public static final int GL_R32F = 0x822E;
@@ -54,10 +57,20 @@ public interface GL3 extends GL2 {
     public static final int GL_TEXTURE_SWIZZLE_B = 0x8E44;
     public static final int GL_TEXTURE_SWIZZLE_G = 0x8E43;
     public static final int GL_TEXTURE_SWIZZLE_R = 0x8E42;
+    public static final int GL_TIMESTAMP = 0x8E28;
+    public static final int GL_UNIFORM_BUFFER = 0x8A11;
     
+    public void glBindBufferBase(int target, int index, int buffer); /// GL3+
     public void glBindFragDataLocation(int param1, int param2, String param3); /// GL3+
     public void glBindVertexArray(int param1); /// GL3+
+    public void glDeleteQueries(IntBuffer ids); /// GL3+
     public void glDeleteVertexArrays(IntBuffer arrays); /// GL3+
+    public void glGenQueries(IntBuffer ids); /// GL3+
     public void glGenVertexArrays(IntBuffer param1); /// GL3+
+    public int glGetQueryObjectiv(int query, int pname); /// GL3+
+    public long glGetQueryObjectui64(int query, int pname); /// GL3.3+
     public String glGetString(int param1, int param2); /// GL3+
+    public int glGetUniformBlockIndex(int program, String uniformBlockName); /// GL3.1+
+    public void glQueryCounter(int query, int target); /// GL3.3+
+    public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding); /// GL3.1+
 }
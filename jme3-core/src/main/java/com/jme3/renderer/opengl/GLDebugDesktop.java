@@ -61,6 +61,11 @@ public class GLDebugDesktop extends GLDebugES implements GL2, GL3, GL4 {
         checkError();
     }
 
+    public void glBindBufferBase(int target, int index, int buffer) {
+        gl3.glBindBufferBase(target, index, buffer);
+        checkError();
+    }
+
     public void glBindFragDataLocation(int param1, int param2, String param3) {
         gl3.glBindFragDataLocation(param1, param2, param3);
         checkError();
@@ -83,6 +88,51 @@ public class GLDebugDesktop extends GLDebugES implements GL2, GL3, GL4 {
         return result;
     }
 
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        int result = gl3.glGetUniformBlockIndex(program, uniformBlockName);
+        checkError();
+        return result;
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding) {
+        gl3.glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+        checkError();
+    }
+
+    @Override
+    public void glGenQueries(IntBuffer ids) {
+        gl3.glGenQueries(ids);
+        checkError();
+    }
+
+    @Override
+    public void glDeleteQueries(IntBuffer ids) {
+        gl3.glDeleteQueries(ids);
+        checkError();
+    }
+
+    @Override
+    public void glQueryCounter(int query, int target) {
+        gl3.glQueryCounter(query, target);
+        checkError();
+    }
+
+    @Override
+    public int glGetQueryObjectiv(int query, int pname) {
+        int result = gl3.glGetQueryObjectiv(query, pname);
+        checkError();
+        return result;
+    }
+
+    @Override
+    public long glGetQueryObjectui64(int query, int pname) {
+        long result = gl3.glGetQueryObjectui64(query, pname);
+        checkError();
+        return result;
+    }
+
     @Override
     public void glDeleteVertexArrays(IntBuffer arrays) {
         gl3.glDeleteVertexArrays(arrays);
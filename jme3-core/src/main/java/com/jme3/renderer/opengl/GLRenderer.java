@@ -43,6 +43,7 @@ import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.shader.Attribute;
+import com.jme3.shader.FrameUniformBlock;
 import com.jme3.shader.Shader;
 import com.jme3.shader.Shader.ShaderSource;
 import com.jme3.shader.Shader.ShaderType;
@@ -75,6 +76,7 @@ public final class GLRenderer implements Renderer {
     private static final Logger logger = Logger.getLogger(GLRenderer.class.getName());
     private static final boolean VALIDATE_SHADER = false;
     private static final Pattern GLVERSION_PATTERN = Pattern.compile(".*?(\\d+)\\.(\\d+).*");
+    private static final int FRAME_UNIFORMS_BINDING = 0;
 
     private final ByteBuffer nameBuf = BufferUtils.createByteBuffer(250);
     private final StringBuilder stringBuf = new StringBuilder(250);
@@ -82,6 +84,7 @@ public final class GLRenderer implements Renderer {
     private final IntBuffer intBuf16 = BufferUtils.createIntBuffer(16);
     private final FloatBuffer floatBuf16 = BufferUtils.createFloatBuffer(16);
     private final RenderContext context = new RenderContext();
+    private final RenderState appliedRenderState = new RenderState();
     private final NativeObjectManager objManager = new NativeObjectManager();
     private final EnumSet<Caps> caps = EnumSet.noneOf(Caps.class);
     private final EnumMap<Limits, Integer> limits = new EnumMap<Limits, Integer>(Limits.class);
@@ -91,6 +94,9 @@ public final class GLRenderer implements Renderer {
     private int vpX, vpY, vpW, vpH;
     private int clipX, clipY, clipW, clipH;
     private boolean linearizeSrgbImages;
+    private int frameUniformsBuffer = -1;
+    private FrameUniformBlock boundFrameUniforms;
+    private int boundFrameUniformsVersion;
     private HashSet<String> extensions;
 
     private final GL gl;
@@ -444,6 +450,14 @@ public final class GLRenderer implements Renderer {
             caps.add(Caps.CoreProfile);
         }
 
+        if (caps.contains(Caps.OpenGL31) && caps.contains(Caps.GLSL150)) {
+            caps.add(Caps.UniformBufferObject);
+        }
+
+        if (gl3 != null && (caps.contains(Caps.OpenGL33) || hasExtension("GL_ARB_timer_query"))) {
+            caps.add(Caps.TimerQuery);
+        }
+
         if (hasExtension("GL_ARB_get_program_binary")) {
             int binaryFormats = getInteger(GLExt.GL_NUM_PROGRAM_BINARY_FORMATS);
             if (binaryFormats > 0) {
@@ -529,6 +543,7 @@ public final class GLRenderer implements Renderer {
 
     public void invalidateState() {
         context.reset();
+        boundFrameUniforms = null;
         if (gl2 != null) {
             context.initialDrawBuf = getInteger(GL2.GL_DRAW_BUFFER);
             context.initialReadBuf = getInteger(GL2.GL_READ_BUFFER);
@@ -539,6 +554,7 @@ public final class GLRenderer implements Renderer {
         logger.log(Level.FINE, "Reseting objects and invalidating state");
         objManager.resetObjects();
         statistics.clearMemory();
+        frameUniformsBuffer = -1;
         invalidateState();
     }
 
@@ -546,6 +562,12 @@ public final class GLRenderer implements Renderer {
         logger.log(Level.FINE, "Deleting objects and invalidating state");
         objManager.deleteAllObjects(this);
         statistics.clearMemory();
+        if (frameUniformsBuffer != -1) {
+            intBuf1.clear();
+            intBuf1.put(0, frameUniformsBuffer);
+            gl.glDeleteBuffers(intBuf1);
+            frameUniformsBuffer = -1;
+        }
         invalidateState();
     }
 
@@ -563,6 +585,7 @@ public final class GLRenderer implements Renderer {
             if (context.colorWriteEnabled == false) {
                 gl.glColorMask(true, true, true, true);
                 context.colorWriteEnabled = true;
+                context.renderState = null;
             }
             bits = GL.GL_COLOR_BUFFER_BIT;
         }
@@ -574,6 +597,7 @@ public final class GLRenderer implements Renderer {
             if (context.depthWriteEnabled == false) {
                 gl.glDepthMask(true);
                 context.depthWriteEnabled = true;
+                context.renderState = null;
             }
             bits |= GL.GL_DEPTH_BUFFER_BIT;
         }
@@ -605,6 +629,12 @@ public final class GLRenderer implements Renderer {
     }
 
     public void applyRenderState(RenderState state) {
+        // Consecutive draws mostly use equal states, compared in constant
+        // time with their packed representation
+        if (context.renderState != null && context.renderState.contentEquals(state)) {
+            return;
+        }
+
         if (gl2 != null) {
             if (state.isWireframe() && !context.wireframe) {
                 gl2.glPolygonMode(GL.GL_FRONT_AND_BACK, GL2.GL_LINE);
@@ -779,6 +809,9 @@ public final class GLRenderer implements Renderer {
                 gl.glDisable(GL.GL_STENCIL_TEST);
             }
         }
+
+        appliedRenderState.set(state);
+        context.renderState = appliedRenderState;
     }
 
     private int convertStencilOperation(StencilOperation stencilOp) {
@@ -827,6 +860,35 @@ public final class GLRenderer implements Renderer {
         }
     }
 
+    /*********************************************************************\
+     |* Timer queries                                                     *|
+     \*********************************************************************/
+    public int[] generateTimestampQueries(int count) {
+        IntBuffer ids = BufferUtils.createIntBuffer(count);
+        gl3.glGenQueries(ids);
+        int[] queries = new int[count];
+        ids.get(queries);
+        return queries;
+    }
+
+    public void deleteTimestampQueries(int[] queries) {
+        IntBuffer ids = BufferUtils.createIntBuffer(queries.length);
+        ids.put(queries).flip();
+        gl3.glDeleteQueries(ids);
+    }
+
+    public void recordTimestamp(int query) {
+        gl3.glQueryCounter(query, GL3.GL_TIMESTAMP);
+    }
+
+    public boolean isTimestampAvailable(int query) {
+        return gl3.glGetQueryObjectiv(query, GL3.GL_QUERY_RESULT_AVAILABLE) == GL.GL_TRUE;
+    }
+
+    public long getTimestamp(int query) {
+        return gl3.glGetQueryObjectui64(query, GL3.GL_QUERY_RESULT);
+    }
+
     /*********************************************************************\
      |* Camera and World transforms                                       *|
      \*********************************************************************/
@@ -1038,6 +1100,10 @@ public final class GLRenderer implements Renderer {
     }
 
     public void updateShaderSourceData(ShaderSource source) {
+        updateShaderSourceData(source, false);
+    }
+
+    private void updateShaderSourceData(ShaderSource source, boolean frameUniforms) {
         int id = source.getId();
         if (id == -1) {
             // Create id
@@ -1095,7 +1161,11 @@ public final class GLRenderer implements Renderer {
         stringBuf.append("#define ").append(source.getType().name().toUpperCase()).append("_SHADER 1\n");
 
         stringBuf.append(source.getDefines());
-        stringBuf.append(source.getSource());
+        if (frameUniforms) {
+            stringBuf.append(FrameUniformBlock.injectBlock(source.getSource()));
+        } else {
+            stringBuf.append(source.getSource());
+        }
 
         intBuf1.clear();
         intBuf1.put(0, stringBuf.length());
@@ -1155,9 +1225,22 @@ public final class GLRenderer implements Renderer {
         // For versions 3.3 and up, user should use layout qualifiers instead.
         boolean bindFragDataRequired = false;
 
+        // Read the per-frame bindings from the uniform buffer only if all
+        // stages can, a name cannot be both in a block and a plain uniform
+        boolean frameUniforms = caps.contains(Caps.UniformBufferObject);
+        for (ShaderSource source : shader.getSources()) {
+            if (!frameUniforms) {
+                break;
+            }
+            String language = source.getLanguage();
+            frameUniforms = language.startsWith("GLSL")
+                    && Integer.parseInt(language.substring(4)) >= 150
+                    && FrameUniformBlock.isCompatible(source.getSource());
+        }
+
         for (ShaderSource source : shader.getSources()) {
             if (source.isUpdateNeeded()) {
-                updateShaderSourceData(source);
+                updateShaderSourceData(source, frameUniforms);
             }
             if (source.getType() == ShaderType.Fragment
                     && source.getLanguage().equals("GLSL150")) {
@@ -1199,6 +1282,12 @@ public final class GLRenderer implements Renderer {
                 logger.fine("Shader linked successfully.");
             }
             shader.clearUpdateNeeded();
+            if (frameUniforms) {
+                int blockIndex = gl3.glGetUniformBlockIndex(id, FrameUniformBlock.BLOCK_NAME);
+                if (blockIndex != GL3.GL_INVALID_INDEX) {
+                    gl3.glUniformBlockBinding(id, blockIndex, FRAME_UNIFORMS_BINDING);
+                }
+            }
             if (needRegister) {
                 // Register shader for clean up if it was created in this method.
                 objManager.registerObject(shader);
@@ -1234,6 +1323,22 @@ public final class GLRenderer implements Renderer {
         }
     }
 
+    public void setFrameUniforms(FrameUniformBlock block) {
+        if (block == boundFrameUniforms && block.getVersion() == boundFrameUniformsVersion) {
+            return;
+        }
+        if (frameUniformsBuffer == -1) {
+            intBuf1.clear();
+            gl.glGenBuffers(intBuf1);
+            frameUniformsBuffer = intBuf1.get(0);
+        }
+        gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, frameUniformsBuffer);
+        gl.glBufferData(GL3.GL_UNIFORM_BUFFER, block.getData(), GL.GL_STREAM_DRAW);
+        gl3.glBindBufferBase(GL3.GL_UNIFORM_BUFFER, FRAME_UNIFORMS_BINDING, frameUniformsBuffer);
+        boundFrameUniforms = block;
+        boundFrameUniformsVersion = block.getVersion();
+    }
+
     public void deleteShaderSource(ShaderSource source) {
         if (source.getId() < 0) {
             logger.warning("Shader source is not uploaded to GPU, cannot delete.");
@@ -2271,6 +2376,11 @@ public final class GLRenderer implements Renderer {
             }
         }
 
+        if (!created && vb.getUpdateEnd() != -1 && updateBufferSubData(vb, target)) {
+            vb.clearUpdateNeeded();
+            return;
+        }
+
         int usage = convertUsage(vb.getUsage());
         vb.getData().rewind();
 
@@ -2297,6 +2407,52 @@ public final class GLRenderer implements Renderer {
         vb.clearUpdateNeeded();
     }
 
+    /**
+     * Sends the range of elements marked by {@link VertexBuffer#updateData(int, int) }.
+     * The position and limit of the data are in units of its buffer class,
+     * e.g. bytes for the <code>ByteBuffer</code> of a <code>Half</code>
+     * buffer.
+     *
+     * @return false if the data cannot be sent in part, and must be sent
+     * in full instead
+     */
+    private boolean updateBufferSubData(VertexBuffer vb, int target) {
+        Buffer data = vb.getData();
+        int unitSize;
+        if (data instanceof ByteBuffer) {
+            unitSize = 1;
+        } else if (data instanceof ShortBuffer) {
+            unitSize = 2;
+        } else if (data instanceof IntBuffer || data instanceof FloatBuffer) {
+            unitSize = 4;
+        } else {
+            return false;
+        }
+        int elementSize = vb.getNumComponents() * vb.getFormat().getComponentSize();
+        if (elementSize % unitSize != 0) {
+            return false;
+        }
+        int elementUnits = elementSize / unitSize;
+        int limit = data.limit();
+        data.limit(vb.getUpdateEnd() * elementUnits);
+        data.position(vb.getUpdateStart() * elementUnits);
+        long offset = (long) vb.getUpdateStart() * elementSize;
+
+        if (data instanceof ByteBuffer) {
+            gl.glBufferSubData(target, offset, (ByteBuffer) data);
+        } else if (data instanceof ShortBuffer) {
+            gl.glBufferSubData(target, offset, (ShortBuffer) data);
+        } else if (data instanceof IntBuffer) {
+            glext.glBufferSubData(target, offset, (IntBuffer) data);
+        } else {
+            gl.glBufferSubData(target, offset, (FloatBuffer) data);
+        }
+
+        data.limit(limit);
+        data.rewind();
+        return true;
+    }
+
     public void deleteBuffer(VertexBuffer vb) {
         int bufId = vb.getId();
         if (bufId != -1) {
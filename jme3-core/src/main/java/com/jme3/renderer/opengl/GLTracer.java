@@ -136,6 +136,12 @@ public final class GLTracer implements InvocationHandler {
         noEnumArgs("glDeleteShader", 0);
         noEnumArgs("glDeleteProgram", 0);
         noEnumArgs("glBindFragDataLocation", 0, 1);
+        noEnumArgs("glBindBufferBase", 1, 2);
+        noEnumArgs("glGetUniformBlockIndex", 0, -1);
+        noEnumArgs("glUniformBlockBinding", 0, 1, 2);
+        noEnumArgs("glQueryCounter", 0);
+        noEnumArgs("glGetQueryObjectiv", 0, -1);
+        noEnumArgs("glGetQueryObjectui64", 0, -1);
     }
     
     public GLTracer(Object obj, IntMap<String> constMap) {
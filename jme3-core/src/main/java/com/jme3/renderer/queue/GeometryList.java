@@ -31,6 +31,7 @@
  */
 package com.jme3.renderer.queue;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -41,6 +42,10 @@ import com.jme3.util.ListSort;
 /**
  * This class is a special purpose list of {@link Geometry} objects for render
  * queuing.
+ * <p>
+ * If the comparator is a {@link SortKeyComparator}, the list is sorted with
+ * a radix sort over the 64-bit sort keys of the geometries, otherwise
+ * with a merge sort using the comparator.
  *
  * @author Jack Lindamood
  * @author Three Rings - better sorting alg.
@@ -54,6 +59,13 @@ public class GeometryList implements Iterable<Geometry>{
     private ListSort listSort;
     private int size;
     private GeometryComparator comparator;
+    private SortKeyComparator keyComparator;
+
+    // Radix sort buffers, allocated on first use
+    private long[] keys;
+    private long[] tempKeys;
+    private Geometry[] tempGeometries;
+    private int[] counts;
 
     /**
      * Initializes the GeometryList to use the given {@link GeometryComparator}
@@ -64,12 +76,48 @@ public class GeometryList implements Iterable<Geometry>{
     public GeometryList(GeometryComparator comparator) {
         size = 0;
         geometries = new Geometry[DEFAULT_SIZE];      
-        this.comparator = comparator;
         listSort = new ListSort<Geometry>();
+        setComparator(comparator);
     }
 
     public void setComparator(GeometryComparator comparator) {
         this.comparator = comparator;
+        this.keyComparator = usesSortKeys(comparator) ? (SortKeyComparator) comparator : null;
+    }
+
+    /**
+     * Returns true if the comparator is a {@link SortKeyComparator} whose
+     * sort keys match its compare method, i.e. compare() is not overridden
+     * by a subclass that does not also override computeSortKey().
+     */
+    private static boolean usesSortKeys(GeometryComparator comparator) {
+        if (!(comparator instanceof SortKeyComparator)) {
+            return false;
+        }
+        try {
+            Class<?> compareClass = comparator.getClass()
+                    .getMethod("compare", Geometry.class, Geometry.class).getDeclaringClass();
+            Class<?> keyClass = comparator.getClass()
+                    .getMethod("computeSortKey", Geometry.class).getDeclaringClass();
+            return compareClass.isAssignableFrom(keyClass);
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts a float to a 32-bit sort key, so that comparing the keys
+     * as unsigned integers orders them like the float values.
+     *
+     * @param value The value to convert
+     * @return The key, in the low 32 bits
+     */
+    public static long floatToSortKey(float value) {
+        // Adding zero turns -0 into 0, which compares equal
+        int bits = Float.floatToIntBits(value + 0f);
+        // Flip all bits of negative values, only the sign bit of positive ones
+        bits ^= (bits >> 31) | 0x80000000;
+        return bits & 0xFFFFFFFFL;
     }
 
     /**
@@ -141,6 +189,10 @@ public class GeometryList implements Iterable<Geometry>{
      */
     public void sort() {
         if (size > 1) {
+            if (keyComparator != null) {
+                radixSort();
+                return;
+            }
             // sort the spatial list using the comparator
             if(listSort.getLength() != size){
                 listSort.allocateStack(size);
@@ -149,6 +201,72 @@ public class GeometryList implements Iterable<Geometry>{
         }
     }
 
+    /**
+     * Stable LSD radix sort of the geometries by their sort keys,
+     * one byte per pass. Passes where all keys have the same byte
+     * are skipped.
+     */
+    private void radixSort() {
+        if (keys == null || keys.length < size) {
+            int capacity = geometries.length;
+            keys = new long[capacity];
+            tempKeys = new long[capacity];
+            tempGeometries = new Geometry[capacity];
+            counts = new int[8 * 256];
+        } else {
+            Arrays.fill(counts, 0);
+        }
+
+        long[] srcKeys = keys;
+        long[] dstKeys = tempKeys;
+        Geometry[] srcGeoms = geometries;
+        Geometry[] dstGeoms = tempGeometries;
+
+        // Compute the keys and the histograms of all passes at once
+        for (int i = 0; i < size; i++) {
+            long key = keyComparator.computeSortKey(srcGeoms[i]);
+            srcKeys[i] = key;
+            for (int pass = 0; pass < 8; pass++) {
+                counts[(pass << 8) + (int) ((key >>> (pass << 3)) & 0xFF)]++;
+            }
+        }
+
+        for (int pass = 0; pass < 8; pass++) {
+            int offset = pass << 8;
+            int shift = pass << 3;
+            if (counts[offset + (int) ((srcKeys[0] >>> shift) & 0xFF)] == size) {
+                // All keys have the same byte
+                continue;
+            }
+            // Turn the counts into start positions
+            int sum = 0;
+            for (int b = 0; b < 256; b++) {
+                int count = counts[offset + b];
+                counts[offset + b] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < size; i++) {
+                long key = srcKeys[i];
+                int pos = counts[offset + (int) ((key >>> shift) & 0xFF)]++;
+                dstKeys[pos] = key;
+                dstGeoms[pos] = srcGeoms[i];
+            }
+            long[] swapKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = swapKeys;
+            Geometry[] swapGeoms = srcGeoms;
+            srcGeoms = dstGeoms;
+            dstGeoms = swapGeoms;
+        }
+
+        if (srcGeoms != geometries) {
+            // Odd number of passes, the result is in the temporary array
+            System.arraycopy(srcGeoms, 0, geometries, 0, size);
+        }
+        // Do not keep references to the geometries in the temporary array
+        Arrays.fill(tempGeometries, 0, size, null);
+    }
+
     public Iterator<Geometry> iterator() {
         return new Iterator<Geometry>() {
 
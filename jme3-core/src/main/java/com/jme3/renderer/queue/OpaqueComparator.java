@@ -36,7 +36,7 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Geometry;
 
-public class OpaqueComparator implements GeometryComparator {
+public class OpaqueComparator implements SortKeyComparator {
 
     private Camera cam;
     private final Vector3f tempVec  = new Vector3f();
@@ -76,9 +76,13 @@ public class OpaqueComparator implements GeometryComparator {
         int compareResult = m2.getSortId() - m1.getSortId();
         if (compareResult == 0){
             // use the same shader.
-            // sort front-to-back then.
-            float d1 = distanceToCam(o1);
-            float d2 = distanceToCam(o2);
+            // group the same render states.
+            compareResult = m1.getRenderStateSortId() - m2.getRenderStateSortId();
+        }
+        if (compareResult == 0){
+            // sort front-to-back then, with the precision of the sort key.
+            long d1 = distanceSortKey(o1);
+            long d2 = distanceSortKey(o2);
 
             if (d1 == d2)
                 return 0;
@@ -91,4 +95,16 @@ public class OpaqueComparator implements GeometryComparator {
         }
     }
 
+    private long distanceSortKey(Geometry geom) {
+        return GeometryList.floatToSortKey(distanceToCam(geom)) >>> 8;
+    }
+
+    public long computeSortKey(Geometry geom) {
+        // Descending sort ID in the high bits, then the render state,
+        // then front-to-back
+        long sortId = ~(geom.getMaterial().getSortId() ^ 0x80000000) & 0xFFFFFFFFL;
+        long stateId = geom.getMaterial().getRenderStateSortId();
+        return (sortId << 32) | (stateId << 24) | distanceSortKey(geom);
+    }
+
 }
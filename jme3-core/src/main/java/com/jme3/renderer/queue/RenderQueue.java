@@ -32,6 +32,7 @@
 package com.jme3.renderer.queue;
 
 import com.jme3.post.SceneProcessor;
+import com.jme3.profile.FrameProfiler;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.RenderManager;
 import com.jme3.scene.Geometry;
@@ -259,7 +260,9 @@ public class RenderQueue {
 
     private void renderGeometryList(GeometryList list, RenderManager rm, Camera cam, boolean clear) {
         list.setCamera(cam); // select camera for sorting
+        FrameProfiler.beginScope("Sort");
         list.sort();
+        FrameProfiler.endScope();
         for (int i = 0; i < list.size(); i++) {
             Geometry obj = list.get(i);
             assert obj != null;
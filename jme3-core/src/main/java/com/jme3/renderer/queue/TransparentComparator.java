@@ -35,7 +35,7 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Geometry;
 
-public class TransparentComparator implements GeometryComparator {
+public class TransparentComparator implements SortKeyComparator {
 
     private Camera cam;
     private final Vector3f tempVec = new Vector3f();
@@ -98,4 +98,9 @@ public class TransparentComparator implements GeometryComparator {
         else
             return -1;
     }
+
+    public long computeSortKey(Geometry geom) {
+        // Back-to-front
+        return ~GeometryList.floatToSortKey(distanceToCam(geom)) & 0xFFFFFFFFL;
+    }
 }
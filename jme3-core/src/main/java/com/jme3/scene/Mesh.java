@@ -36,6 +36,7 @@ import com.jme3.bounding.BoundingVolume;
 import com.jme3.collision.Collidable;
 import com.jme3.collision.CollisionResults;
 import com.jme3.collision.bih.BIHTree;
+import com.jme3.collision.bih.FlatBIHTree;
 import com.jme3.export.*;
 import com.jme3.material.RenderState;
 import com.jme3.math.Matrix4f;
@@ -167,6 +168,7 @@ public class Mesh implements Savable, Cloneable {
     private BoundingVolume meshBound =  new BoundingBox();
 
     private CollisionData collisionTree = null;
+    private volatile FlatBIHTree flatCollisionTree = null;
 
     private SafeArrayList<VertexBuffer> buffersList = new SafeArrayList<VertexBuffer>(VertexBuffer.class);
     private IntMap<VertexBuffer> buffers = new IntMap<VertexBuffer>();
@@ -236,6 +238,7 @@ public class Mesh implements Savable, Cloneable {
             // TODO: Collision tree cloning
             //clone.collisionTree = collisionTree != null ? collisionTree : null;
             clone.collisionTree = null; // it will get re-generated in any case
+            clone.flatCollisionTree = null;
 
             clone.buffers = new IntMap<VertexBuffer>();
             clone.buffersList = new SafeArrayList<VertexBuffer>(VertexBuffer.class);
@@ -924,9 +927,23 @@ public class Mesh implements Savable, Cloneable {
      * com.jme3.collision.CollisionResults) }.
      */
     public void createCollisionData(){
+        createCollisionData(false);
+    }
+
+    /**
+     * Generates a collision tree for the mesh, optionally building it
+     * on several threads. A parallel build gives the same tree as a
+     * sequential one and is worth it for meshes with many thousands of
+     * triangles, such as level geometry loaded up front.
+     *
+     * @param parallel true to build the tree in parallel
+     * @see BIHTree#construct(boolean)
+     */
+    public void createCollisionData(boolean parallel){
         BIHTree tree = new BIHTree(this);
-        tree.construct();
+        tree.construct(parallel);
         collisionTree = tree;
+        flatCollisionTree = null;
     }
 
     /**
@@ -936,6 +953,32 @@ public class Mesh implements Savable, Cloneable {
      */
     public void clearCollisionData() {
         collisionTree = null;
+        flatCollisionTree = null;
+    }
+
+    /**
+     * Returns an array packed copy of the collision tree meant for fast
+     * ray queries, generating the collision tree first if needed.
+     * The copy is kept until the collision data is cleared or regenerated.
+     * 
+     * @return The flattened collision tree, or null if the mesh has no
+     * vertices or its collision data is not a {@link BIHTree}
+     * @see FlatBIHTree
+     */
+    public FlatBIHTree getFlatCollisionTree() {
+        FlatBIHTree flat = flatCollisionTree;
+        if (flat == null && getVertexCount() > 0) {
+            CollisionData tree = collisionTree;
+            if (tree == null) {
+                createCollisionData();
+                tree = collisionTree;
+            }
+            if (tree instanceof BIHTree) {
+                flat = ((BIHTree) tree).flatten();
+                flatCollisionTree = flat;
+            }
+        }
+        return flat;
     }
 
     /**
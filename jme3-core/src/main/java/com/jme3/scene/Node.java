@@ -38,6 +38,7 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.Savable;
 import com.jme3.material.Material;
+import com.jme3.math.Ray;
 import com.jme3.util.SafeArrayList;
 import com.jme3.util.TempVars;
 import java.io.IOException;
@@ -83,6 +84,11 @@ public class Node extends Spatial {
      */     
     private boolean updateListValid = false;    
 
+    /**
+     * The bounding volume hierarchy over the children, null if disabled.
+     */
+    private SpatialBVH bvh = null;
+
     /**
      * Serialization only. Do not use.
      */
@@ -118,6 +124,62 @@ public class Node extends Spatial {
         return children.size();        
     }
 
+    /**
+     * Enables or disables the {@link SpatialBVH bounding volume hierarchy}
+     * over the children of this node.
+     * <p>
+     * With a hierarchy, the children of this node are culled and collided
+     * with rays and bounding volumes in logarithmic time instead of one by
+     * one, which speeds up nodes with many children spread across the
+     * scene, such as the root of a level. The hierarchy is built and
+     * updated by {@link #updateGeometricState() }. Disabled by default.
+     *
+     * @param enabled True to enable the hierarchy
+     */
+    public void setBVHEnabled(boolean enabled) {
+        if (enabled && bvh == null) {
+            bvh = new SpatialBVH(this);
+            setBoundRefresh();
+        } else if (!enabled) {
+            bvh = null;
+        }
+    }
+
+    /**
+     * @return True if the bounding volume hierarchy is enabled.
+     * @see #setBVHEnabled(boolean)
+     */
+    public boolean isBVHEnabled() {
+        return bvh != null;
+    }
+
+    /**
+     * Returns the bounding volume hierarchy over the children of this node,
+     * if it is enabled and up to date.
+     *
+     * @return The hierarchy, or null if it is disabled or the children
+     * changed since the last {@link #updateGeometricState() }.
+     */
+    public SpatialBVH getBVH() {
+        return bvh != null && bvh.isValid() ? bvh : null;
+    }
+
+    private void invalidateBVH() {
+        if (bvh != null) {
+            bvh.invalidate();
+            setBoundRefresh();
+        }
+    }
+
+    /**
+     * Called when the cull hint of a child changes.
+     */
+    void childCullHintChanged() {
+        if (bvh != null) {
+            bvh.updateCullHints();
+        }
+    }
+
     @Override
     protected void setTransformRefresh(){
         super.setTransformRefresh();
@@ -257,10 +319,18 @@ public class Node extends Spatial {
             // a round-trip later on.
             // NOTE 9/19/09
             // Although it does save a round trip,
-            for (Spatial child : children.getArray()) {
+            Spatial[] array = children.getArray();
+            for (int i = 0; i < array.length; i++) {
+                Spatial child = array[i];
+                if (bvh != null && (child.refreshFlags & RF_BOUND) != 0) {
+                    bvh.childBoundChanged(i);
+                }
                 child.updateGeometricState();
             }
         }            
+        if (bvh != null) {
+            bvh.update();
+        }
 
         if ((refreshFlags & RF_BOUND) != 0){
             updateWorldBound();
@@ -344,6 +414,7 @@ public class Node extends Spatial {
             }
             child.setParent(this);
             children.add(index, child);
+            invalidateBVH();
             
             // XXX: Not entirely correct? Forces bound update up the
             // tree stemming from the attached child. Also forces
@@ -421,6 +492,7 @@ public class Node extends Spatial {
         if ( child != null ) {
             child.setParent( null );
             logger.log(Level.FINE, "{0}: Child removed.", this.toString());
+            invalidateBVH();
 
             // since a child with a bound was detached;
             // our own bound will probably change.
@@ -478,6 +550,8 @@ public class Node extends Spatial {
         children.add(index1, c2);
         children.remove(index2);
         children.add(index2, c1);
+        // the hierarchy refers to the children by index
+        invalidateBVH();
     }
 
     /**
@@ -608,6 +682,10 @@ public class Node extends Spatial {
           if (bv.collideWith(other) == 0) return 0;
         }
         */
+        SpatialBVH bvh = getBVH();
+        if (bvh != null && (other instanceof Ray || other instanceof BoundingVolume)) {
+            return bvh.collideWith(other, results);
+        }
         for (Spatial child : children.getArray()){
             total += child.collideWith(other, results);
         }
@@ -691,6 +769,10 @@ public class Node extends Spatial {
         // Reset the fields of the clone that should be in a 'new' state.
         nodeClone.updateList = null;
         nodeClone.updateListValid = false; // safe because parent is nulled out in super.clone()
+        if (bvh != null) {
+            nodeClone.bvh = new SpatialBVH(nodeClone);
+            nodeClone.setBoundRefresh();
+        }
             
         return nodeClone;
     }
@@ -711,6 +793,7 @@ public class Node extends Spatial {
     public void write(JmeExporter e) throws IOException {
         super.write(e);
         e.getCapsule(this).writeSavableArrayList(new ArrayList(children), "children", null);
+        e.getCapsule(this).write(bvh != null, "bvhEnabled", false);
     }
 
     @Override
@@ -730,6 +813,7 @@ public class Node extends Spatial {
         }
         
         super.read(e);
+        setBVHEnabled(e.getCapsule(this).readBoolean("bvhEnabled", false));
     }
 
     @Override
@@ -40,6 +40,7 @@ import com.jme3.light.Light;
 import com.jme3.light.LightList;
 import com.jme3.material.Material;
 import com.jme3.math.*;
+import com.jme3.profile.FrameProfiler;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
@@ -658,7 +659,9 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
         }
 
         for (Control c : controls.getArray()) {
+            FrameProfiler.beginScope(c.getClass());
             c.update(tpf);
+            FrameProfiler.endScope();
         }
     }
 
@@ -1476,6 +1479,9 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
      */
     public void setCullHint(CullHint hint) {
         cullHint = hint;
+        if (parent != null) {
+            parent.childCullHintChanged();
+        }
     }
 
     /**
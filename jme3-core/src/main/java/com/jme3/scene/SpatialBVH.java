@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.scene;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.Collidable;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import java.util.Arrays;
+
+/**
+ * <code>SpatialBVH</code> is a bounding volume hierarchy over the children
+ * of a {@link Node}, built from the world bounds of the children.
+ * <p>
+ * It lets the {@link com.jme3.renderer.RenderManager} cull the children
+ * of the node and {@link Node#collideWith(com.jme3.collision.Collidable, com.jme3.collision.CollisionResults) }
+ * find the children hit by a ray or a bounding volume in logarithmic time,
+ * instead of testing every child. This matters for flat scenes where
+ * thousands of spatials are attached to the same node.
+ * <p>
+ * The hierarchy is updated by {@link Node#updateGeometricState() }: the
+ * boxes of the children whose bounds changed are refit, and the hierarchy
+ * is rebuilt when children are attached or detached. Refitting makes the
+ * boxes overlap more as the children move, so once the refits add up to
+ * as many children as the hierarchy contains, the hierarchy is also
+ * rebuilt if its boxes grew too much since it was built.
+ * <p>
+ * A hierarchy is enabled with {@link Node#setBVHEnabled(boolean) }.
+ */
+public class SpatialBVH {
+
+    private static final int MAX_LEAF_SIZE = 4;
+
+    private final Node node;
+    private boolean valid = false;
+
+    // world bounds of the children as min x, y, z, max x, y, z
+    private float[] childBounds = new float[0];
+    // the hierarchy node containing each child, -1 if none
+    private int[] childLeaf = new int[0];
+    // the children in the hierarchy, grouped by leaf
+    private int[] items = new int[0];
+    private int itemCount;
+    // children without a bounding box or sphere
+    private int[] unbounded = new int[0];
+    private int unboundedCount;
+    // children with CullHint.Never
+    private int[] neverCulled = new int[0];
+    private int neverCulledCount;
+
+    private int nodeCount;
+    private float[] nodeBounds = new float[0];
+    // index of the first of the two children of a node, -1 for leaves
+    private int[] nodeChildren = new int[0];
+    private int[] nodeParent = new int[0];
+    private int[] nodeFirstItem = new int[0];
+    private int[] nodeItemCount = new int[0];
+
+    private int[] changed = new int[0];
+    private int changedCount;
+    private int refitCount;
+    private float buildCost;
+
+    private int[] visible = new int[0];
+    private final BoundingBox cullBox = new BoundingBox();
+
+    SpatialBVH(Node node) {
+        this.node = node;
+    }
+
+    /**
+     * @return The node whose children are in the hierarchy.
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * @return True if the hierarchy matches the current children of the
+     * node. It becomes invalid when children are attached, detached or
+     * moved, until the next {@link Node#updateGeometricState() }.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return The number of nodes of the hierarchy.
+     */
+    public int getNodeCount() {
+        return valid ? nodeCount : 0;
+    }
+
+    void invalidate() {
+        valid = false;
+        changedCount = 0;
+    }
+
+    void childBoundChanged(int index) {
+        if (valid) {
+            changed[changedCount++] = index;
+        }
+    }
+
+    /**
+     * Refits or rebuilds the hierarchy, called once the children of the
+     * node are updated.
+     */
+    void update() {
+        if (valid && changedCount > 0) {
+            refit();
+            if (valid && refitCount > itemCount) {
+                refitCount = 0;
+                if (getCost() > buildCost * 1.5f) {
+                    valid = false;
+                }
+            }
+        }
+        if (!valid) {
+            build();
+        }
+        changedCount = 0;
+    }
+
+    private void build() {
+        Spatial[] children = node.children.getArray();
+        int n = children.length;
+        if (childLeaf.length < n) {
+            int capacity = Math.max(n, childLeaf.length * 2);
+            childBounds = new float[capacity * 6];
+            childLeaf = new int[capacity];
+            items = new int[capacity];
+            unbounded = new int[capacity];
+            neverCulled = new int[capacity];
+            changed = new int[capacity];
+            visible = new int[capacity * 2];
+            nodeBounds = new float[capacity * 2 * 6];
+            nodeChildren = new int[capacity * 2];
+            nodeParent = new int[capacity * 2];
+            nodeFirstItem = new int[capacity * 2];
+            nodeItemCount = new int[capacity * 2];
+        }
+
+        itemCount = 0;
+        unboundedCount = 0;
+        for (int i = 0; i < n; i++) {
+            childLeaf[i] = -1;
+            if (setChildBounds(i, children[i].getWorldBound())) {
+                items[itemCount++] = i;
+            } else {
+                unbounded[unboundedCount++] = i;
+            }
+        }
+
+        nodeCount = 0;
+        if (itemCount > 0) {
+            nodeCount = 1;
+            nodeParent[0] = -1;
+            buildNode(0, 0, itemCount);
+        }
+        collectNeverCulled();
+        refitCount = 0;
+        buildCost = getCost();
+        valid = true;
+    }
+
+    private boolean setChildBounds(int index, BoundingVolume bound) {
+        float ex, ey, ez;
+        if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            ex = box.getXExtent();
+            ey = box.getYExtent();
+            ez = box.getZExtent();
+        } else if (bound instanceof BoundingSphere) {
+            ex = ey = ez = ((BoundingSphere) bound).getRadius();
+        } else {
+            return false;
+        }
+        Vector3f center = bound.getCenter();
+        int b = index * 6;
+        childBounds[b] = center.x - ex;
+        childBounds[b + 1] = center.y - ey;
+        childBounds[b + 2] = center.z - ez;
+        childBounds[b + 3] = center.x + ex;
+        childBounds[b + 4] = center.y + ey;
+        childBounds[b + 5] = center.z + ez;
+        return true;
+    }
+
+    private void buildNode(int index, int start, int end) {
+        nodeFirstItem[index] = start;
+        nodeItemCount[index] = end - start;
+        computeLeafBounds(index);
+        if (end - start <= MAX_LEAF_SIZE) {
+            nodeChildren[index] = -1;
+            for (int i = start; i < end; i++) {
+                childLeaf[items[i]] = index;
+            }
+            return;
+        }
+
+        // Split at the median along the longest axis of the centers
+        float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                float c = center(items[i], axis);
+                min[axis] = Math.min(min[axis], c);
+                max[axis] = Math.max(max[axis], c);
+            }
+        }
+        int axis = 0;
+        for (int a = 1; a < 3; a++) {
+            if (max[a] - min[a] > max[axis] - min[axis]) {
+                axis = a;
+            }
+        }
+        int mid = (start + end) >>> 1;
+        select(start, end - 1, mid, axis);
+
+        int left = nodeCount;
+        nodeCount += 2;
+        nodeChildren[index] = left;
+        nodeParent[left] = index;
+        nodeParent[left + 1] = index;
+        buildNode(left, start, mid);
+        buildNode(left + 1, mid, end);
+    }
+
+    private float center(int child, int axis) {
+        return childBounds[child * 6 + axis] + childBounds[child * 6 + 3 + axis];
+    }
+
+    // partially sorts the items so that the k-th item is at its sorted position
+    private void select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            float pivot = center(items[(lo + hi) >>> 1], axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (center(items[i], axis) < pivot) {
+                    i++;
+                }
+                while (center(items[j], axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = items[i];
+                    items[i] = items[j];
+                    items[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void computeLeafBounds(int index) {
+        int b = index * 6;
+        nodeBounds[b] = nodeBounds[b + 1] = nodeBounds[b + 2] = Float.POSITIVE_INFINITY;
+        nodeBounds[b + 3] = nodeBounds[b + 4] = nodeBounds[b + 5] = Float.NEGATIVE_INFINITY;
+        int end = nodeFirstItem[index] + nodeItemCount[index];
+        for (int i = nodeFirstItem[index]; i < end; i++) {
+            int c = items[i] * 6;
+            for (int k = 0; k < 3; k++) {
+                nodeBounds[b + k] = Math.min(nodeBounds[b + k], childBounds[c + k]);
+                nodeBounds[b + 3 + k] = Math.max(nodeBounds[b + 3 + k], childBounds[c + 3 + k]);
+            }
+        }
+    }
+
+    private void refit() {
+        Spatial[] children = node.children.getArray();
+        for (int i = 0; i < changedCount; i++) {
+            int child = changed[i];
+            if (childLeaf[child] < 0 || !setChildBounds(child, children[child].getWorldBound())) {
+                // The child gained or lost its bound
+                valid = false;
+                return;
+            }
+        }
+
+        if (changedCount * 4 > itemCount) {
+            // Refit all nodes, children are always after their parent
+            for (int n = nodeCount - 1; n >= 0; n--) {
+                if (nodeChildren[n] < 0) {
+                    computeLeafBounds(n);
+                } else {
+                    mergeChildBounds(n);
+                }
+            }
+        } else {
+            for (int i = 0; i < changedCount; i++) {
+                int leaf = childLeaf[changed[i]];
+                computeLeafBounds(leaf);
+                for (int n = nodeParent[leaf]; n >= 0; n = nodeParent[n]) {
+                    mergeChildBounds(n);
+                }
+            }
+        }
+        refitCount += changedCount;
+    }
+
+    private void mergeChildBounds(int index) {
+        int b = index * 6;
+        int l = nodeChildren[index] * 6;
+        int r = l + 6;
+        for (int k = 0; k < 3; k++) {
+            nodeBounds[b + k] = Math.min(nodeBounds[l + k], nodeBounds[r + k]);
+            nodeBounds[b + 3 + k] = Math.max(nodeBounds[l + 3 + k], nodeBounds[r + 3 + k]);
+        }
+    }
+
+    private float getSurfaceArea(int index) {
+        int b = index * 6;
+        float dx = nodeBounds[b + 3] - nodeBounds[b];
+        float dy = nodeBounds[b + 4] - nodeBounds[b + 1];
+        float dz = nodeBounds[b + 5] - nodeBounds[b + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    // the expected number of nodes visited by a query, relative to the root
+    private float getCost() {
+        if (nodeCount == 0) {
+            return 0;
+        }
+        float rootArea = getSurfaceArea(0);
+        if (!(rootArea > 0)) {
+            return 0;
+        }
+        float area = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            area += getSurfaceArea(n);
+        }
+        return area / rootArea;
+    }
+
+    /**
+     * Updates the list of children that are never culled, called when the
+     * cull hint of a child changes.
+     */
+    void updateCullHints() {
+        if (valid) {
+            collectNeverCulled();
+        }
+    }
+
+    private void collectNeverCulled() {
+        Spatial[] children = node.children.getArray();
+        neverCulledCount = 0;
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].cullHint == Spatial.CullHint.Never) {
+                neverCulled[neverCulledCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Finds the children of the node that may be in the frustum of the
+     * camera. The children with no bounding box or sphere and the children
+     * with {@link Spatial.CullHint#Never} are always included.
+     * <p>
+     * The camera plane state is the same after the call as before. The
+     * results are written into arrays owned by the hierarchy, so a hierarchy
+     * must not be culled by several threads at once.
+     *
+     * @param cam The camera to cull with
+     * @return The number of children found, their indices are in the first
+     * elements of {@link #getVisibleChildren() } in ascending order.
+     */
+    public int cull(Camera cam) {
+        int count = 0;
+        if (nodeCount > 0) {
+            count = cullNode(0, cam, 0);
+        }
+        for (int i = 0; i < unboundedCount; i++) {
+            visible[count++] = unbounded[i];
+        }
+        for (int i = 0; i < neverCulledCount; i++) {
+            if (childLeaf[neverCulled[i]] >= 0) {
+                visible[count++] = neverCulled[i];
+            }
+        }
+
+        // Keep the order of the children, without duplicates
+        Arrays.sort(visible, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || visible[unique - 1] != visible[i]) {
+                visible[unique++] = visible[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * @return The indices of the children found by the last call to
+     * {@link #cull(com.jme3.renderer.Camera) }.
+     */
+    public int[] getVisibleChildren() {
+        return visible;
+    }
+
+    private void setBox(BoundingBox box, int index) {
+        int b = index * 6;
+        box.getCenter().set((nodeBounds[b] + nodeBounds[b + 3]) * 0.5f,
+                            (nodeBounds[b + 1] + nodeBounds[b + 4]) * 0.5f,
+                            (nodeBounds[b + 2] + nodeBounds[b + 5]) * 0.5f);
+        box.setXExtent((nodeBounds[b + 3] - nodeBounds[b]) * 0.5f);
+        box.setYExtent((nodeBounds[b + 4] - nodeBounds[b + 1]) * 0.5f);
+        box.setZExtent((nodeBounds[b + 5] - nodeBounds[b + 2]) * 0.5f);
+    }
+
+    private int cullNode(int index, Camera cam, int count) {
+        int planeState = cam.getPlaneState();
+        setBox(cullBox, index);
+        Camera.FrustumIntersect intersect = cam.contains(cullBox);
+        if (intersect == Camera.FrustumIntersect.Inside || nodeChildren[index] < 0) {
+            if (intersect != Camera.FrustumIntersect.Outside) {
+                int end = nodeFirstItem[index] + nodeItemCount[index];
+                for (int i = nodeFirstItem[index]; i < end; i++) {
+                    visible[count++] = items[i];
+                }
+            }
+        } else if (intersect == Camera.FrustumIntersect.Intersects) {
+            int childState = cam.getPlaneState();
+            count = cullNode(nodeChildren[index], cam, count);
+            cam.setPlaneState(childState);
+            count = cullNode(nodeChildren[index] + 1, cam, count);
+        }
+        cam.setPlaneState(planeState);
+        return count;
+    }
+
+    /**
+     * Collides the children of the node that the hierarchy finds with a
+     * ray or a bounding volume.
+     *
+     * @param other The ray or bounding volume
+     * @param results The results to add the collisions to
+     * @return The number of collisions
+     */
+    public int collideWith(Collidable other, CollisionResults results) {
+        if (!(other instanceof Ray) && !(other instanceof BoundingVolume)) {
+            throw new IllegalArgumentException("Only rays and bounding volumes are supported");
+        }
+        Spatial[] children = node.children.getArray();
+        int total = 0;
+        for (int i = 0; i < unboundedCount; i++) {
+            total += children[unbounded[i]].collideWith(other, results);
+        }
+        if (nodeCount == 0) {
+            return total;
+        }
+
+        BoundingBox box = new BoundingBox();
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int index = stack[--top];
+            setBox(box, index);
+            boolean hit = other instanceof Ray
+                        ? box.intersects((Ray) other)
+                        : box.intersects((BoundingVolume) other);
+            if (!hit) {
+                continue;
+            }
+            if (nodeChildren[index] < 0) {
+                int end = nodeFirstItem[index] + nodeItemCount[index];
+                for (int i = nodeFirstItem[index]; i < end; i++) {
+                    total += children[items[i]].collideWith(other, results);
+                }
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = nodeChildren[index] + 1;
+                stack[top++] = nodeChildren[index];
+            }
+        }
+        return total;
+    }
+}
@@ -335,6 +335,8 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
     protected boolean normalized = false;
     protected int instanceSpan = 0;
     protected transient boolean dataSizeChanged = false;
+    protected transient int updateStart = 0;
+    protected transient int updateEnd = -1;
 
     /**
      * Creates an empty, uninitialized buffer.
@@ -698,6 +700,54 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         setUpdateNeeded();
     }
 
+    /**
+     * Called to send a range of elements of the data already set to the GPU
+     * again, after they were modified in place. Ranges marked before the
+     * next upload are merged, and the whole buffer is sent if it was
+     * updated with {@link #updateData(java.nio.Buffer) } meanwhile.
+     * 
+     * @param firstElement The index of the first modified element
+     * @param numElements The number of modified elements
+     * 
+     * @throws IllegalArgumentException If the range is outside of the data
+     */
+    public void updateData(int firstElement, int numElements){
+        int elementLength = format == Format.Half ? components * 2 : components;
+        if (firstElement < 0 || numElements < 0 
+                || firstElement + numElements > data.capacity() / elementLength) {
+            throw new IllegalArgumentException("Range is outside of the data");
+        }
+        if (numElements == 0) {
+            return;
+        }
+        if (!isUpdateNeeded()) {
+            super.setUpdateNeeded();
+            updateStart = firstElement;
+            updateEnd = firstElement + numElements;
+        } else if (updateEnd != -1) {
+            updateStart = Math.min(updateStart, firstElement);
+            updateEnd = Math.max(updateEnd, firstElement + numElements);
+        }
+    }
+
+    /**
+     * Returns the index of the first element to send to the GPU, 
+     * see {@link #updateData(int, int) }.
+     * Internal use only.
+     */
+    public int getUpdateStart() {
+        return updateStart;
+    }
+
+    /**
+     * Returns the index after the last element to send to the GPU,
+     * or -1 if the whole buffer must be sent, see {@link #updateData(int, int) }.
+     * Internal use only.
+     */
+    public int getUpdateEnd() {
+        return updateEnd;
+    }
+
     /**
      * Returns true if the data size of the VertexBuffer has changed.
      * Internal use only.
@@ -707,10 +757,17 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
         return dataSizeChanged;
     }
 
+    @Override
+    public void setUpdateNeeded(){
+        super.setUpdateNeeded();
+        updateEnd = -1;
+    }
+
     @Override
     public void clearUpdateNeeded(){
         super.clearUpdateNeeded();
         dataSizeChanged = false;
+        updateEnd = -1;
     }
 
     /**
@@ -31,6 +31,7 @@
  */
 package com.jme3.scene.instancing;
 
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
@@ -39,6 +40,7 @@ import com.jme3.export.Savable;
 import com.jme3.math.Matrix3f;
 import com.jme3.math.Matrix4f;
 import com.jme3.math.Quaternion;
+import com.jme3.renderer.Camera;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.VertexBuffer;
@@ -61,6 +63,12 @@ public class InstancedGeometry extends Geometry {
     private Geometry[] geometries = new Geometry[1];
     
     private int firstUnusedIndex = 0;
+    
+    private int numVisibleInstances = 0;
+    private int updateStart;
+    private int updateEnd;
+    private InstancedGeometry[] lodGeometries;
+    private float[] lodDistancesSquared;
 
     /**
      * Serialization only. Do not use.
@@ -246,46 +254,189 @@ public class InstancedGeometry extends Geometry {
         }
     }
     
+    /**
+     * Sets the geometries rendering the instances at the lower levels of
+     * detail, see {@link #updateInstances(com.jme3.renderer.Camera, boolean) }.
+     * 
+     * @param lodGeometries The geometries rendering each level, starting
+     * with this geometry at level 0, or null to render all instances at
+     * the level of detail of this geometry.
+     * @param lodDistances The distances from which each level after the
+     * first is used, in increasing order.
+     */
+    void setLodGeometries(InstancedGeometry[] lodGeometries, float[] lodDistances) {
+        this.lodGeometries = lodGeometries;
+        if (lodGeometries == null) {
+            lodDistancesSquared = null;
+            return;
+        }
+        lodDistancesSquared = new float[lodGeometries.length - 1];
+        for (int i = 0; i < lodDistancesSquared.length; i++) {
+            lodDistancesSquared[i] = lodDistances[i] * lodDistances[i];
+        }
+    }
+    
+    InstancedGeometry[] getLodGeometries() {
+        return lodGeometries;
+    }
+    
+    /**
+     * Writes the transforms of all the instances in the instance data.
+     * 
+     * @see #updateInstances(com.jme3.renderer.Camera, boolean) 
+     */
     public void updateInstances() {
-        FloatBuffer fb = (FloatBuffer) transformInstanceData.getData();
-        fb.limit(fb.capacity());
-        fb.position(0);
+        updateInstances(null, false);
+    }
+    
+    /**
+     * Writes the transforms of the instances to render from the given
+     * camera in the instance data. Only the instances which changed since 
+     * the last update are sent to the GPU again.
+     * <p>
+     * The visible instances are packed at the start of the instance data,
+     * so their number is {@link #getNumVisibleInstances() }. When levels of 
+     * detail are set up by the {@link InstancedNode}, every instance is 
+     * written in the geometry of the level for its distance to the camera.
+     * Instances are never culled or distributed when 
+     * {@link #setGlobalUserInstanceData(com.jme3.scene.VertexBuffer[]) global user data}
+     * is set, as it would no longer match the transforms.
+     * 
+     * @param cam The camera rendering the instances, or null to render all 
+     * of them at the level of detail of this geometry.
+     * @param cull True to skip the instances outside of the camera frustum.
+     */
+    public void updateInstances(Camera cam, boolean cull) {
+        compactInstances();
+        
+        InstancedGeometry[] targets = lodGeometries;
+        if (cam == null || globalInstanceData != null || targets == null) {
+            targets = null;
+            beginUpdate(firstUnusedIndex);
+        } else {
+            for (InstancedGeometry target : targets) {
+                target.beginUpdate(firstUnusedIndex);
+            }
+        }
+        if (cam == null || globalInstanceData != null) {
+            cull = false;
+        }
         
         TempVars vars = TempVars.get();
-        {
-            float[] temp = vars.matrixWrite;
+        int planeState = cam != null ? cam.getPlaneState() : 0;
+        for (int i = 0; i < firstUnusedIndex; i++) {
+            Geometry geom = geometries[i];
             
-            for (int i = 0; i < firstUnusedIndex; i++) {
-                Geometry geom = geometries[i];
-
-                if (geom == null) {
-                    geom = geometries[firstUnusedIndex - 1];
-                    
-                    if (geom == null) {
-                        throw new AssertionError();
-                    }
-                    
-                    swap(i, firstUnusedIndex - 1);
-                    
-                    while (geometries[firstUnusedIndex -1] == null) {
-                        firstUnusedIndex--;
-                    }
+            if (cull) {
+                if (geom.getCullHint() == CullHint.Always) {
+                    continue;
                 }
-                
-                Matrix4f worldMatrix = geom.getWorldMatrix();
-                updateInstance(worldMatrix, temp, 0, vars.tempMat3, vars.quat1);
-                fb.put(temp);
+                BoundingVolume bound = geom.getWorldBound();
+                cam.setPlaneState(planeState);
+                if (bound != null && cam.contains(bound) == Camera.FrustumIntersect.Outside) {
+                    continue;
+                }
+            }
+            
+            if (targets == null) {
+                writeInstance(geom, vars);
+            } else {
+                targets[selectLod(geom, cam)].writeInstance(geom, vars);
             }
         }
         vars.release();
+        if (cam != null) {
+            cam.setPlaneState(planeState);
+        }
         
-        fb.flip();
+        if (targets == null) {
+            endUpdate();
+        } else {
+            for (InstancedGeometry target : targets) {
+                target.endUpdate();
+            }
+        }
+    }
+    
+    private void compactInstances() {
+        // Fill the holes left by the deleted instances
+        for (int i = 0; i < firstUnusedIndex; i++) {
+            if (geometries[i] == null) {
+                if (geometries[firstUnusedIndex - 1] == null) {
+                    throw new AssertionError();
+                }
+                
+                swap(i, firstUnusedIndex - 1);
+                
+                while (geometries[firstUnusedIndex - 1] == null) {
+                    firstUnusedIndex--;
+                }
+            }
+        }
+    }
+    
+    private int selectLod(Geometry geom, Camera cam) {
+        BoundingVolume bound = geom.getWorldBound();
+        float distanceSquared = bound != null
+                ? cam.getLocation().distanceSquared(bound.getCenter())
+                : cam.getLocation().distanceSquared(geom.getWorldTranslation());
+        int level = 0;
+        while (level < lodDistancesSquared.length 
+                && distanceSquared >= lodDistancesSquared[level]) {
+            level++;
+        }
+        return level;
+    }
+    
+    private void beginUpdate(int numInstances) {
+        if (getMaxNumInstances() < numInstances) {
+            setMaxNumInstances(numInstances);
+        }
+        numVisibleInstances = 0;
+        updateStart = Integer.MAX_VALUE;
+        updateEnd = 0;
+    }
+    
+    private void writeInstance(Geometry geom, TempVars vars) {
+        FloatBuffer fb = (FloatBuffer) transformInstanceData.getData();
+        int offset = numVisibleInstances * INSTANCE_SIZE;
+        Matrix4f worldMatrix = geom.getWorldMatrix();
         
-        if (fb.limit() / INSTANCE_SIZE != firstUnusedIndex) {
-            throw new AssertionError();
+        // Compare to the matrix written last, the quaternion is derived from it
+        if (fb.get(offset + 0) != worldMatrix.m00 || fb.get(offset + 1) != worldMatrix.m10
+                || fb.get(offset + 2) != worldMatrix.m20 || fb.get(offset + 4) != worldMatrix.m01
+                || fb.get(offset + 5) != worldMatrix.m11 || fb.get(offset + 6) != worldMatrix.m21
+                || fb.get(offset + 8) != worldMatrix.m02 || fb.get(offset + 9) != worldMatrix.m12
+                || fb.get(offset + 10) != worldMatrix.m22 || fb.get(offset + 12) != worldMatrix.m03
+                || fb.get(offset + 13) != worldMatrix.m13 || fb.get(offset + 14) != worldMatrix.m23) {
+            float[] temp = vars.matrixWrite;
+            updateInstance(worldMatrix, temp, 0, vars.tempMat3, vars.quat1);
+            fb.position(offset);
+            fb.put(temp);
+            updateStart = Math.min(updateStart, numVisibleInstances);
+            updateEnd = numVisibleInstances + 1;
         }
-
-        transformInstanceData.updateData(fb);
+        numVisibleInstances++;
+    }
+    
+    private void endUpdate() {
+        FloatBuffer fb = (FloatBuffer) transformInstanceData.getData();
+        fb.clear();
+        if (updateEnd > updateStart) {
+            transformInstanceData.updateData(updateStart, updateEnd - updateStart);
+        }
+    }
+    
+    /**
+     * Returns the number of instances written in the instance data by the
+     * last update, which are rendered.
+     * 
+     * @return The number of instances to render.
+     * 
+     * @see #updateInstances(com.jme3.renderer.Camera, boolean) 
+     */
+    public int getNumVisibleInstances() {
+        return numVisibleInstances;
     }
     
     public void deleteInstance(Geometry geom) {
@@ -131,7 +131,7 @@ public class InstancedNode extends GeometryGroupNode {
         }
         
         public void render(RenderManager rm, ViewPort vp) {
-            node.renderFromControl();
+            node.renderFromControl(vp);
         }
         
         public void write(JmeExporter ex) throws IOException {
@@ -151,6 +151,9 @@ public class InstancedNode extends GeometryGroupNode {
     private HashMap<InstanceTypeKey, InstancedGeometry> instancesMap = 
             new HashMap<InstanceTypeKey, InstancedGeometry>();
     
+    private boolean instanceCulling = false;
+    private float[] lodDistances;
+    
     public InstancedNode() {
         super();
         // NOTE: since we are deserializing,
@@ -163,10 +166,101 @@ public class InstancedNode extends GeometryGroupNode {
         addControl(control);
     }
     
-    private void renderFromControl() {
+    private void renderFromControl(ViewPort vp) {
+        for (InstancedGeometry ig : instancesMap.values()) {
+            ig.updateInstances(vp.getCamera(), instanceCulling);
+        }
+    }
+    
+    /**
+     * Enables culling every instance against the camera of the viewport
+     * before rendering, disabled by default. Only the visible instances 
+     * are then sent to the GPU.
+     * <p>
+     * Note that shadow renderers and other passes rendering the queue of the
+     * viewport from another camera only see the instances visible from the 
+     * camera of the viewport.
+     * 
+     * @param instanceCulling True to cull each instance.
+     */
+    public void setInstanceCulling(boolean instanceCulling) {
+        this.instanceCulling = instanceCulling;
+    }
+    
+    /**
+     * @return True if each instance is culled.
+     * @see #setInstanceCulling(boolean) 
+     */
+    public boolean isInstanceCulling() {
+        return instanceCulling;
+    }
+    
+    /**
+     * Selects the level of detail of each instance from its distance to 
+     * the camera. The instances of meshes with 
+     * {@link Mesh#getNumLodLevels() levels of detail} are rendered at level 
+     * <code>i + 1</code> from <code>distances[i]</code>, up to the last
+     * level of their mesh, with one draw call per level.
+     * 
+     * @param distances The distances at which the next level is used, in
+     * increasing order, or null to render all the instances at the
+     * level of detail of their geometry.
+     */
+    public void setLodDistances(float... distances) {
+        if (distances != null) {
+            if (distances.length == 0) {
+                distances = null;
+            } else {
+                for (int i = 1; i < distances.length; i++) {
+                    if (distances[i] < distances[i - 1]) {
+                        throw new IllegalArgumentException("LOD distances must be in increasing order");
+                    }
+                }
+                distances = distances.clone();
+            }
+        }
+        lodDistances = distances;
         for (InstancedGeometry ig : instancesMap.values()) {
-            ig.updateInstances();
+            setupLodGeometries(ig);
+        }
+    }
+    
+    /**
+     * @return The distances at which each level of detail is used, or null.
+     * @see #setLodDistances(float[]) 
+     */
+    public float[] getLodDistances() {
+        return lodDistances;
+    }
+    
+    private void setupLodGeometries(InstancedGeometry ig) {
+        InstancedGeometry[] lodGeometries = ig.getLodGeometries();
+        if (lodGeometries != null) {
+            for (int i = 1; i < lodGeometries.length; i++) {
+                detachChild(lodGeometries[i]);
+            }
+            ig.setLodGeometries(null, null);
+        }
+        
+        Mesh mesh = ig.getMesh();
+        if (lodDistances == null || ig.getLodLevel() != 0 || mesh.getNumLodLevels() < 2) {
+            return;
         }
+        
+        int numLevels = Math.min(mesh.getNumLodLevels(), lodDistances.length + 1);
+        lodGeometries = new InstancedGeometry[numLevels];
+        lodGeometries[0] = ig;
+        for (int i = 1; i < numLevels; i++) {
+            InstancedGeometry lodGeometry = new InstancedGeometry(ig.getName() + ",lod-" + i);
+            lodGeometry.setMaterial(ig.getMaterial());
+            lodGeometry.setMesh(mesh);
+            lodGeometry.setLodLevel(i);
+            lodGeometry.setUserData(UserData.JME_PHYSICSIGNORE, true);
+            lodGeometry.setCullHint(CullHint.Never);
+            attachChild(lodGeometry);
+            lodGeometries[i] = lodGeometry;
+        }
+        ig.setLodGeometries(lodGeometries, lodDistances);
     }
 
     private InstancedGeometry lookUpByGeometry(Geometry geom) {
@@ -183,10 +277,14 @@ public class InstancedNode extends GeometryGroupNode {
                     + "lod-" + lookUp.lodLevel);
             ig.setMaterial(lookUp.material);
             ig.setMesh(lookUp.mesh);
+            if (lookUp.lodLevel != 0) {
+                ig.setLodLevel(lookUp.lodLevel);
+            }
             ig.setUserData(UserData.JME_PHYSICSIGNORE, true);
             ig.setCullHint(CullHint.Never);
             instancesMap.put(lookUp.clone(), ig);
             attachChild(ig);
+            setupLodGeometries(ig);
         }
 
         return ig;
@@ -287,7 +385,7 @@ public class InstancedNode extends GeometryGroupNode {
             // Remove all instanced geometries from the clone
             for (int i = 0; i < clone.children.size(); i++) {
                 if (clone.children.get(i) instanceof InstancedGeometry) {
-                    clone.children.remove(i);
+                    clone.children.remove(i--);
                 } else if (clone.children.get(i) instanceof Geometry) {
                     Geometry geom = (Geometry) clone.children.get(i);
                     if (geom.isGrouped()) {
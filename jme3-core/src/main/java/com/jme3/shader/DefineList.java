@@ -37,248 +37,491 @@ import com.jme3.material.TechniqueDef;
 import com.jme3.util.ListMap;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * The list of defines passed to a shader, e.g. <code>#define HAS_COLORMAP 1</code>.
+ * <p>
+ * Define names are given integer IDs by a layout, normally the one of the
+ * {@link TechniqueDef} the list was {@link TechniqueDef#createDefineList() created}
+ * for. The list itself only stores a bit set of the defines that are set,
+ * 64 defines per <code>long</code>, and an array of their values, so
+ * updating, comparing and {@link #getHash() hashing} lists does not involve
+ * any string operations. The define source code is only built when a shader
+ * is compiled.
+ * <p>
+ * Lists created with the default constructor have a layout of their own,
+ * to which define names are added as they are set.
+ */
 public final class DefineList implements Savable, Cloneable {
 
-    private static final String ONE = "1";
-    
-    private TreeMap<String, String> defines = new TreeMap<String, String>();
-    private String compiled = null;
-    private int cachedHashCode = 0;
+    private static final long[] NO_BITS = new long[0];
+
+    private List<String> names;
+    private List<VarType> types;
+    private long[] isSet;
+    private int[] vals;
+    private long hash;
+    private boolean hashValid;
+    private String compiled;
+
+    /**
+     * The defines set from material parameters by the last
+     * {@link #update(com.jme3.util.ListMap, com.jme3.material.TechniqueDef) }.
+     */
+    private long[] updated = NO_BITS;
+
+    /**
+     * Creates an empty define list with its own layout.
+     */
+    public DefineList() {
+        this(new ArrayList<String>(), new ArrayList<VarType>());
+    }
+
+    /**
+     * Creates an empty define list using the given layout. The lists are
+     * not copied, defines added to them later can be set as well.
+     *
+     * @param defineNames The names of the defines by ID
+     * @param defineTypes The types of the defines by ID, entries may be null
+     * if not known yet
+     *
+     * @see TechniqueDef#createDefineList()
+     */
+    public DefineList(List<String> defineNames, List<VarType> defineTypes) {
+        this.names = defineNames;
+        this.types = defineTypes;
+        this.isSet = new long[(defineNames.size() + 63) >>> 6];
+        this.vals = new int[defineNames.size()];
+    }
 
     public void write(JmeExporter ex) throws IOException{
         OutputCapsule oc = ex.getCapsule(this);
 
-        String[] keys = new String[defines.size()];
-        String[] vals = new String[defines.size()];
+        int count = getSetCount();
+        String[] keys = new String[count];
+        String[] values = new String[count];
 
         int i = 0;
-        for (Map.Entry<String, String> define : defines.entrySet()){
-            keys[i] = define.getKey();
-            vals[i] = define.getValue();
+        for (int id = nextSetId(0); id >= 0; id = nextSetId(id + 1)) {
+            keys[i] = names.get(id);
+            values[i] = getValueString(id);
             i++;
         }
 
         oc.write(keys, "keys", null);
-        oc.write(vals, "vals", null);
+        oc.write(values, "vals", null);
     }
 
     public void read(JmeImporter im) throws IOException{
         InputCapsule ic = im.getCapsule(this);
 
         String[] keys = ic.readStringArray("keys", null);
-        String[] vals = ic.readStringArray("vals", null);
+        String[] values = ic.readStringArray("vals", null);
         for (int i = 0; i < keys.length; i++){
-            defines.put(keys[i], vals[i]);
+            // The types are not stored, but numbers produce the same
+            // source code either way
+            try {
+                set(keys[i], VarType.Int, Integer.valueOf(values[i]));
+            } catch (NumberFormatException ex) {
+                set(keys[i], VarType.Float, Float.valueOf(values[i]));
+            }
         }
     }
 
-    public void clear() {
-        defines.clear();
-        compiled = "";
-        cachedHashCode = 0;
+    private void changed() {
+        hashValid = false;
+        compiled = null;
     }
 
-    public String get(String key){
-        return defines.get(key);
+    private int getOrAddId(String name, VarType type) {
+        int id = names.indexOf(name);
+        if (id < 0) {
+            id = names.size();
+            names.add(name);
+            types.add(type);
+        }
+        return id;
     }
-    
-    @Override
-    public DefineList clone() {
-        try {
-            DefineList clone = (DefineList) super.clone();
-            clone.cachedHashCode = 0;
-            clone.compiled = null;
-            clone.defines = (TreeMap<String, String>) defines.clone();
-            return clone;
-        } catch (CloneNotSupportedException ex) {
-            throw new AssertionError();
+
+    /**
+     * Returns the ID of the first define set at or after the given ID.
+     *
+     * @param fromId The ID to start from
+     * @return The ID, or -1 if no define is set from there on
+     */
+    private int nextSetId(int fromId) {
+        int word = fromId >>> 6;
+        if (word >= isSet.length) {
+            return -1;
+        }
+        long bits = isSet[word] & (-1L << fromId);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == isSet.length) {
+                return -1;
+            }
+            bits = isSet[word];
         }
     }
 
-    public boolean set(String key, VarType type, Object val){    
-        if (val == null){
-            defines.remove(key);
-            compiled = null;
-            cachedHashCode = 0;
-            return true;
+    private int getSetCount() {
+        int count = 0;
+        for (long bits : isSet) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the names of the defines of the layout of this list, indexed
+     * by define ID. The list must not be modified.
+     *
+     * @return the define names
+     */
+    public List<String> getDefineNames() {
+        return names;
+    }
+
+    /**
+     * Returns the ID of a define in the layout of this list.
+     *
+     * @param name The name of the define
+     * @return The ID, or -1 if the layout has no such define
+     */
+    public int getDefineId(String name) {
+        return names.indexOf(name);
+    }
+
+    public void clear() {
+        if (nextSetId(0) >= 0) {
+            Arrays.fill(isSet, 0);
+            changed();
         }
+    }
 
-        switch (type){
+    /**
+     * @param id The ID of the define
+     * @return True if the define is set
+     */
+    public boolean isSet(int id) {
+        int word = id >>> 6;
+        return word < isSet.length && (isSet[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * @param id The ID of the define
+     * @return The value of an <code>Int</code> define, or 1 for other
+     * defines that are set
+     */
+    public int getInt(int id) {
+        return isSet(id) ? vals[id] : 0;
+    }
+
+    /**
+     * @param id The ID of the define
+     * @return The value of a <code>Float</code> define
+     */
+    public float getFloat(int id) {
+        return Float.intBitsToFloat(getInt(id));
+    }
+
+    /**
+     * Sets a define from a material parameter value, see
+     * {@link #set(java.lang.String, com.jme3.shader.VarType, java.lang.Object) }.
+     *
+     * @param id The ID of the define
+     * @param type The type of the value
+     * @param val The value, or null to unset the define
+     * @return True if the list was changed
+     */
+    public boolean set(int id, VarType type, Object val) {
+        if (val == null) {
+            return unset(id);
+        }
+        int value;
+        switch (type) {
             case Boolean:
-                if (((Boolean) val).booleanValue()) {
-                    // same literal, != will work
-                    if (defines.put(key, ONE) != ONE) {
-                        compiled = null;
-                        cachedHashCode = 0;
-                        return true;
-                    }
-                } else if (defines.containsKey(key)) {
-                    defines.remove(key);
-                    compiled = null;
-                    cachedHashCode = 0;
-                    return true;
+                if (!((Boolean) val).booleanValue()) {
+                    return unset(id);
                 }
-                
+                value = 1;
                 break;
-            case Float:
             case Int:
-                String newValue = val.toString();
-                String original = defines.put(key, newValue);
-                if (!val.equals(original)) {
-                    compiled = null;
-                    cachedHashCode = 0;
-                    return true;            
-                }
+                value = ((Number) val).intValue();
+                break;
+            case Float:
+                value = Float.floatToIntBits(((Number) val).floatValue());
                 break;
             default:
-                // same literal, != will work
-                if (defines.put(key, ONE) != ONE) {  
-                    compiled = null;
-                    cachedHashCode = 0;
-                    return true;            
-                }
+                value = 1;
                 break;
         }
-        
-        return false;
+        if (types.get(id) == null) {
+            types.set(id, type);
+        }
+        return setValue(id, value);
     }
 
-    public boolean remove(String key){   
-        if (defines.remove(key) != null) {
-            compiled = null;
-            cachedHashCode = 0;
-            return true;
+    private boolean setValue(int id, int value) {
+        if (id >= vals.length) {
+            // the layout grew since this list was created
+            int size = Math.max(names.size(), id + 1);
+            vals = Arrays.copyOf(vals, size);
+            isSet = Arrays.copyOf(isSet, (size + 63) >>> 6);
+        } else if (isSet(id) && vals[id] == value) {
+            return false;
+        }
+        isSet[id >>> 6] |= 1L << id;
+        vals[id] = value;
+        changed();
+        return true;
+    }
+
+    /**
+     * Unsets a define.
+     *
+     * @param id The ID of the define
+     * @return True if the define was set
+     */
+    public boolean unset(int id) {
+        if (!isSet(id)) {
+            return false;
+        }
+        isSet[id >>> 6] &= ~(1L << id);
+        vals[id] = 0;
+        changed();
+        return true;
+    }
+
+    public String get(String key){
+        int id = names.indexOf(key);
+        if (id < 0 || !isSet(id)) {
+            return null;
+        }
+        return getValueString(id);
+    }
+
+    private String getValueString(int id) {
+        VarType type = types.get(id);
+        if (type == VarType.Int) {
+            return Integer.toString(vals[id]);
+        } else if (type == VarType.Float) {
+            return Float.toString(Float.intBitsToFloat(vals[id]));
+        } else {
+            return "1";
+        }
+    }
+
+    @Override
+    public DefineList clone() {
+        try {
+            DefineList clone = (DefineList) super.clone();
+            clone.isSet = isSet.clone();
+            clone.vals = vals.clone();
+            clone.updated = NO_BITS;
+            return clone;
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError();
         }
-        return false;
     }
 
-    public void addFrom(DefineList other){    
+    /**
+     * Sets a define by name, adding it to the layout of this list if needed.
+     * Lists of a {@link TechniqueDef} share its layout, which should only
+     * grow while the technique is built: the defines a technique uses are
+     * better declared with {@link TechniqueDef#addShaderUnmappedDefine(java.lang.String, com.jme3.shader.VarType) }.
+     * <p>
+     * <code>Boolean</code> values set the define to 1 if true and unset
+     * it if false. <code>Int</code> and <code>Float</code> values are set
+     * as the define value, any other type of value sets the define to 1.
+     *
+     * @param key The name of the define
+     * @param type The type of the value
+     * @param val The value, or null to unset the define
+     * @return True if the list was changed
+     */
+    public boolean set(String key, VarType type, Object val){
+        if (val == null) {
+            return remove(key);
+        }
+        return set(getOrAddId(key, type), type, val);
+    }
+
+    public boolean remove(String key){
+        int id = names.indexOf(key);
+        return id >= 0 && unset(id);
+    }
+
+    /**
+     * Sets all defines that are set in the given list, overriding
+     * the values of this list. Lists with another layout are copied by
+     * name, adding the missing names to the layout of this list.
+     *
+     * @param other The list to copy the defines from, may be null
+     */
+    public void addFrom(DefineList other){
         if (other == null) {
             return;
         }
-        compiled = null;
-        cachedHashCode = 0;
-        defines.putAll(other.defines);
+        if (other.names == names) {
+            for (int id = other.nextSetId(0); id >= 0; id = other.nextSetId(id + 1)) {
+                setValue(id, other.vals[id]);
+            }
+        } else {
+            for (int i = other.nextSetId(0); i >= 0; i = other.nextSetId(i + 1)) {
+                VarType type = other.types.get(i);
+                int id = getOrAddId(other.names.get(i), type);
+                if (types.get(id) == null) {
+                    types.set(id, type);
+                }
+                setValue(id, other.vals[i]);
+            }
+        }
     }
 
     public String getCompiled(){
         if (compiled == null){
             StringBuilder sb = new StringBuilder();
-            for (Map.Entry<String, String> entry : defines.entrySet()){
-                sb.append("#define ").append(entry.getKey()).append(" ");
-                sb.append(entry.getValue()).append('\n');
+            for (int id = nextSetId(0); id >= 0; id = nextSetId(id + 1)) {
+                sb.append("#define ").append(names.get(id)).append(" ");
+                sb.append(getValueString(id)).append('\n');
             }
             compiled = sb.toString();
         }
         return compiled;
     }
 
+    /**
+     * Returns a 64-bit hash of the defines that are set and their values.
+     * The hash does not depend on the layout of the list.
+     *
+     * @return The hash of this list
+     */
+    public long getHash() {
+        if (!hashValid) {
+            long h = 0;
+            for (int id = nextSetId(0); id >= 0; id = nextSetId(id + 1)) {
+                // summed so that the order of the defines does not matter
+                long e = (names.get(id).hashCode() * 31L + vals[id]) * 0x9E3779B97F4A7C15L;
+                h += e ^ (e >>> 29);
+            }
+            hash = h;
+            hashValid = true;
+        }
+        return hash;
+    }
+
+    /**
+     * Two lists are equal if they have the same defines set to the same
+     * values. Lists sharing a layout are compared by define IDs only, lists
+     * with different layouts by define names.
+     */
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof DefineList)) {
+            return false;
+        }
         final DefineList other = (DefineList) obj;
-        return defines.equals(other.defines);
+        if (other.names != names) {
+            return equalsByName(other);
+        }
+        int words = Math.max(isSet.length, other.isSet.length);
+        for (int word = 0; word < words; word++) {
+            long bits = word < isSet.length ? isSet[word] : 0;
+            long otherBits = word < other.isSet.length ? other.isSet[word] : 0;
+            if (bits != otherBits) {
+                return false;
+            }
+        }
+        for (int id = nextSetId(0); id >= 0; id = nextSetId(id + 1)) {
+            if (vals[id] != other.vals[id]) {
+                return false;
+            }
+        }
+        return true;
     }
-    
+
+    private boolean equalsByName(DefineList other) {
+        if (getSetCount() != other.getSetCount()) {
+            return false;
+        }
+        for (int id = nextSetId(0); id >= 0; id = nextSetId(id + 1)) {
+            int otherId = other.names.indexOf(names.get(id));
+            if (otherId < 0 || !other.isSet(otherId) || vals[id] != other.vals[otherId]) {
+                return false;
+            }
+            if (types.get(id) != other.types.get(otherId)
+                    && !getValueString(id).equals(other.getValueString(otherId))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Update defines if the define list changed based on material parameters.
+     * The list must use the layout of the given technique definition.
      * @param params
      * @param def
      * @return true if defines was updated
      */
     public boolean update(ListMap params, TechniqueDef def){
-        if(equalsParams(params, def)){
-            return false;
+        if (names != def.getDefineNames()) {
+            throw new IllegalArgumentException("The define list does not use the layout of " + def.getName());
         }
-         // Defines were changed, update define list
-        clear();
-        for(int i=0;i<params.size();i++) {
-            MatParam param = (MatParam)params.getValue(i);
-            String defineName = def.getShaderParamDefine(param.getName());
-            if (defineName != null) {
-                set(defineName, param.getVarType(), param.getValue());
-            }
+        if (updated.length < isSet.length) {
+            updated = new long[isSet.length];
+        } else {
+            Arrays.fill(updated, 0);
         }
-        return true;
-    }
-    
-    private boolean equalsParams(ListMap params, TechniqueDef def) {
-        
-        int size = 0;
-
-        for(int i = 0; i < params.size() ; i++ ) {
-            MatParam param = (MatParam)params.getValue(i);
-            String key = def.getShaderParamDefine(param.getName());
-            if (key != null) {
-                Object val = param.getValue();
-                if (val != null) {
-
-                    switch (param.getVarType()) {
-                    case Boolean: {
-                        String current = defines.get(key);
-                        if (((Boolean) val).booleanValue()) {
-                            if (current == null || current != ONE) {
-                                return false;
-                            }
-                            size++;
-                        } else {
-                            if (current != null) {
-                                return false;
-                            }
-                        }
-                    }
-                        break;
-                    case Float:
-                    case Int: {
-                        String newValue = val.toString();
-                        String current = defines.get(key);
-                        if (!newValue.equals(current)) {
-                            return false;
-                        }
-                        size++;
-                    }
-                        break;
-                    default: {
-                        if (!defines.containsKey(key)) {
-                            return false;
-                        }
-                        size++;
-                    }
-                        break;
-                    }
-
+        boolean changed = false;
+        for (int i = 0; i < params.size(); i++) {
+            MatParam param = (MatParam) params.getValue(i);
+            int id = def.getShaderParamDefineId(param.getName());
+            if (id >= 0) {
+                changed |= set(id, param.getVarType(), param.getValue());
+                if ((id >>> 6) >= updated.length) {
+                    updated = Arrays.copyOf(updated, isSet.length);
                 }
-
+                updated[id >>> 6] |= 1L << id;
             }
         }
 
-        if (size != defines.size()) {
-            return false;
+        // Unset the defines of parameters that are no longer present
+        long[] paramDefines = def.getShaderParamDefineMask();
+        int words = Math.min(isSet.length, paramDefines.length);
+        for (int word = 0; word < words; word++) {
+            long stale = isSet[word] & paramDefines[word] & ~updated[word];
+            while (stale != 0) {
+                changed |= unset((word << 6) + Long.numberOfTrailingZeros(stale));
+                stale &= stale - 1;
+            }
         }
-
-        return true;
+        return changed;
     }
-    
+
     @Override
     public int hashCode() {
-        if (cachedHashCode == 0) {
-            cachedHashCode = defines.hashCode();
-        }
-        return cachedHashCode;
+        long h = getHash();
+        return (int) (h ^ (h >>> 32));
     }
 
     @Override
     public String toString(){
         StringBuilder sb = new StringBuilder();
-        int i = 0;
-        for (Map.Entry<String, String> entry : defines.entrySet()) {
-            sb.append(entry.getKey()).append("=").append(entry.getValue());
-            if (i != defines.size() - 1) {
+        for (int id = nextSetId(0); id >= 0; id = nextSetId(id + 1)) {
+            if (sb.length() > 0) {
                 sb.append(", ");
             }
-            i++;
+            sb.append(names.get(id)).append("=").append(getValueString(id));
         }
         return sb.toString();
     }
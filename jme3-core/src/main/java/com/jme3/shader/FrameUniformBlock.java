@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.shader;
+
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the uniform bindings which only change with the camera, the
+ * viewport or the frame time, in the std140 layout of a uniform block.
+ * <p>
+ * A renderer supporting {@link com.jme3.renderer.Caps#UniformBufferObject}
+ * uploads the block once per change into a uniform buffer, instead of
+ * setting these bindings on every shader for every draw. GLSL 1.50+ shader
+ * sources declaring them as plain uniforms are rewritten by
+ * {@link #injectBlock(java.lang.String) } to read them from the block.
+ */
+public final class FrameUniformBlock {
+
+    /**
+     * Name of the uniform block in the shader sources.
+     */
+    public static final String BLOCK_NAME = "FrameUniforms";
+
+    /**
+     * Size of the block in floats.
+     */
+    public static final int SIZE = 64;
+
+    private static final UniformBinding[] BINDINGS = {
+        UniformBinding.ViewMatrix,
+        UniformBinding.ProjectionMatrix,
+        UniformBinding.ViewProjectionMatrix,
+        UniformBinding.CameraPosition,
+        UniformBinding.CameraDirection,
+        UniformBinding.Resolution,
+        UniformBinding.ResolutionInverse,
+        UniformBinding.FrustumNearFar,
+        UniformBinding.Time,
+        UniformBinding.Tpf
+    };
+
+    private static final String[] TYPES = {
+        "mat4", "mat4", "mat4", "vec3", "vec3", "vec2", "vec2", "vec2", "float", "float"
+    };
+
+    // std140: vec3 members are aligned on 4 floats, vec2 on 2 floats
+    private static final int VIEW = 0, PROJ = 16, VIEW_PROJ = 32,
+            CAM_POS = 48, CAM_DIR = 52, RES = 56, RES_INV = 58,
+            NEAR_FAR = 60, TIME = 62, TPF = 63;
+
+    private static final String BLOCK_SOURCE;
+    private static final Pattern[] DECLARATIONS = new Pattern[BINDINGS.length];
+    private static final Pattern[] REFERENCES = new Pattern[BINDINGS.length];
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        sb.append("layout(std140) uniform ").append(BLOCK_NAME).append(" {\n");
+        for (int i = 0; i < BINDINGS.length; i++) {
+            String name = "g_" + BINDINGS[i].name();
+            sb.append("    ").append(TYPES[i]).append(' ').append(name).append(";\n");
+            DECLARATIONS[i] = Pattern.compile("uniform\\s+" + TYPES[i] + "\\s+" + name + "\\s*;");
+            REFERENCES[i] = Pattern.compile("\\b" + name + "\\b");
+        }
+        sb.append("};\n");
+        BLOCK_SOURCE = sb.toString();
+    }
+
+    private final float[] data = new float[SIZE];
+    private final FloatBuffer buffer = BufferUtils.createFloatBuffer(SIZE);
+    private int version = 0;
+
+    /**
+     * Returns true if the source can be compiled with
+     * {@link #injectBlock(java.lang.String) }: every binding of the block it
+     * uses must be declared as a plain uniform of the same type, and the
+     * source must not have extension directives, which cannot follow the
+     * block declaration.
+     *
+     * @param source The GLSL source code
+     * @return true if the source can read the block
+     */
+    public static boolean isCompatible(String source) {
+        boolean referenced = false;
+        for (int i = 0; i < BINDINGS.length; i++) {
+            if (REFERENCES[i].matcher(source).find()) {
+                if (!DECLARATIONS[i].matcher(source).find()) {
+                    return false;
+                }
+                referenced = true;
+            }
+        }
+        return !referenced || !source.contains("#extension");
+    }
+
+    /**
+     * Removes the uniform declarations of the block bindings from the
+     * source, and declares the block before it instead. A source which does
+     * not use any binding of the block is returned unchanged.
+     *
+     * @param source A GLSL source code for which
+     * {@link #isCompatible(java.lang.String) } is true
+     * @return The source reading the bindings from the block
+     */
+    public static String injectBlock(String source) {
+        boolean referenced = false;
+        for (int i = 0; i < BINDINGS.length; i++) {
+            if (REFERENCES[i].matcher(source).find()) {
+                source = DECLARATIONS[i].matcher(source).replaceAll("");
+                referenced = true;
+            }
+        }
+        return referenced ? BLOCK_SOURCE + source : source;
+    }
+
+    /**
+     * Updates the content of the block. The version is only incremented
+     * when a value changed.
+     */
+    public void update(Matrix4f viewMatrix, Matrix4f projMatrix, Matrix4f viewProjMatrix,
+            Vector3f camLoc, Vector3f camDir, int viewWidth, int viewHeight,
+            float near, float far, float time, float tpf) {
+        boolean changed = set(VIEW, viewMatrix)
+                | set(PROJ, projMatrix)
+                | set(VIEW_PROJ, viewProjMatrix)
+                | set(CAM_POS, camLoc.x, camLoc.y, camLoc.z)
+                | set(CAM_DIR, camDir.x, camDir.y, camDir.z)
+                | set(RES, viewWidth, viewHeight)
+                | set(RES_INV, 1f / viewWidth, 1f / viewHeight)
+                | set(NEAR_FAR, near, far)
+                | set(TIME, time)
+                | set(TPF, tpf);
+        if (changed) {
+            buffer.clear();
+            buffer.put(data);
+            buffer.flip();
+            version++;
+        }
+    }
+
+    private boolean set(int offset, float... values) {
+        boolean changed = false;
+        for (int i = 0; i < values.length; i++) {
+            if (Float.floatToIntBits(data[offset + i]) != Float.floatToIntBits(values[i])) {
+                data[offset + i] = values[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private boolean set(int offset, Matrix4f m) {
+        // column major, as uploaded for plain uniforms
+        return set(offset, m.m00, m.m10, m.m20, m.m30)
+                | set(offset + 4, m.m01, m.m11, m.m21, m.m31)
+                | set(offset + 8, m.m02, m.m12, m.m22, m.m32)
+                | set(offset + 12, m.m03, m.m13, m.m23, m.m33);
+    }
+
+    /**
+     * Returns the content of the block in the std140 layout.
+     *
+     * @return the data to upload, do not modify
+     */
+    public FloatBuffer getData() {
+        return buffer;
+    }
+
+    /**
+     * Returns a number which changes every time the content changes.
+     *
+     * @return the version of the content
+     */
+    public int getVersion() {
+        return version;
+    }
+}
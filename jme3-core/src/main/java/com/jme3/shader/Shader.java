@@ -57,6 +57,13 @@ public final class Shader extends NativeObject {
      */
     private IntMap<Attribute> attribs;
 
+    /**
+     * The object that last applied its parameters to the uniforms,
+     * and the version of its parameter list at that time.
+     */
+    private Object paramsOwner;
+    private int paramsOwnerVersion;
+
     /**
      * Type of shader. The shader will control the pipeline of it's type.
      */
@@ -322,11 +329,38 @@ public final class Shader extends NativeObject {
         }
     }
 
+    /**
+     * Returns true if the given owner was the last to apply its parameters
+     * to this shader, and its parameter list did not change since.
+     * In that case the uniforms which are not set by the owner
+     * were already reset, and do not need to be walked again.
+     *
+     * @param owner The owner of the parameters, usually a material
+     * @param version The current version of the owner's parameter list
+     * @return true if the owner's parameters were last applied
+     */
+    public boolean isParamsOwner(Object owner, int version) {
+        return paramsOwner == owner && paramsOwnerVersion == version;
+    }
+
+    /**
+     * Records the owner whose parameters were just applied to this shader.
+     *
+     * @param owner The owner of the parameters, or null to forget the
+     * current owner
+     * @param version The current version of the owner's parameter list
+     */
+    public void setParamsOwner(Object owner, int version) {
+        paramsOwner = owner;
+        paramsOwnerVersion = version;
+    }
+
     /**
      * Usually called when the shader itself changes or during any
      * time when the variable locations need to be refreshed.
      */
     public void resetLocations() {
+        paramsOwner = null;
         if (uniforms != null) {
             // NOTE: Shader sources will be reset seperately from the shader itself.
             for (Uniform uniform : uniforms.values()) {
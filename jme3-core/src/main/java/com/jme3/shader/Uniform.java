@@ -33,6 +33,7 @@ package com.jme3.shader;
 
 import com.jme3.math.*;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.TempVars;
 import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
@@ -126,10 +127,79 @@ public class Uniform extends ShaderVariable {
         }
     }
     
-    public void clearValue(){
-        updateNeeded = true;
+    /**
+     * Returns true if the first <code>length</code> floats of the buffer
+     * hold the same values as the array.
+     */
+    private static boolean contentEquals(FloatBuffer fb, float[] data, int length) {
+        if (fb.limit() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Float.floatToIntBits(fb.get(i)) != Float.floatToIntBits(data[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(FloatBuffer fb) {
+        for (int i = 0; i < fb.limit(); i++) {
+            if (Float.floatToIntBits(fb.get(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a vector value into the value owned by this uniform, so that
+     * later changes to the caller's object can be detected by
+     * {@link #setValue(com.jme3.shader.VarType, java.lang.Object) }.
+     * The shared zero constants set by {@link #clearValue() } are never
+     * written into.
+     */
+    private static Object copyVector(Object current, Object value) {
+        if (value instanceof Vector2f) {
+            if (current instanceof Vector2f && current != Vector2f.ZERO) {
+                return ((Vector2f) current).set((Vector2f) value);
+            }
+            return ((Vector2f) value).clone();
+        } else if (value instanceof Vector3f) {
+            if (current instanceof Vector3f && current != Vector3f.ZERO) {
+                return ((Vector3f) current).set((Vector3f) value);
+            }
+            return ((Vector3f) value).clone();
+        } else if (value instanceof Vector4f) {
+            if (current instanceof Vector4f && current != Vector4f.ZERO) {
+                return ((Vector4f) current).set((Vector4f) value);
+            }
+            return ((Vector4f) value).clone();
+        } else if (value instanceof ColorRGBA) {
+            if (current instanceof ColorRGBA) {
+                return ((ColorRGBA) current).set((ColorRGBA) value);
+            }
+            return ((ColorRGBA) value).clone();
+        } else if (value instanceof Quaternion) {
+            if (current instanceof Quaternion) {
+                return ((Quaternion) current).set((Quaternion) value);
+            }
+            return ((Quaternion) value).clone();
+        } else {
+            throw new IllegalArgumentException();
+        }
+    }
 
-        if (multiData != null){           
+    /**
+     * Resets the value to zero. The uniform is only marked for update
+     * if it did not hold zero already.
+     */
+    public void clearValue(){
+        if (multiData != null){
+            if (isZero(multiData)) {
+                return;
+            }
+            updateNeeded = true;
             multiData.clear();
 
             while (multiData.remaining() > 0){
@@ -146,32 +216,46 @@ public class Uniform extends ShaderVariable {
         if (varType == null) {
             return;
         }
-            
+
+        Object zero;
         switch (varType){
             case Int:
-                this.value = ZERO_INT;
+                zero = ZERO_INT;
                 break;
             case Boolean:
-                this.value = Boolean.FALSE;
+                zero = Boolean.FALSE;
                 break;
             case Float:
-                this.value = ZERO_FLT; 
+                zero = ZERO_FLT;
                 break;
             case Vector2:
-                this.value = Vector2f.ZERO;
+                zero = Vector2f.ZERO;
                 break;
             case Vector3:
-                this.value = Vector3f.ZERO;
+                zero = Vector3f.ZERO;
                 break;
             case Vector4:
-                this.value = Vector4f.ZERO;
+                zero = Vector4f.ZERO;
                 break;
             default:
                 // won't happen because those are either textures
                 // or multidata types
+                updateNeeded = true;
+                return;
         }
+        if (zero.equals(this.value)) {
+            return;
+        }
+        this.value = zero;
+        updateNeeded = true;
     }
     
+    /**
+     * Sets the value of the uniform. The uniform is only marked for update
+     * when the value differs from the one it already holds, so a value that
+     * is set again on every draw is uploaded to the shader only once.
+     * Array values are always marked for update.
+     */
     public void setValue(VarType type, Object value){
         if (location == LOC_NOT_DEFINED) {
             return;
@@ -189,20 +273,23 @@ public class Uniform extends ShaderVariable {
 
         switch (type){
             case Matrix3:
-                Matrix3f m3 = (Matrix3f) value;
-                if (multiData == null) {
-                    multiData = BufferUtils.createFloatBuffer(9);
-                }
-                m3.fillFloatBuffer(multiData, true);
-                multiData.clear();
-                break;
             case Matrix4:
-                Matrix4f m4 = (Matrix4f) value;
+                int size = type == VarType.Matrix3 ? 9 : 16;
+                TempVars vars = TempVars.get();
+                if (type == VarType.Matrix3) {
+                    ((Matrix3f) value).fillFloatArray(vars.matrixWrite, true);
+                } else {
+                    ((Matrix4f) value).fillFloatArray(vars.matrixWrite, true);
+                }
                 if (multiData == null) {
-                    multiData = BufferUtils.createFloatBuffer(16);
+                    multiData = BufferUtils.createFloatBuffer(size);
+                } else if (contentEquals(multiData, vars.matrixWrite, size)) {
+                    vars.release();
+                    return;
                 }
-                m4.fillFloatBuffer(multiData, true);
+                multiData.put(vars.matrixWrite, 0, size);
                 multiData.clear();
+                vars.release();
                 break;
             case IntArray:
                 int[] ia = (int[]) value;
@@ -283,7 +370,6 @@ public class Uniform extends ShaderVariable {
                 }
                 multiData.clear();
                 break;
-                // Only use check if equals optimization for primitive values
             case Int:
             case Float:
             case Boolean:
@@ -292,6 +378,14 @@ public class Uniform extends ShaderVariable {
                 }
                 this.value = value;
                 break;
+            case Vector2:
+            case Vector3:
+            case Vector4:
+                if (value.equals(this.value)) {
+                    return;
+                }
+                this.value = copyVector(this.value, value);
+                break;
             default:
                 this.value = value;
                 break;
@@ -78,6 +78,8 @@ public class UniformBindingManager {
     private Vector2f resolution = new Vector2f();
     private Vector2f resolutionInv = new Vector2f();
     private Vector2f nearFar = new Vector2f();
+    private FrameUniformBlock frameUniforms = new FrameUniformBlock();
+    private boolean frameUniformsChanged = true;
 
     /**
      * Internal use only.
@@ -232,6 +234,21 @@ public class UniformBindingManager {
         this.timer = timer;
     }
 
+    /**
+     * Internal use only.
+     * Returns the per-frame uniform bindings as a uniform block, updated
+     * from the current camera, viewport and time.
+     */
+    public FrameUniformBlock getFrameUniforms() {
+        if (frameUniformsChanged) {
+            frameUniforms.update(viewMatrix, projMatrix, viewProjMatrix, camLoc, camDir,
+                    viewWidth, viewHeight, near, far,
+                    time != null ? time : 0f, tpf != null ? tpf : 0f);
+            frameUniformsChanged = false;
+        }
+        return frameUniforms;
+    }
+
     public void setCamera(Camera cam, Matrix4f viewMatrix, Matrix4f projMatrix, Matrix4f viewProjMatrix) {
         this.viewMatrix.set(viewMatrix);
         this.projMatrix.set(projMatrix);
@@ -244,6 +261,7 @@ public class UniformBindingManager {
 
         near = cam.getFrustumNear();
         far = cam.getFrustumFar();
+        frameUniformsChanged = true;
     }
 
     public void setViewPort(int viewX, int viewY, int viewWidth, int viewHeight) {
@@ -251,6 +269,7 @@ public class UniformBindingManager {
         this.viewY = viewY;
         this.viewWidth = viewWidth;
         this.viewHeight = viewHeight;
+        frameUniformsChanged = true;
     }
  
     /**
@@ -262,5 +281,6 @@ public class UniformBindingManager {
         // time for this frame to avoid inter-frame drift.
         time = timer.getTimeInSeconds();
         tpf = timer.getTimePerFrame();
+        frameUniformsChanged = true;
     }
 }
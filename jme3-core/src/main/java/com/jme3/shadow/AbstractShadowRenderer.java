@@ -47,6 +47,7 @@ import com.jme3.math.Matrix4f;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.post.SceneProcessor;
+import com.jme3.profile.FrameProfiler;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.Caps;
 import com.jme3.renderer.RenderManager;
@@ -401,7 +402,9 @@ public abstract class AbstractShadowRenderer implements SceneProcessor, Savable
                 if (debugfrustums) {
                     doDisplayFrustumDebug(shadowMapIndex);
                 }
+                FrameProfiler.beginGpuScope("ShadowMap");
                 renderShadowMap(shadowMapIndex);
+                FrameProfiler.endScope();
 
             }
 
@@ -485,7 +488,9 @@ public abstract class AbstractShadowRenderer implements SceneProcessor, Savable
             renderManager.setForcedTechnique(postTechniqueName);
 
             //rendering the post shadow pass
+            FrameProfiler.beginGpuScope("PostShadow");
             viewPort.getQueue().renderShadowQueue(lightReceivers, renderManager, cam, false);
+            FrameProfiler.endScope();
 
             //resetting renderManager settings
             renderManager.setForcedTechnique(null);
@@ -43,6 +43,7 @@ import com.jme3.renderer.Renderer;
 import com.jme3.renderer.Statistics;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
+import com.jme3.shader.FrameUniformBlock;
 import com.jme3.shader.Shader;
 import com.jme3.shader.Shader.ShaderSource;
 import com.jme3.texture.FrameBuffer;
@@ -104,6 +105,9 @@ public class NullRenderer implements Renderer {
     public void setShader(Shader shader) {
     }
 
+    public void setFrameUniforms(FrameUniformBlock block) {
+    }
+
     public void deleteShader(Shader shader) {
     }
 
@@ -164,4 +168,22 @@ public class NullRenderer implements Renderer {
     public void readFrameBufferWithFormat(FrameBuffer fb, ByteBuffer byteBuf, Image.Format format) {        
     }
 
+    public int[] generateTimestampQueries(int count) {
+        return new int[count];
+    }
+
+    public void deleteTimestampQueries(int[] queries) {
+    }
+
+    public void recordTimestamp(int query) {
+    }
+
+    public boolean isTimestampAvailable(int query) {
+        return true;
+    }
+
+    public long getTimestamp(int query) {
+        return 0;
+    }
+
 }
@@ -35,6 +35,7 @@ import com.jme3.bounding.BoundingBox;
 import com.jme3.bounding.BoundingVolume;
 import com.jme3.collision.CollisionResults;
 import com.jme3.collision.bih.BIHNode.BIHStackData;
+import com.jme3.collision.bih.BIHTree;
 import com.jme3.math.*;
 import com.jme3.scene.Spatial;
 import java.nio.FloatBuffer;
@@ -227,4 +228,7 @@ public class TempVars {
     public final CollisionResults collisionResults = new CollisionResults();
     public final float[] bihSwapTmp = new float[9];
     public final ArrayList<BIHStackData> bihStack = new ArrayList<BIHStackData>();
+    public final int[] bihNodeStack = new int[BIHTree.MAX_TREE_DEPTH + 4];
+    public final float[] bihMinStack = new float[BIHTree.MAX_TREE_DEPTH + 4];
+    public final float[] bihMaxStack = new float[BIHTree.MAX_TREE_DEPTH + 4];
 }
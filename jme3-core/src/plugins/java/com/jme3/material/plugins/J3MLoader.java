@@ -496,7 +496,10 @@ public class J3MLoader implements AssetLoader {
             // add preset define
             technique.addShaderPresetDefine(split[0].trim(), VarType.Boolean, true);
         }else if (split.length == 2){
-            technique.addShaderParamDefine(split[1].trim(), split[0].trim());
+            String paramName = split[1].trim();
+            MatParam param = materialDef.getMaterialParam(paramName);
+            VarType paramType = param != null ? param.getVarType() : null;
+            technique.addShaderParamDefine(paramName, paramType, split[0].trim());
         }else{
             throw new IOException("Define syntax incorrect");
         }
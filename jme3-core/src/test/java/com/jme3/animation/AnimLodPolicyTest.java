@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import static org.junit.Assert.*;
+
+import com.jme3.animation.AnimLodPolicy.Metric;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.shape.Box;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Animates a model at several distances from the camera, and checks what
+ * its controls update.
+ */
+public class AnimLodPolicyTest {
+
+    private Node model;
+    private Bone hand;
+    private AnimControl animControl;
+    private AnimChannel channel;
+    private SkeletonControl skeletonControl;
+    private VertexBuffer positions;
+    private ViewPort viewPort;
+
+    /**
+     * Creates a box skinned to the arm of a root, arm and hand skeleton,
+     * playing an animation rotating the arm and the hand.
+     */
+    @Before
+    public void setUp() {
+        Bone root = new Bone("root");
+        Bone arm = new Bone("arm");
+        hand = new Bone("hand");
+        root.addChild(arm);
+        arm.addChild(hand);
+        arm.setBindTransforms(new Vector3f(0, 1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        hand.setBindTransforms(new Vector3f(0, 1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        Skeleton skeleton = new Skeleton(new Bone[]{root, arm, hand});
+
+        Mesh mesh = new Box(0.5f, 0.5f, 0.5f);
+        int numVertices = mesh.getVertexCount();
+        ByteBuffer indices = ByteBuffer.allocate(numVertices * 4);
+        FloatBuffer weights = FloatBuffer.allocate(numVertices * 4);
+        for (int i = 0; i < numVertices; i++) {
+            indices.put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0);
+            weights.put(1f).put(0f).put(0f).put(0f);
+        }
+        mesh.setBuffer(Type.BoneIndex, 4, indices);
+        mesh.setBuffer(Type.BoneWeight, 4, weights);
+        mesh.setMaxNumWeights(1);
+        mesh.generateBindPose(true);
+        positions = mesh.getBuffer(Type.Position);
+
+        model = new Node("Model");
+        Geometry geom = new Geometry("Body", mesh);
+        geom.setMaterial(new Material(new MaterialDef(null, "Skinned")));
+        model.attachChild(geom);
+
+        float[] times = {0, 1, 2};
+        Quaternion[] rotations = {
+            new Quaternion(), new Quaternion().fromAngleAxis(1, Vector3f.UNIT_Z), new Quaternion()
+        };
+        Vector3f[] translations = {new Vector3f(), new Vector3f(), new Vector3f()};
+        Animation animation = new Animation("Wave", 2);
+        animation.addTrack(new BoneTrack(1, times, translations, rotations));
+        animation.addTrack(new BoneTrack(2, times, translations, rotations));
+
+        animControl = new AnimControl(skeleton);
+        animControl.addAnim(animation);
+        model.addControl(animControl);
+        skeletonControl = new SkeletonControl(skeleton);
+        skeletonControl.setHardwareSkinningPreferred(false);
+        model.addControl(skeletonControl);
+        channel = animControl.createChannel();
+        channel.setAnim("Wave", 0);
+
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(45f, 640f / 480f, 1f, 1000f);
+        viewPort = new ViewPort("Test", cam);
+        model.updateGeometricState();
+    }
+
+    private AnimLodPolicy createPolicy() {
+        AnimLodPolicy policy = new AnimLodPolicy(Metric.Distance);
+        assertEquals(1, policy.addLevel(20, 2, 0));
+        assertEquals(2, policy.addLevel(50, 4, 1));
+        return policy;
+    }
+
+    private void setDistance(float distance) {
+        Camera cam = viewPort.getCamera();
+        cam.setLocation(new Vector3f(0, 0, distance));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        cam.update();
+    }
+
+    /**
+     * Updates and renders a frame, returns true if the model was skinned.
+     */
+    private boolean frame(float tpf, boolean visible) {
+        positions.clearUpdateNeeded();
+        model.updateLogicalState(tpf);
+        if (visible) {
+            model.runControlRender(null, viewPort);
+        }
+        return positions.isUpdateNeeded();
+    }
+
+    @Test
+    public void testLevels() {
+        AnimLodPolicy policy = createPolicy();
+        assertEquals(3, policy.getNumLevels());
+        setDistance(5);
+        assertEquals(0, policy.computeLevel(model, viewPort.getCamera()));
+        setDistance(30);
+        assertEquals(1, policy.computeLevel(model, viewPort.getCamera()));
+        setDistance(100);
+        assertEquals(2, policy.computeLevel(model, viewPort.getCamera()));
+
+        // The box has a radius of about 0.87, half the view height is 41 at 100
+        AnimLodPolicy screen = new AnimLodPolicy(Metric.ScreenSize);
+        screen.addLevel(0.1f, 2, 0);
+        screen.addLevel(0.03f, 4, 1);
+        assertEquals(2, screen.computeLevel(model, viewPort.getCamera()));
+        setDistance(30);
+        assertEquals(1, screen.computeLevel(model, viewPort.getCamera()));
+        setDistance(5);
+        assertEquals(0, screen.computeLevel(model, viewPort.getCamera()));
+
+        try {
+            screen.addLevel(0.1f, 8, 2);
+            fail("Increasing screen size");
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            policy.addLevel(100, 0, 0);
+            fail("No updates");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testFullDetail() {
+        skeletonControl.setLodPolicy(createPolicy());
+        setDistance(5);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(frame(0.1f, true));
+        }
+        assertEquals(0.4f, channel.getTime(), 1e-5f);
+        assertFalse(hand.getLocalRotation().equals(new Quaternion()));
+    }
+
+    @Test
+    public void testReducedDetail() {
+        AnimLodPolicy policy = createPolicy();
+        skeletonControl.setLodPolicy(policy);
+        setDistance(100);
+        // Picked when first rendered, used from the next frame
+        assertTrue(frame(0.1f, true));
+        assertEquals(0, policy.getLevel());
+
+        // Updated once every 4 frames with the elapsed time, without the hand
+        int skinned = 0;
+        for (int i = 0; i < 8; i++) {
+            if (frame(0.1f, true)) {
+                skinned++;
+                assertEquals(0.1f + (i + 1) * 0.1f, channel.getTime(), 1e-5f);
+            }
+        }
+        assertEquals(2, skinned);
+        assertEquals(2, policy.getLevel());
+        assertEquals(0.9f, channel.getTime(), 1e-5f);
+        assertEquals(new Quaternion(), hand.getLocalRotation());
+        assertFalse(animControl.getSkeleton().getBone(1).getLocalRotation().equals(new Quaternion()));
+
+        // Back to full detail the frame after getting closer
+        setDistance(5);
+        frame(0.1f, true);
+        assertTrue(frame(0.1f, true));
+        assertEquals(0, policy.getLevel());
+        assertFalse(hand.getLocalRotation().equals(new Quaternion()));
+    }
+
+    @Test
+    public void testCulled() {
+        AnimLodPolicy policy = createPolicy();
+        skeletonControl.setLodPolicy(policy);
+        setDistance(5);
+        assertTrue(frame(0.1f, true));
+        // Still animated, as it was rendered in the last frame
+        assertFalse(frame(0.1f, false));
+        float time = channel.getTime();
+        assertEquals(0.2f, time, 1e-5f);
+
+        // Neither animated nor skinned while culled
+        for (int i = 0; i < 5; i++) {
+            assertFalse(frame(0.1f, false));
+            assertEquals(time, channel.getTime(), 0f);
+        }
+
+        // Skinned with the last pose, then animated with the elapsed time
+        assertTrue(frame(0.1f, true));
+        assertEquals(time, channel.getTime(), 0f);
+        assertTrue(frame(0.1f, true));
+        assertEquals(time + 0.7f, channel.getTime(), 1e-5f);
+
+        // At the last level
+        policy.setAnimateCulled(true);
+        time = channel.getTime();
+        frame(0.1f, false);
+        assertEquals(time + 0.1f, channel.getTime(), 1e-5f);
+        for (int i = 0; i < 3; i++) {
+            frame(0.1f, false);
+            assertEquals(time + 0.1f, channel.getTime(), 1e-5f);
+        }
+        assertEquals(2, policy.getLevel());
+        frame(0.1f, false);
+        assertEquals(time + 0.5f, channel.getTime(), 1e-5f);
+    }
+
+    @Test
+    public void testClone() {
+        AnimLodPolicy policy = createPolicy();
+        skeletonControl.setLodPolicy(policy);
+        setDistance(100);
+        frame(0.1f, true);
+        frame(0.1f, true);
+
+        Node clone = (Node) model.clone();
+        AnimLodPolicy clonePolicy = clone.getControl(SkeletonControl.class).getLodPolicy();
+        assertNotSame(policy, clonePolicy);
+        assertEquals(3, clonePolicy.getNumLevels());
+        assertEquals(0, clonePolicy.getLevel());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import static org.junit.Assert.*;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Plays an animation on a crowd, and compares the skinning matrices with
+ * the ones of an {@link AnimControl} playing it on each skeleton.
+ */
+public class CrowdAnimatorTest {
+
+    private Skeleton rig;
+    private Animation animation;
+
+    /**
+     * Creates a spine of three bones with two arms, listed children first.
+     */
+    @Before
+    public void setUp() {
+        Bone[] bones = new Bone[5];
+        for (int i = 0; i < bones.length; i++) {
+            bones[i] = new Bone("Bone" + i);
+        }
+        bones[4].setBindTransforms(new Vector3f(0, -1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        bones[4].addChild(bones[3]);
+        bones[3].setBindTransforms(new Vector3f(0, 0.5f, 0),
+                new Quaternion().fromAngleAxis(0.2f, Vector3f.UNIT_X), new Vector3f(1, 1.2f, 1));
+        bones[3].addChild(bones[2]);
+        bones[2].setBindTransforms(new Vector3f(0, 0.5f, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        bones[2].addChild(bones[1]);
+        bones[1].setBindTransforms(new Vector3f(-0.5f, 0, 0),
+                new Quaternion().fromAngleAxis(FastMath.HALF_PI, Vector3f.UNIT_Z), new Vector3f(1, 1, 1));
+        bones[2].addChild(bones[0]);
+        bones[0].setBindTransforms(new Vector3f(0.5f, 0, 0),
+                new Quaternion().fromAngleAxis(-FastMath.HALF_PI, Vector3f.UNIT_Z), new Vector3f(1, 1, 1));
+        rig = new Skeleton(bones);
+
+        float[] times = {0, 0.4f, 1f, 2f};
+        animation = new Animation("Wave", 2f);
+        animation.addTrack(new BoneTrack(0, times, translations(0.1f), rotations(Vector3f.UNIT_Z, 0.8f)));
+        animation.addTrack(new BoneTrack(1, times, translations(0), rotations(Vector3f.UNIT_Y, -1.2f),
+                new Vector3f[]{
+                    new Vector3f(1, 1, 1), new Vector3f(1.5f, 1, 1), new Vector3f(1, 0.5f, 1), new Vector3f(1, 1, 1)
+                }));
+        animation.addTrack(new BoneTrack(4, new float[]{0}, new Vector3f[]{new Vector3f(0, 0.2f, 0)},
+                new Quaternion[]{new Quaternion().fromAngleAxis(0.3f, Vector3f.UNIT_Y)}));
+        // Ignored, the first track of the bone wins
+        animation.addTrack(new BoneTrack(0, times, translations(1), rotations(Vector3f.UNIT_X, 1)));
+    }
+
+    private static Vector3f[] translations(float step) {
+        return new Vector3f[]{
+            new Vector3f(), new Vector3f(step, 0, 0), new Vector3f(step, step, 0), new Vector3f()
+        };
+    }
+
+    private static Quaternion[] rotations(Vector3f axis, float angle) {
+        // The last one is in the other hemisphere
+        return new Quaternion[]{
+            new Quaternion(), new Quaternion().fromAngleAxis(angle, axis),
+            new Quaternion().fromAngleAxis(-angle, axis), new Quaternion(0, 0, 0, -1)
+        };
+    }
+
+    private AnimControl createReference(float time, float speed, LoopMode loopMode) {
+        AnimControl control = new AnimControl(new Skeleton(rig));
+        control.addAnim(animation);
+        AnimChannel channel = control.createChannel();
+        channel.setAnim("Wave", 0);
+        channel.setTime(time);
+        channel.setSpeed(speed);
+        channel.setLoopMode(loopMode);
+        return control;
+    }
+
+    private void checkCrowd(int count, LoopMode loopMode, boolean parallel) {
+        CrowdAnimator crowd = new CrowdAnimator(rig, animation);
+        crowd.setLoopMode(loopMode);
+        crowd.setParallel(parallel);
+        AnimControl[] references = new AnimControl[count];
+        for (int i = 0; i < count; i++) {
+            float time = (i * 0.37f) % 2f;
+            float speed = i % 3 == 0 ? 1 : 0.5f + i * 0.1f;
+            references[i] = createReference(time, speed, loopMode);
+            assertEquals(i, crowd.addSkeleton(new Skeleton(rig), time, speed));
+        }
+
+        Transform transform = new Transform();
+        for (int frame = 0; frame < 50; frame++) {
+            float tpf = frame % 5 == 0 ? 0.2f : 0.05f;
+            crowd.update(tpf);
+            for (int i = 0; i < count; i++) {
+                references[i].update(tpf);
+                Matrix4f[] expected = references[i].getSkeleton().computeSkinningMatrices();
+                Matrix4f[] actual = crowd.getSkeleton(i).computeSkinningMatrices();
+                for (int b = 0; b < expected.length; b++) {
+                    assertMatrixEquals(expected[b], actual[b]);
+                }
+
+                Bone bone = references[i].getSkeleton().getBone(1);
+                crowd.getModelTransform(i, 1, transform);
+                assertTrue(transform.getTranslation().distance(bone.getModelSpacePosition()) < 1e-4f);
+                assertTrue(transform.getScale().distance(bone.getModelSpaceScale()) < 1e-4f);
+                assertEquals(Math.abs(transform.getRotation().dot(bone.getModelSpaceRotation())), 1f, 1e-4f);
+                assertEquals(references[i].getChannel(0).getTime(), crowd.getTime(i), 1e-5f);
+            }
+        }
+    }
+
+    private static void assertMatrixEquals(Matrix4f expected, Matrix4f actual) {
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                assertEquals(expected.get(row, column), actual.get(row, column), 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAnimControl() {
+        checkCrowd(5, LoopMode.Loop, false);
+        checkCrowd(5, LoopMode.Cycle, false);
+        checkCrowd(5, LoopMode.DontLoop, false);
+    }
+
+    @Test
+    public void testParallel() {
+        checkCrowd(CrowdAnimator.PARALLEL_THRESHOLD * 3 + 1, LoopMode.Loop, true);
+    }
+
+    @Test
+    public void testSkeletons() {
+        CrowdAnimator crowd = new CrowdAnimator(rig, animation);
+        Skeleton a = new Skeleton(rig);
+        Skeleton b = new Skeleton(rig);
+        Skeleton c = new Skeleton(rig);
+        crowd.addSkeleton(a);
+        crowd.addSkeleton(b, 1, 2);
+        crowd.addSkeleton(c, 0.5f, 1);
+        assertEquals(3, crowd.getSkeletonCount());
+
+        // The last skeleton takes the index of the removed one
+        assertTrue(crowd.removeSkeleton(b));
+        assertFalse(crowd.removeSkeleton(b));
+        assertEquals(2, crowd.getSkeletonCount());
+        assertSame(c, crowd.getSkeleton(1));
+        assertEquals(0.5f, crowd.getTime(1), 0f);
+        try {
+            crowd.getSkeleton(2);
+            fail("Removed");
+        } catch (IndexOutOfBoundsException ex) {
+        }
+
+        try {
+            crowd.addSkeleton(new Skeleton(new Bone[]{new Bone("Single")}));
+            fail("Another rig");
+        } catch (IllegalArgumentException ex) {
+        }
+
+        try {
+            new CrowdAnimator(rig, animation).addSkeleton(a);
+            fail("Animated twice");
+        } catch (IllegalArgumentException ex) {
+        }
+
+        // Once removed, the matrices are computed from the bones again
+        a.resetAndUpdate();
+        crowd.update(0.5f);
+        assertFalse(a.computeSkinningMatrices()[0].isIdentity());
+        assertTrue(crowd.removeSkeleton(a));
+        assertMatrixEquals(Matrix4f.IDENTITY, a.computeSkinningMatrices()[0]);
+    }
+
+    @Test
+    public void testSkippedUpdate() {
+        CrowdAnimator crowd = new CrowdAnimator(rig, animation);
+        Skeleton skeleton = new Skeleton(rig);
+        skeleton.resetAndUpdate();
+        crowd.addSkeleton(skeleton);
+        crowd.update(1f);
+        Matrix4f[] animated = skeleton.computeSkinningMatrices();
+        Matrix4f[] expected = new Matrix4f[animated.length];
+        for (int i = 0; i < animated.length; i++) {
+            expected[i] = animated[i].clone();
+        }
+        assertFalse(expected[4].isIdentity());
+
+        // A paused crowd keeps its pose instead of going back to the bones
+        Matrix4f[] again = skeleton.computeSkinningMatrices();
+        for (int i = 0; i < expected.length; i++) {
+            assertMatrixEquals(expected[i], again[i]);
+        }
+    }
+}
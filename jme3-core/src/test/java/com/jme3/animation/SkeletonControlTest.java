@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.shape.Box;
+import com.jme3.scene.shape.Sphere;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+/**
+ * Compares software skinning on the rendering thread and in parallel.
+ */
+public class SkeletonControlTest {
+
+    /**
+     * Weights every vertex between the root and the arm bone from its
+     * height.
+     */
+    private static Mesh createSkinnedMesh(Mesh mesh, boolean tangents) {
+        FloatBuffer positions = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
+        int numVertices = mesh.getVertexCount();
+        ByteBuffer indices = ByteBuffer.allocate(numVertices * 4);
+        FloatBuffer weights = FloatBuffer.allocate(numVertices * 4);
+        for (int i = 0; i < numVertices; i++) {
+            float weight = FastMath.clamp((positions.get(i * 3 + 1) + 1f) / 2f, 0f, 1f);
+            indices.put((byte) 0).put((byte) 1).put((byte) 0).put((byte) 0);
+            weights.put(1f - weight).put(weight).put(0f).put(0f);
+        }
+        mesh.setBuffer(Type.BoneIndex, 4, indices);
+        mesh.setBuffer(Type.BoneWeight, 4, weights);
+        mesh.setMaxNumWeights(2);
+        if (tangents) {
+            FloatBuffer tangentData = FloatBuffer.allocate(numVertices * 4);
+            for (int i = 0; i < numVertices; i++) {
+                tangentData.put(1f).put(0f).put(0f).put(1f);
+            }
+            mesh.setBuffer(Type.Tangent, 4, tangentData);
+        }
+        mesh.generateBindPose(true);
+        return mesh;
+    }
+
+    private static SkeletonControl createModel(boolean tangents, boolean parallel) {
+        Bone root = new Bone("root");
+        Bone arm = new Bone("arm");
+        root.addChild(arm);
+        arm.setBindTransforms(new Vector3f(0, 1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        Skeleton skeleton = new Skeleton(new Bone[]{root, arm});
+
+        Material material = new Material(new MaterialDef(null, "Skinned"));
+        Node model = new Node("Model");
+        // more vertices than the threshold, and a small mesh
+        Geometry body = new Geometry("Body", createSkinnedMesh(new Sphere(64, 64, 1f), tangents));
+        body.setMaterial(material);
+        model.attachChild(body);
+        Geometry hat = new Geometry("Hat", createSkinnedMesh(new Box(0.2f, 0.2f, 0.2f), tangents));
+        hat.setMaterial(material);
+        model.attachChild(hat);
+
+        SkeletonControl control = new SkeletonControl(skeleton);
+        control.setHardwareSkinningPreferred(false);
+        control.setParallelSoftwareSkinning(parallel);
+        model.addControl(control);
+
+        arm.setUserControl(true);
+        arm.setUserTransforms(Vector3f.ZERO, new Quaternion().fromAngleAxis(0.7f, Vector3f.UNIT_Z), Vector3f.UNIT_XYZ);
+        skeleton.updateWorldVectors();
+        return control;
+    }
+
+    private static void skin(SkeletonControl control) {
+        control.update(0);
+        control.render(null, null);
+    }
+
+    private static void assertSameBuffers(Mesh expected, Mesh actual, Type type) {
+        VertexBuffer actualBuffer = actual.getBuffer(type);
+        assertTrue(actualBuffer.isUpdateNeeded());
+        FloatBuffer expectedData = (FloatBuffer) expected.getBuffer(type).getData();
+        FloatBuffer actualData = (FloatBuffer) actualBuffer.getData();
+        assertEquals(expectedData.limit(), actualData.limit());
+        for (int i = 0; i < expectedData.limit(); i++) {
+            assertEquals(expectedData.get(i), actualData.get(i), 0f);
+        }
+    }
+
+    private void testParallelSkinning(boolean tangents) {
+        SkeletonControl serial = createModel(tangents, false);
+        SkeletonControl parallel = createModel(tangents, true);
+        assertTrue(parallel.isParallelSoftwareSkinning());
+        Mesh[] meshes = parallel.getTargets();
+        assertTrue(meshes[0].getVertexCount() > SkeletonControl.PARALLEL_SKINNING_THRESHOLD);
+
+        // skinned twice to check it starts from the bind pose
+        for (int i = 0; i < 2; i++) {
+            skin(serial);
+            skin(parallel);
+        }
+
+        Mesh[] expected = serial.getTargets();
+        for (int i = 0; i < meshes.length; i++) {
+            assertSameBuffers(expected[i], meshes[i], Type.Position);
+            assertSameBuffers(expected[i], meshes[i], Type.Normal);
+            if (tangents) {
+                assertSameBuffers(expected[i], meshes[i], Type.Tangent);
+            }
+        }
+
+        // the arm moved the top of the body
+        FloatBuffer bind = (FloatBuffer) meshes[0].getBuffer(Type.BindPosePosition).getData();
+        FloatBuffer skinned = (FloatBuffer) meshes[0].getBuffer(Type.Position).getData();
+        boolean moved = false;
+        for (int i = 0; i < bind.limit() && !moved; i++) {
+            moved = Math.abs(bind.get(i) - skinned.get(i)) > 0.01f;
+        }
+        assertTrue(moved);
+    }
+
+    @Test
+    public void testParallelSkinning() {
+        testParallelSkinning(false);
+    }
+
+    @Test
+    public void testParallelSkinningTangents() {
+        testParallelSkinning(true);
+    }
+}
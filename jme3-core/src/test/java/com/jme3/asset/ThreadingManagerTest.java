@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the priorities, cancellation and request sharing of
+ * {@link ThreadingManager}.
+ */
+public class ThreadingManagerTest {
+
+    private static final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+    private static volatile CountDownLatch gate;
+
+    public static class TestLocator implements AssetLocator {
+
+        public void setRootPath(String rootPath) {
+        }
+
+        public AssetInfo locate(AssetManager manager, AssetKey key) {
+            return new AssetInfo(manager, key) {
+                @Override
+                public InputStream openStream() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            };
+        }
+    }
+
+    /**
+     * Records the order of loads, ".gate" assets wait for the gate to open.
+     */
+    public static class TestLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) throws IOException {
+            String name = assetInfo.getKey().getName();
+            if (name.endsWith(".gate")) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+            loaded.add(name);
+            return name.toUpperCase();
+        }
+    }
+
+    private DesktopAssetManager assetManager;
+
+    @Before
+    public void setUp() {
+        assetManager = new DesktopAssetManager();
+        assetManager.registerLocator("/", TestLocator.class);
+        assetManager.registerLoader(TestLoader.class, "gate", "txt");
+        loaded.clear();
+        gate = new CountDownLatch(1);
+    }
+
+    @Test
+    public void testPriorityAndCancel() throws Exception {
+        ThreadingManager manager = new ThreadingManager(assetManager, 1);
+
+        // Occupy the only loading thread
+        AssetRequest<Object> first = manager.loadAsset(new AssetKey<Object>("first.gate"), 0, null);
+        AssetRequest<Object> low = manager.loadAsset(new AssetKey<Object>("low.txt"), 1, null);
+        AssetRequest<Object> high = manager.loadAsset(new AssetKey<Object>("high.txt"), 5, null);
+        AssetRequest<Object> cancelled = manager.loadAsset(new AssetKey<Object>("cancelled.txt"), 10, null);
+        AssetRequest<Object> raised = manager.loadAsset(new AssetKey<Object>("raised.txt"), 0, null);
+        raised.setPriority(20);
+
+        assertTrue(cancelled.cancel(false));
+        assertFalse(cancelled.cancel(false));
+        gate.countDown();
+
+        assertEquals("FIRST.GATE", first.get(10, TimeUnit.SECONDS));
+        assertEquals("LOW.TXT", low.get(10, TimeUnit.SECONDS));
+        assertEquals("HIGH.TXT", high.get(10, TimeUnit.SECONDS));
+        assertEquals("RAISED.TXT", raised.get(10, TimeUnit.SECONDS));
+        try {
+            cancelled.get();
+            fail("Cancelled request returned a result");
+        } catch (CancellationException ex) {
+        }
+
+        // The first load may have started before the others were queued
+        assertEquals(4, loaded.size());
+        assertEquals("first.gate", loaded.get(0));
+        assertEquals("raised.txt", loaded.get(1));
+        assertEquals("high.txt", loaded.get(2));
+        assertEquals("low.txt", loaded.get(3));
+    }
+
+    @Test
+    public void testSharedRequests() throws Exception {
+        final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch callbacks = new CountDownLatch(2);
+        AssetLoadCallback<Object> callback = new AssetLoadCallback<Object>() {
+            public void assetLoaded(AssetKey<Object> key, Object asset) {
+                results.add(asset);
+                callbacks.countDown();
+            }
+
+            public void assetFailed(AssetKey<Object> key, Throwable error) {
+                results.add(error);
+                callbacks.countDown();
+            }
+        };
+
+        final List<Runnable> delivered = new ArrayList<Runnable>();
+        final CountDownLatch deliveries = new CountDownLatch(2);
+        assetManager.setCallbackExecutor(new Executor() {
+            public void execute(Runnable command) {
+                synchronized (delivered) {
+                    delivered.add(command);
+                }
+                deliveries.countDown();
+            }
+        });
+
+        AssetRequest<Object> a = assetManager.loadAssetAsync(new AssetKey<Object>("shared.gate"), 0, callback);
+        AssetRequest<Object> b = assetManager.loadAssetAsync(new AssetKey<Object>("shared.gate"), 0, callback);
+        gate.countDown();
+        assertEquals("SHARED.GATE", a.get(10, TimeUnit.SECONDS));
+        assertEquals("SHARED.GATE", b.get(10, TimeUnit.SECONDS));
+        assertEquals(1, loaded.size());
+
+        // Callbacks go through the executor, e.g. the render thread
+        assertTrue(deliveries.await(10, TimeUnit.SECONDS));
+        assertTrue(results.isEmpty());
+        synchronized (delivered) {
+            assertEquals(2, delivered.size());
+            for (Runnable r : delivered) {
+                r.run();
+            }
+        }
+        assertTrue(callbacks.await(10, TimeUnit.SECONDS));
+        assertEquals(2, results.size());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import static org.junit.Assert.*;
+
+import com.jme3.asset.TextureKey;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.util.BufferUtils;
+import org.junit.Test;
+
+/**
+ * Tests the memory accounting and eviction order of {@link LRUAssetCache}.
+ */
+public class LRUAssetCacheTest {
+
+    private static Texture createTexture(int size) {
+        Image image = new Image(Image.Format.RGBA8, size, size,
+                                BufferUtils.createByteBuffer(size * size * 4));
+        return new Texture2D(image);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        // 64x64 RGBA8 is 16 KB
+        LRUAssetCache cache = new LRUAssetCache(3 * 16384);
+        TextureKey a = new TextureKey("a.png");
+        TextureKey b = new TextureKey("b.png");
+        TextureKey c = new TextureKey("c.png");
+        TextureKey d = new TextureKey("d.png");
+        cache.addToCache(a, createTexture(64));
+        cache.addToCache(b, createTexture(64));
+        cache.addToCache(c, createTexture(64));
+        assertEquals(3 * 16384, cache.getMemoryUsed());
+
+        // Touch a, so that b is the least recently used
+        assertNotNull(cache.getFromCache(a));
+        cache.addToCache(d, createTexture(64));
+
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.getFromCache(b));
+        assertNotNull(cache.getFromCache(a));
+        assertNotNull(cache.getFromCache(c));
+        assertNotNull(cache.getFromCache(d));
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // Shrinking the budget evicts right away, a is now the eldest
+        cache.setMaxMemory(16384);
+        assertEquals(1, cache.getSize());
+        assertNotNull(cache.getFromCache(d));
+
+        assertTrue(cache.deleteFromCache(d));
+        assertEquals(0, cache.getMemoryUsed());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testReplaceAndTooLarge() {
+        LRUAssetCache cache = new LRUAssetCache(16384);
+        TextureKey a = new TextureKey("a.png");
+        cache.addToCache(a, createTexture(32));
+        assertEquals(4096, cache.getMemoryUsed());
+        cache.addToCache(a, createTexture(64));
+        assertEquals(16384, cache.getMemoryUsed());
+
+        // An asset larger than the whole budget is not kept
+        cache.addToCache(new TextureKey("b.png"), createTexture(128));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMemoryUsed());
+    }
+}
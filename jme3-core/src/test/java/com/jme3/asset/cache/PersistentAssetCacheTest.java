@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import static org.junit.Assert.*;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLoader;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.ModelKey;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link PersistentAssetCache} serves models across asset
+ * managers and notices changes to their sources and dependencies.
+ */
+public class PersistentAssetCacheTest {
+
+    private static final AtomicInteger modelLoads = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Loads a text file as a node named after its first line followed by
+     * the first line of the file named on its second line.
+     */
+    public static class TestModelLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) throws IOException {
+            modelLoads.incrementAndGet();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(assetInfo.openStream(), "UTF-8"));
+            try {
+                String name = reader.readLine();
+                String dependency = reader.readLine();
+                String suffix = (String) assetInfo.getManager().loadAsset(new AssetKey(dependency));
+                return new Node(name + suffix);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    public static class TestTextLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(assetInfo.openStream(), "UTF-8"));
+            try {
+                return reader.readLine();
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static Spatial load(File assets, File cacheDir) {
+        DesktopAssetManager manager = new DesktopAssetManager();
+        manager.registerLocator(assets.getAbsolutePath(), FileLocator.class);
+        manager.registerLoader(TestModelLoader.class, "testmodel");
+        manager.registerLoader(TestTextLoader.class, "txt");
+        manager.setPersistentCache(new PersistentAssetCache(cacheDir));
+        return manager.loadModel(new ModelKey("Model.testmodel"));
+    }
+
+    @Test
+    public void testCacheAndInvalidate() throws IOException {
+        File assets = temp.newFolder("assets");
+        File cacheDir = temp.newFolder("cache");
+        File model = new File(assets, "Model.testmodel");
+        File dependency = new File(assets, "Suffix.txt");
+        write(model, "Model\nSuffix.txt\n");
+        write(dependency, "A\n");
+
+        modelLoads.set(0);
+        assertEquals("ModelA", load(assets, cacheDir).getName());
+        assertEquals(1, modelLoads.get());
+
+        // A new asset manager has empty memory caches, the model comes
+        // from disk
+        assertEquals("ModelA", load(assets, cacheDir).getName());
+        assertEquals(1, modelLoads.get());
+
+        write(dependency, "B\n");
+        assertEquals("ModelB", load(assets, cacheDir).getName());
+        assertEquals(2, modelLoads.get());
+
+        write(model, "Changed\nSuffix.txt\n");
+        assertEquals("ChangedB", load(assets, cacheDir).getName());
+        assertEquals(3, modelLoads.get());
+
+        assertEquals("ChangedB", load(assets, cacheDir).getName());
+        assertEquals(3, modelLoads.get());
+
+        new PersistentAssetCache(cacheDir).clear();
+        assertEquals("ChangedB", load(assets, cacheDir).getName());
+        assertEquals(4, modelLoads.get());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.collision;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.bih.BIHTree;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Sphere;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests building {@link BIHTree}s.
+ */
+public class BIHTreeTest {
+
+    @Test
+    public void testParallelBuildMatchesSequential() {
+        Mesh mesh = new Sphere(96, 96, 10f);
+        mesh.updateBound();
+        assertTrue(mesh.getTriangleCount() > 2 * BIHTree.PARALLEL_BUILD_THRESHOLD);
+
+        BIHTree sequential = new BIHTree(mesh);
+        sequential.construct(false);
+        BIHTree parallel = new BIHTree(mesh);
+        parallel.construct(true);
+        assertEquals(sequential.flatten().getNodeCount(), parallel.flatten().getNodeCount());
+
+        Matrix4f worldMatrix = new Matrix4f();
+        BoundingVolume worldBound = mesh.getBound();
+        CollisionResults expected = new CollisionResults();
+        CollisionResults actual = new CollisionResults();
+        Vector3f v1 = new Vector3f(), v2 = new Vector3f(), v3 = new Vector3f();
+        Vector3f w1 = new Vector3f(), w2 = new Vector3f(), w3 = new Vector3f();
+        for (int i = 0; i < mesh.getTriangleCount(); i++) {
+            sequential.getTriangle(i, v1, v2, v3);
+            parallel.getTriangle(i, w1, w2, w3);
+            assertEquals(v1, w1);
+            assertEquals(v2, w2);
+            assertEquals(v3, w3);
+        }
+
+        Random random = new Random(1234);
+        for (int i = 0; i < 100; i++) {
+            Vector3f origin = new Vector3f(random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f).multLocal(100f);
+            Ray ray = new Ray(origin, origin.negate().normalizeLocal());
+
+            expected.clear();
+            actual.clear();
+            sequential.collideWith(ray, worldMatrix, worldBound, expected);
+            parallel.collideWith(ray, worldMatrix, worldBound, actual);
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.getCollision(j).getTriangleIndex(),
+                        actual.getCollision(j).getTriangleIndex());
+                assertEquals(expected.getCollision(j).getDistance(),
+                        actual.getCollision(j).getDistance(), 0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.collision;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.bih.BIHTree;
+import com.jme3.collision.bih.FlatBIHTree;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Sphere;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that ray queries on a {@link FlatBIHTree} agree with the
+ * {@link BIHTree} they were flattened from.
+ */
+public class FlatBIHTreeTest {
+
+    private static Vector3f randomDirection(Random random) {
+        float z = random.nextFloat() * 2f - 1f;
+        float angle = random.nextFloat() * FastMath.TWO_PI;
+        float r = FastMath.sqrt(1f - z * z);
+        return new Vector3f(r * FastMath.cos(angle), r * FastMath.sin(angle), z);
+    }
+
+    private void checkRays(Matrix4f worldMatrix) {
+        Mesh mesh = new Sphere(32, 32, 10f);
+        mesh.updateBound();
+        BIHTree tree = new BIHTree(mesh);
+        tree.construct();
+        FlatBIHTree flat = tree.flatten();
+        BoundingVolume worldBound = mesh.getBound().transform(worldMatrix, null);
+        Vector3f center = worldMatrix.mult(Vector3f.ZERO, null);
+
+        Random random = new Random(1234);
+        CollisionResults expected = new CollisionResults();
+        CollisionResults actual = new CollisionResults();
+        CollisionResult closest = new CollisionResult();
+        int hits = 0;
+        for (int i = 0; i < 200; i++) {
+            Vector3f origin = randomDirection(random).multLocal(50f).addLocal(center);
+            Vector3f target = randomDirection(random).multLocal(15f).addLocal(center);
+            Ray ray = new Ray(origin, target.subtractLocal(origin).normalizeLocal());
+
+            expected.clear();
+            actual.clear();
+            tree.collideWith(ray, worldMatrix, worldBound, expected);
+            flat.collideWith(ray, worldMatrix, actual);
+            assertEquals(expected.size(), actual.size());
+
+            boolean hit = flat.collideWithClosest(ray, worldMatrix, closest);
+            assertEquals(expected.size() > 0, hit);
+            assertEquals(hit, flat.intersects(ray, worldMatrix));
+            if (hit) {
+                CollisionResult e = expected.getClosestCollision();
+                assertEquals(e.getDistance(), closest.getDistance(), 0.001f);
+                assertEquals(e.getTriangleIndex(), closest.getTriangleIndex());
+                assertTrue(e.getContactPoint().distance(closest.getContactPoint()) < 0.001f);
+                assertTrue(e.getContactNormal().distance(closest.getContactNormal()) < 0.001f);
+
+                // Stopping the ray before the mesh misses it
+                ray.setLimit(e.getDistance() * 0.5f);
+                assertFalse(flat.intersects(ray, worldMatrix));
+                hits++;
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void testIdentity() {
+        checkRays(new Matrix4f());
+    }
+
+    @Test
+    public void testTransformed() {
+        Matrix4f worldMatrix = new Matrix4f();
+        worldMatrix.setTransform(new Vector3f(5f, -3f, 20f), new Vector3f(1f, 1f, 1f),
+                new Quaternion().fromAngles(0.3f, 1.2f, -0.4f).toRotationMatrix());
+        checkRays(worldMatrix);
+    }
+}
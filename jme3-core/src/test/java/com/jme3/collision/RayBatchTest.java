@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.collision;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.scene.shape.Sphere;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+/**
+ * Checks that {@link RayBatch} finds the same closest hits as
+ * {@link Node#collideWith(com.jme3.collision.Collidable, com.jme3.collision.CollisionResults) }.
+ */
+public class RayBatchTest {
+
+    private static Node createScene() {
+        Node root = new Node("Root");
+        Box box = new Box(1, 1, 1);
+        Sphere sphere = new Sphere(16, 16, 1);
+        for (int i = 0; i < 4; i++) {
+            Node group = new Node("Group" + i);
+            group.setLocalTranslation(i * 10 - 15, 0, 0);
+            for (int j = 0; j < 5; j++) {
+                Geometry geom;
+                if (j == 4) {
+                    // Exercise sphere bounds as well
+                    geom = new Geometry("Geom" + i + "_" + j, new Box(1, 1, 1));
+                    geom.setModelBound(new BoundingSphere());
+                    geom.updateModelBound();
+                } else {
+                    geom = new Geometry("Geom" + i + "_" + j, j % 2 == 0 ? box : sphere);
+                }
+                geom.setLocalTranslation(0, j * 3 - 6, j % 3);
+                group.attachChild(geom);
+            }
+            root.attachChild(group);
+        }
+        root.updateGeometricState();
+        return root;
+    }
+
+    private static void fillBatch(RayBatch batch, Random random) {
+        for (int i = 0; i < 300; i++) {
+            Vector3f origin = new Vector3f(random.nextFloat() * 40 - 20, random.nextFloat() * 20 - 10, 20);
+            Vector3f target = new Vector3f(random.nextFloat() * 40 - 20, random.nextFloat() * 20 - 10, 0);
+            float limit = i % 10 == 0 ? 19f : Float.POSITIVE_INFINITY;
+            batch.addRay(origin, target.subtractLocal(origin), limit);
+        }
+    }
+
+    private static void checkBatch(Node scene, RayBatch batch) {
+        CollisionResults results = new CollisionResults();
+        Vector3f store = new Vector3f();
+        int hits = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Ray ray = new Ray();
+            ray.setOrigin(batch.getRayOrigin(i, new Vector3f()));
+            ray.setDirection(batch.getRayDirection(i, new Vector3f()));
+            results.clear();
+            scene.collideWith(ray, results);
+            batch.getHitPoint(i, store);
+
+            // The batch drops every hit past the limit, the ray limit
+            // of collideWith() is only applied to the tree bounds
+            if (results.size() == 0
+                    || results.getClosestCollision().getDistance() > batch.getRayLimit(i)) {
+                assertFalse(batch.hasHit(i));
+                continue;
+            }
+            CollisionResult expected = results.getClosestCollision();
+            assertTrue(batch.hasHit(i));
+            assertEquals(expected.getDistance(), batch.getHitDistance(i), 0.001f);
+            assertSame(expected.getGeometry(), batch.getHitGeometry(i));
+            assertEquals(expected.getTriangleIndex(), batch.getHitTriangle(i));
+            assertTrue(expected.getContactPoint().distance(store) < 0.001f);
+            hits++;
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void testSequential() {
+        Node scene = createScene();
+        RayBatch batch = new RayBatch(16);
+        fillBatch(batch, new Random(1234));
+        batch.cast(scene);
+        checkBatch(scene, batch);
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        Node scene = createScene();
+        RayBatch batch = new RayBatch();
+        batch.setChunkSize(16);
+        fillBatch(batch, new Random(4321));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            batch.cast(scene, executor);
+        } finally {
+            executor.shutdown();
+        }
+        checkBatch(scene, batch);
+    }
+}
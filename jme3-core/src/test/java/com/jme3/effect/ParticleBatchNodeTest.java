@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.effect;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.shader.VarType;
+import java.nio.FloatBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Batches emitters with a few materials, and compares the meshes of the
+ * batches with the meshes of the emitters.
+ */
+public class ParticleBatchNodeTest {
+
+    private MaterialDef smokeDef;
+    private MaterialDef fireDef;
+    private ViewPort viewPort;
+    private ParticleBatchNode node;
+
+    @Before
+    public void setUp() {
+        smokeDef = new MaterialDef(null, "Smoke");
+        fireDef = new MaterialDef(null, "Fire");
+        fireDef.addMaterialParam(VarType.Float, "Quadratic", null);
+
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(45f, 640f / 480f, 1f, 1000f);
+        cam.setLocation(new Vector3f(2, 5, 20));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        cam.update();
+        viewPort = new ViewPort("Test", cam);
+        node = new ParticleBatchNode("Effects");
+    }
+
+    private ParticleEmitter createEmitter(String name, ParticleMesh.Type type, MaterialDef def) {
+        ParticleEmitter emitter = new ParticleEmitter(name, type, 30);
+        emitter.setMaterial(new Material(def));
+        emitter.getParticleInfluencer().setInitialVelocity(new Vector3f(0, 2, 0));
+        emitter.getParticleInfluencer().setVelocityVariation(0.5f);
+        emitter.setParticlesPerSec(40);
+        emitter.setRandomAngle(true);
+        return emitter;
+    }
+
+    private void frame(float tpf) {
+        node.updateLogicalState(tpf);
+        node.updateGeometricState();
+    }
+
+    private static float[] getPositions(Geometry geom, int numValues) {
+        FloatBuffer buffer = (FloatBuffer) geom.getMesh().getBuffer(VertexBuffer.Type.Position).getData();
+        float[] positions = new float[numValues];
+        buffer.clear();
+        buffer.get(positions);
+        buffer.clear();
+        return positions;
+    }
+
+    /**
+     * Checks the vertices of the batch of the emitters against the vertices
+     * the emitters would draw themselves.
+     */
+    private void checkBatch(ParticleEmitter... emitters) {
+        Geometry batch = node.getBatch(emitters[0]);
+        batch.runControlRender(null, viewPort);
+        int stride = emitters[0].getMeshType() == ParticleMesh.Type.Point ? 3 : 12;
+        int total = 0;
+        for (ParticleEmitter emitter : emitters) {
+            assertSame(batch, node.getBatch(emitter));
+            total += emitter.getNumVisibleParticles();
+        }
+        float[] actual = getPositions(batch, total * stride);
+
+        int offset = 0;
+        Matrix4f transform = new Matrix4f();
+        for (ParticleEmitter emitter : emitters) {
+            Matrix3f inverseRotation = Matrix3f.IDENTITY;
+            if (!emitter.isInWorldSpace()) {
+                inverseRotation = emitter.getWorldRotation().toRotationMatrix().invertLocal();
+            }
+            ParticleMesh mesh = (ParticleMesh) emitter.getMesh();
+            mesh.updateParticleData(emitter.getParticleData(), viewPort.getCamera(), inverseRotation);
+            int count = emitter.getNumVisibleParticles() * stride;
+            float[] expected = getPositions(emitter, count);
+            emitter.getLocalToWorldMatrix(transform);
+            Vector3f vertex = new Vector3f();
+            for (int i = 0; i < count; i += 3) {
+                vertex.set(expected[i], expected[i + 1], expected[i + 2]);
+                if (!emitter.isInWorldSpace()) {
+                    transform.mult(vertex, vertex);
+                }
+                assertEquals(vertex.x, actual[offset + i], 1e-4f);
+                assertEquals(vertex.y, actual[offset + i + 1], 1e-4f);
+                assertEquals(vertex.z, actual[offset + i + 2], 1e-4f);
+            }
+            offset += count;
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        ParticleEmitter smoke1 = createEmitter("Smoke1", ParticleMesh.Type.Triangle, smokeDef);
+        ParticleEmitter smoke2 = createEmitter("Smoke2", ParticleMesh.Type.Triangle, smokeDef);
+        smoke2.setInWorldSpace(false);
+        smoke2.setLocalTranslation(5, 0, -3);
+        smoke2.setLocalRotation(new Quaternion().fromAngleAxis(0.5f, Vector3f.UNIT_Y));
+        smoke2.setImagesX(2);
+        ParticleEmitter fire1 = createEmitter("Fire1", ParticleMesh.Type.Point, fireDef);
+        fire1.setLocalTranslation(-5, 0, 0);
+        ParticleEmitter fire2 = createEmitter("Fire2", ParticleMesh.Type.Point, fireDef);
+        Node group = new Node("Group");
+        group.attachChild(smoke2);
+        group.attachChild(fire2);
+        node.attachChild(smoke1);
+        node.attachChild(fire1);
+        node.attachChild(group);
+
+        for (int i = 0; i < 20; i++) {
+            frame(0.05f);
+        }
+        assertEquals(2, node.getNumBatches());
+        assertEquals(CullHint.Always, smoke1.getLocalCullHint());
+        assertTrue(smoke1.isStructOfArrays());
+        assertTrue(smoke1.getNumVisibleParticles() > 10);
+        checkBatch(smoke1, smoke2);
+        checkBatch(fire1, fire2);
+        assertTrue(node.getBatch(fire1).getMaterial().getParam("Quadratic") != null);
+
+        // the bound of the batch holds the particles of its emitters
+        BoundingBox bound = (BoundingBox) node.getBatch(smoke1).getWorldBound();
+        assertTrue(bound.intersects(smoke1.getWorldBound()));
+        assertTrue(bound.intersects(new Vector3f(5, 0, -3)));
+
+        // leaving the subgraph, the emitters are drawn again by themselves
+        fire2.removeFromParent();
+        frame(0.05f);
+        assertEquals(CullHint.Inherit, fire2.getLocalCullHint());
+        assertNull(node.getBatch(fire2));
+        checkBatch(fire1);
+        node.detachChild(fire1);
+        assertEquals(CullHint.Inherit, fire1.getLocalCullHint());
+        frame(0.05f);
+        assertEquals(1, node.getNumBatches());
+
+        // another material
+        smoke2.setMaterial(new Material(fireDef));
+        smoke2.setCullHint(CullHint.Never);
+        frame(0.05f);
+        assertEquals(2, node.getNumBatches());
+        assertNotSame(node.getBatch(smoke1), node.getBatch(smoke2));
+        checkBatch(smoke1);
+        checkBatch(smoke2);
+
+        // another bucket
+        smoke2.setMaterial(smoke1.getMaterial());
+        smoke2.setQueueBucket(Bucket.Translucent);
+        frame(0.05f);
+        assertEquals(2, node.getNumBatches());
+        assertNotSame(node.getBatch(smoke1), node.getBatch(smoke2));
+        assertEquals(Bucket.Transparent, node.getBatch(smoke1).getQueueBucket());
+        assertEquals(Bucket.Translucent, node.getBatch(smoke2).getQueueBucket());
+        checkBatch(smoke2);
+    }
+
+    @Test
+    public void testGrowAndClone() {
+        ParticleEmitter smoke = createEmitter("Smoke", ParticleMesh.Type.Triangle, smokeDef);
+        node.attachChild(smoke);
+        frame(0.05f);
+        for (int i = 0; i < 3; i++) {
+            ParticleEmitter more = createEmitter("More" + i, ParticleMesh.Type.Triangle, smokeDef);
+            node.attachChild(more);
+            frame(0.05f);
+            node.getBatch(smoke).runControlRender(null, viewPort);
+        }
+        smoke.setNumParticles(200);
+        smoke.setParticlesPerSec(1000);
+        for (int i = 0; i < 5; i++) {
+            frame(0.05f);
+        }
+        assertTrue(smoke.getNumVisibleParticles() > 100);
+        checkBatch(smoke, (ParticleEmitter) node.getChild("More0"),
+                (ParticleEmitter) node.getChild("More1"), (ParticleEmitter) node.getChild("More2"));
+
+        ParticleBatchNode clone = (ParticleBatchNode) node.clone();
+        assertEquals(4, clone.getQuantity());
+        ParticleEmitter cloneSmoke = (ParticleEmitter) clone.getChild("Smoke");
+        assertEquals(CullHint.Inherit, cloneSmoke.getLocalCullHint());
+        clone.updateLogicalState(0.05f);
+        clone.updateGeometricState();
+        assertEquals(1, clone.getNumBatches());
+        assertNotSame(node.getBatch(smoke), clone.getBatch(cloneSmoke));
+        assertEquals(5, clone.getQuantity());
+        assertEquals(CullHint.Always, cloneSmoke.getLocalCullHint());
+
+        frame(0.05f);
+        assertEquals(1, node.getNumBatches());
+        assertEquals(5, node.getQuantity());
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.effect;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.effect.shapes.EmitterBoxShape;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.VertexBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Simulates the same emitters with particle objects and with particle arrays,
+ * seeding the random numbers alike, and compares the particles and meshes.
+ */
+public class ParticleEmitterTest {
+
+    private static final long SEED = 42;
+
+    private Camera cam;
+
+    @Before
+    public void setUp() {
+        cam = new Camera(640, 480);
+        cam.setFrustumPerspective(45f, 640f / 480f, 1f, 1000f);
+        cam.setLocation(new Vector3f(3, 2, 10));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        cam.update();
+    }
+
+    private static ParticleEmitter createEmitter(ParticleMesh.Type type, int numParticles, boolean arrays) {
+        ParticleEmitter emitter = new ParticleEmitter("Sparks", type, numParticles);
+        emitter.setStructOfArrays(arrays);
+        emitter.setShape(new EmitterBoxShape(new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1)));
+        emitter.getParticleInfluencer().setInitialVelocity(new Vector3f(0, 2, 0));
+        emitter.getParticleInfluencer().setVelocityVariation(0.5f);
+        emitter.setGravity(0, 1, 0.5f);
+        emitter.setStartColor(new ColorRGBA(1, 0.5f, 0, 1));
+        emitter.setEndColor(new ColorRGBA(0, 0, 1, 0));
+        emitter.setLowLife(0.5f);
+        emitter.setHighLife(1.5f);
+        emitter.setParticlesPerSec(60);
+        emitter.setImagesX(2);
+        emitter.setImagesY(2);
+        emitter.setRandomAngle(true);
+        emitter.setRotateSpeed(2);
+        return emitter;
+    }
+
+    private static void frame(ParticleEmitter emitter, float tpf) {
+        emitter.updateLogicalState(tpf);
+        emitter.updateGeometricState();
+    }
+
+    /**
+     * Returns the live particles by start life, which is random.
+     */
+    private static Map<Float, Particle> getParticles(ParticleEmitter emitter) {
+        Map<Float, Particle> result = new TreeMap<Float, Particle>();
+        if (emitter.getParticleData() != null) {
+            ParticleData data = emitter.getParticleData();
+            for (int i = 0; i < data.getCount(); i++) {
+                Particle p = data.get(i, new Particle());
+                result.put(p.startlife, p);
+            }
+        } else {
+            for (Particle p : emitter.getParticles()) {
+                if (p.life > 0) {
+                    result.put(p.startlife, p);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertParticlesEqual(ParticleEmitter expected, ParticleEmitter actual) {
+        Map<Float, Particle> expectedParticles = getParticles(expected);
+        Map<Float, Particle> actualParticles = getParticles(actual);
+        assertEquals(expected.getNumVisibleParticles(), actual.getNumVisibleParticles());
+        assertEquals(expectedParticles.keySet(), actualParticles.keySet());
+        for (Map.Entry<Float, Particle> entry : expectedParticles.entrySet()) {
+            Particle e = entry.getValue();
+            Particle a = actualParticles.get(entry.getKey());
+            assertEquals(e.life, a.life, 0f);
+            assertEquals(e.position, a.position);
+            assertEquals(e.velocity, a.velocity);
+            assertEquals(e.color, a.color);
+            assertEquals(e.size, a.size, 0f);
+            assertEquals(e.angle, a.angle, 0f);
+            assertEquals(e.imageIndex, a.imageIndex);
+        }
+        BoundingBox expectedBound = (BoundingBox) expected.getMesh().getBound();
+        BoundingBox actualBound = (BoundingBox) actual.getMesh().getBound();
+        assertEquals(expectedBound.getCenter(), actualBound.getCenter());
+        assertEquals(expectedBound.getExtent(null), actualBound.getExtent(null));
+    }
+
+    /**
+     * Writes the meshes and returns the positions of the vertices of each
+     * live particle, by start life.
+     */
+    private Map<Float, float[]> getVertices(ParticleEmitter emitter) {
+        ParticleMesh mesh = (ParticleMesh) emitter.getMesh();
+        int stride = mesh.getMode() == ParticleMesh.Mode.Points ? 3 : 12;
+        FloatBuffer positions = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+        Map<Float, float[]> result = new TreeMap<Float, float[]>();
+        if (emitter.getParticleData() != null) {
+            ParticleData data = emitter.getParticleData();
+            mesh.updateParticleData(data, cam, Matrix3f.IDENTITY);
+            for (int i = 0; i < data.getCount(); i++) {
+                float[] vertices = new float[stride];
+                positions.position(i * stride);
+                positions.get(vertices);
+                result.put(data.startLives[i], vertices);
+            }
+            // the other quads are collapsed
+            if (stride == 12) {
+                for (int i = data.getCount() * stride; i < positions.limit(); i++) {
+                    assertEquals(0, positions.get(i), 0f);
+                }
+            }
+        } else {
+            Particle[] particles = emitter.getParticles();
+            mesh.updateParticleData(particles, cam, Matrix3f.IDENTITY);
+            for (int i = 0; i < particles.length; i++) {
+                if (particles[i].life > 0) {
+                    float[] vertices = new float[stride];
+                    positions.position(i * stride);
+                    positions.get(vertices);
+                    result.put(particles[i].startlife, vertices);
+                }
+            }
+        }
+        positions.clear();
+        return result;
+    }
+
+    private void assertVerticesEqual(ParticleEmitter expected, ParticleEmitter actual) {
+        Map<Float, float[]> expectedVertices = getVertices(expected);
+        Map<Float, float[]> actualVertices = getVertices(actual);
+        assertEquals(expectedVertices.keySet(), actualVertices.keySet());
+        for (Map.Entry<Float, float[]> entry : expectedVertices.entrySet()) {
+            float[] e = entry.getValue();
+            float[] a = actualVertices.get(entry.getKey());
+            for (int i = 0; i < e.length; i++) {
+                assertEquals(e[i], a[i], 1e-4f);
+            }
+        }
+    }
+
+    private void checkArrays(ParticleMesh.Type type, Vector3f faceNormal, boolean facingVelocity) {
+        FastMath.rand.setSeed(SEED);
+        ParticleEmitter objects = createEmitter(type, 50, false);
+        objects.setFaceNormal(faceNormal);
+        objects.setFacingVelocity(facingVelocity);
+        FastMath.rand.setSeed(SEED);
+        ParticleEmitter arrays = createEmitter(type, 50, true);
+        arrays.setFaceNormal(faceNormal);
+        arrays.setFacingVelocity(facingVelocity);
+
+        for (int frame = 0; frame < 80; frame++) {
+            float tpf = frame % 7 == 0 ? 0.1f : 0.02f;
+            long seed = FastMath.rand.nextLong();
+            FastMath.rand.setSeed(seed);
+            frame(objects, tpf);
+            FastMath.rand.setSeed(seed);
+            frame(arrays, tpf);
+            assertParticlesEqual(objects, arrays);
+            assertVerticesEqual(objects, arrays);
+        }
+        assertTrue(arrays.getNumVisibleParticles() > 20);
+    }
+
+    @Test
+    public void testMatchesObjects() {
+        checkArrays(ParticleMesh.Type.Triangle, null, false);
+        checkArrays(ParticleMesh.Type.Triangle, new Vector3f(0.3f, 1, 0.2f), false);
+        checkArrays(ParticleMesh.Type.Triangle, null, true);
+        checkArrays(ParticleMesh.Type.Point, null, false);
+    }
+
+    @Test
+    public void testParallel() {
+        int numParticles = ParticleEmitter.PARALLEL_UPDATE_THRESHOLD * 3;
+        FastMath.rand.setSeed(SEED);
+        ParticleEmitter serial = createEmitter(ParticleMesh.Type.Triangle, numParticles, true);
+        serial.setParticlesPerSec(numParticles);
+        FastMath.rand.setSeed(SEED);
+        ParticleEmitter parallel = createEmitter(ParticleMesh.Type.Triangle, numParticles, true);
+        parallel.setParticlesPerSec(numParticles);
+        parallel.setParallelUpdate(true);
+
+        for (int frame = 0; frame < 20; frame++) {
+            long seed = FastMath.rand.nextLong();
+            FastMath.rand.setSeed(seed);
+            frame(serial, 0.1f);
+            FastMath.rand.setSeed(seed);
+            frame(parallel, 0.1f);
+
+            ParticleData expected = serial.getParticleData();
+            ParticleData actual = parallel.getParticleData();
+            assertEquals(expected.getCount(), actual.getCount());
+            assertTrue(Arrays.equals(expected.positions, actual.positions));
+            assertTrue(Arrays.equals(expected.colors, actual.colors));
+            assertTrue(Arrays.equals(expected.lives, actual.lives));
+            assertTrue(Arrays.equals(expected.imageIndices, actual.imageIndices));
+            BoundingBox expectedBound = (BoundingBox) serial.getMesh().getBound();
+            BoundingBox actualBound = (BoundingBox) parallel.getMesh().getBound();
+            assertEquals(expectedBound.getCenter(), actualBound.getCenter());
+            assertEquals(expectedBound.getExtent(null), actualBound.getExtent(null));
+        }
+        assertTrue(parallel.getNumVisibleParticles() > ParticleEmitter.PARALLEL_UPDATE_THRESHOLD);
+    }
+
+    @Test
+    public void testKill() {
+        ParticleEmitter emitter = createEmitter(ParticleMesh.Type.Triangle, 10, false);
+        emitter.emitAllParticles();
+        assertEquals(10, emitter.getNumVisibleParticles());
+
+        // switching the storage kills the particles
+        emitter.setStructOfArrays(true);
+        assertEquals(0, emitter.getParticles().length);
+        assertEquals(0, emitter.getNumVisibleParticles());
+        emitter.emitParticles(4);
+        ParticleData data = emitter.getParticleData();
+        assertEquals(4, data.getCount());
+        float last = data.startLives[3];
+
+        // the last particle takes the place of the killed one
+        emitter.killParticle(1);
+        assertEquals(3, emitter.getNumVisibleParticles());
+        assertEquals(last, data.startLives[1], 0f);
+        try {
+            emitter.killParticle(3);
+            fail("Dead particle");
+        } catch (IndexOutOfBoundsException ex) {
+        }
+
+        ParticleEmitter clone = emitter.clone();
+        assertNotSame(data, clone.getParticleData());
+        assertTrue(clone.isStructOfArrays());
+        assertEquals(10, clone.getParticleData().getCapacity());
+
+        emitter.killAllParticles();
+        assertEquals(0, emitter.getNumVisibleParticles());
+        emitter.setStructOfArrays(false);
+        assertNull(emitter.getParticleData());
+        assertEquals(10, emitter.getParticles().length);
+    }
+
+    /**
+     * A mesh only supporting {@link Particle} objects, which keeps the last
+     * particles it got.
+     */
+    private static class ObjectMesh extends ParticleMesh {
+
+        private Particle[] particles;
+
+        @Override
+        public void initParticleData(ParticleEmitter emitter, int numParticles) {
+        }
+
+        @Override
+        public void setImagesXY(int imagesX, int imagesY) {
+        }
+
+        @Override
+        public void updateParticleData(Particle[] particles, Camera cam, Matrix3f inverseRotation) {
+            this.particles = particles;
+        }
+    }
+
+    @Test
+    public void testDefaultArrayUpdate() {
+        ParticleData data = new ParticleData(5);
+        for (int i = 0; i < 3; i++) {
+            Particle p = new Particle();
+            p.position.set(i, 2 * i, 3 * i);
+            p.color.set(1, 0.5f, 0, 1);
+            p.life = 1 + i;
+            p.startlife = 2 + i;
+            p.imageIndex = i;
+            data.set(data.add(), p);
+        }
+        data.kill(0);
+
+        ObjectMesh mesh = new ObjectMesh();
+        mesh.updateParticleData(data, cam, Matrix3f.IDENTITY);
+        assertEquals(5, mesh.particles.length);
+        assertEquals(new Vector3f(2, 4, 6), mesh.particles[0].position);
+        assertEquals(3, mesh.particles[0].life, 0f);
+        assertEquals(2, mesh.particles[0].imageIndex);
+        assertEquals(new Vector3f(1, 2, 3), mesh.particles[1].position);
+        assertEquals(new ColorRGBA(1, 0.5f, 0, 1), mesh.particles[1].color);
+        for (int i = 2; i < 5; i++) {
+            assertEquals(0, mesh.particles[i].life, 0f);
+        }
+
+        // the particles are reused by the next update
+        Particle[] particles = mesh.particles;
+        data.kill(1);
+        mesh.updateParticleData(data, cam, Matrix3f.IDENTITY);
+        assertSame(particles, mesh.particles);
+        assertEquals(0, mesh.particles[1].life, 0f);
+    }
+}
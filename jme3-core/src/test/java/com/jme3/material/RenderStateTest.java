@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.material;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.RenderState.BlendMode;
+import com.jme3.material.RenderState.FaceCullMode;
+import com.jme3.material.RenderState.StencilOperation;
+import com.jme3.material.RenderState.TestFunction;
+import org.junit.Test;
+
+/**
+ * Checks the packed representation of {@link RenderState}.
+ */
+public class RenderStateTest {
+
+    @Test
+    public void testPackedState() {
+        RenderState a = new RenderState();
+        RenderState b = new RenderState();
+        assertEquals(a.getPackedState(), b.getPackedState());
+        assertTrue(a.contentEquals(b));
+
+        b.setBlendMode(BlendMode.Alpha);
+        assertFalse(a.contentEquals(b));
+        a.setBlendMode(BlendMode.Alpha);
+        assertTrue(a.contentEquals(b));
+        assertEquals(a.contentHashCode(), b.contentHashCode());
+
+        // Every property changes the packed state
+        long packed = a.getPackedState();
+        RenderState[] changed = new RenderState[8];
+        for (int i = 0; i < changed.length; i++) {
+            changed[i] = a.clone();
+        }
+        changed[0].setPointSprite(true);
+        changed[1].setWireframe(true);
+        changed[2].setFaceCullMode(FaceCullMode.Front);
+        changed[3].setDepthWrite(false);
+        changed[4].setDepthTest(false);
+        changed[5].setColorWrite(false);
+        changed[6].setDepthFunc(TestFunction.Greater);
+        changed[7].setStencil(true,
+                StencilOperation.Keep, StencilOperation.Keep, StencilOperation.Keep,
+                StencilOperation.Keep, StencilOperation.Keep, StencilOperation.Keep,
+                TestFunction.Always, TestFunction.Always);
+        for (RenderState state : changed) {
+            assertFalse(packed == state.getPackedState());
+            assertFalse(a.equals(state));
+        }
+
+        // The floats are compared besides the packed state
+        b.setPolyOffset(1, 1);
+        assertFalse(a.contentEquals(b));
+    }
+
+    @Test
+    public void testNormalizedLikeEquals() {
+        RenderState a = new RenderState();
+        RenderState b = new RenderState();
+        a.setDepthTest(false);
+        b.setDepthTest(false);
+        b.setDepthFunc(TestFunction.Always);
+        assertTrue(a.equals(b));
+        assertEquals(a.getPackedState(), b.getPackedState());
+        assertEquals(a.contentHashCode(), b.contentHashCode());
+
+        b.setStencil(false,
+                StencilOperation.Zero, StencilOperation.Zero, StencilOperation.Zero,
+                StencilOperation.Zero, StencilOperation.Zero, StencilOperation.Zero,
+                TestFunction.Never, TestFunction.Never);
+        assertTrue(a.equals(b));
+        assertEquals(a.getSortId(), b.getSortId());
+    }
+
+    @Test
+    public void testVersion() {
+        RenderState state = new RenderState();
+        int hash = state.contentHashCode();
+        int version = state.getVersion();
+        state.setWireframe(true);
+        assertTrue(state.getVersion() != version);
+        assertTrue(state.contentHashCode() != hash);
+
+        RenderState merged = new RenderState();
+        version = merged.getVersion();
+        RenderState.DEFAULT.copyMergedTo(state, merged);
+        assertTrue(merged.getVersion() != version);
+        assertTrue(merged.isWireframe());
+        assertTrue(merged.contentEquals(state));
+
+        version = merged.getVersion();
+        merged.set(RenderState.DEFAULT);
+        assertTrue(merged.getVersion() != version);
+        assertTrue(merged.contentEquals(RenderState.DEFAULT));
+        assertTrue(merged.getSortId() >= 0 && merged.getSortId() < 256);
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.profile;
+
+import static org.junit.Assert.*;
+
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.system.NullRenderer;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/**
+ * Records frames the way SimpleApplication and RenderManager step through
+ * them, and checks the exported traces.
+ */
+public class FrameProfilerTest {
+
+    private static final Pattern EVENT = Pattern.compile(
+            "\\{\"name\":\"((?:[^\"\\\\]|\\\\.)*)\",\"cat\":\"(\\w+)\",\"ph\":\"X\",\"pid\":1,\"tid\":(\\d)"
+            + ",\"ts\":([-\\d.]+),\"dur\":([\\d.]+),\"args\":\\{\"frame\":(\\d+)\\}\\}");
+
+    private static class Event {
+        String name;
+        String category;
+        double start;
+        double end;
+        int frame;
+
+        boolean contains(Event other) {
+            return frame == other.frame && start <= other.start && other.end <= end;
+        }
+    }
+
+    /**
+     * Stores increasing times, available on the next frame.
+     */
+    private static class TimerRenderer extends NullRenderer {
+
+        private final EnumSet<Caps> caps = EnumSet.of(Caps.TimerQuery);
+        private final List<Long> times = new ArrayList<Long>();
+        private int nextQuery = 1;
+        private long time = 1000000;
+        private boolean available = false;
+        private int deleted = 0;
+
+        @Override
+        public EnumSet<Caps> getCaps() {
+            return caps;
+        }
+
+        @Override
+        public int[] generateTimestampQueries(int count) {
+            int[] queries = new int[count];
+            for (int i = 0; i < count; i++) {
+                queries[i] = nextQuery++;
+                times.add(0L);
+            }
+            return queries;
+        }
+
+        @Override
+        public void deleteTimestampQueries(int[] queries) {
+            deleted += queries.length;
+        }
+
+        @Override
+        public void recordTimestamp(int query) {
+            time += 1000;
+            times.set(query - 1, time);
+        }
+
+        @Override
+        public boolean isTimestampAvailable(int query) {
+            return available;
+        }
+
+        @Override
+        public long getTimestamp(int query) {
+            return times.get(query - 1);
+        }
+    }
+
+    private final ViewPort viewPort = new ViewPort("Main Viewport", new Camera(640, 480));
+
+    private void recordFrame(FrameProfiler profiler) {
+        profiler.appStep(AppStep.BeginFrame);
+        profiler.appStep(AppStep.QueuedTasks);
+        profiler.appStep(AppStep.StateManagerUpdate);
+        FrameProfiler.beginScope(FrameProfilerTest.class);
+        FrameProfiler.beginScope("Nested");
+        FrameProfiler.endScope();
+        FrameProfiler.endScope();
+        profiler.appStep(AppStep.SpatialUpdate);
+        profiler.appStep(AppStep.RenderMainViewPorts);
+        profiler.vpStep(VpStep.BeginRender, viewPort, null);
+        profiler.vpStep(VpStep.RenderScene, viewPort, null);
+        profiler.vpStep(VpStep.FlushQueue, viewPort, null);
+        profiler.vpStep(VpStep.RenderBucket, viewPort, Bucket.Opaque);
+        FrameProfiler.beginScope("Sort");
+        FrameProfiler.endScope();
+        profiler.vpStep(VpStep.RenderBucket, viewPort, Bucket.Transparent);
+        profiler.vpStep(VpStep.PostFrame, viewPort, null);
+        FrameProfiler.beginGpuScope("Filter \"1\"");
+        // rendered by a filter, ends with it
+        profiler.vpStep(VpStep.RenderBucket, viewPort, Bucket.Translucent);
+        FrameProfiler.endScope();
+        profiler.vpStep(VpStep.EndRender, viewPort, null);
+        // more ends than begins are ignored
+        FrameProfiler.endScope();
+        profiler.appStep(AppStep.EndFrame);
+    }
+
+    private List<Event> export(FrameProfiler profiler) throws IOException {
+        StringWriter out = new StringWriter();
+        profiler.exportChromeTrace(out);
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.trim().endsWith("}"));
+
+        List<Event> events = new ArrayList<Event>();
+        Matcher m = EVENT.matcher(json);
+        while (m.find()) {
+            Event e = new Event();
+            e.name = m.group(1);
+            e.category = m.group(2);
+            assertEquals(e.category.equals("cpu") ? "1" : "2", m.group(3));
+            e.start = Double.parseDouble(m.group(4));
+            e.end = e.start + Double.parseDouble(m.group(5));
+            e.frame = Integer.parseInt(m.group(6));
+            events.add(e);
+        }
+        return events;
+    }
+
+    private static Event find(List<Event> events, String name, String category, int frame) {
+        for (Event e : events) {
+            if (e.name.equals(name) && e.category.equals(category) && e.frame == frame) {
+                return e;
+            }
+        }
+        fail(name + " not found in frame " + frame);
+        return null;
+    }
+
+    @Test
+    public void testScopes() throws IOException {
+        FrameProfiler profiler = new FrameProfiler(4);
+        recordFrame(profiler);
+        assertEquals(1, profiler.getRecordedFrameCount());
+        assertTrue(profiler.getLastFrameTime() > 0);
+
+        List<Event> events = export(profiler);
+        assertEquals(16, events.size());
+        Event frame = find(events, "Frame", "cpu", 0);
+        Event update = find(events, "StateManagerUpdate", "cpu", 0);
+        Event state = find(events, "FrameProfilerTest", "cpu", 0);
+        Event viewPort = find(events, "Main Viewport", "cpu", 0);
+        Event flush = find(events, "FlushQueue", "cpu", 0);
+        Event filter = find(events, "Filter \\\"1\\\"", "cpu", 0);
+        for (Event e : events) {
+            assertTrue(frame.contains(e));
+        }
+        assertTrue(update.contains(state));
+        assertTrue(state.contains(find(events, "Nested", "cpu", 0)));
+        assertTrue(viewPort.contains(flush));
+        assertTrue(flush.contains(find(events, "Opaque", "cpu", 0)));
+        assertTrue(find(events, "Opaque", "cpu", 0).contains(find(events, "Sort", "cpu", 0)));
+        assertTrue(flush.contains(find(events, "Transparent", "cpu", 0)));
+        assertTrue(find(events, "PostFrame", "cpu", 0).contains(filter));
+        assertTrue(filter.contains(find(events, "Translucent", "cpu", 0)));
+        assertFalse(update.contains(viewPort));
+
+        // Scopes outside of frames are ignored
+        FrameProfiler.beginScope("Outside");
+        FrameProfiler.endScope();
+        assertEquals(16, export(profiler).size());
+    }
+
+    @Test
+    public void testRingBuffer() throws IOException {
+        FrameProfiler profiler = new FrameProfiler(4);
+        for (int i = 0; i < 10; i++) {
+            recordFrame(profiler);
+        }
+        assertEquals(4, profiler.getRecordedFrameCount());
+        List<Event> events = export(profiler);
+        Set<Integer> frames = new HashSet<Integer>();
+        double previous = Double.NEGATIVE_INFINITY;
+        for (Event e : events) {
+            frames.add(e.frame);
+            if (e.name.equals("Frame")) {
+                assertTrue(e.start > previous);
+                previous = e.start;
+            }
+        }
+        assertEquals(new HashSet<Integer>(java.util.Arrays.asList(6, 7, 8, 9)), frames);
+
+        // A frame being recorded is not exported, and replaces the oldest one
+        profiler.appStep(AppStep.BeginFrame);
+        assertEquals(events.size() * 3 / 4, export(profiler).size());
+        profiler.clear();
+        assertEquals(1, profiler.getRecordedFrameCount());
+        assertEquals(0, export(profiler).size());
+        profiler.appStep(AppStep.EndFrame);
+        assertEquals(1, export(profiler).size());
+
+        profiler.setMaxScopes(3);
+        recordFrame(profiler);
+        assertEquals(4, export(profiler).size());
+    }
+
+    @Test
+    public void testGpuTimes() throws IOException {
+        TimerRenderer renderer = new TimerRenderer();
+        FrameProfiler profiler = new FrameProfiler(8);
+        profiler.setRenderer(new NullRenderer());
+        assertNull(profiler.getRenderer());
+        profiler.setRenderer(renderer);
+        assertSame(renderer, profiler.getRenderer());
+
+        recordFrame(profiler);
+        List<Event> events = export(profiler);
+        for (Event e : events) {
+            assertEquals("cpu", e.category);
+        }
+
+        // The GPU times are read once available
+        renderer.available = true;
+        events = export(profiler);
+        Event frame = find(events, "Frame", "gpu", 0);
+        Event viewPort = find(events, "Main Viewport", "gpu", 0);
+        Event filter = find(events, "Filter \\\"1\\\"", "gpu", 0);
+        assertTrue(frame.contains(viewPort));
+        assertTrue(viewPort.contains(filter));
+        assertEquals(frame.start, find(events, "Frame", "cpu", 0).start, 0.001);
+        for (Event e : events) {
+            // only the rendering steps are timed on the GPU
+            if (e.category.equals("gpu")) {
+                assertFalse(e.name.equals("StateManagerUpdate") || e.name.equals("Sort"));
+            }
+        }
+
+        profiler.setRenderer(null);
+        assertEquals(256, renderer.deleted);
+    }
+
+    @Test
+    public void testCleanup() throws IOException {
+        TimerRenderer renderer = new TimerRenderer();
+        FrameProfiler profiler = new FrameProfiler(4);
+        profiler.setRenderer(renderer);
+        recordFrame(profiler);
+        profiler.appStep(AppStep.BeginFrame);
+        profiler.appStep(AppStep.RenderMainViewPorts);
+        FrameProfiler.beginGpuScope("Filter");
+
+        // the frame in progress is ended and the queries are released
+        profiler.cleanup();
+        assertNull(profiler.getRenderer());
+        assertEquals(256 * 2, renderer.deleted);
+        assertEquals(2, profiler.getRecordedFrameCount());
+        List<Event> events = export(profiler);
+        Event frame = find(events, "Frame", "cpu", 1);
+        assertTrue(frame.contains(find(events, "Filter", "cpu", 1)));
+
+        // the static scopes no longer reach the profiler
+        FrameProfiler.beginScope("Late");
+        FrameProfiler.endScope();
+        assertEquals(events.size(), export(profiler).size());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.system.NullRenderer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link OcclusionCuller} with a wall in front of the camera.
+ */
+public class OcclusionCullerTest {
+
+    private Camera cam;
+    private Geometry wall;
+    private OcclusionCuller culler;
+
+    /**
+     * Records the geometries instead of rendering them.
+     */
+    private static class RecordingRenderManager extends RenderManager {
+
+        private final List<Geometry> rendered = new ArrayList<Geometry>();
+
+        RecordingRenderManager() {
+            super(new NullRenderer());
+        }
+
+        @Override
+        public void renderGeometry(Geometry g) {
+            rendered.add(g);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60f, 640f / 480f, 1f, 1000f);
+        cam.setLocation(new Vector3f(0, 0, 0));
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+
+        // A 6x6 wall, 10 units in front of the camera
+        wall = new Geometry("Wall", new Box(3, 3, 0.5f));
+        wall.setLocalTranslation(0, 0, 10);
+        wall.setMaterial(new Material());
+        wall.updateGeometricState();
+
+        culler = new OcclusionCuller(128, 96);
+        culler.addOccluder(wall);
+    }
+
+    private static BoundingBox box(float x, float y, float z, float extent) {
+        return new BoundingBox(new Vector3f(x, y, z), extent, extent, extent);
+    }
+
+    @Test
+    public void testRasterize() {
+        assertFalse(culler.isOccluded(box(0, 0, 30, 1)));
+        culler.rasterizeOccluders(cam);
+        assertEquals(0, cam.getPlaneState());
+
+        // The wall covers the center of the screen, the corners are empty
+        float center = culler.getDepth(culler.getWidth() / 2, culler.getHeight() / 2);
+        assertTrue(center > -1 && center < 1);
+        assertEquals(Float.POSITIVE_INFINITY, culler.getDepth(0, 0), 0);
+        assertEquals(Float.POSITIVE_INFINITY, culler.getDepth(culler.getWidth() - 1, culler.getHeight() - 1), 0);
+    }
+
+    @Test
+    public void testOcclusion() {
+        culler.rasterizeOccluders(cam);
+
+        // Behind the wall
+        assertTrue(culler.isOccluded(box(0, 0, 30, 1)));
+        assertTrue(culler.isOccluded(new BoundingSphere(2, new Vector3f(3, -3, 40))));
+        // In front of the wall
+        assertFalse(culler.isOccluded(box(0, 0, 5, 1)));
+        // Behind the wall but larger than it on screen
+        assertFalse(culler.isOccluded(box(0, 0, 30, 20)));
+        // Behind the wall, next to it on screen
+        assertFalse(culler.isOccluded(box(25, 0, 50, 1)));
+        // Crossing the near plane
+        assertFalse(culler.isOccluded(box(0, 0, 0, 2)));
+    }
+
+    @Test
+    public void testNearPlaneClipping() {
+        // A floor that starts behind the camera must be clipped, not dropped
+        Geometry floor = new Geometry("Floor", new Box(50, 0.5f, 50));
+        floor.setLocalTranslation(0, -2, 0);
+        floor.updateGeometricState();
+        culler.removeOccluder(wall);
+        culler.addOccluder(floor);
+        culler.rasterizeOccluders(cam);
+
+        assertTrue(culler.isOccluded(box(0, -10, 20, 1)));
+        assertFalse(culler.isOccluded(box(0, 5, 20, 1)));
+    }
+
+    @Test
+    public void testRenderManager() {
+        Material material = new Material();
+        Node scene = new Node("Scene");
+        scene.attachChild(wall);
+        List<Geometry> hidden = new ArrayList<Geometry>();
+        for (int i = 0; i < 10; i++) {
+            Geometry geom = new Geometry("Hidden" + i, new Box(0.5f, 0.5f, 0.5f));
+            geom.setLocalTranslation(i - 5, 0, 30 + i);
+            geom.setMaterial(material);
+            scene.attachChild(geom);
+            hidden.add(geom);
+        }
+        Geometry visible = new Geometry("Visible", new Box(0.5f, 0.5f, 0.5f));
+        visible.setLocalTranslation(0, 0, 5);
+        visible.setMaterial(material);
+        scene.attachChild(visible);
+        Geometry sky = new Geometry("Sky", new Box(0.5f, 0.5f, 0.5f));
+        sky.setLocalTranslation(0, 0, 30);
+        sky.setMaterial(material);
+        sky.setQueueBucket(Bucket.Sky);
+        scene.attachChild(sky);
+        scene.updateGeometricState();
+
+        for (int threads = 1; threads <= 3; threads += 2) {
+            RecordingRenderManager rm = new RecordingRenderManager();
+            rm.setCullingThreads(threads);
+            Statistics stats = rm.getRenderer().getStatistics();
+            stats.setEnabled(true);
+            stats.clearFrame();
+            ViewPort vp = new ViewPort("Test", cam);
+            vp.setOcclusionCuller(culler);
+            vp.attachScene(scene);
+            rm.renderViewPortRaw(vp);
+            rm.setCullingThreads(1);
+
+            assertTrue(rm.rendered.contains(wall));
+            assertTrue(rm.rendered.contains(visible));
+            assertTrue(rm.rendered.contains(sky));
+            for (Geometry geom : hidden) {
+                assertFalse(rm.rendered.contains(geom));
+            }
+
+            int[] data = new int[stats.getLabels().length];
+            stats.getData(data);
+            assertEquals(11, data[13]);
+            assertEquals(10, data[14]);
+        }
+    }
+}
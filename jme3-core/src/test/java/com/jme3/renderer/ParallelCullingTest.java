@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.NullComparator;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.shape.Box;
+import com.jme3.system.NullRenderer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that culling a scene with several threads builds the same render
+ * queue as culling it on the render thread.
+ */
+public class ParallelCullingTest {
+
+    private static final Bucket[] BUCKETS = {
+        Bucket.Opaque, Bucket.Transparent, Bucket.Translucent, Bucket.Sky, Bucket.Gui
+    };
+
+    /**
+     * Records the geometries instead of rendering them.
+     */
+    private static class RecordingRenderManager extends RenderManager {
+
+        private final List<Geometry> rendered = new ArrayList<Geometry>();
+
+        RecordingRenderManager() {
+            super(new NullRenderer());
+        }
+
+        @Override
+        public void renderGeometry(Geometry g) {
+            rendered.add(g);
+        }
+    }
+
+    private static class CountingControl extends AbstractControl {
+
+        private int renders;
+
+        @Override
+        protected void controlUpdate(float tpf) {
+        }
+
+        @Override
+        protected void controlRender(RenderManager rm, ViewPort vp) {
+            renders++;
+        }
+    }
+
+    /**
+     * Moves the second child of its node out of the frustum when rendered.
+     */
+    private static class MovingControl extends AbstractControl {
+
+        @Override
+        protected void controlUpdate(float tpf) {
+        }
+
+        @Override
+        protected void controlRender(RenderManager rm, ViewPort vp) {
+            Node node = (Node) spatial;
+            node.getChild(1).setLocalTranslation(0, 1000, 0);
+            node.updateGeometricState();
+        }
+    }
+
+    private static Node createScene(Random random, List<CountingControl> controls) {
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        Material material = new Material();
+        Node root = new Node("Root");
+        for (int i = 0; i < 6; i++) {
+            Node group = new Node("Group" + i);
+            root.attachChild(group);
+            for (int j = 0; j < 20; j++) {
+                Node node = new Node("Node" + i + "_" + j);
+                node.setLocalTranslation(random.nextFloat() * 200 - 100, 0, random.nextFloat() * 200 - 100);
+                group.attachChild(node);
+                if (j % 7 == 0) {
+                    node.setCullHint(CullHint.Always);
+                }
+                for (int k = 0; k < 40; k++) {
+                    Geometry geom = new Geometry("Geom", box);
+                    geom.setMaterial(material);
+                    geom.setLocalTranslation(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+                    geom.setQueueBucket(BUCKETS[random.nextInt(BUCKETS.length)]);
+                    if (k % 9 == 0) {
+                        geom.setCullHint(CullHint.Never);
+                    }
+                    if (k % 5 == 0) {
+                        CountingControl control = new CountingControl();
+                        geom.addControl(control);
+                        controls.add(control);
+                    }
+                    node.attachChild(geom);
+                }
+            }
+        }
+        root.updateGeometricState();
+        return root;
+    }
+
+    private static List<Geometry> cull(Node scene, int threads) {
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60f, 640f / 480f, 1f, 80f);
+        cam.setLocation(new Vector3f(0, 5, -60));
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+
+        RecordingRenderManager rm = new RecordingRenderManager();
+        rm.setCullingThreads(threads);
+        ViewPort vp = new ViewPort("Test", cam);
+        for (Bucket bucket : BUCKETS) {
+            vp.getQueue().setGeometryComparator(bucket, new NullComparator());
+        }
+        rm.renderScene(scene, vp);
+        for (Bucket bucket : BUCKETS) {
+            vp.getQueue().renderQueue(bucket, rm, cam);
+        }
+        rm.setCullingThreads(1);
+        return rm.rendered;
+    }
+
+    @Test
+    public void testSameQueue() {
+        List<CountingControl> controls = new ArrayList<CountingControl>();
+        Node scene = createScene(new Random(7), controls);
+
+        List<Geometry> expected = cull(scene, 1);
+        int[] expectedRenders = new int[controls.size()];
+        for (int i = 0; i < controls.size(); i++) {
+            expectedRenders[i] = controls.get(i).renders;
+            controls.get(i).renders = 0;
+        }
+        assertTrue(expected.size() > 0);
+        assertTrue(expected.size() < 6 * 20 * 40);
+
+        for (int threads = 2; threads <= 5; threads++) {
+            assertEquals(expected, cull(scene, threads));
+            for (int i = 0; i < controls.size(); i++) {
+                assertEquals(expectedRenders[i], controls.get(i).renders);
+                controls.get(i).renders = 0;
+            }
+        }
+    }
+
+    @Test
+    public void testControlChangesSubtree() {
+        List<CountingControl> controls = new ArrayList<CountingControl>();
+        Node scene = createScene(new Random(5), controls);
+        List<MovingControl> movers = new ArrayList<MovingControl>();
+        List<Spatial> moved = new ArrayList<Spatial>();
+        List<Vector3f> positions = new ArrayList<Vector3f>();
+        for (Spatial group : scene.getChildren()) {
+            for (int j = 1; j < 20; j += 2) {
+                Node node = (Node) ((Node) group).getChild(j);
+                MovingControl mover = new MovingControl();
+                mover.setEnabled(false);
+                node.addControl(mover);
+                movers.add(mover);
+                moved.add(node.getChild(1));
+                positions.add(node.getChild(1).getLocalTranslation().clone());
+            }
+        }
+
+        // Some of the moved children are visible where they start
+        List<Geometry> unmoved = cull(scene, 1);
+        int visible = 0;
+        for (Spatial child : moved) {
+            if (unmoved.contains(child)) {
+                visible++;
+            }
+        }
+        assertTrue(visible > 0);
+        for (MovingControl mover : movers) {
+            mover.setEnabled(true);
+        }
+
+        List<Geometry> expected = null;
+        for (int threads = 1; threads <= 5; threads++) {
+            for (int i = 0; i < moved.size(); i++) {
+                moved.get(i).setLocalTranslation(positions.get(i));
+            }
+            scene.updateGeometricState();
+            List<Geometry> actual = cull(scene, threads);
+            if (expected == null) {
+                // the children of nodes partly in the frustum are culled
+                expected = actual;
+                int stillVisible = 0;
+                for (Spatial child : moved) {
+                    if (expected.contains(child)) {
+                        stillVisible++;
+                    }
+                }
+                assertTrue(stillVisible < visible);
+            } else {
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        List<CountingControl> controls = new ArrayList<CountingControl>();
+        Node scene = createScene(new Random(3), controls);
+        Geometry geom = new Geometry("NoMaterial", new Box(1, 1, 1));
+        geom.setCullHint(CullHint.Never);
+        ((Node) scene.getChild(5)).attachChild(geom);
+        scene.updateGeometricState();
+        try {
+            cull(scene, 4);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("NoMaterial"));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer;
+
+import static org.junit.Assert.*;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Quad;
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+/**
+ * Records frames in the history of {@link Statistics}.
+ */
+public class StatisticsTest {
+
+    private static final Mesh MESH = new Quad(1, 1);
+
+    private static void recordFrame(Statistics stats, int objects) {
+        for (int i = 0; i < objects; i++) {
+            stats.onMeshDrawn(MESH, 0, 1);
+        }
+        stats.clearFrame();
+    }
+
+    @Test
+    public void testHistory() {
+        Statistics stats = new Statistics();
+        stats.setEnabled(true);
+        stats.clearFrame();
+        assertEquals(0, stats.getRecordedFrames());
+
+        // the frame since the last clear is recorded
+        stats.setHistorySize(4);
+        recordFrame(stats, 0);
+        assertEquals(1, stats.getRecordedFrames());
+        for (int i = 1; i <= 6; i++) {
+            recordFrame(stats, i);
+        }
+        assertEquals(4, stats.getRecordedFrames());
+
+        int[] data = new int[stats.getHistoryLabels().length];
+        assertEquals(17, data.length);
+        assertEquals("Frame (us)", stats.getHistoryLabels()[Statistics.FRAME_TIME]);
+        int objects = 3;
+        for (int i = 0; i < 4; i++) {
+            stats.getHistoryData(i, data);
+            assertEquals(6 - i, data[objects]);
+            assertTrue(data[Statistics.FRAME_TIME] >= 0);
+        }
+        try {
+            stats.getHistoryData(4, data);
+            fail("Only 4 frames are kept");
+        } catch (IndexOutOfBoundsException ex) {
+        }
+
+        // frames are not recorded while disabled
+        stats.setEnabled(false);
+        recordFrame(stats, 10);
+        stats.setEnabled(true);
+        stats.getHistoryData(0, data);
+        assertEquals(6, data[objects]);
+
+        stats.clearHistory();
+        assertEquals(0, stats.getRecordedFrames());
+        assertEquals(0, stats.getPercentile(objects, 50));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Statistics stats = new Statistics();
+        stats.setEnabled(true);
+        stats.setHistorySize(100);
+        stats.clearFrame();
+        int objects = 3;
+        for (int i = 1; i <= 100; i++) {
+            recordFrame(stats, i);
+        }
+        // exact under 64, rounded up by at most 1/32 above
+        assertEquals(50, stats.getPercentile(objects, 50));
+        assertEquals(1, stats.getPercentile(objects, 0));
+        int p99 = stats.getPercentile(objects, 99);
+        assertTrue(p99 >= 99 && p99 <= 99 + 99 / 32);
+        int p100 = stats.getPercentile(objects, 100);
+        assertTrue(p100 >= 100 && p100 <= 100 + 100 / 32);
+
+        // evicted frames leave the histograms
+        for (int i = 0; i < 100; i++) {
+            recordFrame(stats, 5);
+        }
+        assertEquals(5, stats.getPercentile(objects, 100));
+        assertEquals(5, stats.getPercentile(objects, 1));
+    }
+
+    @Test
+    public void testListenerAndExport() throws IOException {
+        final Statistics stats = new Statistics();
+        final int[] recorded = new int[1];
+        StatisticsListener listener = new StatisticsListener() {
+            public void frameRecorded(Statistics statistics) {
+                assertSame(stats, statistics);
+                recorded[0]++;
+            }
+        };
+        stats.setEnabled(true);
+        stats.setHistorySize(2);
+        stats.addListener(listener);
+        stats.clearFrame();
+        recordFrame(stats, 1);
+        recordFrame(stats, 2);
+        recordFrame(stats, 3);
+        assertEquals(3, recorded[0]);
+        stats.removeListener(listener);
+        recordFrame(stats, 4);
+        assertEquals(3, recorded[0]);
+
+        StringWriter out = new StringWriter();
+        stats.exportHistory(out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("Vertices,Triangles,Uniforms,Objects,"));
+        assertTrue(lines[0].endsWith(",Frame (us)"));
+        assertEquals("3", lines[1].split(",")[3]);
+        assertEquals("4", lines[2].split(",")[3]);
+    }
+}
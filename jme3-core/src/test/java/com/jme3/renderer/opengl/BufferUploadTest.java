@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer.opengl;
+
+import static org.junit.Assert.*;
+
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
+import com.jme3.util.BufferUtils;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the ranges of vertex buffers sent again after
+ * {@link VertexBuffer#updateData(int, int) }.
+ */
+public class BufferUploadTest {
+
+    /**
+     * Keeps the last buffer upload of the renderer.
+     */
+    private static class FakeGL implements InvocationHandler {
+
+        String call;
+        long offset;
+        int position;
+        int remaining;
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("glBufferData")) {
+                call = name;
+                position = ((Buffer) args[1]).position();
+                remaining = ((Buffer) args[1]).remaining();
+            } else if (name.equals("glBufferSubData")) {
+                call = name;
+                offset = (Long) args[1];
+                position = ((Buffer) args[2]).position();
+                remaining = ((Buffer) args[2]).remaining();
+            }
+            return null;
+        }
+    }
+
+    private FakeGL fake;
+    private GLRenderer renderer;
+
+    @Before
+    public void setUp() {
+        fake = new FakeGL();
+        ClassLoader loader = getClass().getClassLoader();
+        GL gl = (GL) Proxy.newProxyInstance(loader, new Class<?>[]{GL.class}, fake);
+        GLExt glext = (GLExt) Proxy.newProxyInstance(loader, new Class<?>[]{GLExt.class}, fake);
+        GLFbo glfbo = (GLFbo) Proxy.newProxyInstance(loader, new Class<?>[]{GLFbo.class}, fake);
+        renderer = new GLRenderer(gl, glext, glfbo);
+    }
+
+    /**
+     * Creates a buffer as if it had already been uploaded.
+     */
+    private static VertexBuffer createUploaded(Format format, Buffer data) {
+        VertexBuffer vb = new VertexBuffer(Type.Position);
+        vb.setupData(Usage.Dynamic, 3, format, data);
+        vb.setId(1);
+        vb.clearUpdateNeeded();
+        return vb;
+    }
+
+    @Test
+    public void testFloatRange() {
+        VertexBuffer vb = createUploaded(Format.Float, BufferUtils.createFloatBuffer(4 * 3));
+        vb.updateData(1, 2);
+        renderer.updateBufferData(vb);
+        assertEquals("glBufferSubData", fake.call);
+        assertEquals(12, fake.offset);
+        assertEquals(3, fake.position);
+        assertEquals(6, fake.remaining);
+        assertFalse(vb.isUpdateNeeded());
+        assertEquals(0, vb.getData().position());
+        assertEquals(12, vb.getData().limit());
+    }
+
+    @Test
+    public void testHalfRange() {
+        // Half floats are stored in bytes, two per component
+        VertexBuffer vb = createUploaded(Format.Half, BufferUtils.createByteBuffer(4 * 3 * 2));
+        vb.updateData(1, 2);
+        renderer.updateBufferData(vb);
+        assertEquals("glBufferSubData", fake.call);
+        assertEquals(6, fake.offset);
+        assertEquals(6, fake.position);
+        assertEquals(12, fake.remaining);
+        assertEquals(24, ((ByteBuffer) vb.getData()).limit());
+    }
+
+    @Test
+    public void testWholeBufferAfterRange() {
+        VertexBuffer vb = createUploaded(Format.Float, BufferUtils.createFloatBuffer(4 * 3));
+        vb.updateData(0, 1);
+        vb.updateData((FloatBuffer) vb.getData());
+        renderer.updateBufferData(vb);
+        assertEquals("glBufferData", fake.call);
+        assertEquals(12, fake.remaining);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer.opengl;
+
+import static org.junit.Assert.*;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLoadException;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.UrlAssetInfo;
+import com.jme3.material.Material;
+import com.jme3.material.plugins.J3MLoader;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.shader.FrameUniformBlock;
+import com.jme3.shader.plugins.GLSLLoader;
+import com.jme3.system.NanoTimer;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.FloatBuffer;
+import java.net.URL;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Renders frames on a fake OpenGL implementation, and checks how many
+ * uniforms are uploaded.
+ */
+public class UniformUploadTest {
+
+    /**
+     * Answers the queries of the renderer and counts the calls,
+     * like a {@link GLTracer} would print them.
+     */
+    private static class FakeGL implements InvocationHandler {
+
+        private final String version;
+        private final String glslVersion;
+        private final Map<String, Integer> calls = new HashMap<String, Integer>();
+        private int nextId = 1;
+        private int nextAttrib = 0;
+
+        FakeGL(String version, String glslVersion) {
+            this.version = version;
+            this.glslVersion = glslVersion;
+        }
+
+        int count(String... methods) {
+            int total = 0;
+            for (String method : methods) {
+                Integer count = calls.get(method);
+                total += count != null ? count : 0;
+            }
+            return total;
+        }
+
+        int countUniforms() {
+            int total = 0;
+            for (Map.Entry<String, Integer> entry : calls.entrySet()) {
+                if (entry.getKey().startsWith("glUniform") && !entry.getKey().equals("glUniformBlockBinding")) {
+                    total += entry.getValue();
+                }
+            }
+            return total;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            Integer count = calls.get(name);
+            calls.put(name, count != null ? count + 1 : 1);
+
+            if (name.equals("glGetString")) {
+                if (args.length == 2) {
+                    return "GL_EXT_none";
+                }
+                int param = (Integer) args[0];
+                if (param == GL.GL_VERSION) {
+                    return version;
+                } else if (param == GL.GL_SHADING_LANGUAGE_VERSION) {
+                    return glslVersion;
+                }
+                return "";
+            } else if (name.equals("glGetInteger")) {
+                int param = (Integer) args[0];
+                ((IntBuffer) args[1]).put(0, param == GL3.GL_NUM_EXTENSIONS ? 0 : 16);
+            } else if (name.equals("glGetFloat")) {
+                ((FloatBuffer) args[1]).put(0, 1);
+            } else if (name.equals("glGetShader") || name.equals("glGetProgram")) {
+                int param = (Integer) args[1];
+                ((IntBuffer) args[2]).put(0, param == GL.GL_INFO_LOG_LENGTH ? 0 : GL.GL_TRUE);
+            } else if (name.startsWith("glGen")) {
+                IntBuffer ids = (IntBuffer) args[args.length - 1];
+                for (int i = ids.position(); i < ids.limit(); i++) {
+                    ids.put(i, nextId++);
+                }
+            } else if (name.equals("glGetAttribLocation")) {
+                return nextAttrib++ % 8;
+            } else if (name.equals("glCheckFramebufferStatusEXT")) {
+                return GLFbo.GL_FRAMEBUFFER_COMPLETE_EXT;
+            } else if (method.getReturnType() == int.class) {
+                // Ids, uniform and attribute locations, block indices
+                return name.equals("glGetError") || name.equals("glGetUniformBlockIndex") ? 0 : nextId++;
+            } else if (method.getReturnType() == boolean.class) {
+                return false;
+            } else if (method.getReturnType() == String.class) {
+                return "";
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Loads the assets from the class path, without a system delegate.
+     */
+    public static class ResourceLocator implements AssetLocator {
+
+        public void setRootPath(String rootPath) {
+        }
+
+        public AssetInfo locate(AssetManager manager, AssetKey key) {
+            URL url = UniformUploadTest.class.getResource("/" + key.getName());
+            if (url == null) {
+                return null;
+            }
+            try {
+                return UrlAssetInfo.create(manager, key, url);
+            } catch (IOException ex) {
+                throw new AssetLoadException("Failed to open " + url, ex);
+            }
+        }
+    }
+
+    private FakeGL fakeGL;
+    private RenderManager rm;
+    private Camera cam;
+    private Material material;
+    private Node scene;
+
+    private void setUp(String version, String glslVersion) {
+        fakeGL = new FakeGL(version, glslVersion);
+        Object gl = Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{GL.class, GL2.class, GL3.class, GL4.class, GLExt.class, GLFbo.class}, fakeGL);
+        GLRenderer renderer = new GLRenderer((GL) gl, (GLExt) gl, (GLFbo) gl);
+        renderer.initialize();
+
+        rm = new RenderManager(renderer);
+        rm.setTimer(new NanoTimer());
+        cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60f, 640f / 480f, 1f, 100f);
+        cam.setLocation(new Vector3f(0, 0, -30));
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+        ViewPort vp = rm.createMainView("Test", cam);
+
+        DesktopAssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLocator("/", ResourceLocator.class);
+        assetManager.registerLoader(J3MLoader.class, "j3md");
+        assetManager.registerLoader(GLSLLoader.class, "vert", "frag", "glsllib");
+        material = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        material.setColor("Color", ColorRGBA.Red);
+
+        scene = new Node("Scene");
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        for (int i = 0; i < 20; i++) {
+            Geometry geom = new Geometry("Box" + i, box);
+            geom.setMaterial(material);
+            geom.setLocalTranslation(i - 10, 0, 0);
+            scene.attachChild(geom);
+        }
+        scene.updateGeometricState();
+        vp.attachScene(scene);
+    }
+
+    private void renderFrame() {
+        fakeGL.calls.clear();
+        rm.render(0.016f, true);
+    }
+
+    @Test
+    public void testUnchangedUniformsAreSkipped() {
+        setUp("2.1", "1.20");
+        assertFalse(rm.getRenderer().getCaps().contains(Caps.UniformBufferObject));
+
+        renderFrame();
+        assertEquals(20, fakeGL.count("glDrawRangeElements", "glDrawElements"));
+        renderFrame();
+        assertEquals(20, fakeGL.count("glDrawRangeElements", "glDrawElements"));
+        // Only the world view projection matrix changes between draws
+        assertEquals(20, fakeGL.countUniforms());
+        assertEquals(20, fakeGL.count("glUniformMatrix4"));
+
+        // A value changed in place is still detected
+        ((ColorRGBA) material.getParam("Color").getValue()).set(0, 1, 0, 1);
+        renderFrame();
+        assertEquals(1, fakeGL.count("glUniform4f"));
+        renderFrame();
+        assertEquals(0, fakeGL.count("glUniform4f"));
+
+        // Alternating materials on the same shader upload their differences
+        Material other = material.clone();
+        other.setColor("Color", ColorRGBA.Blue);
+        for (int i = 0; i < 20; i += 2) {
+            scene.getChild(i).setMaterial(other);
+        }
+        renderFrame();
+        renderFrame();
+        int switches = fakeGL.count("glUniform4f");
+        assertTrue(switches > 0 && switches <= 20);
+    }
+
+    @Test
+    public void testFrameUniformBuffer() {
+        setUp("3.3.0", "3.30");
+        assertTrue(rm.getRenderer().getCaps().contains(Caps.UniformBufferObject));
+
+        renderFrame();
+        assertEquals(1, fakeGL.count("glUniformBlockBinding"));
+        renderFrame();
+        assertEquals(20, fakeGL.count("glDrawRangeElements", "glDrawElements"));
+        // The camera and time bindings are uploaded once in the buffer,
+        // the only uniform left is the world view projection matrix
+        assertEquals(1, fakeGL.count("glBufferData"));
+        assertEquals(1, fakeGL.count("glBindBufferBase"));
+        assertEquals(20, fakeGL.countUniforms());
+    }
+
+    @Test
+    public void testInjectBlock() {
+        String source = "uniform mat4 g_ViewMatrix;\n"
+                + "uniform mat4 g_WorldMatrix;\n"
+                + "void main() { gl_Position = g_ViewMatrix * g_WorldMatrix * vec4(1.0); }\n";
+        assertTrue(FrameUniformBlock.isCompatible(source));
+        String injected = FrameUniformBlock.injectBlock(source);
+        assertTrue(injected.startsWith("layout(std140) uniform " + FrameUniformBlock.BLOCK_NAME));
+        assertFalse(injected.contains("uniform mat4 g_ViewMatrix;"));
+        assertTrue(injected.contains("uniform mat4 g_WorldMatrix;"));
+
+        // Declared with another type, or after an extension directive
+        assertFalse(FrameUniformBlock.isCompatible("uniform vec4 g_Resolution;\nvoid main() { g_Resolution; }"));
+        assertFalse(FrameUniformBlock.isCompatible("#extension GL_ARB_foo : enable\n" + source));
+        // Not using the block at all
+        String plain = "void main() { gl_Position = vec4(1.0); }";
+        assertTrue(FrameUniformBlock.isCompatible(plain));
+        assertSame(plain, FrameUniformBlock.injectBlock(plain));
+    }
+}
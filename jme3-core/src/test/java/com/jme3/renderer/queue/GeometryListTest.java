@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer.queue;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Box;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that sorting a {@link GeometryList} by sort keys gives the same
+ * order as sorting it with the comparator.
+ */
+public class GeometryListTest {
+
+    private static class SortIdMaterial extends Material {
+
+        private final int sortId;
+
+        SortIdMaterial(int sortId) {
+            this.sortId = sortId;
+        }
+
+        @Override
+        public int getSortId() {
+            return sortId;
+        }
+    }
+
+    /**
+     * Hides the sort keys of a comparator.
+     */
+    private static class PlainComparator implements GeometryComparator {
+
+        private final GeometryComparator comparator;
+
+        PlainComparator(GeometryComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        public int compare(Geometry o1, Geometry o2) {
+            return comparator.compare(o1, o2);
+        }
+
+        public void setCamera(Camera cam) {
+            comparator.setCamera(cam);
+        }
+    }
+
+    private static Geometry[] createGeometries(int count) {
+        Random random = new Random(42);
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        Material[] materials = new Material[8];
+        for (int i = 0; i < materials.length; i++) {
+            materials[i] = new SortIdMaterial(random.nextInt(20000) - 10000);
+        }
+        Geometry[] geoms = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            Geometry geom = new Geometry("Geom" + i, box);
+            geom.setMaterial(materials[random.nextInt(materials.length)]);
+            // Use a coarse grid so that some distances are equal
+            geom.setLocalTranslation(random.nextInt(21) - 10, random.nextInt(21) - 10, random.nextInt(41) - 20);
+            geom.updateGeometricState();
+            geoms[i] = geom;
+        }
+        return geoms;
+    }
+
+    private static Geometry[] sort(Geometry[] geoms, GeometryComparator comparator, Camera cam) {
+        GeometryList list = new GeometryList(comparator);
+        list.setCamera(cam);
+        for (Geometry geom : geoms) {
+            geom.queueDistance = Float.NEGATIVE_INFINITY;
+            list.add(geom);
+        }
+        list.sort();
+        Geometry[] result = new Geometry[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static void checkSameOrder(GeometryComparator keyed, GeometryComparator plain) {
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(45f, 640f / 480f, 1f, 1000f);
+        cam.setLocation(new Vector3f(0, 0, -30));
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+
+        Geometry[] geoms = createGeometries(3000);
+        assertArrayEquals(sort(geoms, plain, cam), sort(geoms, keyed, cam));
+    }
+
+    @Test
+    public void testBuiltInComparators() {
+        checkSameOrder(new OpaqueComparator(), new PlainComparator(new OpaqueComparator()));
+        checkSameOrder(new TransparentComparator(), new PlainComparator(new TransparentComparator()));
+        checkSameOrder(new GuiComparator(), new PlainComparator(new GuiComparator()));
+        checkSameOrder(new NullComparator(), new PlainComparator(new NullComparator()));
+    }
+
+    @Test
+    public void testOverriddenCompare() {
+        // Overriding compare() alone must not use the inherited sort keys
+        GuiComparator reversed = new GuiComparator() {
+            @Override
+            public int compare(Geometry o1, Geometry o2) {
+                return super.compare(o2, o1);
+            }
+        };
+        checkSameOrder(reversed, new PlainComparator(reversed));
+    }
+
+    @Test
+    public void testFloatToSortKey() {
+        float[] values = {Float.NEGATIVE_INFINITY, -1e30f, -2f, -1f, -Float.MIN_VALUE,
+                          0f, Float.MIN_VALUE, 1f, 2f, 1e30f, Float.POSITIVE_INFINITY};
+        for (int i = 1; i < values.length; i++) {
+            long a = GeometryList.floatToSortKey(values[i - 1]);
+            long b = GeometryList.floatToSortKey(values[i]);
+            assertTrue(a < b);
+        }
+        assertEquals(GeometryList.floatToSortKey(0f), GeometryList.floatToSortKey(-0f));
+    }
+}
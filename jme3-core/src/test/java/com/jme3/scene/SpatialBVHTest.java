@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.scene;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.collision.CollisionResults;
+import com.jme3.material.Material;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.NullComparator;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.shape.Box;
+import com.jme3.system.NullRenderer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that culling and collisions give the same results with a
+ * {@link SpatialBVH} as without it.
+ */
+public class SpatialBVHTest {
+
+    private Random random;
+    private Node scene;
+    private Camera cam;
+
+    /**
+     * Records the geometries instead of rendering them.
+     */
+    private static class RecordingRenderManager extends RenderManager {
+
+        private final List<Geometry> rendered = new ArrayList<Geometry>();
+
+        RecordingRenderManager() {
+            super(new NullRenderer());
+        }
+
+        @Override
+        public void renderGeometry(Geometry g) {
+            rendered.add(g);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        random = new Random(11);
+        Material material = new Material();
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        scene = new Node("Level");
+        for (int i = 0; i < 2000; i++) {
+            Geometry geom = new Geometry("Geom" + i, box);
+            geom.setMaterial(material);
+            geom.setLocalTranslation(random.nextFloat() * 400 - 200, random.nextFloat() * 20, random.nextFloat() * 400 - 200);
+            if (i % 10 == 0) {
+                geom.setModelBound(new BoundingSphere());
+                geom.updateModelBound();
+            }
+            scene.attachChild(geom);
+        }
+        // A node without bound and a child that is never culled
+        scene.attachChild(new Node("Empty"));
+        Geometry never = new Geometry("Never", box);
+        never.setMaterial(material);
+        never.setLocalTranslation(0, 0, -500);
+        never.setCullHint(CullHint.Never);
+        scene.attachChild(never);
+        scene.updateGeometricState();
+
+        cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60f, 640f / 480f, 1f, 150f);
+        cam.setLocation(new Vector3f(0, 10, -100));
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+    }
+
+    private List<Geometry> cull() {
+        RecordingRenderManager rm = new RecordingRenderManager();
+        ViewPort vp = new ViewPort("Test", cam);
+        vp.getQueue().setGeometryComparator(Bucket.Opaque, new NullComparator());
+        rm.renderScene(scene, vp);
+        vp.getQueue().renderQueue(Bucket.Opaque, rm, cam);
+        return rm.rendered;
+    }
+
+    private void checkCulling() {
+        scene.setBVHEnabled(false);
+        List<Geometry> expected = cull();
+        scene.setBVHEnabled(true);
+        scene.updateGeometricState();
+        assertNotNull(scene.getBVH());
+        assertEquals(expected, cull());
+        assertTrue(expected.size() > 0 && expected.size() < 1000);
+    }
+
+    @Test
+    public void testCulling() {
+        checkCulling();
+
+        // Move some children, then the whole scene
+        scene.setBVHEnabled(true);
+        for (int i = 0; i < 50; i++) {
+            scene.getChild(random.nextInt(2000)).move(random.nextFloat() * 100 - 50, 0, random.nextFloat() * 100 - 50);
+        }
+        scene.updateGeometricState();
+        checkCulling();
+        scene.move(10, 0, 30);
+        scene.updateGeometricState();
+        checkCulling();
+
+        // Children stop being culled when their cull hint changes
+        scene.updateGeometricState();
+        Spatial child = scene.getChild(3);
+        child.setLocalTranslation(0, 0, -400);
+        scene.updateGeometricState();
+        assertFalse(cull().contains(child));
+        child.setCullHint(CullHint.Never);
+        assertTrue(cull().contains(child));
+        child.setCullHint(CullHint.Dynamic);
+        checkCulling();
+    }
+
+    @Test
+    public void testChildrenChanged() {
+        scene.setBVHEnabled(true);
+        assertNull(scene.getBVH());
+        scene.updateGeometricState();
+        assertNotNull(scene.getBVH());
+
+        scene.detachChildAt(5);
+        assertNull(scene.getBVH());
+        scene.updateGeometricState();
+        checkCulling();
+
+        scene.swapChildren(1, 1500);
+        scene.updateGeometricState();
+        checkCulling();
+
+        Node clone = scene.clone(false);
+        assertTrue(clone.isBVHEnabled());
+        assertNotSame(scene.getBVH(), clone.getBVH());
+    }
+
+    @Test
+    public void testRebuild() {
+        scene.setBVHEnabled(true);
+        scene.updateGeometricState();
+        SpatialBVH bvh = scene.getBVH();
+        int nodes = bvh.getNodeCount();
+        assertTrue(nodes > 500 && nodes < 2 * 2002);
+
+        // Scatter all children a few times, the hierarchy is rebuilt
+        for (int k = 0; k < 5; k++) {
+            for (int i = 0; i < 2000; i++) {
+                scene.getChild(i).setLocalTranslation(random.nextFloat() * 400 - 200, random.nextFloat() * 20, random.nextFloat() * 400 - 200);
+            }
+            scene.updateGeometricState();
+            checkCulling();
+        }
+    }
+
+    private List<Geometry> cullGui(Node guiNode, int threads) {
+        Camera guiCam = new Camera(640, 480);
+        RecordingRenderManager rm = new RecordingRenderManager();
+        rm.setCullingThreads(threads);
+        ViewPort vp = new ViewPort("Gui", guiCam);
+        vp.getQueue().setGeometryComparator(Bucket.Gui, new NullComparator());
+        rm.renderScene(guiNode, vp);
+        vp.getQueue().renderQueue(Bucket.Gui, rm, guiCam);
+        return rm.rendered;
+    }
+
+    @Test
+    public void testGuiNode() {
+        // GUI elements are culled against the screen, not the frustum
+        Material material = new Material();
+        Box box = new Box(5, 5, 0);
+        Node guiNode = new Node("Gui");
+        guiNode.setQueueBucket(Bucket.Gui);
+        guiNode.setCullHint(CullHint.Dynamic);
+        for (int i = 0; i < 200; i++) {
+            Geometry geom = new Geometry("Gui" + i, box);
+            geom.setMaterial(material);
+            geom.setLocalTranslation(random.nextFloat() * 800 - 80, random.nextFloat() * 600 - 60, 0);
+            guiNode.attachChild(geom);
+        }
+        guiNode.updateGeometricState();
+        List<Geometry> expected = cullGui(guiNode, 1);
+        assertTrue(expected.size() > 100 && expected.size() < 200);
+
+        guiNode.setBVHEnabled(true);
+        guiNode.updateGeometricState();
+        assertNotNull(guiNode.getBVH());
+        assertEquals(expected, cullGui(guiNode, 1));
+        assertEquals(expected, cullGui(guiNode, 4));
+    }
+
+    private CollisionResults collide(com.jme3.collision.Collidable other, boolean useBVH) {
+        scene.setBVHEnabled(useBVH);
+        scene.updateGeometricState();
+        CollisionResults results = new CollisionResults();
+        scene.collideWith(other, results);
+        return results;
+    }
+
+    @Test
+    public void testCollisions() {
+        for (int i = 0; i < 50; i++) {
+            Vector3f origin = new Vector3f(random.nextFloat() * 400 - 200, 10, -250);
+            Vector3f target = new Vector3f(random.nextFloat() * 400 - 200, random.nextFloat() * 20, 0);
+            Ray ray = new Ray(origin, target.subtractLocal(origin).normalizeLocal());
+            CollisionResults expected = collide(ray, false);
+            CollisionResults actual = collide(ray, true);
+            assertEquals(expected.size(), actual.size());
+            if (expected.size() > 0) {
+                assertSame(expected.getClosestCollision().getGeometry(), actual.getClosestCollision().getGeometry());
+                assertEquals(expected.getClosestCollision().getDistance(), actual.getClosestCollision().getDistance(), 0);
+            }
+        }
+
+        BoundingBox bound = new BoundingBox(new Vector3f(20, 10, 20), 30, 10, 30);
+        CollisionResults expected = collide(bound, false);
+        CollisionResults actual = collide(bound, true);
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.scene.instancing;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.shape.Box;
+import com.jme3.shader.VarType;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Updates the instance data of an {@link InstancedNode} the way it is
+ * rendered, without a renderer.
+ */
+public class InstancedNodeTest {
+
+    private Mesh mesh;
+    private Material material;
+    private InstancedNode node;
+    private Geometry[] geometries;
+    private ViewPort vp;
+
+    @Before
+    public void setUp() {
+        mesh = new Box(0.5f, 0.5f, 0.5f);
+        MaterialDef def = new MaterialDef(null, "Instanced");
+        def.addMaterialParam(VarType.Boolean, "UseInstancing", null);
+        material = new Material(def);
+        material.setBoolean("UseInstancing", true);
+
+        // A row of instances going away from the camera, half of them
+        // on the left outside of the frustum
+        node = new InstancedNode("Instances");
+        geometries = new Geometry[100];
+        for (int i = 0; i < geometries.length; i++) {
+            geometries[i] = new Geometry("Instance" + i, mesh);
+            geometries[i].setMaterial(material);
+            geometries[i].setLocalTranslation(i % 2 == 0 ? 0 : -1000, 0, i + 2);
+            node.attachChild(geometries[i]);
+        }
+        node.instance();
+        node.updateGeometricState();
+
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60f, 640f / 480f, 1f, 2000f);
+        cam.setLocation(Vector3f.ZERO);
+        cam.lookAtDirection(Vector3f.UNIT_Z, Vector3f.UNIT_Y);
+        cam.update();
+        vp = new ViewPort("Test", cam);
+    }
+
+    private List<InstancedGeometry> getInstancedGeometries() {
+        List<InstancedGeometry> list = new ArrayList<InstancedGeometry>();
+        for (Spatial child : node.getChildren()) {
+            if (child instanceof InstancedGeometry) {
+                list.add((InstancedGeometry) child);
+            }
+        }
+        return list;
+    }
+
+    private void render() {
+        node.updateGeometricState();
+        vp.getCamera().setPlaneState(0);
+        node.runControlRender(null, vp);
+    }
+
+    @Test
+    public void testPartialUpdates() {
+        List<InstancedGeometry> igs = getInstancedGeometries();
+        assertEquals(1, igs.size());
+        InstancedGeometry ig = igs.get(0);
+        VertexBuffer vb = ig.getTransformUserInstanceData();
+
+        render();
+        assertEquals(100, ig.getNumVisibleInstances());
+        assertTrue(vb.isUpdateNeeded());
+        assertEquals(-1, vb.getUpdateEnd());
+        // as uploaded by the renderer
+        vb.clearUpdateNeeded();
+
+        render();
+        assertFalse(vb.isUpdateNeeded());
+
+        geometries[10].move(0, 1, 0);
+        render();
+        assertTrue(vb.isUpdateNeeded());
+        assertEquals(10, vb.getUpdateStart());
+        assertEquals(11, vb.getUpdateEnd());
+        FloatBuffer data = (FloatBuffer) vb.getData();
+        assertEquals(1f, data.get(10 * 16 + 13), 0f);
+        assertEquals(data.capacity(), data.limit());
+
+        // Ranges are merged until uploaded
+        geometries[20].move(0, 1, 0);
+        render();
+        assertEquals(10, vb.getUpdateStart());
+        assertEquals(21, vb.getUpdateEnd());
+        vb.clearUpdateNeeded();
+
+        // Removed instances are replaced by the last one
+        node.detachChild(geometries[50]);
+        render();
+        assertEquals(99, ig.getNumVisibleInstances());
+        assertEquals(50, vb.getUpdateStart());
+        assertEquals(51, vb.getUpdateEnd());
+        assertEquals(geometries[99].getWorldTranslation().z, data.get(50 * 16 + 14), 0f);
+
+        // A full update is not reduced to a range
+        vb.updateData(vb.getData());
+        vb.updateData(0, 1);
+        assertEquals(-1, vb.getUpdateEnd());
+    }
+
+    @Test
+    public void testInstanceCulling() {
+        InstancedGeometry ig = getInstancedGeometries().get(0);
+        render();
+        assertEquals(100, ig.getNumVisibleInstances());
+
+        node.setInstanceCulling(true);
+        assertTrue(node.isInstanceCulling());
+        render();
+        assertEquals(50, ig.getNumVisibleInstances());
+        FloatBuffer data = (FloatBuffer) ig.getTransformUserInstanceData().getData();
+        for (int i = 0; i < 50; i++) {
+            // only the instances in front of the camera are packed
+            assertEquals(0f, data.get(i * 16 + 12), 0f);
+        }
+
+        geometries[0].setCullHint(CullHint.Always);
+        render();
+        assertEquals(49, ig.getNumVisibleInstances());
+    }
+
+    @Test
+    public void testLodDistances() {
+        VertexBuffer indices = mesh.getBuffer(VertexBuffer.Type.Index);
+        mesh.setLodLevels(new VertexBuffer[]{ indices, indices.clone(), indices.clone() });
+
+        node.setLodDistances(20f, 60f, 100f);
+        List<InstancedGeometry> igs = getInstancedGeometries();
+        // the mesh only has 3 levels
+        assertEquals(3, igs.size());
+        InstancedGeometry ig = igs.get(0);
+        assertEquals(0, ig.getLodLevel());
+        assertEquals(1, igs.get(1).getLodLevel());
+        assertEquals(2, igs.get(2).getLodLevel());
+
+        render();
+        assertEquals(100, ig.getActualNumInstances());
+        int visible = 0;
+        for (InstancedGeometry lod : igs) {
+            visible += lod.getNumVisibleInstances();
+        }
+        assertEquals(100, visible);
+        // z from 2 to 101, plus the instances at x = -1000
+        assertEquals(9, ig.getNumVisibleInstances());
+        assertEquals(20, igs.get(1).getNumVisibleInstances());
+        assertEquals(71, igs.get(2).getNumVisibleInstances());
+
+        node.setLodDistances(null);
+        assertEquals(1, getInstancedGeometries().size());
+        render();
+        assertEquals(100, ig.getNumVisibleInstances());
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.shader;
+
+import static org.junit.Assert.*;
+
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.material.MatParam;
+import com.jme3.material.TechniqueDef;
+import com.jme3.util.ListMap;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DefineList} with the define layout of a {@link TechniqueDef}.
+ */
+public class DefineListTest {
+
+    private TechniqueDef def;
+
+    @Before
+    public void setUp() {
+        def = new TechniqueDef("Test");
+        def.addShaderParamDefine("UseFoo", VarType.Boolean, "USE_FOO");
+        def.addShaderParamDefine("Count", VarType.Int, "COUNT");
+        def.addShaderParamDefine("Alpha", VarType.Float, "ALPHA");
+        def.addShaderParamDefine("ColorMap", VarType.Texture2D, "COLOR_MAP");
+        def.addShaderPresetDefine("PRESET", VarType.Boolean, true);
+    }
+
+    @Test
+    public void testSetAndCompile() {
+        DefineList list = def.createDefineList();
+        int useFoo = def.getShaderParamDefineId("UseFoo");
+        int count = def.getShaderParamDefineId("Count");
+        int alpha = def.getShaderParamDefineId("Alpha");
+        assertEquals(-1, def.getShaderParamDefineId("Missing"));
+        assertEquals("COUNT", def.getShaderParamDefine("Count"));
+
+        assertTrue(list.set(useFoo, VarType.Boolean, true));
+        assertFalse(list.set(useFoo, VarType.Boolean, true));
+        assertTrue(list.set(count, VarType.Int, 4));
+        assertFalse(list.set(count, VarType.Int, 4));
+        assertTrue(list.set(alpha, VarType.Float, 0.5f));
+        assertEquals("#define USE_FOO 1\n#define COUNT 4\n#define ALPHA 0.5\n", list.getCompiled());
+        assertEquals("4", list.get("COUNT"));
+
+        assertTrue(list.set(useFoo, VarType.Boolean, false));
+        assertFalse(list.isSet(useFoo));
+        assertTrue(list.set(count, VarType.Int, null));
+        assertEquals("#define ALPHA 0.5\n", list.getCompiled());
+    }
+
+    @Test
+    public void testEqualsAndHash() {
+        int count = def.getShaderParamDefineId("Count");
+        DefineList a = def.createDefineList();
+        DefineList b = def.createDefineList();
+        a.set(count, VarType.Int, 3);
+        b.set(count, VarType.Int, 2);
+        assertFalse(a.equals(b));
+
+        b.set(count, VarType.Int, 3);
+        assertEquals(a, b);
+        assertEquals(a.getHash(), b.getHash());
+        assertEquals(a.hashCode(), b.hashCode());
+
+        DefineList clone = a.clone();
+        clone.set(count, VarType.Int, 5);
+        assertEquals(3, a.getInt(count));
+        assertFalse(a.equals(clone));
+
+        // Lists of different techniques are compared by name
+        TechniqueDef other = new TechniqueDef("Other");
+        other.addShaderParamDefine("Alpha", VarType.Float, "ALPHA");
+        other.addShaderParamDefine("Count", VarType.Int, "COUNT");
+        DefineList c = other.createDefineList();
+        c.set(other.getShaderParamDefineId("Count"), VarType.Int, 3);
+        assertEquals(a, c);
+        assertEquals(c, a);
+        assertEquals(a.getHash(), c.getHash());
+        c.set(other.getShaderParamDefineId("Alpha"), VarType.Float, 0.5f);
+        assertFalse(a.equals(c));
+        a.set(def.getShaderParamDefineId("Alpha"), VarType.Float, 0.5f);
+        assertEquals(a, c);
+        assertEquals(a.hashCode(), c.hashCode());
+        c.set(other.getShaderParamDefineId("Count"), VarType.Int, 4);
+        assertFalse(c.equals(a));
+    }
+
+    @Test
+    public void testShaderCache() {
+        DefineList defines = def.createDefineList();
+        defines.set(def.getShaderParamDefineId("Count"), VarType.Int, 3);
+        Shader shader = new Shader();
+        def.cacheShader(defines, shader);
+        DefineList same = def.createDefineList();
+        same.set(def.getShaderParamDefineId("Count"), VarType.Int, 3);
+        assertSame(shader, def.getCachedShader(same));
+
+        // Clearing the asset caches also clears the shader caches
+        TechniqueDef.clearShaderCaches();
+        assertNull(def.getCachedShader(same));
+    }
+
+    @Test
+    public void testUpdateFromParams() {
+        DefineList list = def.createDefineList();
+        ListMap<String, MatParam> params = new ListMap<String, MatParam>();
+        params.put("UseFoo", new MatParam(VarType.Boolean, "UseFoo", true));
+        params.put("Count", new MatParam(VarType.Int, "Count", 2));
+        params.put("Other", new MatParam(VarType.Float, "Other", 1f));
+        assertTrue(list.update(params, def));
+        assertFalse(list.update(params, def));
+        assertEquals("#define USE_FOO 1\n#define COUNT 2\n", list.getCompiled());
+
+        params.remove("Count");
+        assertTrue(list.update(params, def));
+        assertEquals("#define USE_FOO 1\n", list.getCompiled());
+
+        // Preset defines are merged in the same layout
+        DefineList all = def.createDefineList();
+        all.addFrom(def.getShaderPresetDefines());
+        all.addFrom(list);
+        assertEquals("#define USE_FOO 1\n#define PRESET 1\n", all.getCompiled());
+    }
+
+    @Test
+    public void testManyDefines() {
+        TechniqueDef big = new TechniqueDef("Big");
+        for (int i = 0; i < 150; i++) {
+            big.addShaderParamDefine("Param" + i, VarType.Int, "DEFINE_" + i);
+        }
+        DefineList list = big.createDefineList();
+        ListMap<String, MatParam> params = new ListMap<String, MatParam>();
+        params.put("Param3", new MatParam(VarType.Int, "Param3", 3));
+        params.put("Param70", new MatParam(VarType.Int, "Param70", 70));
+        params.put("Param140", new MatParam(VarType.Int, "Param140", 140));
+        assertTrue(list.update(params, big));
+        assertEquals("#define DEFINE_3 3\n#define DEFINE_70 70\n#define DEFINE_140 140\n", list.getCompiled());
+
+        DefineList same = big.createDefineList();
+        same.set(big.getShaderParamDefineId("Param140"), VarType.Int, 140);
+        same.set(big.getShaderParamDefineId("Param70"), VarType.Int, 70);
+        assertFalse(list.equals(same));
+        same.set(big.getShaderParamDefineId("Param3"), VarType.Int, 3);
+        assertEquals(list, same);
+        assertEquals(list.getHash(), same.getHash());
+
+        params.remove("Param70");
+        assertTrue(list.update(params, big));
+        assertEquals("#define DEFINE_3 3\n#define DEFINE_140 140\n", list.getCompiled());
+        assertEquals(70, same.clone().getInt(big.getShaderParamDefineId("Param70")));
+
+        // A list created before the layout grew can set the new defines
+        int id = big.addShaderUnmappedDefine("LATE", VarType.Int);
+        assertEquals(150, id);
+        assertTrue(list.set(id, VarType.Int, 5));
+        assertEquals(5, list.getInt(id));
+    }
+
+    @Test
+    public void testPresetDefinesLayout() {
+        TechniqueDef loaded = BinaryExporter.saveAndLoad(null, def);
+        int size = loaded.getDefineNames().size();
+        assertTrue(loaded.getDefineNames().contains("PRESET"));
+
+        // Merging the preset defines while rendering does not grow the layout
+        DefineList all = loaded.createDefineList();
+        all.addFrom(loaded.getShaderPresetDefines());
+        assertEquals(size, loaded.getDefineNames().size());
+        assertEquals("#define PRESET 1\n", all.getCompiled());
+    }
+
+    @Test
+    public void testNamedDefines() {
+        DefineList list = new DefineList();
+        assertTrue(list.set("B", VarType.Int, 1));
+        assertTrue(list.set("A", VarType.Boolean, true));
+        assertTrue(list.remove("B"));
+        assertFalse(list.remove("C"));
+        assertEquals("1", list.get("A"));
+        assertNull(list.get("B"));
+
+        // Copying across layouts goes by name
+        DefineList all = def.createDefineList();
+        all.addFrom(list);
+        assertTrue(all.isSet(all.getDefineId("A")));
+        assertEquals("#define A 1\n", all.getCompiled());
+    }
+}
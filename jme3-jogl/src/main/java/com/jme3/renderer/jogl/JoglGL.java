@@ -10,6 +10,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
 import com.jme3.renderer.opengl.GL4;
@@ -574,6 +575,11 @@ public class JoglGL implements GL, GL2, GL3, GL4 {
 		return new String(bytes);
     }
 
+    @Override
+	public void glBindBufferBase(int target, int index, int buffer) {
+        GLContext.getCurrentGL().getGL2ES3().glBindBufferBase(target, index, buffer);
+    }
+
     @Override
 	public void glBindFragDataLocation(int param1, int param2, String param3) {
         GLContext.getCurrentGL().getGL2GL3().glBindFragDataLocation(param1, param2, param3);
@@ -590,6 +596,47 @@ public class JoglGL implements GL, GL2, GL3, GL4 {
         GLContext.getCurrentGL().getGL2ES3().glGenVertexArrays(param1.limit(), param1);
     }
 
+    @Override
+	public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        return GLContext.getCurrentGL().getGL2ES3().glGetUniformBlockIndex(program, uniformBlockName);
+    }
+
+    @Override
+	public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding) {
+        GLContext.getCurrentGL().getGL2ES3().glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+    }
+
+    @Override
+	public void glGenQueries(IntBuffer ids) {
+        checkLimit(ids);
+        GLContext.getCurrentGL().getGL2ES2().glGenQueries(ids.limit(), ids);
+    }
+
+    @Override
+	public void glDeleteQueries(IntBuffer ids) {
+        checkLimit(ids);
+        GLContext.getCurrentGL().getGL2ES2().glDeleteQueries(ids.limit(), ids);
+    }
+
+    @Override
+	public void glQueryCounter(int query, int target) {
+        GLContext.getCurrentGL().getGL2GL3().glQueryCounter(query, target);
+    }
+
+    @Override
+	public int glGetQueryObjectiv(int query, int pname) {
+        IntBuffer tmp = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        GLContext.getCurrentGL().getGL2GL3().glGetQueryObjectiv(query, pname, tmp);
+        return tmp.get(0);
+    }
+
+    @Override
+	public long glGetQueryObjectui64(int query, int pname) {
+        LongBuffer tmp = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        GLContext.getCurrentGL().getGL2GL3().glGetQueryObjectui64v(query, pname, tmp);
+        return tmp.get(0);
+    }
+
     @Override
 	public void glPatchParameter(int count) {
         GLContext.getCurrentGL().getGL3().glPatchParameteri(com.jogamp.opengl.GL3.GL_PATCH_VERTICES, count);
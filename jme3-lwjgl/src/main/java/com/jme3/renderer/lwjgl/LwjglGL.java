@@ -431,6 +431,11 @@ public final class LwjglGL implements GL, GL2, GL3, GL4 {
         return GL20.glGetShaderInfoLog(shader, maxSize);
     }
 
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer) {
+        GL30.glBindBufferBase(target, index, buffer);
+    }
+
     @Override
     public void glBindFragDataLocation(int param1, int param2, String param3) {
         GL30.glBindFragDataLocation(param1, param2, param3);
@@ -447,6 +452,43 @@ public final class LwjglGL implements GL, GL2, GL3, GL4 {
         GL30.glGenVertexArrays(param1);
     }
 
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        return GL31.glGetUniformBlockIndex(program, uniformBlockName);
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding) {
+        GL31.glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+    }
+
+    @Override
+    public void glGenQueries(IntBuffer ids) {
+        checkLimit(ids);
+        GL15.glGenQueries(ids);
+    }
+
+    @Override
+    public void glDeleteQueries(IntBuffer ids) {
+        checkLimit(ids);
+        GL15.glDeleteQueries(ids);
+    }
+
+    @Override
+    public void glQueryCounter(int query, int target) {
+        GL33.glQueryCounter(query, target);
+    }
+
+    @Override
+    public int glGetQueryObjectiv(int query, int pname) {
+        return GL15.glGetQueryObjecti(query, pname);
+    }
+
+    @Override
+    public long glGetQueryObjectui64(int query, int pname) {
+        return GL33.glGetQueryObjectui64(query, pname);
+    }
+
     @Override
     public void glPatchParameter(int count) {
         GL40.glPatchParameteri(GL40.GL_PATCH_VERTICES,count);
@@ -32,8 +32,11 @@
 package com.jme3.network.base;
 
 import com.jme3.network.*;
+import com.jme3.network.kernel.AbstractKernel;
 import com.jme3.network.kernel.Endpoint;
 import com.jme3.network.kernel.Kernel;
+import com.jme3.network.kernel.SharedBuffer;
+import com.jme3.network.kernel.SharedBufferPool;
 import com.jme3.network.message.ChannelInfoMessage;
 import com.jme3.network.message.ClientRegistrationMessage;
 import com.jme3.network.message.DisconnectMessage;
@@ -75,6 +78,7 @@ public class DefaultServer implements Server
     private final List<KernelAdapter> channels = new ArrayList<KernelAdapter>();
     private final List<Integer> alternatePorts = new ArrayList<Integer>();
     private final Redispatch dispatcher = new Redispatch();
+    private final SharedBufferPool bufferPool = new SharedBufferPool();
     private final Map<Integer,HostedConnection> connections = new ConcurrentHashMap<Integer,HostedConnection>();
     private final Map<Endpoint,HostedConnection> endpointConnections 
                             = new ConcurrentHashMap<Endpoint,HostedConnection>();
@@ -238,17 +242,21 @@ public class DefaultServer implements Server
         if( connections.isEmpty() )
             return;
  
-        ByteBuffer buffer = MessageProtocol.messageToBuffer(message, null);
+        // Serialize once into a pooled buffer that every endpoint
+        // shares, each one releases its reference once it is sent
+        SharedBuffer buffer = MessageProtocol.messageToSharedBuffer(message, bufferPool);
  
         FilterAdapter adapter = filter == null ? null : new FilterAdapter(filter);
-               
-        if( message.isReliable() || fastAdapter == null ) {
-            // Don't need to copy the data because message protocol is already
-            // giving us a fresh buffer
-            reliableAdapter.broadcast( adapter, buffer, true, false );
-        } else {
-            fastAdapter.broadcast( adapter, buffer, false, false );
-        }               
+ 
+        try {
+            if( message.isReliable() || fastAdapter == null ) {
+                reliableAdapter.broadcast( adapter, buffer, true );
+            } else {
+                fastAdapter.broadcast( adapter, buffer, false );
+            }
+        } finally {
+            buffer.release();
+        }
     }
 
     @Override
@@ -263,11 +271,46 @@ public class DefaultServer implements Server
 
         checkChannel(channel);
         
-        ByteBuffer buffer = MessageProtocol.messageToBuffer(message, null);
+        SharedBuffer buffer = MessageProtocol.messageToSharedBuffer(message, bufferPool);
  
         FilterAdapter adapter = filter == null ? null : new FilterAdapter(filter);
 
-        channels.get(channel+CH_FIRST).broadcast( adapter, buffer, true, false );               
+        try {
+            channels.get(channel+CH_FIRST).broadcast( adapter, buffer, true );
+        } finally {
+            buffer.release();
+        }
+    }
+ 
+    /**
+     *  Returns the total number of outbound bytes that the kernels
+     *  have had to copy before sending.  Broadcasts through this server
+     *  share one buffer across all connections and do not add to it.
+     */
+    public long getBytesCopied()
+    {
+        long total = 0;
+        for( KernelAdapter ka : channels ) {
+            if( ka.getKernel() instanceof AbstractKernel ) {
+                total += ((AbstractKernel)ka.getKernel()).getBytesCopied();
+            }
+        }
+        return total;
+    }
+ 
+    /**
+     *  Returns the total number of bytes written to the network by
+     *  the kernels of this server.
+     */
+    public long getBytesSent()
+    {
+        long total = 0;
+        for( KernelAdapter ka : channels ) {
+            if( ka.getKernel() instanceof AbstractKernel ) {
+                total += ((AbstractKernel)ka.getKernel()).getBytesSent();
+            }
+        }
+        return total;
     }
 
     @Override
@@ -38,7 +38,9 @@ import com.jme3.network.MessageListener;
 import com.jme3.network.kernel.Endpoint;
 import com.jme3.network.kernel.EndpointEvent;
 import com.jme3.network.kernel.Envelope;
+import com.jme3.network.kernel.AbstractKernel;
 import com.jme3.network.kernel.Kernel;
+import com.jme3.network.kernel.SharedBuffer;
 import com.jme3.network.message.ClientRegistrationMessage;
 import java.nio.ByteBuffer;
 import java.util.Map;
@@ -106,6 +108,20 @@ public class KernelAdapter extends Thread
         kernel.broadcast( filter, data, reliable, copy );
     }                           
  
+    /**
+     *  Broadcasts a shared buffer to the matching endpoints.  Kernels
+     *  that support it queue the same buffer on every endpoint, others
+     *  are handed a copy.  The caller keeps its own reference to data.
+     */
+    public void broadcast( Filter<? super Endpoint> filter, SharedBuffer data, boolean reliable )
+    {
+        if( kernel instanceof AbstractKernel ) {
+            ((AbstractKernel)kernel).broadcast( filter, data, reliable );
+        } else {
+            kernel.broadcast( filter, data.duplicate(), reliable, true );
+        }
+    }
+ 
     public void close() throws InterruptedException
     {
         go.set(false);
@@ -32,6 +32,8 @@
 package com.jme3.network.base;
 
 import com.jme3.network.Message;
+import com.jme3.network.kernel.SharedBuffer;
+import com.jme3.network.kernel.SharedBufferPool;
 import com.jme3.network.serializing.Serializer;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -48,26 +50,87 @@ import java.util.LinkedList;
  *  where two bytes represent the (short) length of the data
  *  and the rest is the raw data for the Serializers class.</p>
  *
+ *  <p>Outbound messages are serialized into a per-thread scratch
+ *  buffer and only the framed bytes are copied out, so a send costs
+ *  one right-sized allocation instead of a full 32k buffer.  Inbound
+ *  messages that arrive whole are deserialized straight out of the
+ *  supplied buffer.  Only messages split across reads are accumulated,
+ *  and then into a buffer that is reused for the life of the
+ *  protocol instance.</p>
+ *
  *  @version   $Revision$
  *  @author    Paul Speed
  */
 public class MessageProtocol
 {
+    /**
+     *  The largest framed message: the short length plus the
+     *  maximum data size it can represent.
+     */
+    public static final int MAX_FRAME_SIZE = 32767 + 2;
+ 
+    private static final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+            @Override
+            protected ByteBuffer initialValue()
+            {
+                return ByteBuffer.allocate(MAX_FRAME_SIZE);
+            }
+        };
+ 
     private final LinkedList<Message> messages = new LinkedList<Message>();
     private ByteBuffer current;
+    private ByteBuffer partial;
     private int size;
     private Byte carry;
  
     /**
      *  Converts a message to a ByteBuffer using the Serializer
      *  and the (short length) + data protocol.  If target is null
-     *  then a 32k byte buffer will be created and filled.
+     *  then the message is serialized into a reusable per-thread
+     *  buffer and a new buffer holding exactly the framed bytes
+     *  is returned.
      */
     public static ByteBuffer messageToBuffer( Message message, ByteBuffer target )
     {
-        // Could let the caller pass their own in       
-        ByteBuffer buffer = target == null ? ByteBuffer.allocate( 32767 + 2 ) : target;
-        
+        if( target == null ) {
+            ByteBuffer buffer = scratch.get();
+            buffer.clear();
+            writeFrame(message, buffer);
+ 
+            // Copy just the framed message out of the shared
+            // scratch space so that the caller owns the result            
+            ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+            result.put(buffer);
+            result.flip();
+            return result;
+        }
+ 
+        writeFrame(message, target);
+        return target;
+    }
+ 
+    /**
+     *  Converts a message to a framed SharedBuffer taken from the
+     *  specified pool.  The message is serialized once into the per-thread
+     *  scratch buffer and copied into a pooled buffer of exactly the
+     *  framed size.  The caller owns the single reference of the
+     *  returned buffer and must release it when done.
+     */
+    public static SharedBuffer messageToSharedBuffer( Message message, SharedBufferPool pool )
+    {
+        ByteBuffer buffer = scratch.get();
+        buffer.clear();
+        writeFrame(message, buffer);
+ 
+        SharedBuffer result = pool.acquire(buffer.remaining());
+        ByteBuffer data = result.getData();
+        data.put(buffer);
+        data.flip();
+        return result;
+    }
+ 
+    private static void writeFrame( Message message, ByteBuffer buffer )
+    {
         try {
             buffer.position( 2 );
             Serializer.writeClassAndObject( buffer, message );
@@ -75,8 +138,6 @@ public class MessageProtocol
             short dataLength = (short)(buffer.remaining() - 2);
             buffer.putShort( dataLength );
             buffer.position( 0 );
-            
-            return buffer;
         } catch( IOException e ) {
             throw new RuntimeException( "Error serializing message", e );
         }
@@ -136,9 +197,27 @@ public class MessageProtocol
                     size = buffer.getShort();
                 }               
  
-                // Allocate the buffer into which we'll feed the
-                // data as we get it               
-                current = ByteBuffer.allocate(size);
+                // If the whole message is already in the buffer then
+                // there is no need to copy it anywhere, just read it
+                // in place.
+                if( size <= buffer.remaining() ) {
+                    int end = buffer.position() + size;
+                    int limit = buffer.limit();
+                    buffer.limit(end);
+                    createMessage( buffer.slice() );
+                    buffer.limit(limit);
+                    buffer.position(end);
+                    continue;
+                }
+ 
+                // Otherwise feed the data into the reusable partial
+                // buffer as we get it
+                if( partial == null || partial.capacity() < size ) {
+                    partial = ByteBuffer.allocate(Math.max(size, 1024));
+                }
+                partial.clear();
+                partial.limit(size);
+                current = partial;
             } 
 
             if( current.remaining() <= buffer.remaining() ) {
@@ -31,6 +31,7 @@
  */
 package com.jme3.network.kernel;
 
+import com.jme3.network.Filter;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
@@ -53,6 +54,12 @@ public abstract class AbstractKernel implements Kernel
 
     private AtomicLong nextId = new AtomicLong(1);
 
+    /**
+     *  Outbound data accounting, see getBytesCopied() and getBytesSent().
+     */
+    private AtomicLong bytesCopied = new AtomicLong();
+    private AtomicLong bytesSent = new AtomicLong();
+
     /**
      *  Contains the pending endpoint events waiting for the caller
      *  to retrieve them.
@@ -93,6 +100,50 @@ public abstract class AbstractKernel implements Kernel
         return nextId.getAndIncrement();
     }
 
+    /**
+     *  Dispatches the shared data to all endpoints managed by the
+     *  kernel that match the specified endpoint filter.  The endpoints
+     *  reference the shared bytes rather than copying them and release
+     *  their reference once the data is written.  The caller keeps its
+     *  own reference and must still release it after this call.
+     *
+     *  <p>This default implementation falls back to a copying
+     *  broadcast().  Kernels that can queue shared data override it.</p>
+     */
+    public void broadcast( Filter<? super Endpoint> filter, SharedBuffer data, boolean reliable )
+    {
+        broadcast( filter, data.duplicate(), reliable, true );
+    }
+
+    /**
+     *  Returns the total number of outbound bytes this kernel has copied
+     *  on their way to the endpoints.  Compare with getBytesSent() to
+     *  see how much copying the outbound data path costs.
+     */
+    public long getBytesCopied()
+    {
+        return bytesCopied.get();
+    }
+
+    /**
+     *  Returns the total number of bytes this kernel has written
+     *  to its endpoints.
+     */
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    protected void addBytesCopied( long count )
+    {
+        bytesCopied.addAndGet(count);
+    }
+
+    protected void addBytesSent( long count )
+    {
+        bytesSent.addAndGet(count);
+    }
+
     /**
      *  Returns true if there are waiting envelopes.
      */
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.kernel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  A reference counted buffer of outbound data that is shared by
+ *  all of the endpoints it is sent to.  The data is treated as read-only
+ *  once the buffer has been handed to a kernel: each endpoint reads it
+ *  through its own duplicate() and releases its reference when the data
+ *  has been written.  When the last reference is released the buffer
+ *  goes back to the pool it came from.
+ *
+ *  <p>A new SharedBuffer starts with one reference that belongs to the
+ *  code that acquired it.  That code must release() it once it has
+ *  handed the buffer to the kernel(s).  Buffers that are never released,
+ *  for example because an endpoint was closed with data still pending,
+ *  are simply garbage collected instead of being reused.</p>
+ *
+ *  @version   $Revision$
+ */
+public class SharedBuffer
+{
+    private final ByteBuffer data;
+    private final SharedBufferPool pool;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    protected SharedBuffer( ByteBuffer data, SharedBufferPool pool )
+    {
+        this.data = data;
+        this.pool = pool;
+    }
+
+    /**
+     *  Returns the shared data.  Callers must not change its position
+     *  or limit, use duplicate() to get an independent view.
+     */
+    public ByteBuffer getData()
+    {
+        return data;
+    }
+
+    /**
+     *  Returns a new view of the data with its own position and limit.
+     */
+    public ByteBuffer duplicate()
+    {
+        return data.duplicate();
+    }
+
+    /**
+     *  Returns the number of bytes of data, ie: data.remaining().
+     */
+    public int size()
+    {
+        return data.remaining();
+    }
+
+    /**
+     *  Adds a reference to this buffer.
+     */
+    public SharedBuffer retain()
+    {
+        if( refs.getAndIncrement() <= 0 ) {
+            throw new IllegalStateException( "Buffer already released:" + this );
+        }
+        return this;
+    }
+
+    /**
+     *  Removes a reference to this buffer, returning the data to its
+     *  pool when there are no references left.
+     */
+    public void release()
+    {
+        int count = refs.decrementAndGet();
+        if( count == 0 ) {
+            if( pool != null ) {
+                pool.recycle(data);
+            }
+        } else if( count < 0 ) {
+            throw new IllegalStateException( "Buffer released too many times:" + this );
+        }
+    }
+
+    public String toString()
+    {
+        return "SharedBuffer[" + data.remaining() + " bytes, refs=" + refs.get() + "]";
+    }
+}
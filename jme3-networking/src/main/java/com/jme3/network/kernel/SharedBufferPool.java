@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.kernel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  A thread safe pool of heap byte buffers handed out as SharedBuffers.
+ *  Buffers are kept in power of two size classes and each class holds
+ *  at most a fixed number of free buffers.  Anything beyond that is
+ *  left to the garbage collector.
+ *
+ *  <p>Heap buffers are used so that the datagram based kernels can
+ *  still send straight from the backing array.</p>
+ *
+ *  @version   $Revision$
+ */
+public class SharedBufferPool
+{
+    private static final int MIN_SHIFT = 6; // 64 bytes
+    private static final int MAX_SHIFT = 16; // 64k bytes
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+    private final AtomicInteger[] freeCounts;
+    private final int maxFreePerSize;
+
+    public SharedBufferPool()
+    {
+        this(256);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SharedBufferPool( int maxFreePerSize )
+    {
+        this.maxFreePerSize = maxFreePerSize;
+        int classes = MAX_SHIFT - MIN_SHIFT + 1;
+        free = new ConcurrentLinkedQueue[classes];
+        freeCounts = new AtomicInteger[classes];
+        for( int i = 0; i < classes; i++ ) {
+            free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    private static int sizeClass( int size )
+    {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+
+    /**
+     *  Returns a SharedBuffer with one reference whose data has
+     *  position 0 and a limit of the requested size.
+     */
+    public SharedBuffer acquire( int size )
+    {
+        int index = sizeClass(size);
+        if( index >= free.length ) {
+            // Too big to be pooled
+            return new SharedBuffer(ByteBuffer.allocate(size), null);
+        }
+
+        ByteBuffer buffer = free[index].poll();
+        if( buffer == null ) {
+            buffer = ByteBuffer.allocate(1 << (index + MIN_SHIFT));
+        } else {
+            freeCounts[index].decrementAndGet();
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return new SharedBuffer(buffer, this);
+    }
+
+    /**
+     *  Called by SharedBuffer when its last reference is released.
+     */
+    protected void recycle( ByteBuffer buffer )
+    {
+        int index = sizeClass(buffer.capacity());
+        if( index >= free.length || (1 << (index + MIN_SHIFT)) != buffer.capacity() ) {
+            return; // not one of ours
+        }
+        if( freeCounts[index].incrementAndGet() > maxFreePerSize ) {
+            freeCounts[index].decrementAndGet();
+            return;
+        }
+        free[index].add(buffer);
+    }
+}
@@ -34,6 +34,7 @@ package com.jme3.network.kernel.tcp;
 import com.jme3.network.kernel.Endpoint;
 import com.jme3.network.kernel.Kernel;
 import com.jme3.network.kernel.KernelException;
+import com.jme3.network.kernel.SharedBuffer;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
@@ -55,7 +56,7 @@ public class NioEndpoint implements Endpoint
     private long id;
     private SocketChannel socket;
     private SelectorKernel kernel;
-    private ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+    private ConcurrentLinkedQueue<Outbound> outbound = new ConcurrentLinkedQueue<Outbound>();
     private boolean closing = false;
 
     public NioEndpoint( SelectorKernel kernel, long id, SocketChannel socket )
@@ -127,13 +128,28 @@ public class NioEndpoint implements Endpoint
             buffer = data;
         } else {
             // Copy the buffer
+            kernel.dataCopied(data.remaining());
             buffer = ByteBuffer.allocate(data.remaining());
             buffer.put(data);
             buffer.flip();
         }
 
         // Queue it up
-        outbound.add(buffer);
+        outbound.add(new Outbound(buffer, null));
+
+        if( wakeup )
+            kernel.wakeupSelector();
+    }
+
+    /**
+     *  Queues a view of the shared data without copying it.  A
+     *  reference to the shared buffer is held until the data
+     *  has been written.
+     */
+    protected void send( SharedBuffer data, boolean wakeup )
+    {
+        data.retain();
+        outbound.add(new Outbound(data.duplicate(), data));
 
         if( wakeup )
             kernel.wakeupSelector();
@@ -145,7 +161,27 @@ public class NioEndpoint implements Endpoint
      */
     protected ByteBuffer peekPending()
     {
-        return outbound.peek();
+        Outbound top = outbound.peek();
+        return top == null ? null : top.data;
+    }
+
+    /**
+     *  Called by the SelectorKernel to collect the pending buffers
+     *  that can be written together in one gathering write.  Fills
+     *  the store with up to store.length buffers from the top of
+     *  the queue, stopping at any close marker, and returns the
+     *  number of buffers collected.
+     */
+    protected int peekPending( ByteBuffer[] store )
+    {
+        int count = 0;
+        for( Outbound pending : outbound ) {
+            if( count == store.length || pending.data == CLOSE_MARKER ) {
+                break;
+            }
+            store[count++] = pending.data;
+        }
+        return count;
     }
 
     /**
@@ -154,7 +190,14 @@ public class NioEndpoint implements Endpoint
      */
     protected ByteBuffer removePending()
     {
-        return outbound.poll();
+        Outbound top = outbound.poll();
+        if( top == null ) {
+            return null;
+        }
+        if( top.shared != null ) {
+            top.shared.release();
+        }
+        return top.data;
     }
 
     protected boolean hasPending()
@@ -177,4 +220,20 @@ public class NioEndpoint implements Endpoint
     {
         return "NioEndpoint[" + id + ", " + socket + "]";
     }
+
+    /**
+     *  A queued buffer along with the shared buffer it is a view
+     *  of, if any.
+     */
+    private static class Outbound
+    {
+        final ByteBuffer data;
+        final SharedBuffer shared;
+
+        Outbound( ByteBuffer data, SharedBuffer shared )
+        {
+            this.data = data;
+            this.shared = shared;
+        }
+    }
 }
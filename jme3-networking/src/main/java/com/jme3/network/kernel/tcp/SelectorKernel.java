@@ -40,6 +40,7 @@ import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -58,6 +59,12 @@ public class SelectorKernel extends AbstractKernel
 {
     static Logger log = Logger.getLogger(SelectorKernel.class.getName());
 
+    /**
+     *  The maximum number of pending buffers that are handed
+     *  to the channel in a single gathering write.
+     */
+    public static final int MAX_GATHERED_BUFFERS = 64;
+
     private InetSocketAddress address;
     private SelectorThread thread;
 
@@ -122,6 +129,7 @@ public class SelectorKernel extends AbstractKernel
 
         if( copy ) {
             // Copy the data just once
+            addBytesCopied(data.remaining());
             byte[] temp = new byte[data.remaining()];
             System.arraycopy(data.array(), data.position(), temp, 0, data.remaining());
             data = ByteBuffer.wrap(temp);
@@ -144,6 +152,29 @@ public class SelectorKernel extends AbstractKernel
         wakeupSelector();
     }
 
+    /**
+     *  Queues the shared data on every matching endpoint without
+     *  copying it.
+     */
+    @Override
+    public void broadcast( Filter<? super Endpoint> filter, SharedBuffer data, boolean reliable )
+    {
+        if( !reliable )
+            throw new UnsupportedOperationException( "Unreliable send not supported by this kernel." );
+
+        for( NioEndpoint p : endpoints.values() ) {
+            // Does it match the filter?
+            if( filter != null && !filter.apply(p) )
+                continue;
+
+            p.send( data, false );
+        }
+
+        // Wake up the selector so it can reinitialize its
+        // state accordingly.
+        wakeupSelector();
+    }
+
     protected NioEndpoint addEndpoint( SocketChannel c )
     {
         // Note: we purposely do NOT put the key in the endpoint.
@@ -180,6 +211,15 @@ public class SelectorKernel extends AbstractKernel
         thread.cancel(p);
     }
 
+    /**
+     *  Used internally by the endpoints to account for the
+     *  outbound data they had to copy.
+     */
+    protected void dataCopied( int size )
+    {
+        addBytesCopied(size);
+    }
+
     /**
      *  Used internally by the endpoints to wakeup the selector
      *  when they have data to send.
@@ -200,9 +240,11 @@ public class SelectorKernel extends AbstractKernel
         //       smaller... the network is still likely to deliver things in
         //       bulk anyway.
 
-        // Must copy the shared data before we use it
+        // Must copy the shared data before we use it.  The shared
+        // buffer is direct so it is read through the buffer API.
         byte[] dataCopy = new byte[size];
-		System.arraycopy(shared.array(), 0, dataCopy, 0, size);
+        shared.flip();
+        shared.get(dataCopy, 0, size);
 
         Envelope env = new Envelope( p, dataCopy, true );
         addEnvelope( env );
@@ -218,7 +260,13 @@ public class SelectorKernel extends AbstractKernel
         private ServerSocketChannel serverChannel;
         private Selector selector;
         private AtomicBoolean go = new AtomicBoolean(true);
-        private ByteBuffer working = ByteBuffer.allocate( 8192 );
+        // Direct so that the channel can read into it without going
+        // through its own temporary direct buffer first.
+        private ByteBuffer working = ByteBuffer.allocateDirect( 8192 );
+ 
+        // Reused for gathering writes so that many small framed
+        // messages go out in one write call
+        private ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
 
         /**
          *  Because we want to keep the keys to ourselves, we'll do
@@ -389,11 +437,25 @@ public class SelectorKernel extends AbstractKernel
                 return;
             }
 
-            c.write( current );
-
-            // If we wrote all of that packet then we need to remove it
-            if( current.remaining() == 0 ) {
-                p.removePending();
+            // Write as many of the pending buffers as we can in
+            // one go.
+            int count = p.peekPending( gathered );
+            try {
+                long written = c.write( gathered, 0, count );
+                addBytesSent(written);
+
+                // Remove the buffers that were fully written.  The
+                // first one with data left is where the next write
+                // will resume.
+                for( int i = 0; i < count; i++ ) {
+                    if( gathered[i].remaining() != 0 ) {
+                        break;
+                    }
+                    p.removePending();
+                }
+            } finally {
+                // Don't hold on to the sent data
+                Arrays.fill( gathered, 0, count, null );
             }
 
             // If we happened to empty the pending queue then let's read
@@ -34,6 +34,7 @@ package com.jme3.network.kernel.udp;
 import com.jme3.network.kernel.Endpoint;
 import com.jme3.network.kernel.Kernel;
 import com.jme3.network.kernel.KernelException;
+import com.jme3.network.kernel.SharedBuffer;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -139,6 +140,35 @@ public class UdpEndpoint implements Endpoint
         }
     }
 
+    /**
+     *  Sends the shared data without copying it.  A reference to the
+     *  shared buffer is held until the datagram has been written.
+     */
+    protected void send( SharedBuffer data )
+    {
+        if( !isConnected() ) {
+            throw new KernelException( "Endpoint is not connected:" + this );
+        }
+        
+        ByteBuffer buffer = data.getData();
+        data.retain();
+        try {
+            DatagramPacket p = new DatagramPacket( buffer.array(), buffer.arrayOffset() + buffer.position(), 
+                                                   buffer.remaining(), address );
+            kernel.enqueueWrite( this, p, data );
+        } catch (Exception e) {
+            // It was never queued so nothing else will release it
+            data.release();
+            if (e instanceof SocketException) {
+                throw new KernelException("Error sending datagram to:" + address, e);
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public String toString()
     {
         return "UdpEndpoint[" + id + ", " + address + "]";
@@ -130,6 +130,7 @@ public class UdpKernel extends AbstractKernel
 
         if( copy ) {
             // Copy the data just once
+            addBytesCopied(data.remaining());
             byte[] temp = new byte[data.remaining()];
             System.arraycopy(data.array(), data.position(), temp, 0, data.remaining());
             data = ByteBuffer.wrap(temp);
@@ -146,6 +147,26 @@ public class UdpKernel extends AbstractKernel
         }
     }
 
+    /**
+     *  Sends the shared data to all matching endpoints.  Each
+     *  datagram is built directly over the shared bytes, which
+     *  are released once the datagram has been written.
+     */
+    @Override
+    public void broadcast( Filter<? super Endpoint> filter, SharedBuffer data, boolean reliable )
+    {
+        if( reliable )
+            throw new UnsupportedOperationException( "Reliable send not supported by this kernel." );
+
+        for( UdpEndpoint p : socketEndpoints.values() ) {
+            // Does it match the filter?
+            if( filter != null && !filter.apply(p) )
+                continue;
+    
+            p.send( data );
+        }
+    }
+
     protected Endpoint getEndpoint( SocketAddress address, boolean create )
     {
         UdpEndpoint p = socketEndpoints.get(address);
@@ -195,34 +216,55 @@ public class UdpKernel extends AbstractKernel
 
     protected void enqueueWrite( Endpoint endpoint, DatagramPacket packet )
     {
-        writer.execute( new MessageWriter(endpoint, packet) );
+        enqueueWrite( endpoint, packet, null );
+    } 
+
+    /**
+     *  Queues the packet for writing.  If shared is not null then
+     *  it is released once the packet has been written.
+     */
+    protected void enqueueWrite( Endpoint endpoint, DatagramPacket packet, SharedBuffer shared )
+    {
+        writer.execute( new MessageWriter(endpoint, packet, shared) );
     } 
 
     protected class MessageWriter implements Runnable
     {
         private Endpoint endpoint;
         private DatagramPacket packet;
+        private SharedBuffer shared;
         
         public MessageWriter( Endpoint endpoint, DatagramPacket packet )
+        {
+            this( endpoint, packet, null );
+        }
+        
+        public MessageWriter( Endpoint endpoint, DatagramPacket packet, SharedBuffer shared )
         {
             this.endpoint = endpoint;
             this.packet = packet;
+            this.shared = shared;
         }
         
         public void run()
         {
-            // Not guaranteed to always work but an extra datagram
-            // to a dead connection isn't so big of a deal.
-            if( !endpoint.isConnected() ) {
-                return;
-            }
-            
             try {
+                // Not guaranteed to always work but an extra datagram
+                // to a dead connection isn't so big of a deal.
+                if( !endpoint.isConnected() ) {
+                    return;
+                }
+            
                 thread.getSocket().send(packet);
+                addBytesSent(packet.getLength());
             } catch( Exception e ) {
                 KernelException exc = new KernelException( "Error sending datagram to:" + address, e );
                 exc.fillInStackTrace();
                 reportError(exc);
+            } finally {
+                if( shared != null ) {
+                    shared.release();
+                }
             }
         } 
     }
@@ -11,6 +11,7 @@ import com.jme3.network.AbstractMessage;
 import com.jme3.network.serializing.Serializable;
 import com.jme3.network.serializing.Serializer;
 import com.jme3.network.serializing.SerializerRegistration;
+import com.jme3.network.serializing.serializers.CompiledFieldSerializer;
 import com.jme3.network.serializing.serializers.FieldSerializer;
 import java.util.*;
 import java.util.jar.Attributes;
@@ -92,7 +93,6 @@ public class SerializerRegistrationsMessage extends AbstractMessage {
  
     public static SerializerRegistrationsMessage INSTANCE;   
     public static Registration[] compiled;
-    private static final Serializer fieldSerializer = new FieldSerializer();
     
     private Registration[] registrations;    
 
@@ -173,7 +173,11 @@ public class SerializerRegistrationsMessage extends AbstractMessage {
         
             this.id = reg.getId();
             this.className = reg.getType().getName();
-            if( reg.getSerializer().getClass() != FieldSerializer.class ) {
+            // Both field serializers write the same format so the receiving
+            // end is left to pick its own.
+            Class serializerType = reg.getSerializer().getClass();
+            if( serializerType != FieldSerializer.class 
+                && serializerType != CompiledFieldSerializer.class ) {
                 this.serializerClassName = reg.getSerializer().getClass().getName();
             } 
         }
@@ -183,7 +187,7 @@ public class SerializerRegistrationsMessage extends AbstractMessage {
                 Class type = Class.forName(className);
                 Serializer serializer;
                 if( serializerClassName == null ) {
-                    serializer = fieldSerializer;
+                    serializer = Serializer.getDefaultSerializer();
                 } else {
                     Class serializerType = Class.forName(serializerClassName);
                     serializer = (Serializer)serializerType.newInstance();                    
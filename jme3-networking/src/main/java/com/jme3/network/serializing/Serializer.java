@@ -72,6 +72,11 @@ public abstract class Serializer {
 
     private static boolean strictRegistration = true;
 
+    private static boolean compiledFieldSerializers = false;
+
+    // Created on demand, java.lang.invoke is not available everywhere
+    private static Serializer compiledFieldSerializer;
+
     private static volatile boolean locked = false;
     
 
@@ -148,6 +153,39 @@ public abstract class Serializer {
         strictRegistration = b;
     }
 
+    /**
+     *  When set to true, classes that are registered without a specific
+     *  serializer use the CompiledFieldSerializer instead of the reflection
+     *  based FieldSerializer.  Both produce the same data so the client and
+     *  the server do not need to agree on this setting.  Only affects classes
+     *  registered after the call.  Defaults to false.
+     *  If the platform does not support method handles, the FieldSerializer
+     *  keeps being used and this setting stays false.
+     */
+    public static void setCompiledFieldSerializers( boolean b ) {
+        if( b && compiledFieldSerializer == null ) {
+            try {
+                compiledFieldSerializer = new CompiledFieldSerializer();
+            } catch( LinkageError e ) {
+                log.log( Level.WARNING, "CompiledFieldSerializer is not supported, using FieldSerializer", e );
+                return;
+            }
+        }
+        compiledFieldSerializers = b;
+    }
+
+    public static boolean isCompiledFieldSerializers() {
+        return compiledFieldSerializers;
+    }
+
+    /**
+     *  Returns the serializer used for the classes registered without
+     *  a specific serializer.
+     */
+    public static Serializer getDefaultSerializer() {
+        return compiledFieldSerializers ? compiledFieldSerializer : fieldSerializer;
+    }
+
     public static SerializerRegistration registerClass(Class cls) {
         return registerClass(cls, true);
     }
@@ -227,7 +265,12 @@ public abstract class Serializer {
 
             Serializer serializer = getSerializer(serializerClass, false);
 
-            if (serializer == null) serializer = fieldSerializer;
+            // Either field serializer may be swapped for the other, they
+            // read and write the same data.
+            if (serializer == null || serializer == fieldSerializer
+                || serializer == compiledFieldSerializer) {
+                serializer = getDefaultSerializer();
+            }
 
             SerializerRegistration existingReg = getExactSerializerRegistration(cls);
 
@@ -358,7 +401,7 @@ public abstract class Serializer {
         if( failOnMiss ) {
             throw new IllegalArgumentException( "Class has not been registered:" + cls );
         }
-        return registerClass(cls, fieldSerializer);
+        return registerClass(cls, getDefaultSerializer());
     }
 
 
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.network.serializing.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.SerializerException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A drop-in replacement for the {@link FieldSerializer} that resolves
+ * each registered class to a fixed list of typed field operations at
+ * registration time.
+ * <p>
+ * Fields are accessed through method handles adapted to their exact
+ * primitive types, so primitive fields are read and written without
+ * boxing and without going through <code>java.lang.reflect.Field</code>.
+ * The wire format is identical to the one of the FieldSerializer,
+ * including the field order and the nested class registrations, so
+ * a peer using either serializer can read the other's messages.
+ * <p>
+ * Classes that cannot be compiled (for example because the method
+ * handles cannot be created in a restricted environment) fall back to
+ * a regular FieldSerializer.
+ *
+ * @see Serializer#setCompiledFieldSerializers(boolean)
+ */
+public class CompiledFieldSerializer extends Serializer {
+
+    static final Logger log = Logger.getLogger(CompiledFieldSerializer.class.getName());
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final Map<Class, CompiledClass> compiledClasses = new HashMap<Class, CompiledClass>();
+    private final FieldSerializer fallback = new FieldSerializer();
+
+    public void initialize(Class clazz) {
+        try {
+            compiledClasses.put(clazz, compile(clazz));
+        } catch (IllegalAccessException e) {
+            log.log(Level.WARNING, "Unable to compile serializer for:" + clazz
+                                 + ", falling back to FieldSerializer", e);
+            fallback.initialize(clazz);
+        } catch (LinkageError e) {
+            log.log(Level.WARNING, "Unable to compile serializer for:" + clazz
+                                 + ", falling back to FieldSerializer", e);
+            fallback.initialize(clazz);
+        }
+    }
+
+    private static Constructor findConstructor(Class clazz) {
+        // Same rules as the FieldSerializer: public no-arg constructor first
+        // then a non-public one.
+        try {
+            return clazz.getConstructor();
+        } catch (NoSuchMethodException e) {
+        }
+        try {
+            Constructor ctor = clazz.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return ctor;
+        } catch (NoSuchMethodException e) {
+        }
+        throw new RuntimeException( "Registration error: no-argument constructor not found on:" + clazz );
+    }
+
+    private static CompiledClass compile(Class clazz) throws IllegalAccessException {
+        MethodHandle ctor = lookup.unreflectConstructor(findConstructor(clazz))
+                                  .asType(MethodType.methodType(Object.class));
+
+        List<Field> fields = new ArrayList<Field>();
+        Class processingClass = clazz;
+        while (processingClass != Object.class) {
+            Collections.addAll(fields, processingClass.getDeclaredFields());
+            processingClass = processingClass.getSuperclass();
+        }
+
+        // Fields are visited in the same order as in the FieldSerializer so
+        // that the nested registrations below hand out the same IDs.
+        List<FieldOp> ops = new ArrayList<FieldOp>(fields.size());
+        for (Field field : fields) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isTransient(modifiers)) continue;
+            if (Modifier.isFinal(modifiers)) continue;
+            if (Modifier.isStatic(modifiers)) continue;
+            if (field.isSynthetic()) continue;
+            field.setAccessible(true);
+
+            Serializer serializer = null;
+            if (Modifier.isFinal(field.getType().getModifiers())) {
+                // See FieldSerializer.initialize(), this has the side-effect of
+                // registering the field type.
+                serializer = Serializer.getSerializer(field.getType(), false);
+            }
+            ops.add(createOp(field, serializer));
+        }
+
+        Collections.sort(ops, new Comparator<FieldOp>() {
+            public int compare(FieldOp o1, FieldOp o2) {
+                return o1.field.getName().compareTo(o2.field.getName());
+            }
+        });
+        return new CompiledClass(ctor, ops.toArray(new FieldOp[ops.size()]));
+    }
+
+    private static FieldOp createOp(Field field, Serializer serializer) throws IllegalAccessException {
+        Class type = field.getType();
+        MethodHandle getter = lookup.unreflectGetter(field);
+        MethodHandle setter = lookup.unreflectSetter(field);
+
+        // Primitives are only specialized when they are still handled by the
+        // built-in serializers, anything else would change the format.
+        if (type == boolean.class && serializer instanceof BooleanSerializer) {
+            return new BooleanOp(field, getter, setter);
+        } else if (type == byte.class && serializer instanceof ByteSerializer) {
+            return new ByteOp(field, getter, setter);
+        } else if (type == char.class && serializer instanceof CharSerializer) {
+            return new CharOp(field, getter, setter);
+        } else if (type == short.class && serializer instanceof ShortSerializer) {
+            return new ShortOp(field, getter, setter);
+        } else if (type == int.class && serializer instanceof IntSerializer) {
+            return new IntOp(field, getter, setter);
+        } else if (type == long.class && serializer instanceof LongSerializer) {
+            return new LongOp(field, getter, setter);
+        } else if (type == float.class && serializer instanceof FloatSerializer) {
+            return new FloatOp(field, getter, setter);
+        } else if (type == double.class && serializer instanceof DoubleSerializer) {
+            return new DoubleOp(field, getter, setter);
+        } else if (type == String.class && serializer instanceof StringSerializer) {
+            return new StringOp(field, getter, setter);
+        }
+        return new ObjectOp(field, getter, setter, serializer);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+        CompiledClass compiled = compiledClasses.get(c);
+        if (compiled == null) {
+            return fallback.readObject(data, c);
+        }
+
+        // Read the null/non-null marker
+        if (data.get() == 0x0)
+            return null;
+
+        Object object;
+        try {
+            object = compiled.ctor.invokeExact();
+        } catch (Throwable t) {
+            throw new SerializerException( "Error creating object of type:" + c, t );
+        }
+
+        for (FieldOp op : compiled.ops) {
+            try {
+                op.read(data, object);
+            } catch (IOException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new SerializerException( "Error reading field:" + op.field, t );
+            }
+        }
+        return (T)object;
+    }
+
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+        if (object == null) {
+            buffer.put((byte)0x0);
+            return;
+        }
+
+        CompiledClass compiled = compiledClasses.get(object.getClass());
+        if (compiled == null) {
+            fallback.writeObject(buffer, object);
+            return;
+        }
+
+        // Add the null/non-null marker
+        buffer.put((byte)0x1);
+
+        for (FieldOp op : compiled.ops) {
+            try {
+                op.write(buffer, object);
+            } catch (BufferOverflowException boe) {
+                throw boe;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new SerializerException( "Error writing object for field:" + op.field, t );
+            }
+        }
+    }
+
+    private static final class CompiledClass {
+        final MethodHandle ctor;
+        final FieldOp[] ops;
+
+        CompiledClass(MethodHandle ctor, FieldOp[] ops) {
+            this.ctor = ctor;
+            this.ops = ops;
+        }
+    }
+
+    /**
+     * Reads or writes one field.  The handles are adapted to take the
+     * target as a plain Object so that invokeExact() can be used.
+     */
+    private static abstract class FieldOp {
+        final Field field;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        FieldOp(Field field, MethodHandle getter, MethodHandle setter, Class valueType) {
+            this.field = field;
+            this.getter = getter.asType(MethodType.methodType(valueType, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, valueType));
+        }
+
+        abstract void read(ByteBuffer data, Object target) throws Throwable;
+
+        abstract void write(ByteBuffer buffer, Object source) throws Throwable;
+    }
+
+    private static final class BooleanOp extends FieldOp {
+        BooleanOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, boolean.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.get() == 1);
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.put((boolean)getter.invokeExact(source) ? (byte)1 : (byte)0);
+        }
+    }
+
+    private static final class ByteOp extends FieldOp {
+        ByteOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, byte.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.get());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.put((byte)getter.invokeExact(source));
+        }
+    }
+
+    private static final class CharOp extends FieldOp {
+        CharOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, char.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.getChar());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.putChar((char)getter.invokeExact(source));
+        }
+    }
+
+    private static final class ShortOp extends FieldOp {
+        ShortOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, short.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.getShort());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.putShort((short)getter.invokeExact(source));
+        }
+    }
+
+    private static final class IntOp extends FieldOp {
+        IntOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, int.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.getInt());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.putInt((int)getter.invokeExact(source));
+        }
+    }
+
+    private static final class LongOp extends FieldOp {
+        LongOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, long.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.getLong());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.putLong((long)getter.invokeExact(source));
+        }
+    }
+
+    private static final class FloatOp extends FieldOp {
+        FloatOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, float.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.getFloat());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.putFloat((float)getter.invokeExact(source));
+        }
+    }
+
+    private static final class DoubleOp extends FieldOp {
+        DoubleOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, double.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, data.getDouble());
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            buffer.putDouble((double)getter.invokeExact(source));
+        }
+    }
+
+    private static final class StringOp extends FieldOp {
+        StringOp(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field, getter, setter, String.class);
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            setter.invokeExact(target, StringSerializer.readString(data));
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            StringSerializer.writeString((String)getter.invokeExact(source), buffer);
+        }
+    }
+
+    /**
+     * Any other field: either a final type with a known serializer or
+     * a type that has to be written along with its class.
+     */
+    private static final class ObjectOp extends FieldOp {
+        final Serializer serializer;
+
+        ObjectOp(Field field, MethodHandle getter, MethodHandle setter, Serializer serializer) {
+            super(field, getter, setter, Object.class);
+            this.serializer = serializer;
+        }
+
+        void read(ByteBuffer data, Object target) throws Throwable {
+            Object value;
+            if (serializer != null) {
+                value = serializer.readObject(data, field.getType());
+            } else {
+                value = Serializer.readClassAndObject(data);
+            }
+            setter.invokeExact(target, value);
+        }
+
+        void write(ByteBuffer buffer, Object source) throws Throwable {
+            Object value = getter.invokeExact(source);
+            if (serializer != null) {
+                serializer.writeObject(buffer, value);
+            } else {
+                Serializer.writeClassAndObject(buffer, value);
+            }
+        }
+    }
+}